@@ -18,6 +18,7 @@ import com.microsoft.azure.mobile.MobileCenter;
 import com.microsoft.azure.mobile.crashes.Crashes;
 import com.microsoft.azure.mobile.crashes.CrashesPrivateHelper;
 import com.microsoft.azure.mobile.crashes.model.ErrorReport;
+import com.microsoft.azure.mobile.crashes.model.RestoredThrowable;
 import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
 import com.microsoft.azure.mobile.sasquatch.R;
 import com.microsoft.azure.mobile.utils.storage.StorageHelper;
@@ -156,7 +157,8 @@ public class CrashesTest {
                 new Date().getTime() - errorReport.getAppErrorTime().getTime(),
                 lessThan(10000L));
         assertNotNull(errorReport.getDevice());
-        assertEquals(failureHandler.uncaughtException.getClass(), errorReport.getThrowable().getClass());
+        assertTrue(errorReport.getThrowable() instanceof RestoredThrowable);
+        assertEquals(failureHandler.uncaughtException.getClass().getName(), ((RestoredThrowable) errorReport.getThrowable()).getClassName());
         assertEquals(failureHandler.uncaughtException.getMessage(), errorReport.getThrowable().getMessage());
         assertArrayEquals(failureHandler.uncaughtException.getStackTrace(), errorReport.getThrowable().getStackTrace());
 
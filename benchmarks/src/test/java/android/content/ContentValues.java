@@ -0,0 +1,104 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Benchmark stand-in with the behavior of the Android class for the methods the SDK uses,
+ * needed by the in-memory database that replaces SQLite on the JVM.
+ */
+public final class ContentValues {
+
+    /**
+     * Values.
+     */
+    private final Map<String, Object> mValues = new HashMap<>();
+
+    public void put(String key, String value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Short value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Byte value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Boolean value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Float value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, byte[] value) {
+        mValues.put(key, value);
+    }
+
+    public void putNull(String key) {
+        mValues.put(key, null);
+    }
+
+    public Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public String getAsString(String key) {
+        Object value = mValues.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    public Long getAsLong(String key) {
+        Object value = mValues.get(key);
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    public Integer getAsInteger(String key) {
+        Object value = mValues.get(key);
+        return value == null ? null : ((Number) value).intValue();
+    }
+
+    public boolean containsKey(String key) {
+        return mValues.containsKey(key);
+    }
+
+    public void remove(String key) {
+        mValues.remove(key);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    public boolean isEmpty() {
+        return mValues.isEmpty();
+    }
+
+    public void clear() {
+        mValues.clear();
+    }
+
+    public Set<String> keySet() {
+        return mValues.keySet();
+    }
+
+    public Set<Map.Entry<String, Object>> valueSet() {
+        return mValues.entrySet();
+    }
+}
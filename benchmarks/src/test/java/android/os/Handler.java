@@ -0,0 +1,37 @@
+package android.os;
+
+/**
+ * Benchmark stand-in running posted callbacks synchronously so that a benchmark measures
+ * the whole work triggered by a call. Delayed callbacks are timers (batching, retries), they are dropped.
+ */
+public class Handler {
+
+    /**
+     * Looper.
+     */
+    private final Looper mLooper;
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper) {
+        mLooper = looper == null ? Looper.myLooper() : looper;
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    public final boolean post(Runnable runnable) {
+        runnable.run();
+        return true;
+    }
+
+    public final boolean postDelayed(Runnable runnable, long delayMillis) {
+        return true;
+    }
+
+    public final void removeCallbacks(Runnable runnable) {
+    }
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * Benchmark stand-in, the thread does nothing and its looper runs callbacks on the calling thread.
+ */
+public class HandlerThread extends Thread {
+
+    public HandlerThread(String name) {
+        super(name);
+    }
+
+    public Looper getLooper() {
+        return Looper.myLooper();
+    }
+
+    public boolean quit() {
+        return true;
+    }
+}
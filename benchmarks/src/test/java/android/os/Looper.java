@@ -0,0 +1,32 @@
+package android.os;
+
+/**
+ * Benchmark stand-in: there is no message loop, every looper is bound to the calling thread.
+ */
+public final class Looper {
+
+    /**
+     * Single instance.
+     */
+    private static final Looper sLooper = new Looper();
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return sLooper;
+    }
+
+    public static Looper myLooper() {
+        return sLooper;
+    }
+
+    /**
+     * Code always runs on the thread calling a handler, which is thus considered the looper thread.
+     *
+     * @return current thread.
+     */
+    public Thread getThread() {
+        return Thread.currentThread();
+    }
+}
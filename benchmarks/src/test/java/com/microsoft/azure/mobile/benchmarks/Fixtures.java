@@ -0,0 +1,150 @@
+package com.microsoft.azure.mobile.benchmarks;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import com.microsoft.azure.mobile.analytics.ingestion.models.EventLog;
+import com.microsoft.azure.mobile.analytics.ingestion.models.PageLog;
+import com.microsoft.azure.mobile.analytics.ingestion.models.StartSessionLog;
+import com.microsoft.azure.mobile.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.azure.mobile.analytics.ingestion.models.json.PageLogFactory;
+import com.microsoft.azure.mobile.analytics.ingestion.models.json.StartSessionLogFactory;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.utils.UUIDUtils;
+import com.microsoft.azure.mobile.utils.storage.StorageHelper;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Data and environment shared by benchmarks.
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Get a context that is enough for the SDK on the JVM, and initialize storage with it.
+     *
+     * @return mock context.
+     * @throws Exception if mocking fails.
+     */
+    public static Context initContext() throws Exception {
+        Context context = mock(Context.class);
+        when(context.getPackageName()).thenReturn("com.contoso.benchmarks");
+        PackageManager packageManager = mock(PackageManager.class);
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.versionName = "1.0";
+        packageInfo.versionCode = 1;
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(packageInfo);
+        when(context.getPackageManager()).thenReturn(packageManager);
+        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(mock(SharedPreferences.class, RETURNS_DEEP_STUBS));
+        StorageHelper.initialize(context);
+        return context;
+    }
+
+    /**
+     * Register all SDK log types.
+     *
+     * @param logSerializer serializer to configure.
+     * @return the serializer.
+     */
+    public static LogSerializer addLogFactories(LogSerializer logSerializer) {
+        logSerializer.addLogFactory(EventLog.TYPE, new EventLogFactory());
+        logSerializer.addLogFactory(PageLog.TYPE, new PageLogFactory());
+        logSerializer.addLogFactory(StartSessionLog.TYPE, new StartSessionLogFactory());
+        logSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        return logSerializer;
+    }
+
+    /**
+     * Get device properties like on a phone.
+     *
+     * @return device properties.
+     */
+    public static Device device() {
+        Device device = new Device();
+        device.setSdkName("mobilecenter.android");
+        device.setSdkVersion("0.8.1");
+        device.setModel("Nexus 5X");
+        device.setOemName("LGE");
+        device.setOsName("Android");
+        device.setOsVersion("7.1.2");
+        device.setOsBuild("N2G47W");
+        device.setOsApiLevel(25);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(-420);
+        device.setScreenSize("1080x1794");
+        device.setAppVersion("1.0");
+        device.setAppBuild("1");
+        device.setAppNamespace("com.contoso.benchmarks");
+        device.setCarrierName("Carrier");
+        device.setCarrierCountry("us");
+        return device;
+    }
+
+    /**
+     * Get an event log with the maximum number of properties.
+     *
+     * @param device device properties, can be null.
+     * @return event log.
+     */
+    public static EventLog eventLog(Device device) {
+        EventLog log = new EventLog();
+        log.setId(UUIDUtils.fastRandomUUID());
+        log.setSid(UUIDUtils.fastRandomUUID());
+        log.setName("ButtonClicked");
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < 5; i++)
+            properties.put("property" + i, "value" + i);
+        log.setProperties(properties);
+        log.setDevice(device);
+        return log;
+    }
+
+    /**
+     * Get stack traces of threads like a process would have when crashing.
+     *
+     * @param threadCount number of threads.
+     * @param depth       number of frames per thread.
+     * @return stack traces by thread.
+     */
+    public static Map<Thread, StackTraceElement[]> stackTraces(int threadCount, int depth) {
+        Map<Thread, StackTraceElement[]> stackTraces = new LinkedHashMap<>();
+        for (int i = 0; i < threadCount; i++) {
+            StackTraceElement[] frames = new StackTraceElement[depth];
+            for (int j = 0; j < depth; j++)
+                frames[j] = new StackTraceElement("com.contoso.Worker" + (j % 7), "process" + (j % 3), "Worker" + (j % 7) + ".java", j + 1);
+            stackTraces.put(new Thread("worker-" + i), frames);
+        }
+        return stackTraces;
+    }
+
+    /**
+     * Get an exception with a cause, with stack traces as deep as given.
+     *
+     * @param depth number of frames of each throwable.
+     * @return exception.
+     */
+    public static Throwable throwable(int depth) {
+        Throwable cause = new IllegalStateException("cause");
+        Throwable throwable = new RuntimeException("failure", cause);
+        StackTraceElement[] frames = stackTraces(1, depth).values().iterator().next();
+        cause.setStackTrace(frames);
+        throwable.setStackTrace(frames);
+        return throwable;
+    }
+}
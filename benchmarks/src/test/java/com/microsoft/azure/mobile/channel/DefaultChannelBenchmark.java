@@ -0,0 +1,89 @@
+package com.microsoft.azure.mobile.channel;
+
+import com.microsoft.azure.mobile.benchmarks.Fixtures;
+import com.microsoft.azure.mobile.http.ServiceCall;
+import com.microsoft.azure.mobile.http.ServiceCallback;
+import com.microsoft.azure.mobile.ingestion.Ingestion;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.persistence.DatabasePersistence;
+import com.microsoft.azure.mobile.persistence.Persistence;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueuing logs in the channel until they are sent, with an ingestion that succeeds immediately.
+ * <p>
+ * Handler callbacks run synchronously on the JVM stand-ins and the database uses its in-memory storage,
+ * so each enqueue includes persisting the log and, once a batch is full, reading and sending the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DefaultChannelBenchmark {
+
+    private static final String GROUP = "group";
+
+    private DefaultChannel mChannel;
+
+    private Device mDevice;
+
+    @Setup
+    public void setUp() throws Exception {
+        LogSerializer logSerializer = Fixtures.addLogFactories(new DefaultLogSerializer());
+        Persistence persistence = new DatabasePersistence();
+        persistence.setLogSerializer(logSerializer);
+        Ingestion ingestion = new Ingestion() {
+
+            @Override
+            public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) {
+                serviceCallback.onCallSucceeded("");
+                return new ServiceCall() {
+
+                    @Override
+                    public void cancel() {
+                    }
+                };
+            }
+
+            @Override
+            public void setLogUrl(String logUrl) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        mChannel = new DefaultChannel(Fixtures.initContext(), UUID.randomUUID().toString(), persistence, ingestion, null);
+        mChannel.addGroup(GROUP, 50, 3000, 3, null);
+        mDevice = Fixtures.device();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mChannel.shutdown();
+    }
+
+    @Benchmark
+    public void enqueue() {
+        mChannel.enqueue(Fixtures.eventLog(mDevice), GROUP);
+    }
+}
@@ -0,0 +1,342 @@
+package com.microsoft.azure.mobile.channel;
+
+import com.google.monitoring.runtime.instrumentation.AllocationRecorder;
+import com.google.monitoring.runtime.instrumentation.Sampler;
+import com.microsoft.azure.mobile.benchmarks.Fixtures;
+import com.microsoft.azure.mobile.http.ServiceCall;
+import com.microsoft.azure.mobile.http.ServiceCallback;
+import com.microsoft.azure.mobile.ingestion.Ingestion;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.persistence.DatabasePersistence;
+import com.microsoft.azure.mobile.persistence.Persistence;
+
+import org.json.JSONException;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives event logs through the channel, persistence and ingestion serialization, and fails if
+ * a stage allocates more bytes or objects per log than its recorded baseline.
+ * <p>
+ * Everything runs on the test thread thanks to the handler stand-ins, so bytes are measured with
+ * the per thread counter of the JVM and objects with the allocation instrumenter agent set up by
+ * the build. Persistence is {@link DatabasePersistence} on its in-memory storage, which keeps the
+ * {@link android.content.ContentValues} and JSON copies of the real code.
+ * <p>
+ * Thresholds derive from {@link #BASELINE_FILE}: allocations may exceed it by {@link #ALLOCATION_TOLERANCE}.
+ * Time per log depends on the machine, so it is only printed. Record the baseline again with
+ * {@code -PrecordBaseline} when an optimization lands.
+ */
+@SuppressWarnings("unused")
+public class EnqueueAllocationTest {
+
+    private static final String GROUP = "group";
+
+    private static final int LOG_COUNT = 1000;
+
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * Measurements per log and stage, relative to the module directory where unit tests run.
+     */
+    private static final File BASELINE_FILE = new File("baselines/enqueue-allocation.properties");
+
+    /**
+     * Allowed growth of bytes and objects per log over the baseline.
+     */
+    private static final double ALLOCATION_TOLERANCE = 1.1;
+
+    /**
+     * Counts objects allocated by the test thread.
+     */
+    private static final ObjectCounter sObjectCounter = new ObjectCounter();
+
+    /**
+     * Get bytes allocated so far by the current thread.
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void check(Properties baseline, Stage stage, String metric, long value) {
+        String key = stage.mName + "." + metric;
+        String baselineValue = baseline.getProperty(key);
+        assertNotNull("No baseline for " + key, baselineValue);
+        long threshold = (long) (Long.parseLong(baselineValue) * ALLOCATION_TOLERANCE);
+        assertTrue(stage + " exceeds " + threshold + " " + metric + " per log", value <= threshold);
+    }
+
+    @Test
+    public void enqueueToSend() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        sObjectCounter.mThread = Thread.currentThread();
+        AllocationRecorder.addSampler(sObjectCounter);
+        long objects = sObjectCounter.mCount;
+        assertNotNull(new Object());
+        assertTrue("Objects are not counted, run with the allocation instrumenter agent as configured in build.gradle", sObjectCounter.mCount > objects);
+        Stage enqueue = new Stage("enqueue");
+        Stage put = new Stage("persistence.putLog");
+        Stage get = new Stage("persistence.getLogs");
+        Stage delete = new Stage("persistence.deleteLogs");
+        Stage send = new Stage("ingestion.serializeContainer");
+        LogSerializer logSerializer = Fixtures.addLogFactories(new DefaultLogSerializer());
+        Persistence databasePersistence = new DatabasePersistence();
+        databasePersistence.setLogSerializer(logSerializer);
+        MeasuredPersistence persistence = new MeasuredPersistence(databasePersistence, put, get, delete);
+        SerializingIngestion ingestion = new SerializingIngestion(logSerializer, send);
+        DefaultChannel channel = new DefaultChannel(Fixtures.initContext(), UUID.randomUUID().toString(), persistence, ingestion, null);
+        channel.addGroup(GROUP, BATCH_SIZE, 3000, 3, null);
+        Device device = Fixtures.device();
+
+        /* Warm up class loading and caches, then measure. */
+        for (int i = 0; i < LOG_COUNT; i++)
+            channel.enqueue(Fixtures.eventLog(device), GROUP);
+        for (Stage stage : new Stage[]{put, get, delete, send})
+            stage.reset();
+        ingestion.mSentLogCount = 0;
+        for (int i = 0; i < LOG_COUNT; i++) {
+            Log log = Fixtures.eventLog(device);
+            enqueue.start();
+            channel.enqueue(log, GROUP);
+            enqueue.stop(1);
+        }
+        channel.shutdown();
+        AllocationRecorder.removeSampler(sObjectCounter);
+
+        /* All logs went through every stage. */
+        assertEquals(LOG_COUNT, ingestion.mSentLogCount);
+        Stage[] stages = {enqueue, put, get, delete, send};
+        for (Stage stage : stages)
+            System.out.println(stage);
+        if (Boolean.getBoolean("recordBaseline")) {
+
+            /* Written by hand to keep the stage order, so that new baselines diff well. */
+            PrintWriter out = new PrintWriter(BASELINE_FILE, "ISO-8859-1");
+            try {
+                out.println("# Per log measurements of " + getClass().getSimpleName() + ", record with -PrecordBaseline");
+                for (Stage stage : stages) {
+                    out.println(stage.mName + ".bytes=" + stage.getBytesPerLog());
+                    out.println(stage.mName + ".objects=" + stage.getObjectsPerLog());
+                }
+            } finally {
+                out.close();
+            }
+            return;
+        }
+        Properties baseline = new Properties();
+        InputStream in = new FileInputStream(BASELINE_FILE);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+        for (Stage stage : stages) {
+            check(baseline, stage, "bytes", stage.getBytesPerLog());
+            check(baseline, stage, "objects", stage.getObjectsPerLog());
+        }
+    }
+
+    /**
+     * Sampler of the allocation instrumenter counting objects allocated by one thread.
+     */
+    private static class ObjectCounter implements Sampler {
+
+        private volatile Thread mThread;
+
+        private long mCount;
+
+        @Override
+        public void sampleAllocation(int count, String desc, Object newObj, long size) {
+            if (Thread.currentThread() == mThread)
+                mCount++;
+        }
+    }
+
+    /**
+     * Bytes allocated and time spent by a stage, counted in logs processed.
+     */
+    private static class Stage {
+
+        private final String mName;
+
+        private long mBytes;
+
+        private long mObjects;
+
+        private long mNanos;
+
+        private long mLogCount;
+
+        private long mStartBytes;
+
+        private long mStartObjects;
+
+        private long mStartNanos;
+
+        Stage(String name) {
+            mName = name;
+        }
+
+        void start() {
+            mStartNanos = System.nanoTime();
+            mStartBytes = allocatedBytes();
+            mStartObjects = sObjectCounter.mCount;
+        }
+
+        void stop(int logCount) {
+            mObjects += sObjectCounter.mCount - mStartObjects;
+            mBytes += allocatedBytes() - mStartBytes;
+            mNanos += System.nanoTime() - mStartNanos;
+            mLogCount += logCount;
+        }
+
+        void reset() {
+            mBytes = mObjects = mNanos = mLogCount = 0;
+        }
+
+        long getBytesPerLog() {
+            return mBytes / Math.max(1, mLogCount);
+        }
+
+        long getObjectsPerLog() {
+            return mObjects / Math.max(1, mLogCount);
+        }
+
+        long getNanosPerLog() {
+            return mNanos / Math.max(1, mLogCount);
+        }
+
+        @Override
+        public String toString() {
+            return mName + ": " + getBytesPerLog() + " bytes/log, " + getObjectsPerLog() + " objects/log, " + getNanosPerLog() / 1000 + " us/log";
+        }
+    }
+
+    /**
+     * Persistence measuring each operation of the persistence it decorates.
+     */
+    private static class MeasuredPersistence extends Persistence {
+
+        private final Persistence mPersistence;
+
+        private final Stage mPut;
+
+        private final Stage mGet;
+
+        private final Stage mDelete;
+
+        private int mLastBatchSize;
+
+        MeasuredPersistence(Persistence persistence, Stage put, Stage get, Stage delete) {
+            mPersistence = persistence;
+            mPut = put;
+            mGet = get;
+            mDelete = delete;
+        }
+
+        @Override
+        public void putLog(String group, Log log) throws PersistenceException {
+            mPut.start();
+            mPersistence.putLog(group, log);
+            mPut.stop(1);
+        }
+
+        @Override
+        public void deleteLogs(String group, String id) {
+            mDelete.start();
+            mPersistence.deleteLogs(group, id);
+            mDelete.stop(mLastBatchSize);
+        }
+
+        @Override
+        public void deleteLogs(String group) {
+            mPersistence.deleteLogs(group);
+        }
+
+        @Override
+        public int countLogs(String group) {
+            return mPersistence.countLogs(group);
+        }
+
+        @Override
+        public String getLogs(String group, int limit, List<Log> outLogs) {
+            mGet.start();
+            String id = mPersistence.getLogs(group, limit, outLogs);
+            mGet.stop(outLogs.size());
+            mLastBatchSize = outLogs.size();
+            return id;
+        }
+
+        @Override
+        public void clearPendingLogState() {
+            mPersistence.clearPendingLogState();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mPersistence.close();
+        }
+    }
+
+    /**
+     * Ingestion serializing batches like the HTTP one does, then succeeding.
+     */
+    private static class SerializingIngestion implements Ingestion {
+
+        private final LogSerializer mLogSerializer;
+
+        private final Stage mSend;
+
+        private int mSentLogCount;
+
+        SerializingIngestion(LogSerializer logSerializer, Stage send) {
+            mLogSerializer = logSerializer;
+            mSend = send;
+        }
+
+        @Override
+        public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) {
+            mSend.start();
+            try {
+                mLogSerializer.serializeContainer(logContainer);
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+            mSend.stop(logContainer.getLogs().size());
+            mSentLogCount += logContainer.getLogs().size();
+            serviceCallback.onCallSucceeded("");
+            return new ServiceCall() {
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        @Override
+        public void setLogUrl(String logUrl) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
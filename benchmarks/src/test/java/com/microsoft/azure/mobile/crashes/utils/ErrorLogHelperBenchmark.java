@@ -0,0 +1,57 @@
+package com.microsoft.azure.mobile.crashes.utils;
+
+import android.content.Context;
+
+import com.microsoft.azure.mobile.benchmarks.Fixtures;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building an error log from a throwable and the stack traces of all threads, as done when crashing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ErrorLogHelperBenchmark {
+
+    /**
+     * Number of threads in the process.
+     */
+    @Param({"1", "20"})
+    public int threadCount;
+
+    private Context mContext;
+
+    private Throwable mThrowable;
+
+    private Map<Thread, StackTraceElement[]> mStackTraces;
+
+    @Setup
+    public void setUp() throws Exception {
+        mContext = Fixtures.initContext();
+        mThrowable = Fixtures.throwable(30);
+        mStackTraces = Fixtures.stackTraces(threadCount, 30);
+    }
+
+    @Benchmark
+    public ManagedErrorLog createErrorLog() {
+        return ErrorLogHelper.createErrorLog(mContext, Thread.currentThread(), mThrowable, mStackTraces, 0, true);
+    }
+}
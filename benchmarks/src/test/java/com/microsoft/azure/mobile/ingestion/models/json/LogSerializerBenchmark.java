@@ -0,0 +1,105 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import com.microsoft.azure.mobile.benchmarks.Fixtures;
+import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a batch as sent to ingestion, and deserialization of logs as read from the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogSerializerBenchmark {
+
+    /**
+     * Serializer implementation.
+     */
+    @Param({"default", "streaming"})
+    public String serializer;
+
+    /**
+     * Number of logs in a batch.
+     */
+    @Param({"1", "50"})
+    public int batchSize;
+
+    private LogSerializer mSerializer;
+
+    private StreamingLogSerializer mStreamingSerializer;
+
+    private LogContainer mContainer;
+
+    private String mEventLogJson;
+
+    private String mErrorLogJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        mSerializer = Fixtures.addLogFactories(serializer.equals("streaming") ? new StreamingLogSerializer(SerializerConfig.COMPACT) : new DefaultLogSerializer(SerializerConfig.COMPACT));
+        mStreamingSerializer = (StreamingLogSerializer) Fixtures.addLogFactories(new StreamingLogSerializer(SerializerConfig.COMPACT));
+        Device device = Fixtures.device();
+        List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++)
+            logs.add(Fixtures.eventLog(device));
+        mContainer = new LogContainer();
+        mContainer.setLogs(logs);
+        mEventLogJson = mSerializer.serializeLog(Fixtures.eventLog(device));
+        Log errorLog = ErrorLogHelper.createErrorLog(Fixtures.initContext(), Thread.currentThread(), Fixtures.throwable(30), Fixtures.stackTraces(20, 30), 0, true);
+        errorLog.setDevice(device);
+        mErrorLogJson = mSerializer.serializeLog(errorLog);
+    }
+
+    @Benchmark
+    public String serializeContainer() throws JSONException {
+        return mSerializer.serializeContainer(mContainer);
+    }
+
+    @Benchmark
+    public void serializeContainerToStream() throws JSONException, IOException {
+        mStreamingSerializer.serializeContainer(mContainer, new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(@SuppressWarnings("NullableProblems") byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    @Benchmark
+    public Log deserializeEventLog() throws JSONException {
+        return mSerializer.deserializeLog(mEventLogJson);
+    }
+
+    @Benchmark
+    public Log deserializeErrorLog() throws JSONException {
+        return mSerializer.deserializeLog(mErrorLogJson);
+    }
+}
@@ -0,0 +1,80 @@
+package com.microsoft.azure.mobile.persistence;
+
+import com.microsoft.azure.mobile.benchmarks.Fixtures;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a batch of logs from persistence.
+ * <p>
+ * SQLite is not available on the JVM, so the database falls back to its in-memory storage:
+ * this measures log deserialization and batch bookkeeping, not disk I/O. Resetting the pending
+ * state is batched with the reads instead of running before each invocation, which would time
+ * the JMH fixture itself for such short calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatabasePersistenceBenchmark {
+
+    private static final String GROUP = "group";
+
+    private static final int BATCH_SIZE = 50;
+
+    private static final int BATCH_COUNT = 4;
+
+    private DatabasePersistence mPersistence;
+
+    @Setup
+    public void setUp() throws Exception {
+        Fixtures.initContext();
+        mPersistence = new DatabasePersistence("benchmark", "logs", 1);
+        mPersistence.setLogSerializer(Fixtures.addLogFactories(new DefaultLogSerializer()));
+        Device device = Fixtures.device();
+        for (int i = 0; i < BATCH_SIZE * BATCH_COUNT; i++)
+            mPersistence.putLog(GROUP, Fixtures.eventLog(device));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mPersistence.close();
+    }
+
+    /**
+     * Read every stored log batch by batch, then make them available again for the next invocation.
+     * Scores are per batch.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_COUNT)
+    public void getLogs(Blackhole blackhole) {
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            List<Log> logs = new ArrayList<>(BATCH_SIZE);
+            mPersistence.getLogs(GROUP, BATCH_SIZE, logs);
+            blackhole.consume(logs);
+        }
+        mPersistence.clearPendingLogState();
+    }
+}
@@ -8,6 +8,7 @@ import com.microsoft.azure.mobile.Constants;
 import com.microsoft.azure.mobile.analytics.channel.AnalyticsListener;
 import com.microsoft.azure.mobile.analytics.ingestion.models.EventLog;
 import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.channel.SendPolicy;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
 import com.microsoft.azure.mobile.utils.storage.StorageHelper;
@@ -76,12 +77,12 @@ public class AnalyticsAndroidTest {
         doAnswer(new Answer() {
             @Override
             public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
-                Channel.GroupListener listener = (Channel.GroupListener) invocationOnMock.getArguments()[4];
+                Channel.GroupListener listener = (Channel.GroupListener) invocationOnMock.getArguments()[5];
                 groupListener.set(listener);
                 listener.onBeforeSending(log);
                 return null;
             }
-        }).when(channel).addGroup(anyString(), anyInt(), anyInt(), anyInt(), any(Channel.GroupListener.class));
+        }).when(channel).addGroup(anyString(), anyInt(), anyInt(), anyInt(), any(SendPolicy.class), any(Channel.GroupListener.class));
         Analytics.unsetInstance();
         Analytics.setListener(analyticsListener);
         Analytics.getInstance().onStarted(sContext, "", channel);
@@ -0,0 +1,53 @@
+package com.microsoft.azure.mobile.analytics.ingestion.models;
+
+import com.microsoft.azure.mobile.analytics.ingestion.models.json.EventLogFactory;
+import com.microsoft.azure.mobile.analytics.ingestion.models.json.PageLogFactory;
+import com.microsoft.azure.mobile.ingestion.models.LogWithProperties;
+import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.StreamingLogSerializer;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.microsoft.azure.mobile.test.TestUtils.checkLogConformance;
+
+/**
+ * Checks that hand-written readers and writers of analytics logs agree with each other.
+ */
+@SuppressWarnings("unused")
+public class ModelConformanceAndroidTest {
+
+    private static void checkConformance(LogWithProperties log, String type, LogFactory logFactory) throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("a", "b \"c\"\n");
+        log.setProperties(properties);
+        log.setSid(UUID.randomUUID());
+        log.setToffset(10000000000L);
+
+        LogSerializer defaultSerializer = new DefaultLogSerializer();
+        defaultSerializer.addLogFactory(type, logFactory);
+        LogSerializer streamingSerializer = new StreamingLogSerializer();
+        streamingSerializer.addLogFactory(type, logFactory);
+        checkLogConformance(log, defaultSerializer, streamingSerializer);
+    }
+
+    @Test
+    public void eventLog() throws Exception {
+        EventLog log = new EventLog();
+        log.setId(UUID.randomUUID());
+        log.setName("event");
+        checkConformance(log, EventLog.TYPE, new EventLogFactory());
+    }
+
+    @Test
+    public void pageLog() throws Exception {
+        PageLog log = new PageLog();
+        log.setName("page");
+        checkConformance(log, PageLog.TYPE, new PageLogFactory());
+    }
+}
@@ -16,14 +16,17 @@ import com.microsoft.azure.mobile.analytics.ingestion.models.json.EventLogFactor
 import com.microsoft.azure.mobile.analytics.ingestion.models.json.PageLogFactory;
 import com.microsoft.azure.mobile.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.channel.SendPolicy;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
+import com.microsoft.azure.mobile.utils.CompactStringMap;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
 import com.microsoft.azure.mobile.utils.UUIDUtils;
 
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Analytics service.
@@ -50,6 +53,24 @@ public class Analytics extends AbstractMobileCenterService {
      */
     private static final String ACTIVITY_SUFFIX = "Activity";
 
+    /**
+     * Pending log count above which analytics logs wait for an unmetered network.
+     */
+    @VisibleForTesting
+    static final int METERED_MAX_PENDING_LOGS = 100;
+
+    /**
+     * Maximum approximate bytes of analytics logs sent on a metered network per interval.
+     */
+    @VisibleForTesting
+    static final long METERED_MAX_BYTES = 100 * 1024;
+
+    /**
+     * Interval of the metered network byte cap.
+     */
+    @VisibleForTesting
+    static final long METERED_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
     /**
      * Shared instance.
      */
@@ -302,6 +323,11 @@ public class Analytics extends AbstractMobileCenterService {
         applyEnabledState(enabled);
     }
 
+    @Override
+    protected SendPolicy getSendPolicy() {
+        return new SendPolicy(METERED_MAX_PENDING_LOGS, METERED_MAX_BYTES, METERED_INTERVAL);
+    }
+
     @Override
     protected Channel.GroupListener getChannelListener() {
         return new Channel.GroupListener() {
@@ -380,7 +406,7 @@ public class Analytics extends AbstractMobileCenterService {
         if (isInactive())
             return;
         EventLog eventLog = new EventLog();
-        eventLog.setId(UUIDUtils.randomUUID());
+        eventLog.setId(UUIDUtils.fastRandomUUID());
         eventLog.setName(name);
         eventLog.setProperties(properties);
         mChannel.enqueue(eventLog, ANALYTICS_GROUP);
@@ -441,7 +467,7 @@ public class Analytics extends AbstractMobileCenterService {
         String message;
         final int maxPropertiesCount = 5;
         final int maxPropertyItemLength = 64;
-        Map<String, String> result = new HashMap<>();
+        Map<String, String> result = new CompactStringMap(Math.min(properties.size(), maxPropertiesCount));
         for (Map.Entry<String, String> property : properties.entrySet()) {
             if (result.size() >= maxPropertiesCount) {
                 message = String.format("%s '%s' : properties cannot contain more than %s items. Skipping other properties.", logType, logName, maxPropertiesCount);
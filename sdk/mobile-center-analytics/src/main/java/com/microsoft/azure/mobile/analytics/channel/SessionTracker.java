@@ -152,7 +152,7 @@ public class SessionTracker implements Channel.Listener {
         if (mSid == null || hasSessionTimedOut()) {
 
             /* New session: generate a new identifier. */
-            mSid = UUIDUtils.randomUUID();
+            mSid = UUIDUtils.fastRandomUUID();
 
             /* Update session map. */
             mSessions.put(System.currentTimeMillis(), mSid);
@@ -1,6 +1,7 @@
 package com.microsoft.azure.mobile.analytics.ingestion.models;
 
 import com.microsoft.azure.mobile.ingestion.models.LogWithProperties;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -76,6 +77,17 @@ public class EventLog extends LogWithProperties {
         setName(object.getString(NAME));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(ID))
+            setId(UUID.fromString(reader.nextString()));
+        else if (name.equals(NAME))
+            setName(reader.nextString());
+        else
+            return super.readField(name, reader);
+        return true;
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
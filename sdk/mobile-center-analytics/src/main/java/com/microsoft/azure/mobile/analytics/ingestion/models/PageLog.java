@@ -1,6 +1,7 @@
 package com.microsoft.azure.mobile.analytics.ingestion.models;
 
 import com.microsoft.azure.mobile.ingestion.models.LogWithProperties;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -49,6 +50,15 @@ public class PageLog extends LogWithProperties {
         setName(object.getString(NAME));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(NAME)) {
+            setName(reader.nextString());
+            return true;
+        }
+        return super.readField(name, reader);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
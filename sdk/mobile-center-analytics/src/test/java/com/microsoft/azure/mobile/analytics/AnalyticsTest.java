@@ -13,6 +13,7 @@ import com.microsoft.azure.mobile.analytics.ingestion.models.json.EventLogFactor
 import com.microsoft.azure.mobile.analytics.ingestion.models.json.PageLogFactory;
 import com.microsoft.azure.mobile.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.channel.SendPolicy;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
@@ -356,7 +357,7 @@ public class AnalyticsTest {
         assertTrue(Analytics.isEnabled());
         Analytics.setEnabled(true);
         assertTrue(Analytics.isEnabled());
-        verify(channel).addGroup(eq(analytics.getGroupName()), anyInt(), anyInt(), anyInt(), any(Channel.GroupListener.class));
+        verify(channel).addGroup(eq(analytics.getGroupName()), anyInt(), anyInt(), anyInt(), any(SendPolicy.class), any(Channel.GroupListener.class));
         verify(channel).addListener(any(SessionTracker.class));
         Analytics.trackEvent("test");
         Analytics.trackPage("test");
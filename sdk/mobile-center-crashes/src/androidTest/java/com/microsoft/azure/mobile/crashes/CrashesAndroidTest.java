@@ -7,8 +7,10 @@ import android.support.test.InstrumentationRegistry;
 import com.microsoft.azure.mobile.Constants;
 import com.microsoft.azure.mobile.ResultCallback;
 import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.channel.SendPolicy;
 import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.azure.mobile.crashes.model.ErrorReport;
+import com.microsoft.azure.mobile.crashes.model.RestoredThrowable;
 import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.utils.HandlerUtils;
@@ -154,7 +156,8 @@ public class CrashesAndroidTest {
             public void onResult(ErrorReport errorReport) {
                 assertNotNull(errorReport);
                 Throwable lastThrowable = errorReport.getThrowable();
-                assertTrue(lastThrowable instanceof StackOverflowError);
+                assertTrue(lastThrowable instanceof RestoredThrowable);
+                assertEquals(StackOverflowError.class.getName(), ((RestoredThrowable) lastThrowable).getClassName());
                 assertEquals(ErrorLogHelper.FRAME_LIMIT, lastThrowable.getStackTrace().length);
             }
         });
@@ -184,12 +187,12 @@ public class CrashesAndroidTest {
 
             @Override
             public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
-                Channel.GroupListener listener = (Channel.GroupListener) invocationOnMock.getArguments()[4];
+                Channel.GroupListener listener = (Channel.GroupListener) invocationOnMock.getArguments()[5];
                 groupListener.set(listener);
                 listener.onBeforeSending(log.get());
                 return null;
             }
-        }).when(channel).addGroup(anyString(), anyInt(), anyInt(), anyInt(), any(Channel.GroupListener.class));
+        }).when(channel).addGroup(anyString(), anyInt(), anyInt(), anyInt(), any(SendPolicy.class), any(Channel.GroupListener.class));
         Crashes.unsetInstance();
         Crashes.setListener(crashesListener);
         Crashes.getInstance().onStarted(sContext, "", channel);
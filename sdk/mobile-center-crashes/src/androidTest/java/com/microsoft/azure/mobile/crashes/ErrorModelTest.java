@@ -11,10 +11,12 @@ import com.microsoft.azure.mobile.crashes.model.ErrorBinaryAttachment;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.StreamingLogSerializer;
 
 import org.json.JSONException;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 import static com.microsoft.azure.mobile.test.TestUtils.checkEquals;
@@ -136,6 +138,46 @@ public class ErrorModelTest {
         checkNotEquals(mockErrorLog, new MockErrorLog());
     }
 
+    @Test
+    public void managedErrorLogStreaming() throws JSONException {
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        errorLog.setToffset(1L);
+        errorLog.setProcessId(123);
+        errorLog.setProcessName("process");
+        errorLog.setErrorThreadId(2L);
+        errorLog.setFatal(true);
+        errorLog.setArchitecture("armeabi-v7a");
+        StackFrame frame = new StackFrame();
+        frame.setClassName("com.test.Class");
+        frame.setMethodName("method");
+        frame.setLineNumber(42);
+        frame.setFileName("Class.java");
+        Exception cause = new Exception();
+        cause.setType("java.io.IOException");
+        cause.setFrames(singletonList(frame));
+        Exception exception = new Exception();
+        exception.setType("java.lang.RuntimeException");
+        exception.setMessage("\"quoted\"\n\u00e9");
+        exception.setFrames(Arrays.asList(frame, frame));
+        exception.setInnerExceptions(singletonList(cause));
+        errorLog.setException(exception);
+        Thread thread = new Thread();
+        thread.setId(2L);
+        thread.setName("main");
+        thread.setFrames(singletonList(frame));
+        errorLog.setThreads(singletonList(thread));
+        ErrorAttachment errorAttachment = new ErrorAttachment();
+        errorAttachment.setTextAttachment("text");
+        errorLog.setErrorAttachment(errorAttachment);
+
+        /* Streaming serializer reads its own output and the default one's. */
+        LogSerializer serializer = new StreamingLogSerializer();
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        checkSerialization(errorLog, serializer);
+        checkEquals(errorLog, serializer.deserializeLog(new DefaultLogSerializer().serializeLog(errorLog)));
+    }
+
     @Test
     public void managedErrorLog() throws JSONException {
 
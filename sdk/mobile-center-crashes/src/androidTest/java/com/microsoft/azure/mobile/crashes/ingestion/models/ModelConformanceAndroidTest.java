@@ -0,0 +1,74 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.json.ErrorAttachmentChunkLogFactory;
+import com.microsoft.azure.mobile.crashes.ingestion.models.json.ManagedErrorLogFactory;
+import com.microsoft.azure.mobile.crashes.model.ErrorAttachment;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.DeviceJsonCache;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.StreamingLogSerializer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.microsoft.azure.mobile.test.TestUtils.checkLogConformance;
+import static com.microsoft.azure.mobile.test.TestUtils.fill;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that hand-written readers and writers of error models agree with each other,
+ * including properties added later: all setters are filled by reflection.
+ */
+@SuppressWarnings("unused")
+public class ModelConformanceAndroidTest {
+
+    @After
+    public void tearDown() {
+        DeviceJsonCache.invalidate();
+    }
+
+    @Test
+    public void managedErrorLog() throws java.lang.Exception {
+        StackFrame frame = fill(new StackFrame());
+        Exception cause = fill(new Exception());
+        cause.setFrames(Collections.singletonList(frame));
+        Exception exception = fill(new Exception());
+        exception.setFrames(Arrays.asList(frame, fill(new StackFrame())));
+        exception.setInnerExceptions(Collections.singletonList(cause));
+        Thread thread = fill(new Thread());
+        thread.setFrames(Collections.singletonList(frame));
+        ManagedErrorLog log = fill(new ManagedErrorLog());
+        log.setException(exception);
+        log.setThreads(Arrays.asList(thread, fill(new Thread())));
+        log.setErrorAttachment(fill(new ErrorAttachment()));
+        log.setDevice(fill(new Device()));
+
+        LogSerializer defaultSerializer = new DefaultLogSerializer();
+        defaultSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        LogSerializer streamingSerializer = new StreamingLogSerializer();
+        streamingSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        checkLogConformance(log, defaultSerializer, streamingSerializer);
+    }
+
+    @Test
+    public void errorAttachmentChunkLog() throws java.lang.Exception {
+        ErrorAttachmentChunkLog log = fill(new ErrorAttachmentChunkLog());
+        assertNotNull(log.getData());
+        log.setDevice(fill(new Device()));
+
+        LogSerializer defaultSerializer = new DefaultLogSerializer();
+        defaultSerializer.addLogFactory(ErrorAttachmentChunkLog.TYPE, ErrorAttachmentChunkLogFactory.getInstance());
+        LogSerializer streamingSerializer = new StreamingLogSerializer();
+        streamingSerializer.addLogFactory(ErrorAttachmentChunkLog.TYPE, ErrorAttachmentChunkLogFactory.getInstance());
+        String payload = checkLogConformance(log, defaultSerializer, streamingSerializer);
+
+        /* Binary data goes through Base64. */
+        assertArrayEquals(log.getData(), ((ErrorAttachmentChunkLog) defaultSerializer.deserializeLog(payload)).getData());
+        assertArrayEquals(log.getData(), ((ErrorAttachmentChunkLog) streamingSerializer.deserializeLog(payload)).getData());
+    }
+}
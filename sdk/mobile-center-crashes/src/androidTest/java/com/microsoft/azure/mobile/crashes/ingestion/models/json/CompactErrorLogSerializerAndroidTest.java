@@ -0,0 +1,187 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models.json;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.Exception;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
+import com.microsoft.azure.mobile.crashes.ingestion.models.Thread;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.DeviceJsonCache;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
+import com.microsoft.azure.mobile.ingestion.models.json.SerializerConfig;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class CompactErrorLogSerializerAndroidTest {
+
+    private static LogSerializer newSerializer(LogSerializer serializer) {
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        return serializer;
+    }
+
+    private static StackFrame frame(String className, String methodName, Integer lineNumber, String fileName) {
+        StackFrame frame = new StackFrame();
+        frame.setClassName(className);
+        frame.setMethodName(methodName);
+        frame.setLineNumber(lineNumber);
+        frame.setFileName(fileName);
+        return frame;
+    }
+
+    private static ManagedErrorLog errorLog() {
+        List<StackFrame> frames = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            frames.add(frame("com.contoso.Service", "process", 10 + i, "Service.java"));
+        frames.add(frame("java.lang.Thread", "run", null, null));
+        Exception cause = new Exception();
+        cause.setType("java.io.IOException");
+        cause.setFrames(frames.subList(5, frames.size()));
+        Exception exception = new Exception();
+        exception.setType("java.lang.RuntimeException");
+        exception.setMessage("failed");
+        exception.setFrames(frames);
+        exception.setInnerExceptions(Collections.singletonList(cause));
+        Thread thread = new Thread();
+        thread.setId(1L);
+        thread.setName("main");
+        thread.setFrames(frames);
+        Thread idleThread = new Thread();
+        idleThread.setId(2L);
+        idleThread.setName("idle");
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUID.randomUUID());
+        errorLog.setProcessId(123);
+        errorLog.setProcessName("com.contoso");
+        errorLog.setErrorThreadId(1L);
+        errorLog.setFatal(true);
+        errorLog.setAppLaunchTOffset(1000L);
+        errorLog.setArchitecture("x86");
+        errorLog.setToffset(10L);
+        errorLog.setSid(UUID.randomUUID());
+        errorLog.setException(exception);
+        errorLog.setThreads(Arrays.asList(thread, idleThread));
+        Device device = new Device();
+        device.setSdkName("mobilecenter.android");
+        device.setSdkVersion("1.0");
+        device.setModel("model");
+        device.setOemName("oem");
+        device.setOsName("Android");
+        device.setOsVersion("7.0");
+        device.setOsApiLevel(24);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(0);
+        device.setScreenSize("1x1");
+        device.setAppVersion("1.0");
+        device.setAppBuild("1");
+        device.setAppNamespace("com.contoso");
+        errorLog.setDevice(device);
+        return errorLog;
+    }
+
+    @After
+    public void tearDown() {
+        DeviceJsonCache.invalidate();
+    }
+
+    @Test
+    public void roundTrip() throws JSONException {
+        ManagedErrorLog errorLog = errorLog();
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        String compact = serializer.serializeLog(errorLog);
+        assertTrue(new JSONObject(compact).has("strings"));
+        assertEquals(errorLog, serializer.deserializeLog(compact));
+
+        /* Frames are shared. */
+        String full = newSerializer(new DefaultLogSerializer(SerializerConfig.COMPACT)).serializeLog(errorLog);
+        assertTrue(compact.length() * 2 < full.length());
+    }
+
+    @Test
+    public void readFullJson() throws JSONException {
+        ManagedErrorLog errorLog = errorLog();
+        String full = newSerializer(new DefaultLogSerializer(SerializerConfig.COMPACT)).serializeLog(errorLog);
+        assertEquals(errorLog, newSerializer(new CompactErrorLogSerializer()).deserializeLog(full));
+    }
+
+    @Test
+    public void noFrames() throws JSONException {
+        ManagedErrorLog errorLog = errorLog();
+        errorLog.getException().setFrames(null);
+        errorLog.getException().setInnerExceptions(null);
+        errorLog.setThreads(null);
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        assertEquals(errorLog, serializer.deserializeLog(serializer.serializeLog(errorLog)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void missingLog() throws JSONException {
+        newSerializer(new CompactErrorLogSerializer()).deserializeLog("{\"strings\":[],\"frames\":[]}");
+    }
+
+    @Test
+    public void noProcessName() throws JSONException {
+
+        /* Process name is not always known. */
+        ManagedErrorLog errorLog = errorLog();
+        errorLog.setProcessName(null);
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        assertEquals(errorLog, serializer.deserializeLog(serializer.serializeLog(errorLog)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void missingProcessId() throws JSONException {
+        ManagedErrorLog errorLog = errorLog();
+        errorLog.setProcessId(null);
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        serializer.deserializeLog(serializer.serializeLog(errorLog));
+    }
+
+    @Test(expected = JSONException.class)
+    public void missingException() throws JSONException {
+        ManagedErrorLog errorLog = errorLog();
+        errorLog.setException(null);
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        serializer.deserializeLog(serializer.serializeLog(errorLog));
+    }
+
+    @Test(expected = JSONException.class)
+    public void missingThreadId() throws JSONException {
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        String json = serializer.serializeLog(errorLog());
+        serializer.deserializeLog(json.replace("\"id\":2,", ""));
+    }
+
+    @Test(expected = JSONException.class)
+    public void frameNotInTable() throws JSONException {
+        ManagedErrorLog errorLog = errorLog();
+        StackFrameTableWriter writer = new StackFrameTableWriter(new StringWriter(), errorLog);
+
+        /* Frame added after the tables were built. */
+        errorLog.getThreads().get(1).setFrames(Collections.singletonList(frame("com.contoso.Late", "run", 1, null)));
+        writer.object();
+        writer.writeTables();
+        writer.key("log").object();
+        errorLog.write(writer);
+    }
+
+    @Test(expected = JSONException.class)
+    public void invalidFrameIndex() throws JSONException {
+        LogSerializer serializer = newSerializer(new CompactErrorLogSerializer());
+        String json = serializer.serializeLog(errorLog());
+        serializer.deserializeLog(json.replace("\"frames\":[0,", "\"frames\":[99,"));
+    }
+}
@@ -16,12 +16,14 @@ import com.microsoft.azure.mobile.Constants;
 import com.microsoft.azure.mobile.ResultCallback;
 import com.microsoft.azure.mobile.channel.Channel;
 import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.crashes.ingestion.models.json.CompactErrorLogSerializer;
 import com.microsoft.azure.mobile.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.azure.mobile.crashes.model.ErrorReport;
 import com.microsoft.azure.mobile.crashes.model.TestCrashException;
+import com.microsoft.azure.mobile.crashes.utils.CrashRecorder;
 import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
+import com.microsoft.azure.mobile.crashes.utils.ThrowableCodec;
 import com.microsoft.azure.mobile.ingestion.models.Log;
-import com.microsoft.azure.mobile.ingestion.models.json.DefaultLogSerializer;
 import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
 import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
 import com.microsoft.azure.mobile.utils.HandlerUtils;
@@ -32,14 +34,25 @@ import org.json.JSONException;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Crashes service.
@@ -68,6 +81,41 @@ public class Crashes extends AbstractMobileCenterService {
     @VisibleForTesting
     public static final String PREF_KEY_ALWAYS_SEND = "com.microsoft.azure.mobile.crashes.always.send";
 
+    /**
+     * Preference storage key for the number of consecutive launches that crashed during startup.
+     */
+    @VisibleForTesting
+    static final String PREF_KEY_CRASHING_LAUNCH_COUNT = "com.microsoft.azure.mobile.crashes.crashing.launch.count";
+
+    /**
+     * Preference storage key for the time the current launch started, removed once it lasts {@link #STARTUP_DURATION}.
+     */
+    @VisibleForTesting
+    static final String PREF_KEY_LAUNCH_TIME = "com.microsoft.azure.mobile.crashes.launch.time";
+
+    /**
+     * Time in milliseconds after which a launch is no longer considered to be starting up.
+     */
+    @VisibleForTesting
+    static final long STARTUP_DURATION = 10000;
+
+    /**
+     * Number of consecutive launches crashing during startup from which the app is in a crash loop.
+     */
+    @VisibleForTesting
+    static final int CRASH_LOOP_LAUNCH_COUNT = 3;
+
+    /**
+     * Maximum number of threads loading pending errors at startup.
+     */
+    @VisibleForTesting
+    static final int MAX_PENDING_ERROR_THREADS = 4;
+
+    /**
+     * Number of pending errors loaded in advance per thread.
+     */
+    private static final int PENDING_ERRORS_LOADED_PER_THREAD = 2;
+
     /**
      * Group for sending logs.
      */
@@ -94,6 +142,38 @@ public class Crashes extends AbstractMobileCenterService {
      */
     private static final CrashesListener DEFAULT_ERROR_REPORTING_LISTENER = new DefaultCrashesListener();
 
+    /**
+     * Maximum number of tracked exceptions waiting for the Crashes thread, further ones are dropped.
+     */
+    @VisibleForTesting
+    static final int MAX_PENDING_TRACKED_EXCEPTIONS = 50;
+
+    /**
+     * Time window in milliseconds during which repeats of a tracked exception, identified by its fingerprint,
+     * are aggregated into one error log sent when the window closes.
+     */
+    @VisibleForTesting
+    static final long TRACKED_EXCEPTION_WINDOW = 60000;
+
+    /**
+     * Maximum number of recent tracked exception fingerprints remembered.
+     */
+    @VisibleForTesting
+    static final int MAX_RECENT_TRACKED_EXCEPTIONS = 32;
+
+    /**
+     * Maximum number of error reports kept in memory, other ones are read again from storage when needed.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_ERROR_REPORTS = 16;
+
+    /**
+     * Maximum number of stack frames in the error logs kept in memory, as frames make most of their size.
+     * The most recently used error report is kept even if it has more frames.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_ERROR_REPORT_FRAMES = 4096;
+
     /**
      * Singleton.
      */
@@ -111,14 +191,93 @@ public class Crashes extends AbstractMobileCenterService {
     private final Map<String, LogFactory> mFactories;
 
     /**
-     * Crash reports not processed yet.
+     * Identifiers of the crash reports not processed yet, their logs are read again from storage if no longer cached.
+     */
+    private final Set<UUID> mUnprocessedErrorIds;
+
+    /**
+     * Cache for reports being processed or queued to channel but not yet sent, least recently used first.
+     * Bounded by {@link #MAX_CACHED_ERROR_REPORTS} and {@link #MAX_CACHED_ERROR_REPORT_FRAMES}, guarded by itself.
      */
-    private final Map<UUID, ErrorLogReport> mUnprocessedErrorReports;
+    private final Map<UUID, CachedErrorReport> mErrorReportCache;
 
     /**
-     * Cache for reports that are queued to channel but not yet sent.
+     * Number of stack frames in the error logs of {@link #mErrorReportCache}, guarded by {@link #mErrorReportCache}.
      */
-    private final Map<UUID, ErrorLogReport> mErrorReportCache;
+    private int mErrorReportCacheFrameCount;
+
+    /**
+     * Tracked exceptions waiting for the Crashes thread.
+     */
+    private final List<TrackedException> mPendingTrackedExceptions = new ArrayList<>();
+
+    /**
+     * Builds and enqueues the pending tracked exceptions.
+     */
+    private final Runnable mProcessTrackedExceptionsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            processTrackedExceptions();
+        }
+    };
+
+    /**
+     * Number of tracked exceptions dropped because too many were pending, guarded by {@link #mPendingTrackedExceptions}.
+     */
+    private int mDroppedTrackedExceptionCount;
+
+    /**
+     * Windows of the recently sent tracked exceptions by fingerprint, least recently seen first.
+     * Guarded by itself, used on the Crashes thread and when saving a crash: error logs are built and enqueued
+     * after releasing it, so that saving a crash waits only for bookkeeping.
+     */
+    private final Map<Long, TrackedExceptionWindow> mRecentTrackedExceptions = new LinkedHashMap<Long, TrackedExceptionWindow>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TrackedExceptionWindow> eldest) {
+            if (size() <= MAX_RECENT_TRACKED_EXCEPTIONS)
+                return false;
+            closeTrackedExceptionWindow(eldest.getValue());
+            return true;
+        }
+    };
+
+    /**
+     * Tracked exceptions to send, collected while {@link #mRecentTrackedExceptions} is locked and guarded by it.
+     */
+    private final List<TrackedException> mTrackedExceptionsToSend = new ArrayList<>();
+
+    /**
+     * Closes the tracked exception windows that expired.
+     */
+    private final Runnable mCloseTrackedExceptionWindowsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            closeExpiredTrackedExceptionWindows();
+        }
+    };
+
+    /**
+     * Forgets the tracked exception windows without sending their repeats, posted when disabled
+     * as the windows are locked before this instance.
+     */
+    private final Runnable mClearTrackedExceptionWindowsRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            synchronized (mRecentTrackedExceptions) {
+                mRecentTrackedExceptions.clear();
+                mTrackedExceptionsToSend.clear();
+            }
+        }
+    };
+
+    /**
+     * Whether repeats of a tracked exception are aggregated, otherwise each one is sent.
+     */
+    private volatile boolean mTrackedExceptionAggregationEnabled = true;
 
     /**
      * List of crash report callbacks.
@@ -130,6 +289,11 @@ public class Crashes extends AbstractMobileCenterService {
      */
     private CountDownLatch mCountDownLatch;
 
+    /**
+     * Whether an error log was left by the last session, set on the Crashes thread before anything else reads it.
+     */
+    private volatile boolean mHasLastErrorLogFile;
+
     /**
      * Log serializer.
      */
@@ -150,6 +314,17 @@ public class Crashes extends AbstractMobileCenterService {
      */
     private UncaughtExceptionHandler mUncaughtExceptionHandler;
 
+    /**
+     * Crash recorder, created in background once the exception handler is registered.
+     * Until then, uncaught exceptions are saved as JSON error logs directly.
+     */
+    private volatile CrashRecorder mCrashRecorder;
+
+    /**
+     * Which threads are attached to crash logs.
+     */
+    private volatile ThreadCapturePolicy mThreadCapturePolicy = ThreadCapturePolicy.DEFAULT;
+
     /**
      * Custom crashes listener.
      */
@@ -165,14 +340,35 @@ public class Crashes extends AbstractMobileCenterService {
      */
     private ErrorReport mLastSessionErrorReport;
 
+    /**
+     * Number of threads loading pending errors at startup, 1 to load them on the Crashes thread.
+     */
+    private int mPendingErrorThreadCount = Math.min(Runtime.getRuntime().availableProcessors(), MAX_PENDING_ERROR_THREADS);
+
+    /**
+     * Whether the last launches crashed during startup, pending errors are not processed until this launch lasts {@link #STARTUP_DURATION}.
+     */
+    private volatile boolean mInCrashLoop;
+
+    /**
+     * Called once the current launch lasts {@link #STARTUP_DURATION}.
+     */
+    private final Runnable mStartupCompletedRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            onStartupCompleted();
+        }
+    };
+
     private Crashes() {
         mFactories = new HashMap<>();
         mFactories.put(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
-        mLogSerializer = new DefaultLogSerializer();
+        mLogSerializer = new CompactErrorLogSerializer();
         mLogSerializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
         mCrashesListener = DEFAULT_ERROR_REPORTING_LISTENER;
-        mUnprocessedErrorReports = new LinkedHashMap<>();
-        mErrorReportCache = new LinkedHashMap<>();
+        mUnprocessedErrorIds = new LinkedHashSet<>();
+        mErrorReportCache = new LinkedHashMap<>(16, 0.75f, true);
         HandlerThread thread = new HandlerThread(THREAD_NAME);
         thread.start();
         mHandler = new Handler(thread.getLooper());
@@ -209,6 +405,22 @@ public class Crashes extends AbstractMobileCenterService {
         getInstance().setInstanceEnabled(enabled);
     }
 
+    /**
+     * Set which thread stack traces are attached to crash reports, {@link ThreadCapturePolicy#DEFAULT} if not set.
+     * Tracked exceptions only include the thread that tracked them.
+     *
+     * A null policy is ignored and the current policy kept.
+     *
+     * @param policy thread capture policy.
+     */
+    public static void setThreadCapturePolicy(@NonNull ThreadCapturePolicy policy) {
+        if (policy == null) {
+            MobileCenterLog.error(LOG_TAG, "Thread capture policy may not be null, keeping the current one.");
+            return;
+        }
+        getInstance().mThreadCapturePolicy = policy;
+    }
+
     /**
      * Track an exception.
      * TODO the backend does not support that service yet, will be public method later.
@@ -219,6 +431,17 @@ public class Crashes extends AbstractMobileCenterService {
         getInstance().queueException(throwable);
     }
 
+    /**
+     * Set whether repeats of a tracked exception within {@link #TRACKED_EXCEPTION_WINDOW} are aggregated
+     * into one error log with their occurrence count, enabled by default. When disabled each occurrence is sent.
+     * TODO the backend does not support that service yet, will be public method later.
+     *
+     * @param enabled <code>true</code> to aggregate repeats, <code>false</code> to send each occurrence.
+     */
+    static void setTrackedExceptionAggregationEnabled(boolean enabled) {
+        getInstance().mTrackedExceptionAggregationEnabled = enabled;
+    }
+
     /**
      * Generates crash for test purpose.
      */
@@ -252,13 +475,27 @@ public class Crashes extends AbstractMobileCenterService {
 
     /**
      * Check whether the app crashed in its last session.
+     * This method does not block: the last session is looked at in background right after the service starts,
+     * and until that completes, or while its crash report is processed, it returns {@code true}.
      *
-     * @return {@code true} if a crash was recorded in the last session, otherwise {@code false}.
+     * @return {@code true} if a crash was recorded in the last session or if the last session is being processed, otherwise {@code false}.
      */
     public static boolean hasCrashedInLastSession() {
         return getInstance().hasInstanceCrashedInLastSession();
     }
 
+    /**
+     * Check whether the app is in a crash loop: the last launches all crashed during startup.
+     * In that case, processing crash reports of previous sessions is deferred until the current launch
+     * runs past startup, so that startup does as little work as possible.
+     * Detection happens in background right after the service starts.
+     *
+     * @return {@code true} if the app is in a crash loop, otherwise {@code false}.
+     */
+    public static boolean isInCrashLoop() {
+        return getInstance().mInCrashLoop;
+    }
+
     /**
      * Provides information about any available crash report from the last session, if it crashed.
      * This method is a synchronous call and blocks caller thread.
@@ -284,6 +521,7 @@ public class Crashes extends AbstractMobileCenterService {
 
     /**
      * Implements {@link #hasCrashedInLastSession()} at instance level.
+     * The report latch is counted down without a report as soon as no error log is found.
      */
     private synchronized boolean hasInstanceCrashedInLastSession() {
         return mLastSessionErrorReport != null || (mCountDownLatch != null && mCountDownLatch.getCount() > 0);
@@ -293,7 +531,7 @@ public class Crashes extends AbstractMobileCenterService {
      * Implements {@link #getLastSessionCrashReport()} at instance level.
      */
     private synchronized ErrorReport getInstanceLastSessionCrashReport() {
-        if (mCountDownLatch != null) {
+        if (mCountDownLatch != null && mCountDownLatch.getCount() > 0) {
             MobileCenterLog.debug(LOG_TAG, "Waiting for Crashes service to complete crash report for the last session.");
             try {
                 mCountDownLatch.await();
@@ -327,7 +565,6 @@ public class Crashes extends AbstractMobileCenterService {
         super.setInstanceEnabled(enabled);
         initialize();
         if (!enabled) {
-            mHandler.getLooper().quit();
             for (File file : ErrorLogHelper.getErrorStorageDirectory().listFiles()) {
                 MobileCenterLog.debug(LOG_TAG, "Deleting file " + file);
                 if (!file.delete()) {
@@ -335,6 +572,16 @@ public class Crashes extends AbstractMobileCenterService {
                 }
             }
             MobileCenterLog.info(LOG_TAG, "Deleted crashes local files");
+            mHandler.removeCallbacks(mStartupCompletedRunnable);
+            mHandler.removeCallbacks(mCloseTrackedExceptionWindowsRunnable);
+            mHandler.post(mClearTrackedExceptionWindowsRunnable);
+
+            /* The last session error log deferred by a crash loop was just deleted. */
+            if (mInCrashLoop)
+                completeLastSessionCrashReport();
+            mInCrashLoop = false;
+            StorageHelper.PreferencesStorage.remove(PREF_KEY_CRASHING_LAUNCH_COUNT);
+            StorageHelper.PreferencesStorage.remove(PREF_KEY_LAUNCH_TIME);
         }
     }
 
@@ -342,12 +589,71 @@ public class Crashes extends AbstractMobileCenterService {
     public synchronized void onStarted(@NonNull Context context, @NonNull String appSecret, @NonNull Channel channel) {
         super.onStarted(context, appSecret, channel);
         mContext = context;
+
+        /* Detect a crash loop before anything is read from the error storage directory. */
+        if (isInstanceEnabled())
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    detectCrashLoop();
+                }
+            });
         initialize();
         if (isInstanceEnabled()) {
+            mHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    sendSavedTrackedExceptions();
+                }
+            });
             processPendingErrors();
         }
     }
 
+    /**
+     * Count consecutive launches that crashed during startup, and schedule the end of startup for this launch.
+     * The previous launch crashed during startup if it did not reach the end of startup
+     * and an error log was saved after it started.
+     */
+    @WorkerThread
+    private void detectCrashLoop() {
+        int crashingLaunchCount = StorageHelper.PreferencesStorage.getInt(PREF_KEY_CRASHING_LAUNCH_COUNT, 0);
+        long previousLaunchTime = StorageHelper.PreferencesStorage.getLong(PREF_KEY_LAUNCH_TIME, -1);
+        File lastErrorLogFile = previousLaunchTime < 0 ? null : ErrorLogHelper.getLastErrorLogFile();
+
+        /* File systems may store modification time in seconds. */
+        if (lastErrorLogFile != null && lastErrorLogFile.lastModified() >= previousLaunchTime / 1000 * 1000)
+            crashingLaunchCount++;
+        else
+            crashingLaunchCount = 0;
+        mInCrashLoop = crashingLaunchCount >= CRASH_LOOP_LAUNCH_COUNT;
+        if (mInCrashLoop)
+            MobileCenterLog.warn(LOG_TAG, "App crashed during startup in the last " + CRASH_LOOP_LAUNCH_COUNT + " launches or more, pending errors will be processed after startup.");
+        StorageHelper.PreferencesStorage.putInt(PREF_KEY_CRASHING_LAUNCH_COUNT, crashingLaunchCount);
+        StorageHelper.PreferencesStorage.putLong(PREF_KEY_LAUNCH_TIME, System.currentTimeMillis());
+        mHandler.postDelayed(mStartupCompletedRunnable, STARTUP_DURATION);
+    }
+
+    /**
+     * Reset crash loop detection once the current launch ran past startup, processing deferred pending errors.
+     */
+    @WorkerThread
+    private synchronized void onStartupCompleted() {
+        StorageHelper.PreferencesStorage.remove(PREF_KEY_CRASHING_LAUNCH_COUNT);
+        StorageHelper.PreferencesStorage.remove(PREF_KEY_LAUNCH_TIME);
+        if (mInCrashLoop) {
+            mInCrashLoop = false;
+            MobileCenterLog.info(LOG_TAG, "App did not crash during startup, processing pending errors.");
+            if (isInstanceEnabled()) {
+                if (mHasLastErrorLogFile && mCountDownLatch != null && mCountDownLatch.getCount() > 0)
+                    processLastSessionCrashReport();
+                processPendingErrors();
+            }
+        }
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return mFactories;
@@ -359,18 +665,10 @@ public class Crashes extends AbstractMobileCenterService {
      *
      * @param exception An exception.
      */
-    synchronized void trackException(@NonNull com.microsoft.azure.mobile.crashes.ingestion.models.Exception exception) {
+    void trackException(@NonNull com.microsoft.azure.mobile.crashes.ingestion.models.Exception exception) {
         if (isInactive())
             return;
-
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(
-                mContext,
-                Thread.currentThread(),
-                exception,
-                Thread.getAllStackTraces(),
-                getInitializeTimestamp(),
-                false);
-        mChannel.enqueue(errorLog, ERROR_GROUP);
+        queueTrackedException(new TrackedException(null, exception));
     }
 
     @Override
@@ -503,17 +801,208 @@ public class Crashes extends AbstractMobileCenterService {
      *
      * @param throwable An exception.
      */
-    private synchronized void queueException(@NonNull final Throwable throwable) {
+    private void queueException(@NonNull final Throwable throwable) {
         if (isInactive())
             return;
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(
-                mContext,
-                Thread.currentThread(),
-                throwable,
-                Thread.getAllStackTraces(),
-                getInitializeTimestamp(),
-                false);
-        mChannel.enqueue(errorLog, ERROR_GROUP);
+        queueTrackedException(new TrackedException(throwable, null));
+    }
+
+    /**
+     * Queue a tracked exception for the Crashes thread, the calling thread only takes the snapshot.
+     */
+    private void queueTrackedException(TrackedException trackedException) {
+        boolean post;
+        synchronized (mPendingTrackedExceptions) {
+            if (mPendingTrackedExceptions.size() >= MAX_PENDING_TRACKED_EXCEPTIONS) {
+                mDroppedTrackedExceptionCount++;
+                return;
+            }
+
+            /* Otherwise the runnable is already posted and will see this one. */
+            post = mPendingTrackedExceptions.isEmpty();
+            mPendingTrackedExceptions.add(trackedException);
+        }
+        if (post)
+            mHandler.post(mProcessTrackedExceptionsRunnable);
+    }
+
+    /**
+     * Build and enqueue error logs for the pending tracked exceptions.
+     * Exceptions with the same fingerprint as one sent less than {@link #TRACKED_EXCEPTION_WINDOW} before are
+     * only counted, so an error repeating in a loop produces at most two logs per window instead of one per occurrence:
+     * the first occurrence, and one for the repeats with their count when the window closes.
+     */
+    @WorkerThread
+    private void processTrackedExceptions() {
+        List<TrackedException> trackedExceptions;
+        int droppedCount;
+        synchronized (mPendingTrackedExceptions) {
+            trackedExceptions = new ArrayList<>(mPendingTrackedExceptions);
+            mPendingTrackedExceptions.clear();
+            droppedCount = mDroppedTrackedExceptionCount;
+            mDroppedTrackedExceptionCount = 0;
+        }
+        if (droppedCount > 0)
+            MobileCenterLog.warn(LOG_TAG, "Dropped " + droppedCount + " tracked exceptions, too many were pending.");
+        boolean aggregate = mTrackedExceptionAggregationEnabled;
+        long[] fingerprints = new long[aggregate ? trackedExceptions.size() : 0];
+        for (int i = 0; i < fingerprints.length; i++) {
+            TrackedException trackedException = trackedExceptions.get(i);
+            if (trackedException.throwable != null)
+                fingerprints[i] = ErrorLogHelper.getFingerprint(trackedException.throwable);
+            else
+                fingerprints[i] = ErrorLogHelper.getFingerprint(trackedException.exception);
+        }
+        List<TrackedException> trackedExceptionsToSend;
+        synchronized (mRecentTrackedExceptions) {
+            if (!aggregate) {
+                closeTrackedExceptionWindows(true);
+                mTrackedExceptionsToSend.addAll(trackedExceptions);
+            }
+            for (int i = 0; i < fingerprints.length; i++) {
+                TrackedException trackedException = trackedExceptions.get(i);
+                long fingerprint = fingerprints[i];
+                TrackedExceptionWindow window = mRecentTrackedExceptions.get(fingerprint);
+                if (window != null && trackedException.elapsedRealtime - window.start < TRACKED_EXCEPTION_WINDOW) {
+                    if (window.lastRepeat == null)
+                        mHandler.postDelayed(mCloseTrackedExceptionWindowsRunnable, window.start + TRACKED_EXCEPTION_WINDOW - trackedException.elapsedRealtime);
+                    window.lastRepeat = trackedException;
+                    window.repeatCount++;
+                    MobileCenterLog.debug(LOG_TAG, "Tracked exception with fingerprint " + Long.toHexString(fingerprint) + " already sent, repeat " + window.repeatCount + " in this window.");
+                    continue;
+                }
+                if (window != null)
+                    closeTrackedExceptionWindow(window);
+                mRecentTrackedExceptions.put(fingerprint, new TrackedExceptionWindow(fingerprint, trackedException.elapsedRealtime));
+                mTrackedExceptionsToSend.add(trackedException);
+            }
+            trackedExceptionsToSend = drainTrackedExceptionsToSend();
+        }
+        sendTrackedExceptions(trackedExceptionsToSend);
+    }
+
+    /**
+     * Close the expired tracked exception windows, sending the error logs aggregating their repeats.
+     */
+    @WorkerThread
+    private void closeExpiredTrackedExceptionWindows() {
+        List<TrackedException> trackedExceptionsToSend;
+        synchronized (mRecentTrackedExceptions) {
+            closeTrackedExceptionWindows(false);
+            trackedExceptionsToSend = drainTrackedExceptionsToSend();
+        }
+        sendTrackedExceptions(trackedExceptionsToSend);
+    }
+
+    /**
+     * Close tracked exception windows and remove them, must be called with {@link #mRecentTrackedExceptions} locked.
+     *
+     * @param all true to close all windows, false to close only the expired ones.
+     */
+    private void closeTrackedExceptionWindows(boolean all) {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<TrackedExceptionWindow> iterator = mRecentTrackedExceptions.values().iterator();
+        while (iterator.hasNext()) {
+            TrackedExceptionWindow window = iterator.next();
+            if (all || now - window.start >= TRACKED_EXCEPTION_WINDOW) {
+                closeTrackedExceptionWindow(window);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Collect the repeats of a tracked exception window to send them as one error log, if any.
+     * It is built from the last repeat, with the number of repeats as its occurrence count.
+     * Must be called with {@link #mRecentTrackedExceptions} locked.
+     */
+    private void closeTrackedExceptionWindow(TrackedExceptionWindow window) {
+        if (window.lastRepeat == null)
+            return;
+        MobileCenterLog.info(LOG_TAG, "Tracked exception with fingerprint " + Long.toHexString(window.fingerprint) + " repeated " + window.repeatCount + " times within " + TRACKED_EXCEPTION_WINDOW + "ms, sending them as one error log.");
+        window.lastRepeat.occurrenceCount = window.repeatCount;
+        mTrackedExceptionsToSend.add(window.lastRepeat);
+        window.lastRepeat = null;
+        window.repeatCount = 0;
+    }
+
+    /**
+     * Take the tracked exceptions to send, must be called with {@link #mRecentTrackedExceptions} locked.
+     */
+    private List<TrackedException> drainTrackedExceptionsToSend() {
+        List<TrackedException> trackedExceptions = new ArrayList<>(mTrackedExceptionsToSend);
+        mTrackedExceptionsToSend.clear();
+        return trackedExceptions;
+    }
+
+    @WorkerThread
+    private void sendTrackedExceptions(List<TrackedException> trackedExceptions) {
+        for (TrackedException trackedException : trackedExceptions)
+            enqueueTrackedErrorLog(createTrackedErrorLog(trackedException));
+    }
+
+    /**
+     * Save the tracked exceptions not sent yet when the process crashes, to send them at next launch.
+     * No error log is built and the channel is not used: only the snapshots and repeat counts are written,
+     * as records of {@link CrashRecorder}. Exception models of wrapper SDKs are not saved.
+     *
+     * @param crashRecorder crash recorder, null to drop the tracked exceptions.
+     */
+    private void saveTrackedExceptions(CrashRecorder crashRecorder) {
+        List<TrackedException> trackedExceptions;
+        synchronized (mRecentTrackedExceptions) {
+            closeTrackedExceptionWindows(true);
+            trackedExceptions = drainTrackedExceptionsToSend();
+        }
+        synchronized (mPendingTrackedExceptions) {
+            trackedExceptions.addAll(mPendingTrackedExceptions);
+            mPendingTrackedExceptions.clear();
+        }
+        int droppedCount = 0;
+        for (TrackedException trackedException : trackedExceptions) {
+            if (crashRecorder == null || trackedException.throwable == null) {
+                droppedCount++;
+                continue;
+            }
+            try {
+                crashRecorder.recordTrackedException(trackedException.thread, trackedException.throwable, trackedException.threadStackTrace,
+                        trackedException.timestamp, trackedException.elapsedRealtime - mInitializeTimestamp, trackedException.occurrenceCount);
+            } catch (IOException e) {
+                MobileCenterLog.error(LOG_TAG, "Error writing tracked exception record", e);
+            }
+        }
+        if (droppedCount > 0)
+            MobileCenterLog.warn(LOG_TAG, "Dropped " + droppedCount + " tracked exceptions not sent before the crash.");
+    }
+
+    /**
+     * Send the tracked exceptions saved when the previous process crashed.
+     */
+    @WorkerThread
+    private void sendSavedTrackedExceptions() {
+        for (ManagedErrorLog errorLog : ErrorLogHelper.readTrackedExceptionRecords())
+            enqueueTrackedErrorLog(errorLog);
+    }
+
+    private ManagedErrorLog createTrackedErrorLog(TrackedException trackedException) {
+        ManagedErrorLog errorLog;
+        Map<Thread, StackTraceElement[]> threadStackTraces = Collections.singletonMap(trackedException.thread, trackedException.threadStackTrace);
+        if (trackedException.throwable != null)
+            errorLog = ErrorLogHelper.createErrorLog(mContext, trackedException.thread, trackedException.throwable, threadStackTraces, getInitializeTimestamp(), false);
+        else
+            errorLog = ErrorLogHelper.createErrorLog(mContext, trackedException.thread, trackedException.exception, threadStackTraces, getInitializeTimestamp(), false);
+
+        /* Use the time the exception was tracked, not the time the log was built. */
+        errorLog.setToffset(trackedException.timestamp);
+        errorLog.setAppLaunchTOffset(trackedException.elapsedRealtime - getInitializeTimestamp());
+        if (trackedException.occurrenceCount > 0)
+            errorLog.setOccurrenceCount(trackedException.occurrenceCount);
+        return errorLog;
+    }
+
+    private synchronized void enqueueTrackedErrorLog(ManagedErrorLog errorLog) {
+        if (!isInactive())
+            mChannel.enqueue(errorLog, ERROR_GROUP);
     }
 
     private void initialize() {
@@ -525,48 +1014,78 @@ public class Crashes extends AbstractMobileCenterService {
                 mUncaughtExceptionHandler.unregister();
                 mUncaughtExceptionHandler = null;
             }
+            mCrashRecorder = null;
         } else if (mContext != null && mUncaughtExceptionHandler == null) {
             mUncaughtExceptionHandler = new UncaughtExceptionHandler();
             mUncaughtExceptionHandler.register();
-            final File logFile = ErrorLogHelper.getLastErrorLogFile();
-            if (logFile != null) {
-                MobileCenterLog.debug(LOG_TAG, "Processing crash report for the last session.");
-                mCountDownLatch = new CountDownLatch(1);
-                mHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        String logFileContents = StorageHelper.InternalStorage.read(logFile);
-                        if (logFileContents == null)
-                            MobileCenterLog.error(LOG_TAG, "Error reading last session error log.");
-                        else {
-                            try {
-                                ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logFileContents);
-                                mLastSessionErrorReport = buildErrorReport(log);
-                                MobileCenterLog.debug(LOG_TAG, "Processed crash report for the last session.");
-                            } catch (JSONException e) {
-                                MobileCenterLog.error(LOG_TAG, "Error parsing last session error log.", e);
-                            }
-                        }
+            mCountDownLatch = new CountDownLatch(1);
+            mHandler.post(new Runnable() {
 
-                        mCountDownLatch.countDown();
+                @Override
+                public void run() {
+                    mHasLastErrorLogFile = ErrorLogHelper.getLastErrorLogFile() != null;
+                    if (!mHasLastErrorLogFile)
+                        completeLastSessionCrashReport();
+                    else if (!mInCrashLoop)
+                        processLastSessionCrashReport();
+                }
+            });
 
-                        HandlerUtils.runOnUiThread(new Runnable() {
+            /* Capture process and device properties for the crash recorder, it involves system calls. */
+            final Context context = mContext;
+            mHandler.post(new Runnable() {
 
-                            @Override
-                            public void run() {
+                @Override
+                public void run() {
+                    mCrashRecorder = new CrashRecorder(context);
+                }
+            });
+        }
+    }
 
-                                /* Call callbacks for getInstanceLastSessionCrashReport(ResultCallback) . */
-                                for (Iterator<ResultCallback<ErrorReport>> iterator = mLastCrashErrorReportCallbacks.iterator(); iterator.hasNext(); ) {
-                                    ResultCallback<ErrorReport> callback = iterator.next();
-                                    iterator.remove();
-                                    callback.onResult(mLastSessionErrorReport);
-                                }
-                            }
-                        });
-                    }
-                });
+    /**
+     * Build the error report of the last session from its error log, the last one saved.
+     */
+    @WorkerThread
+    private void processLastSessionCrashReport() {
+        MobileCenterLog.debug(LOG_TAG, "Processing crash report for the last session.");
+
+        /* The last file may be a crash record, convert it to JSON first. */
+        ErrorLogHelper.convertCrashRecords(mLogSerializer);
+        File errorLogFile = ErrorLogHelper.getLastErrorLogFile();
+        String logFileContents = errorLogFile == null ? null : StorageHelper.InternalStorage.read(errorLogFile);
+        if (logFileContents == null)
+            MobileCenterLog.error(LOG_TAG, "Error reading last session error log.");
+        else {
+            try {
+                ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logFileContents);
+                mLastSessionErrorReport = buildErrorReport(log);
+                MobileCenterLog.debug(LOG_TAG, "Processed crash report for the last session.");
+            } catch (JSONException e) {
+                MobileCenterLog.error(LOG_TAG, "Error parsing last session error log.", e);
             }
         }
+        completeLastSessionCrashReport();
+    }
+
+    /**
+     * Release the callers waiting for the last session crash report.
+     */
+    private void completeLastSessionCrashReport() {
+        mCountDownLatch.countDown();
+        HandlerUtils.runOnUiThread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                /* Call callbacks for getInstanceLastSessionCrashReport(ResultCallback) . */
+                for (Iterator<ResultCallback<ErrorReport>> iterator = mLastCrashErrorReportCallbacks.iterator(); iterator.hasNext(); ) {
+                    ResultCallback<ErrorReport> callback = iterator.next();
+                    iterator.remove();
+                    callback.onResult(mLastSessionErrorReport);
+                }
+            }
+        });
     }
 
     private boolean shouldStopProcessingPendingErrors() {
@@ -582,28 +1101,22 @@ public class Crashes extends AbstractMobileCenterService {
 
             @Override
             public void run() {
-                for (File logFile : ErrorLogHelper.getStoredErrorLogFiles()) {
-                    if (shouldStopProcessingPendingErrors())
+
+                /* Deferred to the end of startup in a crash loop. */
+                if (mInCrashLoop)
+                    return;
+                ErrorLogHelper.convertCrashRecords(mLogSerializer);
+                File[] logFiles = ErrorLogHelper.getStoredErrorLogFiles();
+                int threadCount = Math.min(mPendingErrorThreadCount, logFiles.length);
+                if (threadCount > 1) {
+                    if (!processPendingErrorsInParallel(logFiles, threadCount))
                         return;
-                    MobileCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
-                    String logfileContents = StorageHelper.InternalStorage.read(logFile);
-                    if (logfileContents != null)
-                        try {
-                            ManagedErrorLog log = (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents);
-                            UUID id = log.getId();
-                            ErrorReport report = buildErrorReport(log);
-                            if (report == null) {
-                                removeAllStoredErrorLogFiles(id);
-                            } else if (mCrashesListener.shouldProcess(report)) {
-                                MobileCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
-                                mUnprocessedErrorReports.put(id, mErrorReportCache.get(id));
-                            } else {
-                                MobileCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
-                                removeAllStoredErrorLogFiles(id);
-                            }
-                        } catch (JSONException e) {
-                            MobileCenterLog.error(LOG_TAG, "Error parsing error log", e);
-                        }
+                } else {
+                    for (File logFile : logFiles) {
+                        if (shouldStopProcessingPendingErrors())
+                            return;
+                        processPendingError(loadPendingError(logFile));
+                    }
                 }
 
                 if (shouldStopProcessingPendingErrors())
@@ -614,6 +1127,121 @@ public class Crashes extends AbstractMobileCenterService {
         });
     }
 
+    /**
+     * Load pending errors on a bounded thread pool while handling them in file order on the Crashes thread,
+     * so that {@link CrashesListener#shouldProcess(ErrorReport)} is called for each one as soon as it and the previous ones are loaded.
+     *
+     * @return false if processing was stopped.
+     */
+    @WorkerThread
+    private boolean processPendingErrorsInParallel(File[] logFiles, int threadCount) {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+
+            /* Keep a few files loaded in advance per thread, not all of them. */
+            Queue<Future<ErrorLogReport>> loading = new ArrayDeque<>();
+            int next = 0;
+            for (int i = 0; i < logFiles.length; i++) {
+                while (next < logFiles.length && next - i < threadCount * PENDING_ERRORS_LOADED_PER_THREAD) {
+                    final File logFile = logFiles[next++];
+                    loading.add(executor.submit(new Callable<ErrorLogReport>() {
+
+                        @Override
+                        public ErrorLogReport call() {
+                            return loadPendingError(logFile);
+                        }
+                    }));
+                }
+                Future<ErrorLogReport> future = loading.remove();
+                ErrorLogReport errorLogReport = null;
+                try {
+                    errorLogReport = future.get();
+                } catch (ExecutionException e) {
+                    MobileCenterLog.error(LOG_TAG, "Error loading pending error file " + logFiles[i], e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                if (shouldStopProcessingPendingErrors())
+                    return false;
+                processPendingError(errorLogReport);
+            }
+            return true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read and parse a pending error log file and its throwable, without using the report cache so that it can run on any thread.
+     *
+     * @return null if the file could not be read, otherwise the error log and its report, which is null if the throwable could not be read.
+     */
+    @Nullable
+    private ErrorLogReport loadPendingError(File logFile) {
+        MobileCenterLog.debug(LOG_TAG, "Process pending error file: " + logFile);
+        ManagedErrorLog log = loadErrorLog(logFile);
+        return log == null ? null : loadErrorLogReport(log);
+    }
+
+    /**
+     * Read and parse an error log file.
+     *
+     * @return null if the file could not be read.
+     */
+    @Nullable
+    private ManagedErrorLog loadErrorLog(File logFile) {
+        String logfileContents = StorageHelper.InternalStorage.read(logFile);
+        if (logfileContents != null)
+            try {
+                return (ManagedErrorLog) mLogSerializer.deserializeLog(logfileContents);
+            } catch (JSONException e) {
+                MobileCenterLog.error(LOG_TAG, "Error parsing error log", e);
+            }
+        return null;
+    }
+
+    /**
+     * Get the log of an unprocessed error from the cache, or read it again from storage if it was evicted.
+     *
+     * @return null if the error log file could not be read.
+     */
+    @Nullable
+    private ManagedErrorLog getUnprocessedErrorLog(UUID id) {
+        synchronized (mErrorReportCache) {
+            CachedErrorReport cachedErrorReport = mErrorReportCache.get(id);
+            if (cachedErrorReport != null)
+                return cachedErrorReport.log;
+        }
+        File logFile = ErrorLogHelper.getStoredErrorLogFile(id);
+        return logFile == null ? null : loadErrorLog(logFile);
+    }
+
+    /**
+     * Ask the listener whether to process a loaded pending error, then queue it or delete its files.
+     */
+    @WorkerThread
+    private void processPendingError(@Nullable ErrorLogReport errorLogReport) {
+        if (errorLogReport == null)
+            return;
+        UUID id = errorLogReport.log.getId();
+        ErrorLogReport cachedErrorLogReport = getCachedErrorLogReport(id);
+        if (cachedErrorLogReport != null)
+            errorLogReport = cachedErrorLogReport;
+        else if (errorLogReport.report != null)
+            cacheErrorLogReport(errorLogReport);
+        ErrorReport report = errorLogReport.report;
+        if (report == null) {
+            removeAllStoredErrorLogFiles(id);
+        } else if (mCrashesListener.shouldProcess(report)) {
+            MobileCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned true, continue processing log: " + id.toString());
+            mUnprocessedErrorIds.add(id);
+        } else {
+            MobileCenterLog.debug(LOG_TAG, "CrashesListener.shouldProcess returned false, clean up and ignore log: " + id.toString());
+            removeAllStoredErrorLogFiles(id);
+        }
+    }
+
     private void processUserConfirmation() {
 
         /* Handle user confirmation in UI thread. */
@@ -622,7 +1250,7 @@ public class Crashes extends AbstractMobileCenterService {
             @Override
             public void run() {
                 boolean shouldAwaitUserConfirmation = true;
-                if (mUnprocessedErrorReports.size() > 0 &&
+                if (mUnprocessedErrorIds.size() > 0 &&
                         (StorageHelper.PreferencesStorage.getBoolean(PREF_KEY_ALWAYS_SEND, false)
                                 || !(shouldAwaitUserConfirmation = mCrashesListener.shouldAwaitUserConfirmation()))) {
                     if (!shouldAwaitUserConfirmation)
@@ -641,7 +1269,7 @@ public class Crashes extends AbstractMobileCenterService {
     }
 
     private void removeStoredThrowable(UUID id) {
-        mErrorReportCache.remove(id);
+        removeCachedErrorReport(id);
         WrapperSdkExceptionManager.deleteWrapperExceptionData(id);
         ErrorLogHelper.removeStoredThrowableFile(id);
     }
@@ -659,25 +1287,101 @@ public class Crashes extends AbstractMobileCenterService {
     @VisibleForTesting
     @Nullable
     ErrorReport buildErrorReport(ManagedErrorLog log) {
-        UUID id = log.getId();
-        if (mErrorReportCache.containsKey(id)) {
-            return mErrorReportCache.get(id).report;
-        } else {
-            File file = ErrorLogHelper.getStoredThrowableFile(id);
-            if (file != null) {
-                try {
-                    Throwable throwable = StorageHelper.InternalStorage.readObject(file);
-                    ErrorReport report = ErrorLogHelper.getErrorReportFromErrorLog(log, throwable);
-                    mErrorReportCache.put(id, new ErrorLogReport(log, report));
-                    return report;
-                } catch (ClassNotFoundException ignored) {
-                    MobileCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), ignored);
-                } catch (IOException ignored) {
-                    MobileCenterLog.error(LOG_TAG, "Cannot access serialized throwable file " + file.getName(), ignored);
-                }
+        ErrorLogReport cachedErrorLogReport = getCachedErrorLogReport(log.getId());
+        if (cachedErrorLogReport != null)
+            return cachedErrorLogReport.report;
+        ErrorLogReport errorLogReport = loadErrorLogReport(log);
+        if (errorLogReport.report != null)
+            cacheErrorLogReport(errorLogReport);
+        return errorLogReport.report;
+    }
+
+    /**
+     * Get a cached error log and report.
+     *
+     * @return null if not cached or if the report was garbage collected.
+     */
+    @Nullable
+    private ErrorLogReport getCachedErrorLogReport(UUID id) {
+        synchronized (mErrorReportCache) {
+            CachedErrorReport cachedErrorReport = mErrorReportCache.get(id);
+            if (cachedErrorReport != null) {
+                ErrorReport report = cachedErrorReport.report.get();
+                if (report != null)
+                    return new ErrorLogReport(cachedErrorReport.log, report);
             }
+            return null;
         }
-        return null;
+    }
+
+    /**
+     * Cache an error log and its report, evicting the least recently used ones when over the cache limits.
+     */
+    private void cacheErrorLogReport(@NonNull ErrorLogReport errorLogReport) {
+        CachedErrorReport cachedErrorReport = new CachedErrorReport(errorLogReport);
+        synchronized (mErrorReportCache) {
+            CachedErrorReport previous = mErrorReportCache.put(errorLogReport.log.getId(), cachedErrorReport);
+            if (previous != null)
+                mErrorReportCacheFrameCount -= previous.frameCount;
+            mErrorReportCacheFrameCount += cachedErrorReport.frameCount;
+
+            /* The new entry is the last one, so it is kept. */
+            Iterator<CachedErrorReport> iterator = mErrorReportCache.values().iterator();
+            while (mErrorReportCache.size() > 1 && (mErrorReportCache.size() > MAX_CACHED_ERROR_REPORTS || mErrorReportCacheFrameCount > MAX_CACHED_ERROR_REPORT_FRAMES)) {
+                mErrorReportCacheFrameCount -= iterator.next().frameCount;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeCachedErrorReport(UUID id) {
+        synchronized (mErrorReportCache) {
+            CachedErrorReport cachedErrorReport = mErrorReportCache.remove(id);
+            if (cachedErrorReport != null)
+                mErrorReportCacheFrameCount -= cachedErrorReport.frameCount;
+        }
+    }
+
+    /**
+     * Count the stack frames of an error log, including inner exceptions and threads.
+     */
+    private static int countFrames(ManagedErrorLog log) {
+        int frameCount = countFrames(log.getException());
+        if (log.getThreads() != null)
+            for (com.microsoft.azure.mobile.crashes.ingestion.models.Thread thread : log.getThreads())
+                if (thread.getFrames() != null)
+                    frameCount += thread.getFrames().size();
+        return frameCount;
+    }
+
+    private static int countFrames(com.microsoft.azure.mobile.crashes.ingestion.models.Exception exception) {
+        if (exception == null)
+            return 0;
+        int frameCount = exception.getFrames() == null ? 0 : exception.getFrames().size();
+        if (exception.getInnerExceptions() != null)
+            for (com.microsoft.azure.mobile.crashes.ingestion.models.Exception innerException : exception.getInnerExceptions())
+                frameCount += countFrames(innerException);
+        return frameCount;
+    }
+
+    /**
+     * Read the throwable of an error log to build its report.
+     *
+     * @return error log and report, the report is null if the throwable could not be read.
+     */
+    @NonNull
+    private static ErrorLogReport loadErrorLogReport(ManagedErrorLog log) {
+        ErrorReport report = null;
+        File file = ErrorLogHelper.getStoredThrowableFile(log.getId());
+        if (file != null) {
+            try {
+                Throwable throwable = ThrowableCodec.read(file);
+                report = ErrorLogHelper.getErrorReportFromErrorLog(log, throwable);
+            } catch (IOException ignored) {
+                MobileCenterLog.error(LOG_TAG, "Cannot read throwable file " + file.getName(), ignored);
+            }
+        }
+        return new ErrorLogReport(log, report);
     }
 
     @VisibleForTesting
@@ -716,7 +1420,7 @@ public class Crashes extends AbstractMobileCenterService {
                 if (userConfirmation == DONT_SEND) {
 
                     /* Clean up all pending error log and throwable files. */
-                    for (Iterator<UUID> iterator = mUnprocessedErrorReports.keySet().iterator(); iterator.hasNext(); ) {
+                    for (Iterator<UUID> iterator = mUnprocessedErrorIds.iterator(); iterator.hasNext(); ) {
                         UUID id = iterator.next();
                         iterator.remove();
                         removeAllStoredErrorLogFiles(id);
@@ -727,31 +1431,31 @@ public class Crashes extends AbstractMobileCenterService {
                         StorageHelper.PreferencesStorage.putBoolean(PREF_KEY_ALWAYS_SEND, true);
                     }
 
-                    Iterator<Map.Entry<UUID, ErrorLogReport>> unprocessedIterator = mUnprocessedErrorReports.entrySet().iterator();
+                    Iterator<UUID> unprocessedIterator = mUnprocessedErrorIds.iterator();
                     while (unprocessedIterator.hasNext()) {
                         if (shouldStopProcessingPendingErrors())
                             break;
 
-                        Map.Entry<UUID, ErrorLogReport> unprocessedEntry = unprocessedIterator.next();
-                        ErrorLogReport errorLogReport = unprocessedEntry.getValue();
+                        UUID id = unprocessedIterator.next();
+                        unprocessedIterator.remove();
+                        ManagedErrorLog log = getUnprocessedErrorLog(id);
+                        if (log == null) {
+                            removeAllStoredErrorLogFiles(id);
+                            continue;
+                        }
 
                         /* TODO (getErrorAttachment): Re-enable error attachment when the feature becomes available. */
-//                        ErrorAttachment attachment = mCrashesListener.getErrorAttachment(errorLogReport.report);
+//                        ErrorAttachment attachment = mCrashesListener.getErrorAttachment(buildErrorReport(log));
 //                        if (attachment == null)
-//                            MobileCenterLog.debug(LOG_TAG, "CrashesListener.getErrorAttachment returned null, no additional information will be attached to log: " + errorLogReport.log.getId().toString());
+//                            MobileCenterLog.debug(LOG_TAG, "CrashesListener.getErrorAttachment returned null, no additional information will be attached to log: " + id.toString());
 //                        else
-//                            errorLogReport.log.setErrorAttachment(attachment);
-                        mChannel.enqueue(errorLogReport.log, ERROR_GROUP);
+//                            log.setErrorAttachment(ErrorAttachmentUploader.store(id, attachment));
+                        mChannel.enqueue(log, ERROR_GROUP);
 
-                        /* Clean up an error log file and map entry. */
-                        unprocessedIterator.remove();
-                        ErrorLogHelper.removeStoredErrorLogFile(unprocessedEntry.getKey());
+                        /* Clean up an error log file. */
+                        ErrorLogHelper.removeStoredErrorLogFile(id);
                     }
                 }
-
-                /* Processed crash report for the last session. */
-                if (isInstanceEnabled())
-                    mHandler.getLooper().quit();
             }
         };
 
@@ -775,18 +1479,34 @@ public class Crashes extends AbstractMobileCenterService {
      */
     void saveUncaughtException(Thread thread, Throwable exception) {
 
-        /* Save crash. */
-        ManagedErrorLog errorLog = ErrorLogHelper.createErrorLog(mContext, thread, exception, Thread.getAllStackTraces(), mInitializeTimestamp, true);
+        /*
+         * Save crash as a compact record, the error log is built at next launch.
+         * Wrapper SDKs need the error log now, as do crashes happening before the recorder is ready.
+         */
+        CrashRecorder crashRecorder = mCrashRecorder;
+
+        /* Tracked exceptions not sent yet are saved the same way. */
+        saveTrackedExceptions(crashRecorder);
+        Map<Thread, StackTraceElement[]> threadStackTraces = ErrorLogHelper.getThreadStackTraces(thread, mThreadCapturePolicy);
+        ManagedErrorLog errorLog = null;
+        if (crashRecorder == null || mWrapperSdkListener != null)
+            errorLog = ErrorLogHelper.createErrorLog(mContext, thread, exception, threadStackTraces, mInitializeTimestamp, true);
         try {
             File errorStorageDirectory = ErrorLogHelper.getErrorStorageDirectory();
-            String filename = errorLog.getId().toString();
             MobileCenterLog.debug(Crashes.LOG_TAG, "Saving uncaught exception:", exception);
-            saveErrorLog(errorLog, errorStorageDirectory, filename);
+            String filename;
+            if (errorLog == null) {
+                filename = crashRecorder.record(thread, exception, threadStackTraces, mInitializeTimestamp).toString();
+                MobileCenterLog.debug(Crashes.LOG_TAG, "Saved crash record " + filename);
+            } else {
+                filename = errorLog.getId().toString();
+                saveErrorLog(errorLog, errorStorageDirectory, filename);
+            }
             File throwableFile = new File(errorStorageDirectory, filename + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
-            StorageHelper.InternalStorage.writeObject(throwableFile, exception);
+            ThrowableCodec.write(throwableFile, exception);
 
-            MobileCenterLog.debug(Crashes.LOG_TAG, "Saved Throwable as is for client side inspection in " + throwableFile);
-            if (mWrapperSdkListener != null) {
+            MobileCenterLog.debug(Crashes.LOG_TAG, "Saved Throwable snapshot for client side inspection in " + throwableFile);
+            if (mWrapperSdkListener != null && errorLog != null) {
                 mWrapperSdkListener.onCrashCaptured(errorLog);
             }
         } catch (JSONException e) {
@@ -845,6 +1565,66 @@ public class Crashes extends AbstractMobileCenterService {
 
     }
 
+    /**
+     * Handled exception as seen by the thread that tracked it, either a throwable or an exception model from a wrapper SDK.
+     */
+    private static class TrackedException {
+
+        private final Throwable throwable;
+
+        private final com.microsoft.azure.mobile.crashes.ingestion.models.Exception exception;
+
+        private final Thread thread;
+
+        /**
+         * Stack trace of the tracking thread, it cannot be captured later.
+         */
+        private final StackTraceElement[] threadStackTrace;
+
+        private final long timestamp;
+
+        private final long elapsedRealtime;
+
+        /**
+         * Number of repeats it stands for when sent as the last repeat of a window, 0 otherwise.
+         */
+        private int occurrenceCount;
+
+        private TrackedException(Throwable throwable, com.microsoft.azure.mobile.crashes.ingestion.models.Exception exception) {
+            this.throwable = throwable;
+            this.exception = exception;
+            this.thread = Thread.currentThread();
+            this.threadStackTrace = this.thread.getStackTrace();
+            this.timestamp = System.currentTimeMillis();
+            this.elapsedRealtime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Repeats of a tracked exception fingerprint since its first occurrence was sent.
+     */
+    private static class TrackedExceptionWindow {
+
+        private final long fingerprint;
+
+        /**
+         * Elapsed real time when the error log was sent.
+         */
+        private final long start;
+
+        /**
+         * Last repeat not sent yet, null if none.
+         */
+        private TrackedException lastRepeat;
+
+        private int repeatCount;
+
+        private TrackedExceptionWindow(long fingerprint, long start) {
+            this.fingerprint = fingerprint;
+            this.start = start;
+        }
+    }
+
     /**
      * Class holding an error log and its corresponding error report.
      */
@@ -859,4 +1639,25 @@ public class Crashes extends AbstractMobileCenterService {
             this.report = report;
         }
     }
+
+    /**
+     * Entry of {@link #mErrorReportCache}.
+     */
+    private static class CachedErrorReport {
+
+        private final ManagedErrorLog log;
+
+        /**
+         * Report with its throwable, which may be garbage collected when memory is low as it can be read again from storage.
+         */
+        private final SoftReference<ErrorReport> report;
+
+        private final int frameCount;
+
+        private CachedErrorReport(ErrorLogReport errorLogReport) {
+            this.log = errorLogReport.log;
+            this.report = new SoftReference<>(errorLogReport.report);
+            this.frameCount = countFrames(errorLogReport.log);
+        }
+    }
 }
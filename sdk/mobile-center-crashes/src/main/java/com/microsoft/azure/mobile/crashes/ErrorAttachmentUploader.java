@@ -0,0 +1,326 @@
+package com.microsoft.azure.mobile.crashes;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ErrorAttachmentChunkLog;
+import com.microsoft.azure.mobile.crashes.model.ErrorAttachment;
+import com.microsoft.azure.mobile.crashes.model.ErrorBinaryAttachment;
+import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.utils.MobileCenterLog;
+import com.microsoft.azure.mobile.utils.storage.StorageHelper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+
+import static com.microsoft.azure.mobile.crashes.Crashes.LOG_TAG;
+
+/**
+ * Sends the binary data of error attachments separately from their error logs.
+ * <p>
+ * Binary data is saved to an attachment file next to the error log, which only keeps the attachment metadata,
+ * so that neither the heap nor the log database hold whole attachments. Once the error log is sent,
+ * the file is sent in chunks of {@link #CHUNK_SIZE} bytes with a single chunk in the channel at a time.
+ * The offset of the next chunk and its failed attempts are saved in a state file, so that uploads resume
+ * after a restart and an attachment is discarded after {@link #MAX_CHUNK_ATTEMPTS} failed attempts on a chunk.
+ * <p>
+ * Crashes does not use it until error logs can have attachments, see getErrorAttachment in {@link Crashes}:
+ * it will then register the attachment group and log type, and notify the uploader of sent error logs.
+ */
+class ErrorAttachmentUploader implements Channel.GroupListener {
+
+    /**
+     * Group for sending attachment chunks.
+     */
+    static final String ATTACHMENT_GROUP = "group_error_attachments";
+
+    /**
+     * Size of the chunks, the last chunk of an attachment can be smaller.
+     */
+    @VisibleForTesting
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum size of the binary data of an attachment, larger data is not attached.
+     */
+    @VisibleForTesting
+    static final int MAX_ATTACHMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Number of failed attempts to send a chunk after which its attachment is discarded.
+     * The channel already retries each attempt on network errors.
+     */
+    @VisibleForTesting
+    static final int MAX_CHUNK_ATTEMPTS = 3;
+
+    /**
+     * Attachments waiting to send their next chunk, by error log identifier.
+     */
+    private final Deque<UUID> mPendingAttachments = new ArrayDeque<>();
+
+    /**
+     * Channel, null when not started.
+     */
+    private Channel mChannel;
+
+    /**
+     * Chunk in the channel, null if none.
+     */
+    private ErrorAttachmentChunkLog mChunkInFlight;
+
+    /**
+     * Save the binary data of an attachment to its file.
+     *
+     * @param errorId    identifier of the error log the attachment belongs to.
+     * @param attachment attachment to save.
+     * @return attachment to set on the error log, with the text and binary metadata only. Null if nothing is left to attach.
+     */
+    @Nullable
+    static ErrorAttachment store(@NonNull UUID errorId, @NonNull ErrorAttachment attachment) {
+        ErrorBinaryAttachment binaryAttachment = attachment.getBinaryAttachment();
+        if (binaryAttachment == null || binaryAttachment.getData() == null)
+            return attachment;
+        ErrorAttachment storedAttachment = new ErrorAttachment();
+        storedAttachment.setTextAttachment(attachment.getTextAttachment());
+        byte[] data = binaryAttachment.getData();
+        if (data.length > MAX_ATTACHMENT_SIZE)
+            MobileCenterLog.warn(LOG_TAG, "Binary attachment of " + data.length + " bytes is larger than " + MAX_ATTACHMENT_SIZE + " bytes, it will not be attached to log: " + errorId);
+        else {
+            File file = new File(ErrorLogHelper.getErrorStorageDirectory(), errorId + ErrorLogHelper.ATTACHMENT_FILE_EXTENSION);
+            try {
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(data);
+                } finally {
+                    out.close();
+                }
+                ErrorBinaryAttachment storedBinaryAttachment = new ErrorBinaryAttachment();
+                storedBinaryAttachment.setContentType(binaryAttachment.getContentType());
+                storedBinaryAttachment.setFileName(binaryAttachment.getFileName());
+                storedAttachment.setBinaryAttachment(storedBinaryAttachment);
+            } catch (IOException e) {
+                MobileCenterLog.error(LOG_TAG, "Failed to save binary attachment, it will not be attached to log: " + errorId, e);
+                StorageHelper.InternalStorage.delete(file);
+            }
+        }
+        if (storedAttachment.getTextAttachment() == null && storedAttachment.getBinaryAttachment() == null)
+            return null;
+        return storedAttachment;
+    }
+
+    /**
+     * Start sending attachments, resuming the uploads of previous processes.
+     * Chunks that previous processes left in the channel must have been cleared.
+     *
+     * @param channel channel.
+     */
+    synchronized void start(@NonNull Channel channel) {
+        mChannel = channel;
+        for (File file : ErrorLogHelper.getStoredAttachmentStateFiles()) {
+            String name = file.getName();
+            try {
+                UUID errorId = UUID.fromString(name.substring(0, name.length() - ErrorLogHelper.ATTACHMENT_STATE_FILE_EXTENSION.length()));
+                if (!mPendingAttachments.contains(errorId) && (mChunkInFlight == null || !errorId.equals(mChunkInFlight.getErrorId())))
+                    mPendingAttachments.add(errorId);
+            } catch (IllegalArgumentException e) {
+                MobileCenterLog.warn(LOG_TAG, "Deleting invalid attachment state file " + name);
+                StorageHelper.InternalStorage.delete(file);
+            }
+        }
+        sendNextChunk();
+    }
+
+    /**
+     * Stop sending attachments, files are kept.
+     */
+    synchronized void stop() {
+        mChannel = null;
+        mChunkInFlight = null;
+        mPendingAttachments.clear();
+    }
+
+    /**
+     * Start sending the attachment of an error log, if any.
+     *
+     * @param errorId identifier of the error log that was sent.
+     */
+    synchronized void onErrorLogSent(@NonNull UUID errorId) {
+        if (ErrorLogHelper.getStoredAttachmentFile(errorId) != null && saveUploadState(errorId, 0, 0)) {
+            mPendingAttachments.add(errorId);
+            sendNextChunk();
+        }
+    }
+
+    /**
+     * Discard the attachment of an error log, if any.
+     *
+     * @param errorId identifier of the error log.
+     */
+    synchronized void remove(@NonNull UUID errorId) {
+        mPendingAttachments.remove(errorId);
+        ErrorLogHelper.removeStoredAttachmentFiles(errorId);
+    }
+
+    @Override
+    public void onBeforeSending(Log log) {
+    }
+
+    @Override
+    public synchronized void onSuccess(Log log) {
+        ErrorAttachmentChunkLog chunk = takeChunkInFlight(log);
+        if (chunk != null) {
+            UUID errorId = chunk.getErrorId();
+            long offset = chunk.getOffset() + chunk.getData().length;
+            if (offset >= chunk.getSize()) {
+                MobileCenterLog.debug(LOG_TAG, "Attachment sent for log: " + errorId);
+                ErrorLogHelper.removeStoredAttachmentFiles(errorId);
+            } else if (saveUploadState(errorId, offset, 0))
+                mPendingAttachments.addFirst(errorId);
+        }
+        sendNextChunk();
+    }
+
+    @Override
+    public synchronized void onFailure(Log log, Exception e) {
+        ErrorAttachmentChunkLog chunk = takeChunkInFlight(log);
+        if (chunk != null) {
+            UUID errorId = chunk.getErrorId();
+            int failedAttempts;
+            try {
+                failedAttempts = readFailedAttempts(errorId) + 1;
+            } catch (IOException readException) {
+                MobileCenterLog.error(LOG_TAG, "Cannot read attachment state of log: " + errorId, readException);
+                failedAttempts = MAX_CHUNK_ATTEMPTS;
+            }
+            if (failedAttempts >= MAX_CHUNK_ATTEMPTS) {
+                MobileCenterLog.error(LOG_TAG, "Failed to send attachment, discarding it for log: " + errorId, e);
+                ErrorLogHelper.removeStoredAttachmentFiles(errorId);
+            } else if (saveUploadState(errorId, chunk.getOffset(), failedAttempts)) {
+
+                /* Let other attachments progress before trying again. */
+                mPendingAttachments.addLast(errorId);
+            }
+        }
+        sendNextChunk();
+    }
+
+    /**
+     * Match a log delivered by the channel with the chunk in flight.
+     *
+     * @return the chunk in flight if it matches and its attachment was not removed in the mean time, otherwise null.
+     */
+    @Nullable
+    private ErrorAttachmentChunkLog takeChunkInFlight(Log log) {
+        if (!(log instanceof ErrorAttachmentChunkLog) || mChunkInFlight == null)
+            return null;
+
+        /* Channel may give a copy read from its database. */
+        ErrorAttachmentChunkLog chunk = (ErrorAttachmentChunkLog) log;
+        if (!mChunkInFlight.getErrorId().equals(chunk.getErrorId()) || mChunkInFlight.getOffset() != chunk.getOffset())
+            return null;
+        chunk = mChunkInFlight;
+        mChunkInFlight = null;
+        return ErrorLogHelper.getStoredAttachmentFile(chunk.getErrorId()) == null ? null : chunk;
+    }
+
+    /**
+     * Enqueue the next chunk to the channel if none is in flight.
+     */
+    private void sendNextChunk() {
+        while (mChannel != null && mChunkInFlight == null && !mPendingAttachments.isEmpty()) {
+            UUID errorId = mPendingAttachments.remove();
+            try {
+                mChunkInFlight = readChunk(errorId);
+                mChannel.enqueue(mChunkInFlight, ATTACHMENT_GROUP);
+            } catch (IOException e) {
+                MobileCenterLog.error(LOG_TAG, "Cannot read attachment, discarding it for log: " + errorId, e);
+                ErrorLogHelper.removeStoredAttachmentFiles(errorId);
+            }
+        }
+    }
+
+    /**
+     * Read the chunk at the offset saved in the upload state.
+     */
+    @NonNull
+    private static ErrorAttachmentChunkLog readChunk(UUID errorId) throws IOException {
+        File file = ErrorLogHelper.getStoredAttachmentFile(errorId);
+        if (file == null)
+            throw new FileNotFoundException("Missing attachment file");
+        long offset;
+        DataInputStream stateIn = new DataInputStream(new FileInputStream(getUploadStateFile(errorId)));
+        try {
+            offset = stateIn.readLong();
+        } finally {
+            stateIn.close();
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long size = in.length();
+            if (offset < 0 || offset > size)
+                throw new IOException("Invalid attachment offset: " + offset);
+            byte[] data = new byte[(int) Math.min(CHUNK_SIZE, size - offset)];
+            in.seek(offset);
+            in.readFully(data);
+            ErrorAttachmentChunkLog chunk = new ErrorAttachmentChunkLog();
+            chunk.setToffset(System.currentTimeMillis());
+            chunk.setErrorId(errorId);
+            chunk.setOffset(offset);
+            chunk.setSize(size);
+            chunk.setData(data);
+            return chunk;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int readFailedAttempts(UUID errorId) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(getUploadStateFile(errorId)));
+        try {
+            in.readLong();
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Save the offset of the next chunk to send and its failed attempts, discarding the attachment on failure.
+     *
+     * @return true if saved.
+     */
+    private static boolean saveUploadState(UUID errorId, long offset, int failedAttempts) {
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(getUploadStateFile(errorId)));
+            try {
+                out.writeLong(offset);
+                out.writeInt(failedAttempts);
+            } finally {
+                out.close();
+            }
+            return true;
+        } catch (IOException e) {
+            MobileCenterLog.error(LOG_TAG, "Cannot save attachment state, discarding it for log: " + errorId, e);
+            ErrorLogHelper.removeStoredAttachmentFiles(errorId);
+            return false;
+        }
+    }
+
+    @NonNull
+    private static File getUploadStateFile(UUID errorId) {
+        return new File(ErrorLogHelper.getErrorStorageDirectory(), errorId + ErrorLogHelper.ATTACHMENT_STATE_FILE_EXTENSION);
+    }
+}
@@ -0,0 +1,102 @@
+package com.microsoft.azure.mobile.crashes;
+
+import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
+
+/**
+ * Which thread stack traces are attached to error logs, in addition to the exception itself.
+ * <p>
+ * The thread in error is always captured first with its full stack trace. Other threads are captured
+ * until the thread limit is reached, each with at most the frame limit, starting from the top of their stack.
+ * Capturing a thread stack trace suspends that thread, so apps with many threads can lower these limits.
+ */
+public class ThreadCapturePolicy {
+
+    /**
+     * Default maximum number of threads.
+     */
+    public static final int DEFAULT_MAX_THREADS = 128;
+
+    /**
+     * Default maximum number of frames per thread other than the thread in error.
+     */
+    public static final int DEFAULT_MAX_FRAMES_PER_THREAD = ErrorLogHelper.FRAME_LIMIT;
+
+    /**
+     * Policy used for crashes unless {@link Crashes#setThreadCapturePolicy(ThreadCapturePolicy)} is called.
+     */
+    public static final ThreadCapturePolicy DEFAULT = new ThreadCapturePolicy(DEFAULT_MAX_THREADS, DEFAULT_MAX_FRAMES_PER_THREAD, false);
+
+    /**
+     * Capture only the thread in error, without looking at other threads at all.
+     */
+    public static final ThreadCapturePolicy ERROR_THREAD_ONLY = new ThreadCapturePolicy(1, DEFAULT_MAX_FRAMES_PER_THREAD, false);
+
+    /**
+     * Maximum number of threads, including the thread in error.
+     */
+    private final int mMaxThreads;
+
+    /**
+     * Maximum number of frames per thread other than the thread in error.
+     */
+    private final int mMaxFramesPerThread;
+
+    /**
+     * Whether threads with the same stack trace as an already captured thread are skipped.
+     */
+    private final boolean mDeduplicateThreads;
+
+    /**
+     * Init.
+     *
+     * @param maxThreads         maximum number of threads, including the thread in error. 1 captures only the thread in error.
+     * @param maxFramesPerThread maximum number of frames per thread other than the thread in error.
+     * @param deduplicateThreads true to skip threads having the same (truncated) stack trace as a thread already captured,
+     *                           like idle threads of a pool. Only the first of them is reported.
+     */
+    public ThreadCapturePolicy(int maxThreads, int maxFramesPerThread, boolean deduplicateThreads) {
+        if (maxThreads < 1)
+            throw new IllegalArgumentException("maxThreads must be at least 1");
+        if (maxFramesPerThread < 1)
+            throw new IllegalArgumentException("maxFramesPerThread must be at least 1");
+        mMaxThreads = maxThreads;
+        mMaxFramesPerThread = maxFramesPerThread;
+        mDeduplicateThreads = deduplicateThreads;
+    }
+
+    /**
+     * Get the maximum number of threads.
+     *
+     * @return maximum number of threads, including the thread in error.
+     */
+    public int getMaxThreads() {
+        return mMaxThreads;
+    }
+
+    /**
+     * Get the maximum number of frames per thread other than the thread in error.
+     *
+     * @return maximum number of frames.
+     */
+    public int getMaxFramesPerThread() {
+        return mMaxFramesPerThread;
+    }
+
+    /**
+     * Check whether threads with identical stack traces are reported once.
+     *
+     * @return true if duplicate stack traces are skipped.
+     */
+    public boolean isDeduplicatingThreads() {
+        return mDeduplicateThreads;
+    }
+
+    /**
+     * Check whether only the thread in error is captured.
+     *
+     * @return true if other threads are not captured.
+     */
+    public boolean isErrorThreadOnly() {
+        return mMaxThreads == 1;
+    }
+}
@@ -3,6 +3,7 @@ package com.microsoft.azure.mobile.crashes.ingestion.models;
 import com.microsoft.azure.mobile.crashes.model.ErrorAttachment;
 import com.microsoft.azure.mobile.ingestion.models.AbstractLog;
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -311,6 +312,45 @@ public abstract class AbstractErrorLog extends AbstractLog {
         setArchitecture(object.optString(ARCHITECTURE, null));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(ID))
+            setId(UUID.fromString(reader.nextString()));
+        else if (name.equals(PROCESS_ID))
+            setProcessId(reader.nextInt());
+        else if (name.equals(PROCESS_NAME))
+            setProcessName(reader.nextString());
+        else if (name.equals(PARENT_PROCESS_ID))
+            setParentProcessId(reader.nextInt());
+        else if (name.equals(PARENT_PROCESS_NAME))
+            setParentProcessName(reader.nextString());
+        else if (name.equals(ERROR_THREAD_ID))
+            setErrorThreadId(reader.nextLong());
+        else if (name.equals(ERROR_THREAD_NAME))
+            setErrorThreadName(reader.nextString());
+        else if (name.equals(FATAL))
+            setFatal(reader.nextBoolean());
+        else if (name.equals(APP_LAUNCH_TOFFSET))
+            setAppLaunchTOffset(reader.nextLong());
+        else if (name.equals(ERROR_ATTACHMENT)) {
+            ErrorAttachment errorAttachment = new ErrorAttachment();
+            errorAttachment.read(reader.nextJSONObject());
+            setErrorAttachment(errorAttachment);
+        } else if (name.equals(ARCHITECTURE))
+            setArchitecture(reader.nextString());
+        else
+            return super.readField(name, reader);
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() throws JSONException {
+        super.checkRequiredFields();
+        JSONUtils.checkRequired(ID, getId());
+        JSONUtils.checkRequired(PROCESS_ID, getProcessId());
+        JSONUtils.checkRequired(APP_LAUNCH_TOFFSET, getAppLaunchTOffset());
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
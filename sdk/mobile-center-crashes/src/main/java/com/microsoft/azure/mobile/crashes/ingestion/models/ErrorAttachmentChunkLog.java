@@ -0,0 +1,193 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models;
+
+import android.util.Base64;
+
+import com.microsoft.azure.mobile.ingestion.models.AbstractLog;
+import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Chunk of the binary data of an error attachment, sent after its error log.
+ */
+public class ErrorAttachmentChunkLog extends AbstractLog {
+
+    /**
+     * Log type.
+     */
+    public static final String TYPE = "error_attachment_chunk";
+
+    private static final String ERROR_ID = "error_id";
+
+    private static final String OFFSET = "offset";
+
+    private static final String SIZE = "size";
+
+    private static final String DATA = "data";
+
+    /**
+     * Identifier of the error log the attachment belongs to.
+     */
+    private UUID errorId;
+
+    /**
+     * Position of the chunk in the binary data.
+     */
+    private long offset;
+
+    /**
+     * Total size of the binary data.
+     */
+    private long size;
+
+    /**
+     * Chunk data.
+     */
+    private byte[] data;
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * Get the errorId value.
+     *
+     * @return the errorId value
+     */
+    public UUID getErrorId() {
+        return this.errorId;
+    }
+
+    /**
+     * Set the errorId value.
+     *
+     * @param errorId the errorId value to set
+     */
+    public void setErrorId(UUID errorId) {
+        this.errorId = errorId;
+    }
+
+    /**
+     * Get the offset value.
+     *
+     * @return the offset value
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Set the offset value.
+     *
+     * @param offset the offset value to set
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Get the size value.
+     *
+     * @return the size value
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Set the size value.
+     *
+     * @param size the size value to set
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Get the data value.
+     *
+     * @return the data value
+     */
+    public byte[] getData() {
+        return this.data;
+    }
+
+    /**
+     * Set the data value.
+     *
+     * @param data the data value to set
+     */
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public void read(JSONObject object) throws JSONException {
+        super.read(object);
+        setErrorId(UUID.fromString(object.getString(ERROR_ID)));
+        setOffset(object.getLong(OFFSET));
+        setSize(object.getLong(SIZE));
+        if (object.optString(DATA, null) == null)
+            setData(null);
+        else
+            setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
+    }
+
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(ERROR_ID))
+            setErrorId(UUID.fromString(reader.nextString()));
+        else if (name.equals(OFFSET))
+            setOffset(reader.nextLong());
+        else if (name.equals(SIZE))
+            setSize(reader.nextLong());
+        else if (name.equals(DATA))
+            setData(reader.nextNull() ? null : Base64.decode(reader.nextString(), Base64.DEFAULT));
+        else
+            return super.readField(name, reader);
+        return true;
+    }
+
+    @Override
+    public void write(JSONStringer writer) throws JSONException {
+        super.write(writer);
+        JSONUtils.write(writer, ERROR_ID, getErrorId());
+        JSONUtils.write(writer, OFFSET, getOffset());
+        JSONUtils.write(writer, SIZE, getSize());
+        if (getData() != null)
+            JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+    }
+
+    @Override
+    @SuppressWarnings("SimplifiableIfStatement")
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+
+        ErrorAttachmentChunkLog that = (ErrorAttachmentChunkLog) o;
+
+        if (offset != that.offset) return false;
+        if (size != that.size) return false;
+        if (errorId != null ? !errorId.equals(that.errorId) : that.errorId != null)
+            return false;
+        return Arrays.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (errorId != null ? errorId.hashCode() : 0);
+        result = 31 * result + (int) (offset ^ (offset >>> 32));
+        result = 31 * result + (int) (size ^ (size >>> 32));
+        result = 31 * result + Arrays.hashCode(data);
+        return result;
+    }
+}
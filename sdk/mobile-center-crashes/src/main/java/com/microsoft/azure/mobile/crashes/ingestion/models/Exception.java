@@ -2,8 +2,9 @@ package com.microsoft.azure.mobile.crashes.ingestion.models;
 
 import com.microsoft.azure.mobile.crashes.ingestion.models.json.ExceptionFactory;
 import com.microsoft.azure.mobile.crashes.ingestion.models.json.StackFrameFactory;
-import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.StreamingModel;
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,7 +18,7 @@ import static com.microsoft.azure.mobile.ingestion.models.CommonProperties.TYPE;
 /**
  * The Exception model.
  */
-public class Exception implements Model {
+public class Exception implements StreamingModel {
 
     private static final String MESSAGE = "message";
 
@@ -177,6 +178,29 @@ public class Exception implements Model {
         setWrapperSdkName(object.optString(WRAPPER_SDK_NAME, null));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(TYPE))
+            setType(reader.nextString());
+        else if (name.equals(MESSAGE))
+            setMessage(reader.nextString());
+        else if (name.equals(STACK_TRACE))
+            setStackTrace(reader.nextString());
+        else if (name.equals(FRAMES))
+            setFrames(JSONUtils.readArray(reader, StackFrameFactory.getInstance()));
+        else if (name.equals(INNER_EXCEPTIONS))
+            setInnerExceptions(JSONUtils.readArray(reader, ExceptionFactory.getInstance()));
+        else if (name.equals(WRAPPER_SDK_NAME))
+            setWrapperSdkName(reader.nextString());
+        else
+            return false;
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, TYPE, getType());
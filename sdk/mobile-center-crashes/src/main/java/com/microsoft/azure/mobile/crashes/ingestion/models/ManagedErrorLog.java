@@ -2,6 +2,7 @@ package com.microsoft.azure.mobile.crashes.ingestion.models;
 
 import com.microsoft.azure.mobile.crashes.ingestion.models.json.ThreadFactory;
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -23,6 +24,8 @@ public class ManagedErrorLog extends AbstractErrorLog {
 
     private static final String THREADS = "threads";
 
+    private static final String OCCURRENCE_COUNT = "occurrence_count";
+
     /**
      * Exception.
      */
@@ -33,6 +36,11 @@ public class ManagedErrorLog extends AbstractErrorLog {
      */
     private List<Thread> threads;
 
+    /**
+     * Number of occurrences of the error this log stands for, absent for a single one.
+     */
+    private Integer occurrenceCount;
+
     @Override
     public String getType() {
         return TYPE;
@@ -74,6 +82,24 @@ public class ManagedErrorLog extends AbstractErrorLog {
         this.threads = threads;
     }
 
+    /**
+     * Get the occurrenceCount value.
+     *
+     * @return the occurrenceCount value
+     */
+    public Integer getOccurrenceCount() {
+        return this.occurrenceCount;
+    }
+
+    /**
+     * Set the occurrenceCount value.
+     *
+     * @param occurrenceCount the occurrenceCount value to set
+     */
+    public void setOccurrenceCount(Integer occurrenceCount) {
+        this.occurrenceCount = occurrenceCount;
+    }
+
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
@@ -84,6 +110,28 @@ public class ManagedErrorLog extends AbstractErrorLog {
             setException(exception);
         }
         setThreads(JSONUtils.readArray(object, THREADS, ThreadFactory.getInstance()));
+        setOccurrenceCount(JSONUtils.readInteger(object, OCCURRENCE_COUNT));
+    }
+
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(EXCEPTION)) {
+            Exception exception = new Exception();
+            JSONUtils.read(reader, exception);
+            setException(exception);
+        } else if (name.equals(THREADS))
+            setThreads(JSONUtils.readArray(reader, ThreadFactory.getInstance()));
+        else if (name.equals(OCCURRENCE_COUNT))
+            setOccurrenceCount(reader.nextInt());
+        else
+            return super.readField(name, reader);
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() throws JSONException {
+        super.checkRequiredFields();
+        JSONUtils.checkRequired(EXCEPTION, getException());
     }
 
     @Override
@@ -95,6 +143,7 @@ public class ManagedErrorLog extends AbstractErrorLog {
             writer.endObject();
         }
         JSONUtils.writeArray(writer, THREADS, getThreads());
+        JSONUtils.write(writer, OCCURRENCE_COUNT, getOccurrenceCount());
     }
 
     @Override
@@ -108,7 +157,9 @@ public class ManagedErrorLog extends AbstractErrorLog {
 
         if (exception != null ? !exception.equals(that.exception) : that.exception != null)
             return false;
-        return threads != null ? threads.equals(that.threads) : that.threads == null;
+        if (threads != null ? !threads.equals(that.threads) : that.threads != null)
+            return false;
+        return occurrenceCount != null ? occurrenceCount.equals(that.occurrenceCount) : that.occurrenceCount == null;
     }
 
     @Override
@@ -116,6 +167,7 @@ public class ManagedErrorLog extends AbstractErrorLog {
         int result = super.hashCode();
         result = 31 * result + (exception != null ? exception.hashCode() : 0);
         result = 31 * result + (threads != null ? threads.hashCode() : 0);
+        result = 31 * result + (occurrenceCount != null ? occurrenceCount.hashCode() : 0);
         return result;
     }
 }
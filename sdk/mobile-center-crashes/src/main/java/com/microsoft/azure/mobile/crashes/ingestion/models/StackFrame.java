@@ -1,7 +1,8 @@
 package com.microsoft.azure.mobile.crashes.ingestion.models;
 
-import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.StreamingModel;
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -10,7 +11,7 @@ import org.json.JSONStringer;
 /**
  * The StackFrame model.
  */
-public class StackFrame implements Model {
+public class StackFrame implements StreamingModel {
 
     private static final String CLASS_NAME = "class_name";
 
@@ -124,6 +125,25 @@ public class StackFrame implements Model {
         setFileName(object.optString(FILE_NAME, null));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(CLASS_NAME))
+            setClassName(reader.nextString());
+        else if (name.equals(METHOD_NAME))
+            setMethodName(reader.nextString());
+        else if (name.equals(LINE_NUMBER))
+            setLineNumber(reader.nextInt());
+        else if (name.equals(FILE_NAME))
+            setFileName(reader.nextString());
+        else
+            return false;
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, CLASS_NAME, getClassName());
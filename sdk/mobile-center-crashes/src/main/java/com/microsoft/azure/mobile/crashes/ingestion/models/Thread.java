@@ -1,8 +1,9 @@
 package com.microsoft.azure.mobile.crashes.ingestion.models;
 
 import com.microsoft.azure.mobile.crashes.ingestion.models.json.StackFrameFactory;
-import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.StreamingModel;
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,7 +18,7 @@ import static com.microsoft.azure.mobile.ingestion.models.CommonProperties.NAME;
 /**
  * The Thread model.
  */
-public class Thread implements Model {
+public class Thread implements StreamingModel {
 
     /**
      * Thread identifier.
@@ -34,6 +35,11 @@ public class Thread implements Model {
      */
     private List<StackFrame> frames;
 
+    /**
+     * Whether id was read by {@link #readField(String, JsonStreamReader)}, as it has no null value.
+     */
+    private boolean idRead;
+
     /**
      * Get the id value.
      *
@@ -95,6 +101,26 @@ public class Thread implements Model {
         setFrames(JSONUtils.readArray(object, FRAMES, StackFrameFactory.getInstance()));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(ID)) {
+            setId(reader.nextLong());
+            idRead = true;
+        } else if (name.equals(NAME))
+            setName(reader.nextString());
+        else if (name.equals(FRAMES))
+            setFrames(JSONUtils.readArray(reader, StackFrameFactory.getInstance()));
+        else
+            return false;
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() throws JSONException {
+        if (!idRead)
+            throw new JSONException("No value for " + ID);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, ID, getId());
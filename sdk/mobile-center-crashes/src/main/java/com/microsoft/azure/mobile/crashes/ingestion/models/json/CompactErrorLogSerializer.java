@@ -0,0 +1,64 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.json.StreamingLogSerializer;
+
+import org.json.JSONException;
+
+import java.io.StringWriter;
+
+/**
+ * Serializer for error logs stored on disk, sharing repeated stack frames and their strings in tables.
+ * <p>
+ * Managed error logs are wrapped in an object that also holds the tables:
+ * {@code {"strings":[...],"frames":[[class,method,line,file],...],"log":{...}}},
+ * where frames of threads and exceptions are indexes. The regular JSON of a log is also accepted
+ * when reading. The format is meant for storage only, logs are sent with the regular format.
+ */
+public class CompactErrorLogSerializer extends StreamingLogSerializer {
+
+    /**
+     * Log property of the wrapper object.
+     */
+    private static final String LOG = "log";
+
+    @NonNull
+    @Override
+    public String serializeLog(@NonNull Log log) throws JSONException {
+        if (!(log instanceof ManagedErrorLog))
+            return super.serializeLog(log);
+        StringWriter out = new StringWriter();
+        StackFrameTableWriter writer = new StackFrameTableWriter(out, (ManagedErrorLog) log);
+        writer.object();
+        writer.writeTables();
+        writer.key(LOG);
+        writeLog(writer, log);
+        writer.endObject();
+        return out.toString();
+    }
+
+    @NonNull
+    @Override
+    public Log deserializeLog(@NonNull String json) throws JSONException {
+        StackFrameTableReader reader = new StackFrameTableReader(json);
+        Log log = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(LOG))
+                log = readLog(reader);
+            else if (!reader.readTable(name)) {
+
+                /* Not wrapped: regular log JSON. */
+                return super.deserializeLog(json);
+            }
+        }
+        reader.endObject();
+        if (log == null)
+            throw new JSONException("No value for " + LOG);
+        return log;
+    }
+}
@@ -0,0 +1,21 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models.json;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.ErrorAttachmentChunkLog;
+import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
+
+public class ErrorAttachmentChunkLogFactory implements LogFactory {
+
+    private static final ErrorAttachmentChunkLogFactory sInstance = new ErrorAttachmentChunkLogFactory();
+
+    private ErrorAttachmentChunkLogFactory() {
+    }
+
+    public static ErrorAttachmentChunkLogFactory getInstance() {
+        return sInstance;
+    }
+
+    @Override
+    public ErrorAttachmentChunkLog create() {
+        return new ErrorAttachmentChunkLog();
+    }
+}
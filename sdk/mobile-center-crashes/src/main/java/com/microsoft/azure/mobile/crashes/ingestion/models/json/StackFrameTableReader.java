@@ -0,0 +1,111 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
+import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
+import com.microsoft.azure.mobile.ingestion.models.json.ModelFactory;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader resolving stack frame indexes written by {@link StackFrameTableWriter}.
+ */
+public class StackFrameTableReader extends JsonStreamReader {
+
+    /**
+     * String table property.
+     */
+    static final String STRINGS = "strings";
+
+    /**
+     * Frame table property.
+     */
+    static final String FRAMES = "frames";
+
+    /**
+     * String table.
+     */
+    private final List<String> mStrings = new ArrayList<>();
+
+    /**
+     * Frame table.
+     */
+    private final List<StackFrame> mFrames = new ArrayList<>();
+
+    /**
+     * Init.
+     *
+     * @param json JSON text.
+     */
+    public StackFrameTableReader(@NonNull String json) {
+        super(json);
+    }
+
+    /**
+     * Read stack frames from indexes in the frame table, other models as usual.
+     */
+    @Override
+    public <M extends Model> List<M> nextArray(ModelFactory<M> factory) throws JSONException {
+        if (factory != StackFrameFactory.getInstance())
+            return super.nextArray(factory);
+        if (nextNull())
+            return null;
+        List<M> frames = factory.createList(0);
+        beginArray();
+        while (hasNext()) {
+
+            /* The factory is the stack frame one. */
+            @SuppressWarnings("unchecked")
+            M frame = (M) get(mFrames, nextInt());
+            frames.add(frame);
+        }
+        endArray();
+        return frames;
+    }
+
+    private <T> T get(List<T> table, int index) throws JSONException {
+        if (index < 0 || index >= table.size())
+            throw new JSONException("Invalid table index " + index);
+        return table.get(index);
+    }
+
+    private String nextTableString() throws JSONException {
+        return nextNull() ? null : get(mStrings, nextInt());
+    }
+
+    /**
+     * Read a table property of the current object.
+     *
+     * @param name property name.
+     * @return true if the property was a table, false if not and the value was not consumed.
+     * @throws JSONException if an error occurs.
+     */
+    public boolean readTable(String name) throws JSONException {
+        if (name.equals(STRINGS)) {
+            beginArray();
+            while (hasNext())
+                mStrings.add(nextString());
+            endArray();
+        } else if (name.equals(FRAMES)) {
+            beginArray();
+            while (hasNext()) {
+                StackFrame frame = new StackFrame();
+                beginArray();
+                frame.setClassName(nextTableString());
+                frame.setMethodName(nextTableString());
+                frame.setLineNumber(nextNull() ? null : nextInt());
+                frame.setFileName(nextTableString());
+                endArray();
+                mFrames.add(frame);
+            }
+            endArray();
+        } else
+            return false;
+        return true;
+    }
+}
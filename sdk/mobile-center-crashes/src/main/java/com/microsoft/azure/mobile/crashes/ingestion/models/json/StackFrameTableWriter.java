@@ -0,0 +1,132 @@
+package com.microsoft.azure.mobile.crashes.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.Exception;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
+import com.microsoft.azure.mobile.crashes.ingestion.models.Thread;
+import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamWriter;
+
+import org.json.JSONException;
+
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer replacing stack frames by indexes in a table of distinct frames,
+ * themselves referring to a table of distinct strings.
+ * <p>
+ * The tables are built from the error log before writing and must be written with
+ * {@link #writeTables()} before the log, so that {@link StackFrameTableReader} can resolve indexes.
+ */
+public class StackFrameTableWriter extends JsonStreamWriter {
+
+    /**
+     * Distinct strings of all frames, mapped to their index.
+     */
+    private final Map<String, Integer> mStrings = new LinkedHashMap<>();
+
+    /**
+     * Distinct frames, mapped to their index.
+     */
+    private final Map<StackFrame, Integer> mFrames = new LinkedHashMap<>();
+
+    /**
+     * Init.
+     *
+     * @param out      output.
+     * @param errorLog error log whose frames will be written.
+     */
+    public StackFrameTableWriter(@NonNull Writer out, @NonNull ManagedErrorLog errorLog) {
+        super(out);
+        addFrames(errorLog.getException());
+        if (errorLog.getThreads() != null)
+            for (Thread thread : errorLog.getThreads())
+                addFrames(thread.getFrames());
+    }
+
+    /**
+     * Get the index of a value in a table.
+     *
+     * @throws JSONException if the value is not in the table, as tables are written first.
+     */
+    private static <T> long getIndex(Map<T, Integer> table, T value) throws JSONException {
+        Integer index = table.get(value);
+        if (index == null)
+            throw new JSONException("Value not in table: " + value);
+        return index;
+    }
+
+    /**
+     * Write stack frames as indexes in the frame table, other models as usual.
+     */
+    @Override
+    public void writeArray(String key, @NonNull List<? extends Model> models) throws JSONException {
+        if (models.isEmpty() || !(models.get(0) instanceof StackFrame)) {
+            super.writeArray(key, models);
+            return;
+        }
+        key(key).array();
+        for (Model frame : models)
+            value(getIndex(mFrames, (StackFrame) frame));
+        endArray();
+    }
+
+    private void addFrames(Exception exception) {
+        if (exception != null) {
+            addFrames(exception.getFrames());
+            if (exception.getInnerExceptions() != null)
+                for (Exception innerException : exception.getInnerExceptions())
+                    addFrames(innerException);
+        }
+    }
+
+    private void addFrames(List<StackFrame> frames) {
+        if (frames != null)
+            for (StackFrame frame : frames)
+                if (!mFrames.containsKey(frame)) {
+                    mFrames.put(frame, mFrames.size());
+                    addString(frame.getClassName());
+                    addString(frame.getMethodName());
+                    addString(frame.getFileName());
+                }
+    }
+
+    private void addString(String value) {
+        if (value != null && !mStrings.containsKey(value))
+            mStrings.put(value, mStrings.size());
+    }
+
+    private void writeString(String value) throws JSONException {
+        if (value == null)
+            value(null);
+        else
+            value(getIndex(mStrings, value));
+    }
+
+    /**
+     * Write the string and frame tables as properties of the current object.
+     *
+     * @throws JSONException if an error occurs.
+     */
+    public void writeTables() throws JSONException {
+        key(StackFrameTableReader.STRINGS).array();
+        for (String value : mStrings.keySet())
+            value(value);
+        endArray();
+        key(StackFrameTableReader.FRAMES).array();
+        for (StackFrame frame : mFrames.keySet()) {
+            array();
+            writeString(frame.getClassName());
+            writeString(frame.getMethodName());
+            value(frame.getLineNumber());
+            writeString(frame.getFileName());
+            endArray();
+        }
+        endArray();
+    }
+}
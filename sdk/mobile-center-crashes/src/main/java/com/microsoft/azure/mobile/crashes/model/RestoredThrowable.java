@@ -0,0 +1,46 @@
+package com.microsoft.azure.mobile.crashes.model;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Throwable restored from a saved crash. The original class is kept by name and not instantiated,
+ * it may no longer exist in the app and its constructors could have side effects.
+ * Message, stack trace, cause and suppressed exceptions are restored.
+ */
+public class RestoredThrowable extends Throwable {
+
+    /**
+     * Name of the original class.
+     */
+    private final String mClassName;
+
+    /**
+     * Init.
+     *
+     * @param className name of the original class.
+     * @param message   original message.
+     */
+    public RestoredThrowable(@NonNull String className, String message) {
+        super(message);
+        mClassName = className;
+    }
+
+    /**
+     * Get the name of the original class.
+     *
+     * @return class name.
+     */
+    @NonNull
+    public String getClassName() {
+        return mClassName;
+    }
+
+    /**
+     * Describe the throwable like the original one would be.
+     */
+    @Override
+    public String toString() {
+        String message = getLocalizedMessage();
+        return message != null ? mClassName + ": " + message : mClassName;
+    }
+}
@@ -0,0 +1,391 @@
+package com.microsoft.azure.mobile.crashes.utils;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.azure.mobile.crashes.Crashes;
+import com.microsoft.azure.mobile.crashes.ingestion.models.Exception;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
+import com.microsoft.azure.mobile.crashes.ingestion.models.Thread;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.utils.DeviceInfoHelper;
+import com.microsoft.azure.mobile.utils.MobileCenterLog;
+import com.microsoft.azure.mobile.utils.UUIDUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Saves uncaught exceptions as compact binary crash records, converted to error logs at next launch.
+ * <p>
+ * Device properties, process name and architecture are captured when the recorder is created and
+ * the write buffer is allocated at that time too, so that recording a crash in a dying process
+ * does not call system services, build JSON or allocate objects per frame.
+ * {@link #readErrorLog(File)} builds the {@link ManagedErrorLog} back from a record, even a truncated one.
+ * <p>
+ * Tracked exceptions not sent yet when the process crashes are saved the same way by
+ * {@link #recordTrackedException}, followed by their occurrence count, and read by {@link #readTrackedErrorLog(File)}.
+ */
+public class CrashRecorder {
+
+    /**
+     * Record format version, written first.
+     */
+    @VisibleForTesting
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of the write buffer.
+     */
+    @VisibleForTesting
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Length written for a null string.
+     */
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * Write buffer.
+     */
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Device properties as JSON, null if they could not be read.
+     */
+    private final String mDeviceJson;
+
+    /**
+     * Process identifier.
+     */
+    private final int mProcessId;
+
+    /**
+     * Process name.
+     */
+    private final String mProcessName;
+
+    /**
+     * CPU architecture.
+     */
+    private final String mArchitecture;
+
+    /**
+     * Number of bytes in the write buffer.
+     */
+    private int mCount;
+
+    /**
+     * Output of the record being written.
+     */
+    private OutputStream mOut;
+
+    /**
+     * Init, capturing the process and device properties.
+     *
+     * @param context application context.
+     */
+    public CrashRecorder(@NonNull Context context) {
+        String deviceJson = null;
+        try {
+            JSONStringer writer = new JSONStringer();
+            writer.object();
+            DeviceInfoHelper.getDeviceInfo(context).write(writer);
+            writer.endObject();
+            deviceJson = writer.toString();
+        } catch (DeviceInfoHelper.DeviceInfoException | JSONException e) {
+            MobileCenterLog.error(Crashes.LOG_TAG, "Could not snapshot device properties for crash records, will attach at sending time", e);
+        }
+        mDeviceJson = deviceJson;
+        mProcessId = Process.myPid();
+        mProcessName = ErrorLogHelper.getProcessName(context, mProcessId);
+        mArchitecture = ErrorLogHelper.getArchitecture();
+    }
+
+    /**
+     * Read a crash record. A record truncated after its first exception type, for example because
+     * the process was killed while writing it, is read up to the last complete frame or thread.
+     *
+     * @param file crash record file.
+     * @return fatal error log.
+     * @throws IOException if the file cannot be read or is not a valid crash record.
+     */
+    @NonNull
+    public static ManagedErrorLog readErrorLog(@NonNull File file) throws IOException {
+        return readErrorLog(file, true);
+    }
+
+    /**
+     * Read a tracked exception record, truncated ones are read like in {@link #readErrorLog(File)}.
+     *
+     * @param file tracked exception record file.
+     * @return handled error log, with its occurrence count if it stands for the repeats of an error.
+     * @throws IOException if the file cannot be read or is not a valid record.
+     */
+    @NonNull
+    public static ManagedErrorLog readTrackedErrorLog(@NonNull File file) throws IOException {
+        return readErrorLog(file, false);
+    }
+
+    private static ManagedErrorLog readErrorLog(File file, boolean fatal) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        try {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported crash record version: " + version);
+            errorLog.setId(new UUID(in.readLong(), in.readLong()));
+            errorLog.setToffset(in.readLong());
+            errorLog.setAppLaunchTOffset(in.readLong());
+            String deviceJson = readString(in);
+            if (deviceJson != null) {
+                try {
+                    Device device = new Device();
+                    device.read(new JSONObject(deviceJson));
+                    errorLog.setDevice(device);
+                } catch (JSONException e) {
+                    MobileCenterLog.error(Crashes.LOG_TAG, "Could not read device properties of crash record, will attach at sending time", e);
+                }
+            }
+            errorLog.setProcessId(in.readInt());
+            errorLog.setProcessName(readString(in));
+            errorLog.setArchitecture(readString(in));
+            errorLog.setErrorThreadId(in.readLong());
+            errorLog.setErrorThreadName(readString(in));
+            errorLog.setFatal(fatal);
+
+            /* Exception and its causes, attached as soon as their type is read. */
+            Exception parentException = null;
+            for (int i = readCount(in); i > 0; i--) {
+                Exception exception = new Exception();
+                exception.setType(readString(in));
+                List<StackFrame> frames = new ArrayList<>();
+                exception.setFrames(frames);
+                if (parentException == null) {
+                    errorLog.setException(exception);
+                } else {
+                    parentException.setInnerExceptions(Collections.singletonList(exception));
+                }
+                parentException = exception;
+                exception.setMessage(readString(in));
+                readFrames(in, frames);
+            }
+
+            /* Thread states, attached as soon as their identifier is read. */
+            List<Thread> threads = new ArrayList<>();
+            errorLog.setThreads(threads);
+            for (int i = readCount(in); i > 0; i--) {
+                Thread thread = new Thread();
+                thread.setId(in.readLong());
+                List<StackFrame> frames = new ArrayList<>();
+                thread.setFrames(frames);
+                threads.add(thread);
+                thread.setName(readString(in));
+                readFrames(in, frames);
+            }
+            if (!fatal) {
+                int occurrenceCount = in.readInt();
+                if (occurrenceCount > 0)
+                    errorLog.setOccurrenceCount(occurrenceCount);
+            }
+        } catch (EOFException e) {
+            if (errorLog.getException() == null)
+                throw e;
+            MobileCenterLog.warn(Crashes.LOG_TAG, "Record " + file.getName() + " is truncated, keeping what could be read");
+        } finally {
+            in.close();
+        }
+        return errorLog;
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid count in crash record: " + count);
+        return count;
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH)
+            return null;
+        if (length < 0)
+            throw new IOException("Invalid string length in crash record: " + length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = in.readChar();
+        return new String(chars);
+    }
+
+    private static void readFrames(DataInputStream in, List<StackFrame> frames) throws IOException {
+        for (int i = readCount(in); i > 0; i--) {
+            StackFrame frame = new StackFrame();
+            frame.setClassName(readString(in));
+            frame.setMethodName(readString(in));
+            frame.setFileName(readString(in));
+            frame.setLineNumber(in.readInt());
+            frames.add(frame);
+        }
+    }
+
+    /**
+     * Save an uncaught exception as a crash record in the error storage directory.
+     * Exception frames are truncated on the throwable like {@link ErrorLogHelper#createErrorLog} does.
+     *
+     * @param thread              thread in error.
+     * @param throwable           uncaught exception.
+     * @param allStackTraces      stack traces of all threads.
+     * @param initializeTimestamp elapsed real time when crash reporting was initialized.
+     * @return error log identifier.
+     * @throws IOException if the record cannot be written.
+     */
+    @NonNull
+    public synchronized UUID record(@NonNull java.lang.Thread thread, @NonNull Throwable throwable, @NonNull Map<java.lang.Thread, StackTraceElement[]> allStackTraces, long initializeTimestamp) throws IOException {
+        UUID id = UUIDUtils.fastRandomUUID();
+        File file = new File(ErrorLogHelper.getErrorStorageDirectory(), id + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        mOut = new FileOutputStream(file);
+        mCount = 0;
+        try {
+            writeErrorLog(id, System.currentTimeMillis(), SystemClock.elapsedRealtime() - initializeTimestamp, thread, throwable, allStackTraces);
+            flushBuffer();
+        } finally {
+            mOut.close();
+            mOut = null;
+        }
+        return id;
+    }
+
+    /**
+     * Save a tracked exception that could not be sent before a crash as a record in the error storage directory.
+     *
+     * @param thread           thread that tracked the exception.
+     * @param throwable        tracked exception.
+     * @param threadStackTrace stack trace of the thread when it tracked the exception.
+     * @param timestamp        time when the exception was tracked.
+     * @param appLaunchTOffset elapsed time between crash reporting initialization and tracking the exception.
+     * @param occurrenceCount  number of repeats it stands for, 0 for a single occurrence.
+     * @return error log identifier.
+     * @throws IOException if the record cannot be written.
+     */
+    @NonNull
+    public synchronized UUID recordTrackedException(@NonNull java.lang.Thread thread, @NonNull Throwable throwable, @NonNull StackTraceElement[] threadStackTrace, long timestamp, long appLaunchTOffset, int occurrenceCount) throws IOException {
+        UUID id = UUIDUtils.fastRandomUUID();
+        File file = new File(ErrorLogHelper.getErrorStorageDirectory(), id + ErrorLogHelper.TRACKED_EXCEPTION_RECORD_FILE_EXTENSION);
+        mOut = new FileOutputStream(file);
+        mCount = 0;
+        try {
+            writeErrorLog(id, timestamp, appLaunchTOffset, thread, throwable, Collections.singletonMap(thread, threadStackTrace));
+            writeInt(occurrenceCount);
+            flushBuffer();
+        } finally {
+            mOut.close();
+            mOut = null;
+        }
+        return id;
+    }
+
+    private void writeErrorLog(UUID id, long timestamp, long appLaunchTOffset, java.lang.Thread thread, Throwable throwable, Map<java.lang.Thread, StackTraceElement[]> allStackTraces) throws IOException {
+        writeInt(FORMAT_VERSION);
+        writeLong(id.getMostSignificantBits());
+        writeLong(id.getLeastSignificantBits());
+        writeLong(timestamp);
+        writeLong(appLaunchTOffset);
+        writeString(mDeviceJson);
+        writeInt(mProcessId);
+        writeString(mProcessName);
+        writeString(mArchitecture);
+        writeLong(thread.getId());
+        writeString(thread.getName());
+
+        /* Exception and its causes. */
+        int exceptionCount = 0;
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause())
+            exceptionCount++;
+        writeInt(exceptionCount);
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            writeString(cause.getClass().getName());
+            writeString(cause.getMessage());
+            writeFrames(ErrorLogHelper.getTruncatedStackTrace(cause));
+        }
+
+        /* Thread states. */
+        writeInt(allStackTraces.size());
+        for (Map.Entry<java.lang.Thread, StackTraceElement[]> entry : allStackTraces.entrySet()) {
+            writeLong(entry.getKey().getId());
+            writeString(entry.getKey().getName());
+            writeFrames(entry.getValue());
+        }
+    }
+
+    private void writeFrames(StackTraceElement[] frames) throws IOException {
+        writeInt(frames.length);
+        for (StackTraceElement frame : frames) {
+            writeString(frame.getClassName());
+            writeString(frame.getMethodName());
+            writeString(frame.getFileName());
+            writeInt(frame.getLineNumber());
+        }
+    }
+
+    /**
+     * Write a string as its length then UTF-16 characters, same encoding as {@link java.io.DataOutput#writeChar(int)}.
+     */
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeInt(NULL_LENGTH);
+            return;
+        }
+        int length = value.length();
+        writeInt(length);
+        for (int i = 0; i < length; i++) {
+            ensureCapacity(2);
+            char c = value.charAt(i);
+            mBuffer[mCount++] = (byte) (c >>> 8);
+            mBuffer[mCount++] = (byte) c;
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        ensureCapacity(4);
+        mBuffer[mCount++] = (byte) (value >>> 24);
+        mBuffer[mCount++] = (byte) (value >>> 16);
+        mBuffer[mCount++] = (byte) (value >>> 8);
+        mBuffer[mCount++] = (byte) value;
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (mCount + length > mBuffer.length)
+            flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        mOut.write(mBuffer, 0, mCount);
+        mCount = 0;
+    }
+}
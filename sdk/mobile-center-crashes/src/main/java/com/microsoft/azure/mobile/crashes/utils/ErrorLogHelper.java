@@ -12,23 +12,32 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.Constants;
 import com.microsoft.azure.mobile.crashes.Crashes;
+import com.microsoft.azure.mobile.crashes.ThreadCapturePolicy;
 import com.microsoft.azure.mobile.crashes.ingestion.models.Exception;
 import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
 import com.microsoft.azure.mobile.crashes.ingestion.models.Thread;
 import com.microsoft.azure.mobile.crashes.model.ErrorReport;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
 import com.microsoft.azure.mobile.utils.DeviceInfoHelper;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
 import com.microsoft.azure.mobile.utils.UUIDUtils;
 import com.microsoft.azure.mobile.utils.storage.StorageHelper;
 
+import org.json.JSONException;
+
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -46,6 +55,26 @@ public class ErrorLogHelper {
      */
     public static final String THROWABLE_FILE_EXTENSION = ".throwable";
 
+    /**
+     * Crash record file extension, for uncaught exceptions saved by {@link CrashRecorder} and not yet converted to JSON.
+     */
+    public static final String CRASH_RECORD_FILE_EXTENSION = ".crash";
+
+    /**
+     * Tracked exception record file extension, for tracked exceptions saved by {@link CrashRecorder} when the process crashed before sending them.
+     */
+    public static final String TRACKED_EXCEPTION_RECORD_FILE_EXTENSION = ".tracked";
+
+    /**
+     * Error attachment file extension, for binary attachment data sent separately from the error log.
+     */
+    public static final String ATTACHMENT_FILE_EXTENSION = ".attachment";
+
+    /**
+     * Extension of the file saving how much of an error attachment file was sent.
+     */
+    public static final String ATTACHMENT_STATE_FILE_EXTENSION = ".attachment_state";
+
     /**
      * For huge stack traces such as giant StackOverflowError, we keep only beginning and end of frames according to this limit.
      */
@@ -63,6 +92,22 @@ public class ErrorLogHelper {
      */
     private static final int FRAME_LIMIT_HALF = FRAME_LIMIT / 2;
 
+    /**
+     * Number of top frames of each exception and cause that are part of a fingerprint.
+     */
+    @VisibleForTesting
+    static final int FINGERPRINT_FRAME_COUNT = 8;
+
+    /**
+     * Initial value of the 64-bit FNV-1a hash used for fingerprints.
+     */
+    private static final long FINGERPRINT_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /**
+     * Multiplier of the 64-bit FNV-1a hash used for fingerprints.
+     */
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
     /**
      * Root directory for error log and throwable files.
      */
@@ -78,7 +123,7 @@ public class ErrorLogHelper {
 
         /* Build error log with a unique identifier. */
         ManagedErrorLog errorLog = new ManagedErrorLog();
-        errorLog.setId(UUIDUtils.randomUUID());
+        errorLog.setId(UUIDUtils.fastRandomUUID());
 
         /* Set absolute current time. Will be correlated to session and converted to relative later. */
         errorLog.setToffset(System.currentTimeMillis());
@@ -92,14 +137,7 @@ public class ErrorLogHelper {
 
         /* Process information. Parent one is not available on Android. */
         errorLog.setProcessId(Process.myPid());
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        if (activityManager != null) {
-            for (ActivityManager.RunningAppProcessInfo info : activityManager.getRunningAppProcesses()) {
-                if (info.pid == Process.myPid()) {
-                    errorLog.setProcessName(info.processName);
-                }
-            }
-        }
+        errorLog.setProcessName(getProcessName(context, Process.myPid()));
 
         /* CPU architecture. */
         errorLog.setArchitecture(getArchitecture());
@@ -130,9 +168,89 @@ public class ErrorLogHelper {
         return errorLog;
     }
 
+    /**
+     * Get the name of a process of this application.
+     *
+     * @param context application context.
+     * @param pid     process identifier.
+     * @return process name or null if not found.
+     */
+    @Nullable
+    static String getProcessName(@NonNull Context context, int pid) {
+        String processName = null;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            for (ActivityManager.RunningAppProcessInfo info : activityManager.getRunningAppProcesses()) {
+                if (info.pid == pid) {
+                    processName = info.processName;
+                }
+            }
+        }
+        return processName;
+    }
+
+    /**
+     * Capture thread stack traces for an error log.
+     *
+     * @param errorThread thread in error, captured first with its full stack trace.
+     * @param policy      which other threads to capture.
+     * @return stack traces by thread, in capture order.
+     */
+    @NonNull
+    public static Map<java.lang.Thread, StackTraceElement[]> getThreadStackTraces(@NonNull java.lang.Thread errorThread, @NonNull ThreadCapturePolicy policy) {
+        Map<java.lang.Thread, StackTraceElement[]> stackTraces = new LinkedHashMap<>();
+        StackTraceElement[] errorStackTrace = errorThread.getStackTrace();
+        stackTraces.put(errorThread, errorStackTrace);
+        if (policy.isErrorThreadOnly())
+            return stackTraces;
+
+        /* Suspend threads one at a time rather than all of them with Thread.getAllStackTraces(). */
+        Set<List<StackTraceElement>> capturedStackTraces = null;
+        if (policy.isDeduplicatingThreads()) {
+            capturedStackTraces = new HashSet<>();
+            capturedStackTraces.add(Arrays.asList(errorStackTrace));
+        }
+        int skippedThreads = 0;
+        for (java.lang.Thread thread : getAllThreads()) {
+            if (thread == errorThread)
+                continue;
+            if (stackTraces.size() >= policy.getMaxThreads()) {
+                skippedThreads++;
+                continue;
+            }
+            StackTraceElement[] stackTrace = thread.getStackTrace();
+            if (stackTrace.length > policy.getMaxFramesPerThread())
+                stackTrace = Arrays.copyOf(stackTrace, policy.getMaxFramesPerThread());
+            if (capturedStackTraces != null && !capturedStackTraces.add(Arrays.asList(stackTrace)))
+                skippedThreads++;
+            else
+                stackTraces.put(thread, stackTrace);
+        }
+        if (skippedThreads > 0)
+            MobileCenterLog.debug(Crashes.LOG_TAG, "Skipped " + skippedThreads + " threads according to the thread capture policy.");
+        return stackTraces;
+    }
+
+    /**
+     * Get the live threads of all thread groups.
+     */
+    @NonNull
+    private static java.lang.Thread[] getAllThreads() {
+        ThreadGroup group = java.lang.Thread.currentThread().getThreadGroup();
+        while (group.getParent() != null)
+            group = group.getParent();
+
+        /* Active count is an estimate, retry with a larger array if it was filled. */
+        java.lang.Thread[] threads = new java.lang.Thread[group.activeCount() + 8];
+        int count;
+        while ((count = group.enumerate(threads, true)) == threads.length)
+            threads = new java.lang.Thread[threads.length * 2];
+        return Arrays.copyOf(threads, count);
+    }
+
     @SuppressWarnings("deprecation")
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private static String getArchitecture() {
+    static String getArchitecture() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             return Build.SUPPORTED_ABIS[0];
         } else {
@@ -162,16 +280,105 @@ public class ErrorLogHelper {
         return files != null && files.length > 0 ? files : new File[0];
     }
 
+    @NonNull
+    public static File[] getStoredCrashRecordFiles() {
+        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(CRASH_RECORD_FILE_EXTENSION);
+            }
+        });
+
+        return files != null && files.length > 0 ? files : new File[0];
+    }
+
+    @NonNull
+    public static File[] getStoredTrackedExceptionRecordFiles() {
+        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(TRACKED_EXCEPTION_RECORD_FILE_EXTENSION);
+            }
+        });
+
+        return files != null && files.length > 0 ? files : new File[0];
+    }
+
+    @NonNull
+    public static File[] getStoredAttachmentStateFiles() {
+        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(ATTACHMENT_STATE_FILE_EXTENSION);
+            }
+        });
+
+        return files != null && files.length > 0 ? files : new File[0];
+    }
+
+    /**
+     * Get the most recent error log or crash record file.
+     *
+     * @return the last error log file, which is a crash record file if not yet converted by {@link #convertCrashRecords(LogSerializer)}.
+     */
     @Nullable
     public static File getLastErrorLogFile() {
         return StorageHelper.InternalStorage.lastModifiedFile(getErrorStorageDirectory(), new FilenameFilter() {
             @Override
             public boolean accept(File dir, String filename) {
-                return filename.endsWith(ERROR_LOG_FILE_EXTENSION);
+                return filename.endsWith(ERROR_LOG_FILE_EXTENSION) || filename.endsWith(CRASH_RECORD_FILE_EXTENSION);
             }
         });
     }
 
+    /**
+     * Convert the crash records saved by {@link CrashRecorder} to JSON error log files, and delete them.
+     * Converted files keep the modification time of their record.
+     * Records that cannot be read at all are deleted with their throwable.
+     *
+     * @param logSerializer serializer for the error logs.
+     */
+    public static void convertCrashRecords(@NonNull LogSerializer logSerializer) {
+        for (File recordFile : getStoredCrashRecordFiles()) {
+            MobileCenterLog.debug(Crashes.LOG_TAG, "Converting crash record " + recordFile.getName());
+            try {
+                ManagedErrorLog errorLog = CrashRecorder.readErrorLog(recordFile);
+                File errorLogFile = new File(recordFile.getParentFile(), errorLog.getId() + ERROR_LOG_FILE_EXTENSION);
+                StorageHelper.InternalStorage.write(errorLogFile, logSerializer.serializeLog(errorLog));
+                if (!errorLogFile.setLastModified(recordFile.lastModified()))
+                    MobileCenterLog.warn(Crashes.LOG_TAG, "Cannot set modification time of " + errorLogFile.getName());
+            } catch (IOException | JSONException e) {
+                MobileCenterLog.error(Crashes.LOG_TAG, "Cannot convert crash record " + recordFile.getName() + ", deleting it and its throwable", e);
+                String name = recordFile.getName();
+                try {
+                    removeStoredThrowableFile(UUID.fromString(name.substring(0, name.length() - CRASH_RECORD_FILE_EXTENSION.length())));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+            StorageHelper.InternalStorage.delete(recordFile);
+        }
+    }
+
+    /**
+     * Read the tracked exception records saved by {@link CrashRecorder}, and delete them.
+     * Records that cannot be read are deleted too.
+     *
+     * @return error logs of the tracked exceptions.
+     */
+    @NonNull
+    public static List<ManagedErrorLog> readTrackedExceptionRecords() {
+        List<ManagedErrorLog> errorLogs = new ArrayList<>();
+        for (File recordFile : getStoredTrackedExceptionRecordFiles()) {
+            try {
+                errorLogs.add(CrashRecorder.readTrackedErrorLog(recordFile));
+            } catch (IOException e) {
+                MobileCenterLog.error(Crashes.LOG_TAG, "Cannot read tracked exception record " + recordFile.getName() + ", deleting it", e);
+            }
+            StorageHelper.InternalStorage.delete(recordFile);
+        }
+        return errorLogs;
+    }
+
     @Nullable
     public static File getStoredThrowableFile(@NonNull UUID id) {
         return getStoredFile(id, THROWABLE_FILE_EXTENSION);
@@ -186,7 +393,7 @@ public class ErrorLogHelper {
     }
 
     @Nullable
-    static File getStoredErrorLogFile(@NonNull UUID id) {
+    public static File getStoredErrorLogFile(@NonNull UUID id) {
         return getStoredFile(id, ERROR_LOG_FILE_EXTENSION);
     }
 
@@ -198,6 +405,21 @@ public class ErrorLogHelper {
         }
     }
 
+    @Nullable
+    public static File getStoredAttachmentFile(@NonNull UUID id) {
+        return getStoredFile(id, ATTACHMENT_FILE_EXTENSION);
+    }
+
+    public static void removeStoredAttachmentFiles(@NonNull UUID id) {
+        for (String extension : new String[]{ATTACHMENT_FILE_EXTENSION, ATTACHMENT_STATE_FILE_EXTENSION}) {
+            File file = getStoredFile(id, extension);
+            if (file != null) {
+                MobileCenterLog.info(Crashes.LOG_TAG, "Deleting attachment file " + file.getName());
+                StorageHelper.InternalStorage.delete(file);
+            }
+        }
+    }
+
     @NonNull
     public static ErrorReport getErrorReportFromErrorLog(@NonNull ManagedErrorLog log, Throwable throwable) {
         ErrorReport report = new ErrorReport();
@@ -210,21 +432,86 @@ public class ErrorLogHelper {
         return report;
     }
 
+    /**
+     * Get the fingerprint of an exception, identifying repeats of the same error.
+     * It is a hash of the types and top {@link #FINGERPRINT_FRAME_COUNT} frames of the exception and its causes.
+     * Messages, file names and line numbers are left out, so that the same error with a different message
+     * (like an identifier in it) has the same fingerprint.
+     *
+     * @param throwable exception.
+     * @return fingerprint.
+     */
+    public static long getFingerprint(@NonNull Throwable throwable) {
+        long hash = FINGERPRINT_OFFSET_BASIS;
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            hash = hashString(hash, cause.getClass().getName());
+            StackTraceElement[] stackTrace = cause.getStackTrace();
+            int frameCount = Math.min(stackTrace.length, FINGERPRINT_FRAME_COUNT);
+            for (int i = 0; i < frameCount; i++) {
+                hash = hashString(hash, stackTrace[i].getClassName());
+                hash = hashString(hash, stackTrace[i].getMethodName());
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Get the fingerprint of an exception model, like {@link #getFingerprint(Throwable)} does for a throwable.
+     * When a wrapper SDK provides a raw stack trace instead of frames, the whole raw stack trace is hashed.
+     *
+     * @param exception exception model.
+     * @return fingerprint.
+     */
+    public static long getFingerprint(@NonNull Exception exception) {
+        return hashException(FINGERPRINT_OFFSET_BASIS, exception);
+    }
+
+    private static long hashException(long hash, @NonNull Exception exception) {
+        hash = hashString(hash, exception.getType());
+        List<StackFrame> frames = exception.getFrames();
+        if (frames != null) {
+            int frameCount = Math.min(frames.size(), FINGERPRINT_FRAME_COUNT);
+            for (int i = 0; i < frameCount; i++) {
+                hash = hashString(hash, frames.get(i).getClassName());
+                hash = hashString(hash, frames.get(i).getMethodName());
+            }
+        } else {
+            hash = hashString(hash, exception.getStackTrace());
+        }
+        List<Exception> innerExceptions = exception.getInnerExceptions();
+        if (innerExceptions != null) {
+            for (Exception innerException : innerExceptions) {
+                hash = hashException(hash, innerException);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Add a string to a FNV-1a hash, followed by a separator so that consecutive strings cannot be confused.
+     */
+    private static long hashString(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FINGERPRINT_PRIME;
+            }
+        }
+        return (hash ^ 0xffff) * FINGERPRINT_PRIME;
+    }
+
     @VisibleForTesting
     static void setErrorLogDirectory(File file) {
         sErrorLogDirectory = file;
     }
 
+    /**
+     * Get a stored file by error identifier. Files are always named after the identifier, so this checks
+     * the path directly instead of listing the error storage directory, which is slow with many stored errors.
+     */
     @Nullable
-    private static File getStoredFile(@NonNull final UUID id, @NonNull final String extension) {
-        File[] files = getErrorStorageDirectory().listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.startsWith(id.toString()) && filename.endsWith(extension);
-            }
-        });
-
-        return files != null && files.length > 0 ? files[0] : null;
+    private static File getStoredFile(@NonNull UUID id, @NonNull String extension) {
+        File file = new File(getErrorStorageDirectory(), id + extension);
+        return file.exists() ? file : null;
     }
 
     @NonNull
@@ -248,6 +535,14 @@ public class ErrorLogHelper {
 
     @NonNull
     private static List<StackFrame> getModelFramesFromStackTrace(@NonNull Throwable throwable) {
+        return getModelFramesFromStackTrace(getTruncatedStackTrace(throwable));
+    }
+
+    /**
+     * Get the stack trace of a throwable, truncating it first on the throwable if longer than {@link #FRAME_LIMIT}.
+     */
+    @NonNull
+    static StackTraceElement[] getTruncatedStackTrace(@NonNull Throwable throwable) {
         StackTraceElement[] stackTrace = throwable.getStackTrace();
         if (stackTrace.length > FRAME_LIMIT) {
             StackTraceElement[] stackTraceTruncated = new StackTraceElement[FRAME_LIMIT];
@@ -257,11 +552,11 @@ public class ErrorLogHelper {
             MobileCenterLog.warn(Crashes.LOG_TAG, "Crash frames truncated from " + stackTrace.length + " to " + stackTraceTruncated.length + " frames.");
             stackTrace = stackTraceTruncated;
         }
-        return getModelFramesFromStackTrace(stackTrace);
+        return stackTrace;
     }
 
     @NonNull
-    private static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
+    static List<StackFrame> getModelFramesFromStackTrace(@NonNull StackTraceElement[] stackTrace) {
         List<StackFrame> stackFrames = new ArrayList<>();
         for (StackTraceElement stackTraceElement : stackTrace) {
             stackFrames.add(getModelStackFrame(stackTraceElement));
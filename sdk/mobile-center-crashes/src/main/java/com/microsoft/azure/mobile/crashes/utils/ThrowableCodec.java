@@ -0,0 +1,209 @@
+package com.microsoft.azure.mobile.crashes.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.azure.mobile.crashes.model.RestoredThrowable;
+import com.microsoft.azure.mobile.utils.storage.StorageHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Saves throwables for {@link com.microsoft.azure.mobile.crashes.model.ErrorReport#getThrowable()} as compact snapshots
+ * instead of using Java serialization, which is slow at crash time and fails on non serializable causes or
+ * when classes change between app versions.
+ * <p>
+ * A snapshot holds the class name, message and frames of the throwable, its cause and its suppressed throwables.
+ * Reading it builds a {@link RestoredThrowable} for each of them, keeping the original class name as data:
+ * application classes are never instantiated, so reading runs no application code.
+ * Files written by Java serialization in previous versions are still read.
+ */
+public class ThrowableCodec {
+
+    /**
+     * Snapshot format version, written first.
+     */
+    @VisibleForTesting
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Maximum depth of nested causes and suppressed throwables, deeper ones are not saved.
+     */
+    @VisibleForTesting
+    static final int MAX_DEPTH = 32;
+
+    /**
+     * First 2 bytes of a Java serialization stream.
+     */
+    private static final int SERIALIZATION_MAGIC = 0xaced;
+
+    /**
+     * Length written for a null string.
+     */
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * Save a throwable snapshot.
+     *
+     * @param file      file to write.
+     * @param throwable throwable to save.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(@NonNull File file, @NonNull Throwable throwable) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            writeThrowable(out, throwable, Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>()), 0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeThrowable(DataOutputStream out, Throwable throwable, Set<Throwable> written, int depth) throws IOException {
+        written.add(throwable);
+        writeString(out, throwable.getClass().getName());
+        writeString(out, throwable.getMessage());
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        out.writeInt(stackTrace.length);
+        for (StackTraceElement frame : stackTrace) {
+            writeString(out, frame.getClassName());
+            writeString(out, frame.getMethodName());
+            writeString(out, frame.getFileName());
+            out.writeInt(frame.getLineNumber());
+        }
+
+        /* Cause then suppressed throwables, each preceded by true, skipping cycles. */
+        Throwable cause = throwable.getCause();
+        boolean writeCause = cause != null && depth < MAX_DEPTH && !written.contains(cause);
+        out.writeBoolean(writeCause);
+        if (writeCause)
+            writeThrowable(out, cause, written, depth + 1);
+        if (depth < MAX_DEPTH && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            for (Throwable suppressed : getSuppressed(throwable)) {
+                if (!written.contains(suppressed)) {
+                    out.writeBoolean(true);
+                    writeThrowable(out, suppressed, written, depth + 1);
+                }
+            }
+        }
+        out.writeBoolean(false);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static Throwable[] getSuppressed(Throwable throwable) {
+        return throwable.getSuppressed();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void addSuppressed(Throwable throwable, Throwable suppressed) {
+        throwable.addSuppressed(suppressed);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            out.writeInt(value.length());
+            out.writeChars(value);
+        }
+    }
+
+    /**
+     * Read a throwable snapshot.
+     *
+     * @param file file written by {@link #write(File, Throwable)}, or by Java serialization.
+     * @return restored throwable.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    @NonNull
+    public static Throwable read(@NonNull File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            in.mark(2);
+            if (in.readUnsignedShort() == SERIALIZATION_MAGIC) {
+                in.close();
+                return readSerializedThrowable(file);
+            }
+            in.reset();
+            int version = in.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported throwable snapshot version: " + version);
+            return readThrowable(in, 0);
+        } finally {
+            in.close();
+        }
+    }
+
+    @NonNull
+    private static Throwable readSerializedThrowable(File file) throws IOException {
+        Serializable object;
+        try {
+            object = StorageHelper.InternalStorage.readObject(file);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        if (object instanceof Throwable)
+            return (Throwable) object;
+        throw new IOException("Serialized object is not a throwable: " + object);
+    }
+
+    @NonNull
+    private static Throwable readThrowable(DataInputStream in, int depth) throws IOException {
+        if (depth > MAX_DEPTH)
+            throw new IOException("Throwable snapshot too deep");
+        String className = readNonNullString(in);
+        String message = readString(in);
+        int frameCount = in.readInt();
+        if (frameCount < 0)
+            throw new IOException("Invalid frame count in throwable snapshot: " + frameCount);
+        StackTraceElement[] stackTrace = new StackTraceElement[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            stackTrace[i] = new StackTraceElement(readNonNullString(in), readNonNullString(in), readString(in), in.readInt());
+        }
+        Throwable throwable = new RestoredThrowable(className, message);
+        throwable.setStackTrace(stackTrace);
+        if (in.readBoolean())
+            throwable.initCause(readThrowable(in, depth + 1));
+        while (in.readBoolean()) {
+            Throwable suppressed = readThrowable(in, depth + 1);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+                addSuppressed(throwable, suppressed);
+        }
+        return throwable;
+    }
+
+    @NonNull
+    private static String readNonNullString(DataInputStream in) throws IOException {
+        String value = readString(in);
+        if (value == null)
+            throw new IOException("Unexpected null string in throwable snapshot");
+        return value;
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH)
+            return null;
+        if (length < 0)
+            throw new IOException("Invalid string length in throwable snapshot: " + length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = in.readChar();
+        return new String(chars);
+    }
+}
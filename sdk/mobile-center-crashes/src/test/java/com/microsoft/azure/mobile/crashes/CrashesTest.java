@@ -9,12 +9,16 @@ import com.microsoft.azure.mobile.Constants;
 import com.microsoft.azure.mobile.MobileCenter;
 import com.microsoft.azure.mobile.ResultCallback;
 import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.channel.SendPolicy;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ErrorAttachmentChunkLog;
 import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
 import com.microsoft.azure.mobile.crashes.ingestion.models.json.ManagedErrorLogFactory;
 import com.microsoft.azure.mobile.crashes.model.ErrorReport;
 import com.microsoft.azure.mobile.crashes.model.TestCrashException;
+import com.microsoft.azure.mobile.crashes.utils.CrashRecorder;
 import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
+import com.microsoft.azure.mobile.crashes.utils.ThrowableCodec;
 import com.microsoft.azure.mobile.ingestion.models.Device;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
@@ -32,17 +36,24 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.powermock.reflect.Whitebox;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 
@@ -50,7 +61,9 @@ import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -61,6 +74,8 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -75,7 +90,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 @SuppressWarnings("unused")
-@PrepareForTest({ErrorLogHelper.class, SystemClock.class, StorageHelper.InternalStorage.class, StorageHelper.PreferencesStorage.class, MobileCenterLog.class, MobileCenter.class, Crashes.class, HandlerUtils.class, Looper.class})
+@PrepareForTest({ErrorLogHelper.class, SystemClock.class, StorageHelper.InternalStorage.class, StorageHelper.PreferencesStorage.class, MobileCenterLog.class, MobileCenter.class, Crashes.class, HandlerUtils.class, Looper.class, ThrowableCodec.class})
 public class CrashesTest {
 
     @SuppressWarnings("ThrowableInstanceNeverThrown")
@@ -93,6 +108,19 @@ public class CrashesTest {
 
     private Looper mMockLooper;
 
+    private static ManagedErrorLog createErrorLogWithFrames(int frameCount) {
+        List<StackFrame> frames = new ArrayList<>();
+        for (int i = 0; i < frameCount; i++)
+            frames.add(new StackFrame());
+        com.microsoft.azure.mobile.crashes.ingestion.models.Thread thread = new com.microsoft.azure.mobile.crashes.ingestion.models.Thread();
+        thread.setFrames(frames);
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUIDUtils.randomUUID());
+        errorLog.setFatal(true);
+        errorLog.setThreads(singletonList(thread));
+        return errorLog;
+    }
+
     private static void assertErrorEquals(ManagedErrorLog errorLog, ErrorReport report) {
         assertNotNull(report);
         assertEquals(errorLog.getId().toString(), report.getId());
@@ -130,6 +158,7 @@ public class CrashesTest {
         mockStatic(SystemClock.class);
         mockStatic(StorageHelper.InternalStorage.class);
         mockStatic(StorageHelper.PreferencesStorage.class);
+        mockStatic(ThrowableCodec.class);
         mockStatic(MobileCenterLog.class);
         when(SystemClock.elapsedRealtime()).thenReturn(System.currentTimeMillis());
         mockStatic(MobileCenter.class);
@@ -229,6 +258,7 @@ public class CrashesTest {
         File file2 = mock(File.class);
         when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
         when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenReturn(new ManagedErrorLog());
         when(dir.listFiles()).thenReturn(new File[]{file1, file2});
 
         /* Test. */
@@ -239,7 +269,7 @@ public class CrashesTest {
         assertTrue(crashes.getInitializeTimestamp() > 0);
         Crashes.setEnabled(false);
         assertFalse(Crashes.isEnabled());
-        verify(mMockLooper).quit();
+        verify(mMockLooper, never()).quit();
         crashes.onStarted(mock(Context.class), "", mockChannel);
         verify(mockChannel).clear(crashes.getGroupName());
         verify(mockChannel).removeGroup(eq(crashes.getGroupName()));
@@ -257,11 +287,28 @@ public class CrashesTest {
         assertTrue(Thread.getDefaultUncaughtExceptionHandler() instanceof UncaughtExceptionHandler);
         Crashes.setEnabled(true);
         assertTrue(Crashes.isEnabled());
-        verify(mockChannel).addGroup(eq(crashes.getGroupName()), anyInt(), anyInt(), anyInt(), any(Channel.GroupListener.class));
+        verify(mockChannel).addGroup(eq(crashes.getGroupName()), anyInt(), anyInt(), anyInt(), isNull(SendPolicy.class), any(Channel.GroupListener.class));
         Crashes.trackException(EXCEPTION);
         verify(mockChannel, times(1)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
     }
 
+    @Test
+    public void errorAttachmentsNotAvailable() {
+        Crashes crashes = Crashes.getInstance();
+        assertFalse(crashes.getLogFactories().containsKey(ErrorAttachmentChunkLog.TYPE));
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        mockStatic(ErrorLogHelper.class);
+        File dir = mock(File.class);
+        when(dir.listFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(dir);
+        Crashes.setEnabled(false);
+        Crashes.setEnabled(true);
+        verify(mockChannel, never()).addGroup(eq(ErrorAttachmentUploader.ATTACHMENT_GROUP), anyInt(), anyInt(), anyInt(), any(Channel.GroupListener.class));
+        verify(mockChannel, never()).removeGroup(ErrorAttachmentUploader.ATTACHMENT_GROUP);
+        verify(mockChannel, never()).clear(ErrorAttachmentUploader.ATTACHMENT_GROUP);
+    }
+
     @Test
     public void setEnabledWithoutContext() {
         Crashes crashes = Crashes.getInstance();
@@ -289,7 +336,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ThrowableCodec.read(any(File.class))).thenReturn(new RuntimeException());
 
         /* TODO (getErrorAttachment): Re-enable error attachment when the feature becomes available. */
 //        ErrorAttachment mockAttachment = mock(ErrorAttachment.class);
@@ -321,6 +368,153 @@ public class CrashesTest {
         }), eq(crashes.getGroupName()));
     }
 
+    @Test
+    public void queuePendingCrashesInParallel() throws IOException, JSONException {
+        final int fileCount = 5;
+        final File[] files = new File[fileCount];
+        for (int i = 0; i < fileCount; i++)
+            files[i] = mock(File.class);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(files);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ThrowableCodec.read(any(File.class))).thenReturn(new RuntimeException());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenAnswer(new Answer<ErrorReport>() {
+
+            @Override
+            public ErrorReport answer(InvocationOnMock invocation) throws Throwable {
+                ErrorReport report = new ErrorReport();
+                report.setId(((ManagedErrorLog) invocation.getArguments()[0]).getId().toString());
+                return report;
+            }
+        });
+
+        /* First files take longer to load. */
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                int index = Arrays.asList(files).indexOf(invocation.getArguments()[0]);
+                Thread.sleep((fileCount - index) * 20);
+                return String.valueOf(index);
+            }
+        });
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                ManagedErrorLog errorLog = new ManagedErrorLog();
+                errorLog.setId(new UUID(0, Long.parseLong((String) invocation.getArguments()[0])));
+                return errorLog;
+            }
+        });
+
+        /* Process all but one. */
+        final UUID ignoredId = new UUID(0, 2);
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(any(ErrorReport.class))).thenAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return !ignoredId.toString().equals(((ErrorReport) invocation.getArguments()[0]).getId());
+            }
+        });
+        when(mockListener.shouldAwaitUserConfirmation()).thenReturn(true);
+        Crashes crashes = Crashes.getInstance();
+        Whitebox.setInternalState(crashes, "mPendingErrorThreadCount", 3);
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+
+        /* Listener is called in file order. */
+        InOrder inOrder = inOrder(mockListener);
+        for (int i = 0; i < fileCount; i++) {
+            final String id = new UUID(0, i).toString();
+            inOrder.verify(mockListener).shouldProcess(argThat(new ArgumentMatcher<ErrorReport>() {
+
+                @Override
+                public boolean matches(Object argument) {
+                    return id.equals(((ErrorReport) argument).getId());
+                }
+            }));
+        }
+        inOrder.verify(mockListener).shouldAwaitUserConfirmation();
+        Set<UUID> unprocessedErrorIds = Whitebox.getInternalState(crashes, "mUnprocessedErrorIds");
+        assertEquals(fileCount - 1, unprocessedErrorIds.size());
+        assertFalse(unprocessedErrorIds.contains(ignoredId));
+        verifyStatic();
+        ErrorLogHelper.removeStoredErrorLogFile(ignoredId);
+    }
+
+    @Test
+    public void queuePendingCrashesBeyondCacheLimits() throws IOException, JSONException {
+        final int fileCount = Crashes.MAX_CACHED_ERROR_REPORTS + 2;
+        final File[] files = new File[fileCount];
+        for (int i = 0; i < fileCount; i++)
+            files[i] = mock(File.class);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(files);
+        when(ErrorLogHelper.getStoredErrorLogFile(any(UUID.class))).thenAnswer(new Answer<File>() {
+
+            @Override
+            public File answer(InvocationOnMock invocation) throws Throwable {
+                return files[(int) ((UUID) invocation.getArguments()[0]).getLeastSignificantBits()];
+            }
+        });
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ThrowableCodec.read(any(File.class))).thenReturn(new RuntimeException());
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
+        when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                return String.valueOf(Arrays.asList(files).indexOf(invocation.getArguments()[0]));
+            }
+        });
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.deserializeLog(anyString())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                ManagedErrorLog errorLog = new ManagedErrorLog();
+                errorLog.setId(new UUID(0, Long.parseLong((String) invocation.getArguments()[0])));
+                return errorLog;
+            }
+        });
+        CrashesListener mockListener = mock(CrashesListener.class);
+        when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
+        when(mockListener.shouldAwaitUserConfirmation()).thenReturn(false);
+        Channel mockChannel = mock(Channel.class);
+        Crashes crashes = Crashes.getInstance();
+        Whitebox.setInternalState(crashes, "mPendingErrorThreadCount", 1);
+        crashes.setLogSerializer(logSerializer);
+        crashes.setInstanceListener(mockListener);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+
+        /* All logs are sent in order, the evicted ones being read again from storage. */
+        InOrder inOrder = inOrder(mockChannel);
+        for (int i = 0; i < fileCount; i++) {
+            final UUID id = new UUID(0, i);
+            inOrder.verify(mockChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+                @Override
+                public boolean matches(Object argument) {
+                    return id.equals(((ManagedErrorLog) argument).getId());
+                }
+            }), eq(Crashes.ERROR_GROUP));
+        }
+        Set<UUID> unprocessedErrorIds = Whitebox.getInternalState(crashes, "mUnprocessedErrorIds");
+        assertEquals(0, unprocessedErrorIds.size());
+        verifyStatic(times(2));
+        StorageHelper.InternalStorage.read(files[0]);
+        verifyStatic(times(2));
+        StorageHelper.InternalStorage.read(files[1]);
+        verifyStatic();
+        StorageHelper.InternalStorage.read(files[2]);
+        Map<UUID, ?> errorReportCache = Whitebox.getInternalState(crashes, "mErrorReportCache");
+        assertEquals(Crashes.MAX_CACHED_ERROR_REPORTS, errorReportCache.size());
+    }
+
     @Test
     public void queuePendingCrashesShouldNotProcess() throws IOException, ClassNotFoundException, JSONException {
         Context mockContext = mock(Context.class);
@@ -333,7 +527,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException()).thenReturn(new byte[]{});
+        when(ThrowableCodec.read(any(File.class))).thenReturn(new RuntimeException());
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(report)).thenReturn(false);
@@ -366,7 +560,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(report);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(new RuntimeException());
+        when(ThrowableCodec.read(any(File.class))).thenReturn(new RuntimeException());
         when(StorageHelper.PreferencesStorage.getBoolean(eq(Crashes.PREF_KEY_ALWAYS_SEND), anyBoolean())).thenReturn(true);
 
         CrashesListener mockListener = mock(CrashesListener.class);
@@ -432,7 +626,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(EXCEPTION);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenAnswer(new Answer<String>() {
             @Override
             public String answer(InvocationOnMock invocation) throws Throwable {
@@ -492,7 +686,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport1);
         when(ErrorLogHelper.getErrorReportFromErrorLog(errorLog, EXCEPTION)).thenReturn(errorReport2);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(EXCEPTION);
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
 
         Crashes crashes = Crashes.getInstance();
@@ -500,7 +694,7 @@ public class CrashesTest {
         crashes.setInstanceListener(listener);
         crashes.onStarted(mock(Context.class), "", channel);
 
-        verify(mMockLooper).quit();
+        verify(mMockLooper, never()).quit();
         verify(listener, times(2)).shouldProcess(any(ErrorReport.class));
         verify(listener).shouldAwaitUserConfirmation();
         verify(channel).enqueue(any(Log.class), anyString());
@@ -609,6 +803,237 @@ public class CrashesTest {
         verify(mockListener, never()).onSendingFailed(any(ErrorReport.class), eq(EXCEPTION));
     }
 
+    @Test
+    public void trackExceptionsAsynchronously() {
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+
+        /* Hold posted runnables. */
+        Handler handler = Whitebox.getInternalState(crashes, "mHandler");
+        final List<Runnable> runnables = new ArrayList<>();
+        doAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                runnables.add((Runnable) invocation.getArguments()[0]);
+                return true;
+            }
+        }).when(handler).post(any(Runnable.class));
+
+        /* Nothing is built on the calling thread. */
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                ManagedErrorLog errorLog = new ManagedErrorLog();
+                com.microsoft.azure.mobile.crashes.ingestion.models.Exception exception = new com.microsoft.azure.mobile.crashes.ingestion.models.Exception();
+                exception.setMessage(((Throwable) invocation.getArguments()[2]).getMessage());
+                errorLog.setException(exception);
+                return errorLog;
+            }
+        });
+        when(ErrorLogHelper.getFingerprint(any(Throwable.class))).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                return (long) invocation.getArguments()[0].getClass().getName().hashCode();
+            }
+        });
+        for (int i = 0; i < Crashes.MAX_PENDING_TRACKED_EXCEPTIONS - 2; i++)
+            Crashes.trackException(EXCEPTION);
+        for (int i = 0; i < 2; i++)
+            Crashes.trackException(new IllegalStateException("other"));
+        Crashes.trackException(new IllegalStateException("dropped"));
+        verifyStatic(never());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean());
+        verify(mockChannel, never()).enqueue(any(Log.class), anyString());
+        assertEquals(1, runnables.size());
+
+        /* Repeats of the same fingerprint are sent once, the queue is bounded. */
+        runnables.remove(0).run();
+        verify(mockChannel, times(2)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+        verify(mockChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return EXCEPTION.getMessage().equals(((ManagedErrorLog) item).getException().getMessage());
+            }
+        }), eq(crashes.getGroupName()));
+        verify(mockChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return "other".equals(((ManagedErrorLog) item).getException().getMessage());
+            }
+        }), eq(crashes.getGroupName()));
+
+        /* Same fingerprint with another message is not sent again within the window. */
+        when(SystemClock.elapsedRealtime()).thenReturn(crashes.getInitializeTimestamp() + 42);
+        for (int i = 0; i < 2; i++)
+            Crashes.trackException(new IllegalStateException("other " + i));
+        Crashes.trackException(EXCEPTION);
+        assertEquals(1, runnables.size());
+        runnables.remove(0).run();
+        verify(mockChannel, times(2)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+
+        /* Queue accepts exceptions again, sent after the window with the repeats of the closed window, time is the one of tracking. */
+        final long appLaunchTOffset = Crashes.TRACKED_EXCEPTION_WINDOW + 42;
+        when(SystemClock.elapsedRealtime()).thenReturn(crashes.getInitializeTimestamp() + appLaunchTOffset);
+        Crashes.trackException(EXCEPTION);
+        when(SystemClock.elapsedRealtime()).thenReturn(crashes.getInitializeTimestamp() + appLaunchTOffset + 1000);
+        assertEquals(1, runnables.size());
+        runnables.remove(0).run();
+        verify(mockChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return Long.valueOf(appLaunchTOffset).equals(((ManagedErrorLog) item).getAppLaunchTOffset()) && ((ManagedErrorLog) item).getOccurrenceCount() == null;
+            }
+        }), eq(crashes.getGroupName()));
+        verify(mockChannel).enqueue(argThat(new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return Integer.valueOf(Crashes.MAX_PENDING_TRACKED_EXCEPTIONS - 2).equals(((ManagedErrorLog) item).getOccurrenceCount());
+            }
+        }), eq(crashes.getGroupName()));
+        verify(mockChannel, times(4)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+    }
+
+    @Test
+    public void recentTrackedExceptionsAreBounded() {
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                return new ManagedErrorLog();
+            }
+        });
+        when(ErrorLogHelper.getFingerprint(any(Throwable.class))).thenAnswer(new Answer<Long>() {
+
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                return Long.valueOf(((Throwable) invocation.getArguments()[0]).getMessage());
+            }
+        });
+
+        /* Each fingerprint is sent once, the repeat of the forgotten one when it is forgotten. */
+        for (int i = 0; i <= Crashes.MAX_RECENT_TRACKED_EXCEPTIONS; i++) {
+            Crashes.trackException(new IllegalStateException(String.valueOf(i)));
+            Crashes.trackException(new IllegalStateException(String.valueOf(i)));
+        }
+        verify(mockChannel, times(Crashes.MAX_RECENT_TRACKED_EXCEPTIONS + 2)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+
+        /* The least recently seen fingerprint was forgotten, the most recent one was not. */
+        Crashes.trackException(new IllegalStateException(String.valueOf(Crashes.MAX_RECENT_TRACKED_EXCEPTIONS)));
+        Crashes.trackException(new IllegalStateException("0"));
+        verify(mockChannel, times(Crashes.MAX_RECENT_TRACKED_EXCEPTIONS + 4)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+    }
+
+    @Test
+    public void trackedExceptionRepeatsAggregated() throws IOException {
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenAnswer(new Answer<ManagedErrorLog>() {
+
+            @Override
+            public ManagedErrorLog answer(InvocationOnMock invocation) throws Throwable {
+                return new ManagedErrorLog();
+            }
+        });
+        ArgumentMatcher<Log> aggregated = new ArgumentMatcher<Log>() {
+
+            @Override
+            public boolean matches(Object item) {
+                return Integer.valueOf(2).equals(((ManagedErrorLog) item).getOccurrenceCount());
+            }
+        };
+
+        /* Repeats are sent as one log when the window expires. */
+        Handler handler = Whitebox.getInternalState(crashes, "mHandler");
+        for (int i = 0; i < 3; i++)
+            Crashes.trackException(EXCEPTION);
+        verify(mockChannel).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+        ArgumentCaptor<Runnable> closeRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(closeRunnable.capture(), eq(Crashes.TRACKED_EXCEPTION_WINDOW));
+        closeRunnable.getValue().run();
+        verify(mockChannel).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+        when(SystemClock.elapsedRealtime()).thenReturn(crashes.getInitializeTimestamp() + Crashes.TRACKED_EXCEPTION_WINDOW);
+        closeRunnable.getValue().run();
+        verify(mockChannel).enqueue(argThat(aggregated), eq(crashes.getGroupName()));
+        verify(mockChannel, times(2)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+
+        /* And when saving a crash, only recorded for next launch without building a log. */
+        for (int i = 0; i < 3; i++)
+            Crashes.trackException(EXCEPTION);
+        verify(mockChannel, times(3)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+        CrashRecorder crashRecorder = mock(CrashRecorder.class);
+        when(crashRecorder.record(any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong())).thenReturn(UUIDUtils.randomUUID());
+        Whitebox.setInternalState(crashes, "mCrashRecorder", crashRecorder);
+        crashes.saveUncaughtException(Thread.currentThread(), new TestCrashException());
+        verify(crashRecorder).recordTrackedException(eq(Thread.currentThread()), eq(EXCEPTION), any(StackTraceElement[].class), anyLong(), anyLong(), eq(2));
+        verifyStatic(times(3));
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean());
+        verify(mockChannel, times(3)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+
+        /* The window was closed by the crash. */
+        Crashes.trackException(EXCEPTION);
+        verify(mockChannel, times(4)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+
+        /* Each occurrence is sent when aggregation is disabled. */
+        Crashes.setTrackedExceptionAggregationEnabled(false);
+        for (int i = 0; i < 3; i++)
+            Crashes.trackException(EXCEPTION);
+        verify(mockChannel, times(7)).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+        verify(mockChannel).enqueue(argThat(aggregated), eq(crashes.getGroupName()));
+    }
+
+    @Test
+    public void trackedExceptionsDroppedOnCrashWithoutRecorder() throws IOException {
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUIDUtils.randomUUID());
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenReturn(errorLog);
+        for (int i = 0; i < 2; i++)
+            Crashes.trackException(EXCEPTION);
+        Whitebox.setInternalState(crashes, "mCrashRecorder", (Object) null);
+        crashes.saveUncaughtException(Thread.currentThread(), new TestCrashException());
+        verify(mockChannel).enqueue(any(ManagedErrorLog.class), eq(crashes.getGroupName()));
+    }
+
+    @Test
+    public void savedTrackedExceptionsSentOnStart() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        when(ErrorLogHelper.readTrackedExceptionRecords()).thenReturn(singletonList(errorLog));
+        Crashes crashes = Crashes.getInstance();
+        Channel mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        verify(mockChannel).enqueue(errorLog, crashes.getGroupName());
+
+        /* Not when disabled. */
+        Crashes.unsetInstance();
+        when(StorageHelper.PreferencesStorage.getBoolean(CRASHES_ENABLED_KEY, true)).thenReturn(false);
+        crashes = Crashes.getInstance();
+        mockChannel = mock(Channel.class);
+        crashes.onStarted(mock(Context.class), "", mockChannel);
+        verify(mockChannel, never()).enqueue(any(Log.class), anyString());
+    }
+
     @Test
     public void trackExceptionForWrapperSdk() {
         StackFrame frame = new StackFrame();
@@ -646,7 +1071,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(EXCEPTION);
 
         Crashes.setListener(new AbstractCrashesListener() {
             @Override
@@ -678,7 +1103,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(null);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         Crashes crashes = Crashes.getInstance();
@@ -705,7 +1130,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(new ErrorReport());
         when(StorageHelper.InternalStorage.read(any(File.class))).thenReturn("");
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
@@ -723,7 +1148,7 @@ public class CrashesTest {
 
         /* TODO (getErrorAttachment): Re-enable error attachment when the feature becomes available. */
 //        verify(mockListener, never()).getErrorAttachment(any(ErrorReport.class));
-        verify(mMockLooper).quit();
+        verify(mMockLooper, never()).quit();
 
         verifyStatic();
         ErrorLogHelper.removeStoredErrorLogFile(mErrorLog.getId());
@@ -744,7 +1169,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(null);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(null);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(null);
 
         CrashesListener mockListener = mock(CrashesListener.class);
         when(mockListener.shouldProcess(any(ErrorReport.class))).thenReturn(true);
@@ -759,7 +1184,7 @@ public class CrashesTest {
 
         Crashes.notifyUserConfirmation(Crashes.ALWAYS_SEND);
 
-        verify(mMockLooper).quit();
+        verify(mMockLooper, never()).quit();
         verifyStatic();
         StorageHelper.PreferencesStorage.putBoolean(Crashes.PREF_KEY_ALWAYS_SEND, true);
     }
@@ -773,7 +1198,7 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class)).thenReturn(null);
         when(ErrorLogHelper.getErrorReportFromErrorLog(mErrorLog, EXCEPTION)).thenReturn(errorReport);
 
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(EXCEPTION);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(EXCEPTION);
 
         Crashes crashes = Crashes.getInstance();
         ErrorReport report = crashes.buildErrorReport(mErrorLog);
@@ -791,23 +1216,57 @@ public class CrashesTest {
         when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
         when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenReturn(null);
 
-        Exception classNotFoundException = mock(ClassNotFoundException.class);
         Exception ioException = mock(IOException.class);
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenThrow(classNotFoundException).thenThrow(ioException);
+        when(ThrowableCodec.read(any(File.class))).thenThrow(ioException);
 
         Crashes crashes = Crashes.getInstance();
 
         ErrorReport report = crashes.buildErrorReport(mErrorLog);
         assertNull(report);
-        report = crashes.buildErrorReport(mErrorLog);
-        assertNull(report);
 
-        verifyStatic();
-        MobileCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(classNotFoundException));
         verifyStatic();
         MobileCenterLog.error(eq(Crashes.LOG_TAG), anyString(), eq(ioException));
     }
 
+    @Test
+    public void buildErrorReportCacheIsBoundedByFrames() throws IOException {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredThrowableFile(any(UUID.class))).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getErrorReportFromErrorLog(any(ManagedErrorLog.class), any(Throwable.class))).thenAnswer(new Answer<ErrorReport>() {
+
+            @Override
+            public ErrorReport answer(InvocationOnMock invocation) throws Throwable {
+                return new ErrorReport();
+            }
+        });
+        when(ThrowableCodec.read(any(File.class))).thenReturn(EXCEPTION);
+        ManagedErrorLog firstLog = createErrorLogWithFrames(Crashes.MAX_CACHED_ERROR_REPORT_FRAMES / 2);
+        ManagedErrorLog secondLog = createErrorLogWithFrames(Crashes.MAX_CACHED_ERROR_REPORT_FRAMES / 2);
+        ManagedErrorLog thirdLog = createErrorLogWithFrames(Crashes.MAX_CACHED_ERROR_REPORT_FRAMES / 2);
+        ManagedErrorLog largeLog = createErrorLogWithFrames(Crashes.MAX_CACHED_ERROR_REPORT_FRAMES + 1);
+        Crashes crashes = Crashes.getInstance();
+
+        /* The third report evicts the least recently used one. */
+        ErrorReport firstReport = crashes.buildErrorReport(firstLog);
+        ErrorReport secondReport = crashes.buildErrorReport(secondLog);
+        crashes.buildErrorReport(thirdLog);
+        assertSame(secondReport, crashes.buildErrorReport(secondLog));
+        assertNotSame(firstReport, crashes.buildErrorReport(firstLog));
+        verifyStatic(times(4));
+        ThrowableCodec.read(any(File.class));
+
+        /* A report over the limit is kept alone. */
+        ErrorReport largeReport = crashes.buildErrorReport(largeLog);
+        assertSame(largeReport, crashes.buildErrorReport(largeLog));
+        Map<UUID, ?> errorReportCache = Whitebox.getInternalState(crashes, "mErrorReportCache");
+        assertEquals(1, errorReportCache.size());
+
+        /* Removing a report releases its frames. */
+        crashes.getChannelListener().onSuccess(largeLog);
+        assertEquals(0, errorReportCache.size());
+        assertEquals(0, Whitebox.getInternalState(crashes, "mErrorReportCacheFrameCount"));
+    }
+
     @Test
     public void defaultErrorReportingListener() {
         Crashes crashes = Crashes.getInstance();
@@ -928,7 +1387,7 @@ public class CrashesTest {
                 return "";
             }
         });
-        when(StorageHelper.InternalStorage.readObject(any(File.class))).thenReturn(throwable);
+        when(ThrowableCodec.read(any(File.class))).thenReturn(throwable);
 
         Crashes.getInstance().setLogSerializer(logSerializer);
         assertFalse(Crashes.hasCrashedInLastSession());
@@ -1064,6 +1523,7 @@ public class CrashesTest {
     @Test
     public void getLastSessionCrashReportInterrupted() throws Exception {
         CountDownLatch latch = mock(CountDownLatch.class);
+        when(latch.getCount()).thenReturn(1L);
         whenNew(CountDownLatch.class).withAnyArguments().thenReturn(latch);
         doThrow(new InterruptedException()).when(latch).await();
 
@@ -1103,6 +1563,32 @@ public class CrashesTest {
         Crashes.getInstance().onStarted(mock(Context.class), "", mock(Channel.class));
     }
 
+    @Test
+    public void hasLastSessionCrashReportBeforeLookingForIt() {
+        mockStatic(ErrorLogHelper.class);
+        Crashes crashes = Crashes.getInstance();
+
+        /* Hold posted runnables, the last session is not looked at yet and it does not block. */
+        Handler handler = Whitebox.getInternalState(crashes, "mHandler");
+        final List<Runnable> runnables = new ArrayList<>();
+        doAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                runnables.add((Runnable) invocation.getArguments()[0]);
+                return true;
+            }
+        }).when(handler).post(any(Runnable.class));
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        assertTrue(Crashes.hasCrashedInLastSession());
+
+        /* No error log found. */
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        for (Runnable runnable : runnables)
+            runnable.run();
+        assertFalse(Crashes.hasCrashedInLastSession());
+    }
+
     @Test
     public void setWrapperSdkListener() {
         mockStatic(ErrorLogHelper.class);
@@ -1116,6 +1602,64 @@ public class CrashesTest {
         verify(wrapperSdkListener).onCrashCaptured(errorLog);
     }
 
+    @Test
+    public void saveUncaughtExceptionAsCrashRecord() throws IOException {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        UUID id = UUIDUtils.randomUUID();
+        Throwable exception = new TestCrashException();
+        CrashRecorder crashRecorder = mock(CrashRecorder.class);
+        when(crashRecorder.record(eq(Thread.currentThread()), eq(exception), anyMapOf(Thread.class, StackTraceElement[].class), anyLong())).thenReturn(id);
+        Whitebox.setInternalState(Crashes.getInstance(), "mCrashRecorder", crashRecorder);
+        Crashes.getInstance().saveUncaughtException(Thread.currentThread(), exception);
+
+        /* No error log built at crash time, only the throwable is saved next to the record. */
+        verify(crashRecorder).record(eq(Thread.currentThread()), eq(exception), anyMapOf(Thread.class, StackTraceElement[].class), anyLong());
+        verifyStatic();
+        ErrorLogHelper.getThreadStackTraces(Thread.currentThread(), ThreadCapturePolicy.DEFAULT);
+        verifyStatic(never());
+        ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean());
+        verifyStatic();
+        ThrowableCodec.write(new File(errorStorageDirectory.getRoot(), id + ErrorLogHelper.THROWABLE_FILE_EXTENSION), exception);
+
+        /* Wrapper SDKs still get the error log, captured with the custom thread policy. */
+        ThreadCapturePolicy policy = new ThreadCapturePolicy(10, 10, true);
+        Crashes.setThreadCapturePolicy(policy);
+
+        /* Null is rejected and the policy kept. */
+        Crashes.setThreadCapturePolicy(null);
+        ManagedErrorLog errorLog = new ManagedErrorLog();
+        errorLog.setId(UUIDUtils.randomUUID());
+        when(ErrorLogHelper.createErrorLog(any(Context.class), any(Thread.class), any(Throwable.class), anyMapOf(Thread.class, StackTraceElement[].class), anyLong(), anyBoolean())).thenReturn(errorLog);
+        Crashes.getInstance().setLogSerializer(mock(LogSerializer.class));
+        Crashes.WrapperSdkListener wrapperSdkListener = mock(Crashes.WrapperSdkListener.class);
+        Crashes.getInstance().setWrapperSdkListener(wrapperSdkListener);
+        Crashes.getInstance().saveUncaughtException(Thread.currentThread(), exception);
+        verify(wrapperSdkListener).onCrashCaptured(errorLog);
+        verifyNoMoreInteractions(crashRecorder);
+        verifyStatic();
+        ErrorLogHelper.getThreadStackTraces(Thread.currentThread(), policy);
+    }
+
+    @Test
+    public void crashRecorderCreatedOnStart() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory.getRoot());
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        Crashes crashes = Crashes.getInstance();
+        assertNull(Whitebox.getInternalState(crashes, "mCrashRecorder"));
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        assertNotNull(Whitebox.getInternalState(crashes, "mCrashRecorder"));
+
+        /* Crash records are converted before processing error logs. */
+        verifyStatic();
+        ErrorLogHelper.convertCrashRecords(any(LogSerializer.class));
+
+        /* Disabling drops the recorder. */
+        Crashes.setEnabled(false);
+        assertNull(Whitebox.getInternalState(crashes, "mCrashRecorder"));
+    }
+
     @Test
     public void saveWrapperSdkErrorLogJSONException() throws JSONException {
         mockStatic(MobileCenterLog.class);
@@ -1144,4 +1688,124 @@ public class CrashesTest {
         verifyStatic();
         MobileCenterLog.error(anyString(), anyString(), any(IOException.class));
     }
+
+    @Test
+    public void crashLoopDefersPendingErrors() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+
+        /* Previous launch started at 42000 and saved an error log before completing startup. */
+        File lastErrorLogFile = mock(File.class);
+        when(lastErrorLogFile.lastModified()).thenReturn(42000L);
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(StorageHelper.PreferencesStorage.getInt(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT, 0)).thenReturn(Crashes.CRASH_LOOP_LAUNCH_COUNT - 1);
+        when(StorageHelper.PreferencesStorage.getLong(Crashes.PREF_KEY_LAUNCH_TIME, -1)).thenReturn(42123L);
+        Crashes crashes = Crashes.getInstance();
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        assertTrue(Crashes.isInCrashLoop());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.putInt(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT, Crashes.CRASH_LOOP_LAUNCH_COUNT);
+        verifyStatic();
+        StorageHelper.PreferencesStorage.putLong(eq(Crashes.PREF_KEY_LAUNCH_TIME), anyLong());
+        verifyStatic(never());
+        ErrorLogHelper.getStoredErrorLogFiles();
+
+        /* The last session crash is known, but neither converted nor read yet. */
+        assertTrue(Crashes.hasCrashedInLastSession());
+        verifyStatic(never());
+        ErrorLogHelper.convertCrashRecords(any(LogSerializer.class));
+        verifyStatic(never());
+        StorageHelper.InternalStorage.read(any(File.class));
+
+        /* Pending errors and the last session crash are processed once startup completes. */
+        Handler handler = Whitebox.getInternalState(crashes, "mHandler");
+        ArgumentCaptor<Runnable> startupCompleted = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(startupCompleted.capture(), eq(Crashes.STARTUP_DURATION));
+        startupCompleted.getValue().run();
+        assertFalse(Crashes.isInCrashLoop());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT);
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove(Crashes.PREF_KEY_LAUNCH_TIME);
+        verifyStatic();
+        ErrorLogHelper.getStoredErrorLogFiles();
+        verifyStatic(times(2));
+        ErrorLogHelper.convertCrashRecords(any(LogSerializer.class));
+        verifyStatic();
+        StorageHelper.InternalStorage.read(lastErrorLogFile);
+        assertFalse(Crashes.hasCrashedInLastSession());
+    }
+
+    @Test
+    public void errorStorageNotReadOnStartingThread() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(StorageHelper.PreferencesStorage.getLong(Crashes.PREF_KEY_LAUNCH_TIME, -1)).thenReturn(42123L);
+
+        /* Hold posted runnables. */
+        Crashes crashes = Crashes.getInstance();
+        Handler handler = Whitebox.getInternalState(crashes, "mHandler");
+        final List<Runnable> runnables = new ArrayList<>();
+        doAnswer(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                runnables.add((Runnable) invocation.getArguments()[0]);
+                return true;
+            }
+        }).when(handler).post(any(Runnable.class));
+        crashes.onStarted(mock(Context.class), "", mock(Channel.class));
+        verifyStatic(never());
+        ErrorLogHelper.getLastErrorLogFile();
+        verifyStatic(never());
+        ErrorLogHelper.convertCrashRecords(any(LogSerializer.class));
+
+        /* Both crash loop detection and the last session crash report look for the last error log. */
+        for (Runnable runnable : runnables)
+            runnable.run();
+        verifyStatic(times(2));
+        ErrorLogHelper.getLastErrorLogFile();
+        assertFalse(Crashes.hasCrashedInLastSession());
+    }
+
+    @Test
+    public void noCrashLoopIfPreviousLaunchCompletedStartup() {
+        mockStatic(ErrorLogHelper.class);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(mock(File.class));
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+        when(StorageHelper.PreferencesStorage.getInt(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT, 0)).thenReturn(Crashes.CRASH_LOOP_LAUNCH_COUNT);
+        when(StorageHelper.PreferencesStorage.getLong(Crashes.PREF_KEY_LAUNCH_TIME, -1)).thenReturn(-1L);
+        Crashes.getInstance().onStarted(mock(Context.class), "", mock(Channel.class));
+        assertFalse(Crashes.isInCrashLoop());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.putInt(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT, 0);
+        verifyStatic();
+        ErrorLogHelper.getStoredErrorLogFiles();
+    }
+
+    @Test
+    public void noCrashLoopIfPreviousLaunchDidNotCrash() {
+        mockStatic(ErrorLogHelper.class);
+        File errorStorageDirectory = mock(File.class);
+        when(errorStorageDirectory.listFiles()).thenReturn(new File[0]);
+        when(ErrorLogHelper.getErrorStorageDirectory()).thenReturn(errorStorageDirectory);
+        when(ErrorLogHelper.getStoredErrorLogFiles()).thenReturn(new File[0]);
+
+        /* Last error log is older than the previous launch, which was killed during startup for another reason. */
+        File lastErrorLogFile = mock(File.class);
+        when(lastErrorLogFile.lastModified()).thenReturn(41999L);
+        when(ErrorLogHelper.getLastErrorLogFile()).thenReturn(lastErrorLogFile);
+        when(StorageHelper.PreferencesStorage.getInt(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT, 0)).thenReturn(Crashes.CRASH_LOOP_LAUNCH_COUNT);
+        when(StorageHelper.PreferencesStorage.getLong(Crashes.PREF_KEY_LAUNCH_TIME, -1)).thenReturn(42123L);
+        Crashes.getInstance().onStarted(mock(Context.class), "", mock(Channel.class));
+        assertFalse(Crashes.isInCrashLoop());
+        verifyStatic();
+        StorageHelper.PreferencesStorage.putInt(Crashes.PREF_KEY_CRASHING_LAUNCH_COUNT, 0);
+
+        /* Disabling resets detection. */
+        Crashes.setEnabled(false);
+        verifyStatic();
+        StorageHelper.PreferencesStorage.remove(Crashes.PREF_KEY_LAUNCH_TIME);
+    }
 }
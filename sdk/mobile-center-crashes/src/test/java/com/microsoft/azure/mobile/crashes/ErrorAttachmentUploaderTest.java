@@ -0,0 +1,222 @@
+package com.microsoft.azure.mobile.crashes;
+
+import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ErrorAttachmentChunkLog;
+import com.microsoft.azure.mobile.crashes.model.ErrorAttachment;
+import com.microsoft.azure.mobile.crashes.utils.ErrorLogHelper;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.powermock.reflect.Whitebox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("unused")
+public class ErrorAttachmentUploaderTest {
+
+    @Rule
+    public final TemporaryFolder mErrorStorageDirectory = new TemporaryFolder();
+
+    private Channel mChannel;
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) i;
+        return data;
+    }
+
+    private static ErrorAttachmentChunkLog copy(ErrorAttachmentChunkLog chunk) {
+        ErrorAttachmentChunkLog copy = new ErrorAttachmentChunkLog();
+        copy.setErrorId(chunk.getErrorId());
+        copy.setOffset(chunk.getOffset());
+        copy.setSize(chunk.getSize());
+        copy.setData(chunk.getData().clone());
+        return copy;
+    }
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(ErrorLogHelper.class, "sErrorLogDirectory", mErrorStorageDirectory.getRoot());
+        mChannel = mock(Channel.class);
+    }
+
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(ErrorLogHelper.class, "sErrorLogDirectory", (File) null);
+    }
+
+    private File getStateFile(UUID errorId) {
+        return new File(mErrorStorageDirectory.getRoot(), errorId + ErrorLogHelper.ATTACHMENT_STATE_FILE_EXTENSION);
+    }
+
+    private List<ErrorAttachmentChunkLog> verifyChunksEnqueued(int count) {
+        ArgumentCaptor<ErrorAttachmentChunkLog> captor = ArgumentCaptor.forClass(ErrorAttachmentChunkLog.class);
+        verify(mChannel, times(count)).enqueue(captor.capture(), any(String.class));
+        return captor.getAllValues();
+    }
+
+    @Test
+    public void storeBinaryInFile() throws IOException {
+        UUID errorId = UUID.randomUUID();
+        byte[] data = createData(100);
+        ErrorAttachment stored = ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachment("text", data, "file.bin", "application/octet-stream"));
+
+        /* The log only keeps the metadata. */
+        assertNotNull(stored);
+        assertEquals("text", stored.getTextAttachment());
+        assertEquals("file.bin", stored.getBinaryAttachment().getFileName());
+        assertEquals("application/octet-stream", stored.getBinaryAttachment().getContentType());
+        assertNull(stored.getBinaryAttachment().getData());
+        File file = ErrorLogHelper.getStoredAttachmentFile(errorId);
+        assertNotNull(file);
+        assertEquals(data.length, file.length());
+
+        /* Text only attachments are not changed. */
+        ErrorAttachment textAttachment = ErrorAttachments.attachmentWithText("text");
+        assertEquals(textAttachment, ErrorAttachmentUploader.store(UUID.randomUUID(), textAttachment));
+    }
+
+    @Test
+    public void storeTooLarge() {
+        UUID errorId = UUID.randomUUID();
+        byte[] data = new byte[ErrorAttachmentUploader.MAX_ATTACHMENT_SIZE + 1];
+        ErrorAttachment stored = ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachment("text", data, "file.bin", "application/octet-stream"));
+        assertNotNull(stored);
+        assertEquals("text", stored.getTextAttachment());
+        assertNull(stored.getBinaryAttachment());
+        assertNull(ErrorLogHelper.getStoredAttachmentFile(errorId));
+        assertNull(ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachmentWithBinary(data, "file.bin", "application/octet-stream")));
+    }
+
+    @Test
+    public void sendInChunks() throws IOException {
+        UUID errorId = UUID.randomUUID();
+        byte[] data = createData(ErrorAttachmentUploader.CHUNK_SIZE * 2 + 10);
+        ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachmentWithBinary(data, "file.bin", "application/octet-stream"));
+        ErrorAttachmentUploader uploader = new ErrorAttachmentUploader();
+        uploader.start(mChannel);
+        verifyChunksEnqueued(0);
+
+        /* Chunks are sent one at a time once the error log is sent, the channel giving back copies. */
+        uploader.onErrorLogSent(errorId);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        for (int i = 1; i <= 3; i++) {
+            ErrorAttachmentChunkLog chunk = verifyChunksEnqueued(i).get(i - 1);
+            assertEquals(errorId, chunk.getErrorId());
+            assertEquals(sent.size(), chunk.getOffset());
+            assertEquals(data.length, chunk.getSize());
+            sent.write(chunk.getData());
+            uploader.onSuccess(copy(chunk));
+        }
+        assertArrayEquals(data, sent.toByteArray());
+        verifyChunksEnqueued(3);
+        assertNull(ErrorLogHelper.getStoredAttachmentFile(errorId));
+        assertFalse(getStateFile(errorId).exists());
+    }
+
+    @Test
+    public void retryAndDiscard() {
+        UUID errorId = UUID.randomUUID();
+        byte[] data = createData(ErrorAttachmentUploader.CHUNK_SIZE + 1);
+        ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachmentWithBinary(data, "file.bin", "application/octet-stream"));
+        ErrorAttachmentUploader uploader = new ErrorAttachmentUploader();
+        uploader.start(mChannel);
+        uploader.onErrorLogSent(errorId);
+        uploader.onSuccess(verifyChunksEnqueued(1).get(0));
+
+        /* The second chunk is tried again until too many failures. */
+        for (int i = 1; i < ErrorAttachmentUploader.MAX_CHUNK_ATTEMPTS; i++) {
+            ErrorAttachmentChunkLog chunk = verifyChunksEnqueued(i + 1).get(i);
+            assertEquals(ErrorAttachmentUploader.CHUNK_SIZE, chunk.getOffset());
+            uploader.onFailure(chunk, new IOException());
+        }
+        ErrorAttachmentChunkLog lastChunk = verifyChunksEnqueued(ErrorAttachmentUploader.MAX_CHUNK_ATTEMPTS + 1).get(ErrorAttachmentUploader.MAX_CHUNK_ATTEMPTS);
+        assertEquals(ErrorAttachmentUploader.CHUNK_SIZE, lastChunk.getOffset());
+        uploader.onFailure(lastChunk, new IOException());
+        verifyChunksEnqueued(ErrorAttachmentUploader.MAX_CHUNK_ATTEMPTS + 1);
+        assertNull(ErrorLogHelper.getStoredAttachmentFile(errorId));
+        assertFalse(getStateFile(errorId).exists());
+    }
+
+    @Test
+    public void resumeAfterRestart() throws IOException {
+        UUID errorId = UUID.randomUUID();
+        byte[] data = createData(ErrorAttachmentUploader.CHUNK_SIZE + 1);
+        ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachmentWithBinary(data, "file.bin", "application/octet-stream"));
+        ErrorAttachmentUploader uploader = new ErrorAttachmentUploader();
+        uploader.start(mChannel);
+        uploader.onErrorLogSent(errorId);
+        uploader.onSuccess(verifyChunksEnqueued(1).get(0));
+        verifyChunksEnqueued(2);
+
+        /* A new process sends the chunk that was in flight again. */
+        uploader = new ErrorAttachmentUploader();
+        mChannel = mock(Channel.class);
+        uploader.start(mChannel);
+        ErrorAttachmentChunkLog chunk = verifyChunksEnqueued(1).get(0);
+        assertEquals(ErrorAttachmentUploader.CHUNK_SIZE, chunk.getOffset());
+        assertArrayEquals(Arrays.copyOfRange(data, ErrorAttachmentUploader.CHUNK_SIZE, data.length), chunk.getData());
+        uploader.onSuccess(chunk);
+        assertNull(ErrorLogHelper.getStoredAttachmentFile(errorId));
+
+        /* Invalid state files are deleted. */
+        File invalidStateFile = mErrorStorageDirectory.newFile("invalid" + ErrorLogHelper.ATTACHMENT_STATE_FILE_EXTENSION);
+        new ErrorAttachmentUploader().start(mChannel);
+        assertFalse(invalidStateFile.exists());
+    }
+
+    @Test
+    public void oneChunkInFlight() {
+        UUID firstErrorId = UUID.randomUUID();
+        UUID secondErrorId = UUID.randomUUID();
+        UUID removedErrorId = UUID.randomUUID();
+        for (UUID errorId : Arrays.asList(firstErrorId, secondErrorId, removedErrorId))
+            ErrorAttachmentUploader.store(errorId, ErrorAttachments.attachmentWithBinary(createData(10), "file.bin", "application/octet-stream"));
+        ErrorAttachmentUploader uploader = new ErrorAttachmentUploader();
+        uploader.start(mChannel);
+        uploader.onErrorLogSent(firstErrorId);
+        uploader.onErrorLogSent(secondErrorId);
+        uploader.onErrorLogSent(removedErrorId);
+        uploader.remove(removedErrorId);
+        assertNull(ErrorLogHelper.getStoredAttachmentFile(removedErrorId));
+        ErrorAttachmentChunkLog firstChunk = verifyChunksEnqueued(1).get(0);
+        assertEquals(firstErrorId, firstChunk.getErrorId());
+
+        /* Unknown logs are ignored. */
+        uploader.onSuccess(mock(Log.class));
+        uploader.onBeforeSending(firstChunk);
+        verifyChunksEnqueued(1);
+
+        /* The next attachment is sent after the first one. */
+        uploader.onSuccess(firstChunk);
+        ErrorAttachmentChunkLog secondChunk = verifyChunksEnqueued(2).get(1);
+        assertEquals(secondErrorId, secondChunk.getErrorId());
+
+        /* Stopping keeps files. */
+        uploader.stop();
+        uploader.onSuccess(secondChunk);
+        verifyChunksEnqueued(2);
+        assertNotNull(ErrorLogHelper.getStoredAttachmentFile(secondErrorId));
+    }
+}
@@ -0,0 +1,270 @@
+package com.microsoft.azure.mobile.crashes.utils;
+
+import android.app.ActivityManager;
+import android.app.ActivityManager.RunningAppProcessInfo;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.microsoft.azure.mobile.crashes.ingestion.models.Exception;
+import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
+import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
+import com.microsoft.azure.mobile.crashes.ingestion.models.Thread;
+import com.microsoft.azure.mobile.crashes.model.TestCrashException;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.utils.DeviceInfoHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@SuppressWarnings("unused")
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DeviceInfoHelper.class, Process.class, SystemClock.class, Build.class})
+public class CrashRecorderTest {
+
+    @Rule
+    public final TemporaryFolder mErrorStorageDirectory = new TemporaryFolder();
+
+    private Context mContext;
+
+    private Device mDevice;
+
+    private static File getRecordFile(File directory, UUID id) {
+        return new File(directory, id + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+    }
+
+    private static void assertFramesEqual(StackTraceElement[] expected, List<StackFrame> actual) {
+        assertEquals(ErrorLogHelper.getModelFramesFromStackTrace(expected), actual);
+    }
+
+    @Before
+    public void setUp() throws java.lang.Exception {
+        mockStatic(DeviceInfoHelper.class);
+        mockStatic(Process.class);
+        mockStatic(SystemClock.class);
+        ErrorLogHelper.setErrorLogDirectory(mErrorStorageDirectory.getRoot());
+        when(SystemClock.elapsedRealtime()).thenReturn(1000L);
+        when(Process.myPid()).thenReturn(123);
+
+        /* Mock device. */
+        mDevice = new Device();
+        mDevice.setSdkName("mobilecenter.android");
+        mDevice.setSdkVersion("0.1.0");
+        mDevice.setModel("model");
+        mDevice.setOemName("oem");
+        mDevice.setOsName("Android");
+        mDevice.setOsVersion("7.0");
+        mDevice.setOsApiLevel(24);
+        mDevice.setLocale("en_US");
+        mDevice.setTimeZoneOffset(120);
+        mDevice.setScreenSize("1080x1920");
+        mDevice.setAppVersion("1.0");
+        mDevice.setAppBuild("1");
+        mDevice.setAppNamespace("com.contoso");
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(mDevice);
+
+        /* Mock process name. */
+        mContext = mock(Context.class);
+        ActivityManager activityManager = mock(ActivityManager.class);
+        RunningAppProcessInfo runningAppProcessInfo = new RunningAppProcessInfo(null, 0, null);
+        runningAppProcessInfo.pid = 123;
+        runningAppProcessInfo.processName = "right.process";
+        when(mContext.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(activityManager);
+        when(activityManager.getRunningAppProcesses()).thenReturn(Collections.singletonList(runningAppProcessInfo));
+
+        /* Mock architecture. */
+        Whitebox.setInternalState(Build.VERSION.class, "SDK_INT", 23);
+        Whitebox.setInternalState(Build.class, "SUPPORTED_ABIS", new String[]{"armeabi-v7a", "arm"});
+    }
+
+    @After
+    public void tearDown() {
+        ErrorLogHelper.setErrorLogDirectory(null);
+    }
+
+    @Test
+    public void recordAndRead() throws java.lang.Exception {
+        CrashRecorder crashRecorder = new CrashRecorder(mContext);
+
+        /* Process properties are captured at init. */
+        when(Process.myPid()).thenReturn(456);
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenReturn(null);
+        when(mContext.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(null);
+
+        /* Record. */
+        Throwable throwable = new RuntimeException("crash \u00e9\u4e2d", new IllegalStateException(new TestCrashException()));
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = java.lang.Thread.getAllStackTraces();
+        UUID id = crashRecorder.record(java.lang.Thread.currentThread(), throwable, allStackTraces, 900);
+        File recordFile = getRecordFile(mErrorStorageDirectory.getRoot(), id);
+        assertTrue(recordFile.exists());
+
+        /* Read. */
+        ManagedErrorLog errorLog = CrashRecorder.readErrorLog(recordFile);
+        assertEquals(id, errorLog.getId());
+        assertTrue(System.currentTimeMillis() - errorLog.getToffset() <= 1000);
+        assertEquals(mDevice, errorLog.getDevice());
+        assertEquals(Integer.valueOf(123), errorLog.getProcessId());
+        assertEquals("right.process", errorLog.getProcessName());
+        assertNull(errorLog.getParentProcessId());
+        assertNull(errorLog.getParentProcessName());
+        assertEquals("armeabi-v7a", errorLog.getArchitecture());
+        assertEquals((Long) java.lang.Thread.currentThread().getId(), errorLog.getErrorThreadId());
+        assertEquals(java.lang.Thread.currentThread().getName(), errorLog.getErrorThreadName());
+        assertEquals(Boolean.TRUE, errorLog.getFatal());
+        assertEquals(Long.valueOf(100), errorLog.getAppLaunchTOffset());
+
+        /* Check exceptions. */
+        Exception exception = errorLog.getException();
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            assertNotNull(exception);
+            assertEquals(cause.getClass().getName(), exception.getType());
+            assertEquals(cause.getMessage(), exception.getMessage());
+            assertFramesEqual(cause.getStackTrace(), exception.getFrames());
+            exception = exception.getInnerExceptions() == null ? null : exception.getInnerExceptions().get(0);
+        }
+        assertNull(exception);
+
+        /* Check threads. */
+        assertEquals(allStackTraces.size(), errorLog.getThreads().size());
+        for (Thread thread : errorLog.getThreads()) {
+            java.lang.Thread javaThread = null;
+            for (java.lang.Thread candidate : allStackTraces.keySet())
+                if (candidate.getId() == thread.getId())
+                    javaThread = candidate;
+            assertNotNull(javaThread);
+            assertEquals(javaThread.getName(), thread.getName());
+            assertFramesEqual(allStackTraces.get(javaThread), thread.getFrames());
+        }
+    }
+
+    @Test
+    public void recordAndReadTrackedException() throws java.lang.Exception {
+        CrashRecorder crashRecorder = new CrashRecorder(mContext);
+        Throwable throwable = new IllegalStateException("tracked", new TestCrashException());
+        StackTraceElement[] threadStackTrace = java.lang.Thread.currentThread().getStackTrace();
+        UUID id = crashRecorder.recordTrackedException(java.lang.Thread.currentThread(), throwable, threadStackTrace, 42, 100, 3);
+        File recordFile = new File(mErrorStorageDirectory.getRoot(), id + ErrorLogHelper.TRACKED_EXCEPTION_RECORD_FILE_EXTENSION);
+        ManagedErrorLog errorLog = CrashRecorder.readTrackedErrorLog(recordFile);
+        assertEquals(id, errorLog.getId());
+        assertEquals(42, errorLog.getToffset());
+        assertEquals(Long.valueOf(100), errorLog.getAppLaunchTOffset());
+        assertEquals(mDevice, errorLog.getDevice());
+        assertEquals(Boolean.FALSE, errorLog.getFatal());
+        assertEquals(Integer.valueOf(3), errorLog.getOccurrenceCount());
+        assertEquals(IllegalStateException.class.getName(), errorLog.getException().getType());
+        assertEquals("tracked", errorLog.getException().getMessage());
+        assertEquals(TestCrashException.class.getName(), errorLog.getException().getInnerExceptions().get(0).getType());
+        assertEquals(1, errorLog.getThreads().size());
+        assertFramesEqual(threadStackTrace, errorLog.getThreads().get(0).getFrames());
+
+        /* A single occurrence has no count. */
+        id = crashRecorder.recordTrackedException(java.lang.Thread.currentThread(), throwable, threadStackTrace, 42, 100, 0);
+        recordFile = new File(mErrorStorageDirectory.getRoot(), id + ErrorLogHelper.TRACKED_EXCEPTION_RECORD_FILE_EXTENSION);
+        assertNull(CrashRecorder.readTrackedErrorLog(recordFile).getOccurrenceCount());
+    }
+
+    @Test
+    public void recordLargerThanBuffer() throws java.lang.Exception {
+
+        /* Frames are truncated like for JSON error logs. */
+        StackTraceElement[] stackTrace = new StackTraceElement[ErrorLogHelper.FRAME_LIMIT + 100];
+        for (int i = 0; i < stackTrace.length; i++)
+            stackTrace[i] = new StackTraceElement("com.contoso.ClassName" + i, "method" + i, i % 2 == 0 ? null : "File.java", i);
+        Throwable throwable = new StackOverflowError();
+        throwable.setStackTrace(stackTrace);
+        Map<java.lang.Thread, StackTraceElement[]> allStackTraces = new HashMap<>();
+        allStackTraces.put(java.lang.Thread.currentThread(), stackTrace);
+        CrashRecorder crashRecorder = new CrashRecorder(mContext);
+        UUID id = crashRecorder.record(java.lang.Thread.currentThread(), throwable, allStackTraces, 0);
+        File recordFile = getRecordFile(mErrorStorageDirectory.getRoot(), id);
+        assertTrue(recordFile.length() > CrashRecorder.BUFFER_SIZE * 2);
+        ManagedErrorLog errorLog = CrashRecorder.readErrorLog(recordFile);
+        assertEquals(ErrorLogHelper.FRAME_LIMIT, throwable.getStackTrace().length);
+        assertFramesEqual(throwable.getStackTrace(), errorLog.getException().getFrames());
+        assertNull(errorLog.getException().getMessage());
+        assertFramesEqual(stackTrace, errorLog.getThreads().get(0).getFrames());
+
+        /* Recorder can be reused. */
+        UUID secondId = crashRecorder.record(java.lang.Thread.currentThread(), new TestCrashException(), Collections.<java.lang.Thread, StackTraceElement[]>emptyMap(), 0);
+        ManagedErrorLog secondErrorLog = CrashRecorder.readErrorLog(getRecordFile(mErrorStorageDirectory.getRoot(), secondId));
+        assertEquals(secondId, secondErrorLog.getId());
+        assertEquals(TestCrashException.class.getName(), secondErrorLog.getException().getType());
+        assertEquals(0, secondErrorLog.getThreads().size());
+    }
+
+    @Test
+    public void deviceInfoFailure() throws java.lang.Exception {
+        when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenThrow(new DeviceInfoHelper.DeviceInfoException("mock", new RuntimeException()));
+        when(mContext.getSystemService(Context.ACTIVITY_SERVICE)).thenReturn(null);
+        CrashRecorder crashRecorder = new CrashRecorder(mContext);
+        UUID id = crashRecorder.record(java.lang.Thread.currentThread(), new TestCrashException(), java.lang.Thread.getAllStackTraces(), 0);
+        ManagedErrorLog errorLog = CrashRecorder.readErrorLog(getRecordFile(mErrorStorageDirectory.getRoot(), id));
+        assertNull(errorLog.getDevice());
+        assertNull(errorLog.getProcessName());
+        assertEquals(Integer.valueOf(123), errorLog.getProcessId());
+    }
+
+    @Test
+    public void readTruncatedRecord() throws java.lang.Exception {
+        UUID id = new CrashRecorder(mContext).record(java.lang.Thread.currentThread(), new TestCrashException(), java.lang.Thread.getAllStackTraces(), 0);
+        File recordFile = getRecordFile(mErrorStorageDirectory.getRoot(), id);
+        ManagedErrorLog expectedErrorLog = CrashRecorder.readErrorLog(recordFile);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(recordFile, "rw");
+        randomAccessFile.setLength(recordFile.length() - 1);
+        randomAccessFile.close();
+
+        /* Everything up to the last frame of the last thread is kept. */
+        ManagedErrorLog errorLog = CrashRecorder.readErrorLog(recordFile);
+        assertEquals(id, errorLog.getId());
+        assertEquals(expectedErrorLog.getProcessId(), errorLog.getProcessId());
+        assertEquals(expectedErrorLog.getException(), errorLog.getException());
+        assertEquals(expectedErrorLog.getThreads().size(), errorLog.getThreads().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void readRecordTruncatedBeforeException() throws java.lang.Exception {
+        UUID id = new CrashRecorder(mContext).record(java.lang.Thread.currentThread(), new TestCrashException(), java.lang.Thread.getAllStackTraces(), 0);
+        File recordFile = getRecordFile(mErrorStorageDirectory.getRoot(), id);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(recordFile, "rw");
+        randomAccessFile.setLength(36);
+        randomAccessFile.close();
+        CrashRecorder.readErrorLog(recordFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void readUnsupportedVersion() throws IOException {
+        File recordFile = mErrorStorageDirectory.newFile("record" + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(recordFile));
+        out.writeInt(CrashRecorder.FORMAT_VERSION + 1);
+        out.close();
+        CrashRecorder.readErrorLog(recordFile);
+    }
+}
@@ -7,7 +7,9 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Process;
 import android.os.SystemClock;
+import android.text.TextUtils;
 
+import com.microsoft.azure.mobile.crashes.ThreadCapturePolicy;
 import com.microsoft.azure.mobile.crashes.ingestion.models.Exception;
 import com.microsoft.azure.mobile.crashes.ingestion.models.ManagedErrorLog;
 import com.microsoft.azure.mobile.crashes.ingestion.models.StackFrame;
@@ -15,11 +17,15 @@ import com.microsoft.azure.mobile.crashes.ingestion.models.Thread;
 import com.microsoft.azure.mobile.crashes.model.ErrorReport;
 import com.microsoft.azure.mobile.crashes.model.TestCrashException;
 import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
 import com.microsoft.azure.mobile.utils.DeviceInfoHelper;
 import com.microsoft.azure.mobile.utils.UUIDUtils;
+import com.microsoft.azure.mobile.utils.storage.StorageHelper;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -28,7 +34,16 @@ import org.powermock.reflect.Whitebox;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -37,12 +52,13 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 @SuppressWarnings("unused")
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({DeviceInfoHelper.class, Process.class, SystemClock.class, Build.class, File.class})
+@PrepareForTest({DeviceInfoHelper.class, Process.class, SystemClock.class, Build.class, File.class, TextUtils.class})
 public class ErrorLogHelperTest {
 
     @Before
@@ -230,11 +246,238 @@ public class ErrorLogHelperTest {
         assertNotNull(files);
         assertEquals(0, files.length);
 
-        /* Test getStoredErrorLogFiles. */
-        File file = ErrorLogHelper.getStoredErrorLogFile(UUIDUtils.randomUUID());
-        assertNull(file);
-
         /* Clean up. */
         ErrorLogHelper.setErrorLogDirectory(null);
     }
+
+    @Test
+    public void getStoredFilesById() throws IOException {
+        TemporaryFolder folder = new TemporaryFolder();
+        folder.create();
+        try {
+            ErrorLogHelper.setErrorLogDirectory(folder.getRoot());
+            UUID id = UUIDUtils.randomUUID();
+            assertNull(ErrorLogHelper.getStoredErrorLogFile(id));
+            assertNull(ErrorLogHelper.getStoredThrowableFile(id));
+
+            /* Files of other errors or with other extensions are not returned. */
+            File errorLogFile = folder.newFile(id + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+            File otherFile = folder.newFile(UUIDUtils.randomUUID() + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+            assertEquals(errorLogFile, ErrorLogHelper.getStoredErrorLogFile(id));
+            assertNull(ErrorLogHelper.getStoredThrowableFile(id));
+            File throwableFile = folder.newFile(id + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+            assertEquals(throwableFile, ErrorLogHelper.getStoredThrowableFile(id));
+
+            /* Remove. */
+            ErrorLogHelper.removeStoredErrorLogFile(id);
+            ErrorLogHelper.removeStoredThrowableFile(id);
+            assertFalse(errorLogFile.exists());
+            assertFalse(throwableFile.exists());
+            assertTrue(otherFile.exists());
+            ErrorLogHelper.removeStoredErrorLogFile(id);
+            assertNull(ErrorLogHelper.getStoredErrorLogFile(id));
+        } finally {
+            ErrorLogHelper.setErrorLogDirectory(null);
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void convertCrashRecords() throws java.lang.Exception {
+        TemporaryFolder folder = new TemporaryFolder();
+        folder.create();
+        try {
+            ErrorLogHelper.setErrorLogDirectory(folder.getRoot());
+            Context mockContext = mock(Context.class);
+            when(Process.myPid()).thenReturn(123);
+            when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenThrow(new DeviceInfoHelper.DeviceInfoException("mock", new RuntimeException()));
+            UUID id = new CrashRecorder(mockContext).record(java.lang.Thread.currentThread(), new TestCrashException(), java.lang.Thread.getAllStackTraces(), 0);
+            File recordFile = new File(folder.getRoot(), id + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+            assertTrue(recordFile.setLastModified(1000000));
+            ManagedErrorLog expectedErrorLog = CrashRecorder.readErrorLog(recordFile);
+            File olderErrorLogFile = folder.newFile(UUIDUtils.randomUUID() + ErrorLogHelper.ERROR_LOG_FILE_EXTENSION);
+            assertTrue(olderErrorLogFile.setLastModified(0));
+
+            /* Invalid record, its throwable is deleted too. */
+            UUID invalidId = UUIDUtils.randomUUID();
+            File invalidRecordFile = folder.newFile(invalidId + ErrorLogHelper.CRASH_RECORD_FILE_EXTENSION);
+            File invalidThrowableFile = folder.newFile(invalidId + ErrorLogHelper.THROWABLE_FILE_EXTENSION);
+            assertTrue(invalidRecordFile.setLastModified(0));
+            assertEquals(2, ErrorLogHelper.getStoredCrashRecordFiles().length);
+            assertEquals(recordFile, ErrorLogHelper.getLastErrorLogFile());
+
+            /* Convert. */
+            mockStatic(TextUtils.class);
+            when(TextUtils.getTrimmedLength(any(CharSequence.class))).thenReturn(1);
+            LogSerializer logSerializer = mock(LogSerializer.class);
+            when(logSerializer.serializeLog(any(Log.class))).thenReturn("mockJson");
+            ErrorLogHelper.convertCrashRecords(logSerializer);
+            verify(logSerializer).serializeLog(expectedErrorLog);
+            assertEquals(0, ErrorLogHelper.getStoredCrashRecordFiles().length);
+            assertFalse(recordFile.exists());
+            assertFalse(invalidThrowableFile.exists());
+            File errorLogFile = ErrorLogHelper.getStoredErrorLogFile(id);
+            assertNotNull(errorLogFile);
+            assertEquals(errorLogFile, ErrorLogHelper.getLastErrorLogFile());
+            assertEquals("mockJson", StorageHelper.InternalStorage.read(errorLogFile).trim());
+            assertEquals(2, ErrorLogHelper.getStoredErrorLogFiles().length);
+        } finally {
+            ErrorLogHelper.setErrorLogDirectory(null);
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void readTrackedExceptionRecords() throws java.lang.Exception {
+        TemporaryFolder folder = new TemporaryFolder();
+        folder.create();
+        try {
+            ErrorLogHelper.setErrorLogDirectory(folder.getRoot());
+            when(Process.myPid()).thenReturn(123);
+            when(DeviceInfoHelper.getDeviceInfo(any(Context.class))).thenThrow(new DeviceInfoHelper.DeviceInfoException("mock", new RuntimeException()));
+            UUID id = new CrashRecorder(mock(Context.class)).recordTrackedException(java.lang.Thread.currentThread(), new TestCrashException(), new StackTraceElement[0], 0, 0, 2);
+            folder.newFile(UUIDUtils.randomUUID() + ErrorLogHelper.TRACKED_EXCEPTION_RECORD_FILE_EXTENSION);
+            assertEquals(2, ErrorLogHelper.getStoredTrackedExceptionRecordFiles().length);
+
+            /* Tracked exception records are not crashes. */
+            assertNull(ErrorLogHelper.getLastErrorLogFile());
+
+            /* Invalid record is skipped, all are deleted. */
+            List<ManagedErrorLog> errorLogs = ErrorLogHelper.readTrackedExceptionRecords();
+            assertEquals(1, errorLogs.size());
+            assertEquals(id, errorLogs.get(0).getId());
+            assertEquals(Integer.valueOf(2), errorLogs.get(0).getOccurrenceCount());
+            assertEquals(0, ErrorLogHelper.getStoredTrackedExceptionRecordFiles().length);
+        } finally {
+            ErrorLogHelper.setErrorLogDirectory(null);
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void getThreadStackTraces() throws InterruptedException {
+
+        /* Start idle threads with the same stack trace. */
+        final CountDownLatch done = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(3);
+        List<java.lang.Thread> idleThreads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            java.lang.Thread thread = new java.lang.Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        done.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            });
+            thread.start();
+            idleThreads.add(thread);
+        }
+        started.await();
+        try {
+            java.lang.Thread errorThread = java.lang.Thread.currentThread();
+
+            /* All threads. */
+            Map<java.lang.Thread, StackTraceElement[]> stackTraces = ErrorLogHelper.getThreadStackTraces(errorThread, ThreadCapturePolicy.DEFAULT);
+            assertEquals(errorThread, stackTraces.keySet().iterator().next());
+            assertTrue(stackTraces.keySet().containsAll(idleThreads));
+
+            /* Only thread in error. */
+            stackTraces = ErrorLogHelper.getThreadStackTraces(errorThread, ThreadCapturePolicy.ERROR_THREAD_ONLY);
+            assertEquals(Collections.singleton(errorThread), stackTraces.keySet());
+
+            /* Limits, thread in error keeps all its frames. */
+            stackTraces = ErrorLogHelper.getThreadStackTraces(errorThread, new ThreadCapturePolicy(2, 1, false));
+            assertEquals(2, stackTraces.size());
+            Iterator<Map.Entry<java.lang.Thread, StackTraceElement[]>> iterator = stackTraces.entrySet().iterator();
+            assertTrue(iterator.next().getValue().length > 1);
+            assertTrue(iterator.next().getValue().length <= 1);
+
+            /* Deduplicate idle threads. */
+            stackTraces = ErrorLogHelper.getThreadStackTraces(errorThread, new ThreadCapturePolicy(Integer.MAX_VALUE, ThreadCapturePolicy.DEFAULT_MAX_FRAMES_PER_THREAD, true));
+            List<java.lang.Thread> capturedIdleThreads = new ArrayList<>(idleThreads);
+            capturedIdleThreads.retainAll(stackTraces.keySet());
+            assertEquals(1, capturedIdleThreads.size());
+            Set<List<StackTraceElement>> distinctStackTraces = new HashSet<>();
+            for (StackTraceElement[] stackTrace : stackTraces.values())
+                assertTrue(distinctStackTraces.add(Arrays.asList(stackTrace)));
+        } finally {
+            done.countDown();
+            for (java.lang.Thread thread : idleThreads)
+                thread.join();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void threadCapturePolicyWithoutThreads() {
+        new ThreadCapturePolicy(0, 1, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void threadCapturePolicyWithoutFrames() {
+        new ThreadCapturePolicy(1, 0, false);
+    }
+
+    private static StackTraceElement[] getStackTrace(String className, int lineNumber, int frameCount) {
+        StackTraceElement[] stackTrace = new StackTraceElement[frameCount];
+        for (int i = 0; i < frameCount; i++)
+            stackTrace[i] = new StackTraceElement(className, "method" + i, "File.java", lineNumber + i);
+        return stackTrace;
+    }
+
+    @Test
+    public void getFingerprintOfThrowable() {
+        RuntimeException throwable = new RuntimeException("message 1", new IllegalStateException());
+        throwable.setStackTrace(getStackTrace("com.contoso.A", 1, ErrorLogHelper.FINGERPRINT_FRAME_COUNT));
+        long fingerprint = ErrorLogHelper.getFingerprint(throwable);
+
+        /* Messages, line numbers and frames after the top ones are ignored. */
+        RuntimeException repeat = new RuntimeException("message 2", new IllegalStateException("cause"));
+        repeat.setStackTrace(getStackTrace("com.contoso.A", 100, ErrorLogHelper.FINGERPRINT_FRAME_COUNT + 1));
+        repeat.getCause().setStackTrace(throwable.getCause().getStackTrace());
+        assertEquals(fingerprint, ErrorLogHelper.getFingerprint(repeat));
+
+        /* Types and top frames are not. */
+        RuntimeException otherFrames = new RuntimeException("message 1", throwable.getCause());
+        otherFrames.setStackTrace(getStackTrace("com.contoso.B", 1, ErrorLogHelper.FINGERPRINT_FRAME_COUNT));
+        assertFalse(fingerprint == ErrorLogHelper.getFingerprint(otherFrames));
+        IllegalArgumentException otherType = new IllegalArgumentException("message 1", throwable.getCause());
+        otherType.setStackTrace(throwable.getStackTrace());
+        assertFalse(fingerprint == ErrorLogHelper.getFingerprint(otherType));
+        RuntimeException otherCause = new RuntimeException("message 1", new UnsupportedOperationException());
+        otherCause.setStackTrace(throwable.getStackTrace());
+        otherCause.getCause().setStackTrace(throwable.getCause().getStackTrace());
+        assertFalse(fingerprint == ErrorLogHelper.getFingerprint(otherCause));
+    }
+
+    @Test
+    public void getFingerprintOfExceptionModel() {
+
+        /* Same fingerprint as the throwable it was built from. */
+        RuntimeException throwable = new RuntimeException("message", new TestCrashException());
+        Exception exception = new Exception();
+        exception.setType(RuntimeException.class.getName());
+        exception.setMessage("message");
+        exception.setFrames(ErrorLogHelper.getModelFramesFromStackTrace(throwable.getStackTrace()));
+        Exception innerException = new Exception();
+        innerException.setType(TestCrashException.class.getName());
+        innerException.setFrames(ErrorLogHelper.getModelFramesFromStackTrace(throwable.getCause().getStackTrace()));
+        exception.setInnerExceptions(Collections.singletonList(innerException));
+        long fingerprint = ErrorLogHelper.getFingerprint(exception);
+        assertEquals(ErrorLogHelper.getFingerprint(throwable), fingerprint);
+
+        /* Raw stack traces of wrapper SDKs are hashed as a whole. */
+        Exception wrapperException = new Exception();
+        wrapperException.setType(RuntimeException.class.getName());
+        wrapperException.setStackTrace("at A.method()");
+        long wrapperFingerprint = ErrorLogHelper.getFingerprint(wrapperException);
+        assertFalse(fingerprint == wrapperFingerprint);
+        wrapperException.setMessage("other message");
+        assertEquals(wrapperFingerprint, ErrorLogHelper.getFingerprint(wrapperException));
+        wrapperException.setStackTrace("at B.method()");
+        assertFalse(wrapperFingerprint == ErrorLogHelper.getFingerprint(wrapperException));
+    }
 }
@@ -0,0 +1,154 @@
+package com.microsoft.azure.mobile.crashes.utils;
+
+import android.os.Build;
+
+import com.microsoft.azure.mobile.crashes.model.RestoredThrowable;
+import com.microsoft.azure.mobile.crashes.model.TestCrashException;
+import com.microsoft.azure.mobile.utils.storage.StorageHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@SuppressWarnings("unused")
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Build.class)
+public class ThrowableCodecTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static void assertThrowableEquals(Throwable expected, Throwable actual) {
+        assertSame(expected.getClass(), actual.getClass());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertArrayEquals(expected.getStackTrace(), actual.getStackTrace());
+    }
+
+    private static void assertRestoredEquals(Throwable expected, Throwable actual) {
+        assertSame(RestoredThrowable.class, actual.getClass());
+        assertEquals(expected.getClass().getName(), ((RestoredThrowable) actual).getClassName());
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertEquals(expected.toString(), actual.toString());
+        assertArrayEquals(expected.getStackTrace(), actual.getStackTrace());
+    }
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.KITKAT);
+    }
+
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(Build.VERSION.class, "SDK_INT", 0);
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        IllegalStateException cause = new IllegalStateException("cause é中", new TestCrashException());
+        RuntimeException throwable = new RuntimeException(null, cause);
+        IllegalArgumentException suppressed = new IllegalArgumentException("suppressed");
+        throwable.addSuppressed(suppressed);
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        stackTrace[0] = new StackTraceElement("com.contoso.Native", "method", null, -2);
+        throwable.setStackTrace(stackTrace);
+        File file = mFolder.newFile();
+        ThrowableCodec.write(file, throwable);
+        Throwable restored = ThrowableCodec.read(file);
+
+        /* Original classes are kept by name only, even when they could be instantiated. */
+        assertRestoredEquals(throwable, restored);
+        assertRestoredEquals(cause, restored.getCause());
+        assertRestoredEquals(cause.getCause(), restored.getCause().getCause());
+        assertNull(restored.getCause().getCause().getCause());
+        assertEquals(1, restored.getSuppressed().length);
+        assertRestoredEquals(suppressed, restored.getSuppressed()[0]);
+    }
+
+    @Test
+    public void readWithoutOriginalClass() throws IOException {
+        UnknownException throwable = new UnknownException(42, new IOException("cause"));
+        File file = mFolder.newFile();
+        ThrowableCodec.write(file, throwable);
+        Throwable restored = ThrowableCodec.read(file);
+        assertRestoredEquals(throwable, restored);
+        assertRestoredEquals(throwable.getCause(), restored.getCause());
+    }
+
+    @Test
+    public void writeCycle() throws IOException {
+        RuntimeException throwable = new RuntimeException("top");
+        IllegalStateException cause = new IllegalStateException("cause");
+        throwable.initCause(cause);
+        cause.addSuppressed(throwable);
+        cause.addSuppressed(new IllegalArgumentException("suppressed"));
+        File file = mFolder.newFile();
+        ThrowableCodec.write(file, throwable);
+        Throwable restored = ThrowableCodec.read(file);
+        assertRestoredEquals(cause, restored.getCause());
+        assertEquals(1, restored.getCause().getSuppressed().length);
+        assertEquals("suppressed", restored.getCause().getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void readSerializedThrowable() throws Exception {
+        File file = mFolder.newFile();
+        RuntimeException throwable = new RuntimeException("serialized", new TestCrashException());
+        StorageHelper.InternalStorage.writeObject(file, throwable);
+        Throwable restored = ThrowableCodec.read(file);
+        assertThrowableEquals(throwable, restored);
+        assertThrowableEquals(throwable.getCause(), restored.getCause());
+    }
+
+    @Test(expected = IOException.class)
+    public void readSerializedObjectNotThrowable() throws Exception {
+        File file = mFolder.newFile();
+        StorageHelper.InternalStorage.writeObject(file, "not a throwable");
+        ThrowableCodec.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readTruncated() throws IOException {
+        File file = mFolder.newFile();
+        ThrowableCodec.write(file, new RuntimeException("truncated"));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 1);
+        randomAccessFile.close();
+        ThrowableCodec.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void readUnsupportedVersion() throws IOException {
+        File file = mFolder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(ThrowableCodec.FORMAT_VERSION + 1);
+        out.close();
+        ThrowableCodec.read(file);
+    }
+
+    /**
+     * Exception without a constructor taking a message.
+     */
+    private static class UnknownException extends Exception {
+
+        private UnknownException(int code, Throwable cause) {
+            super("code " + code, cause);
+        }
+    }
+}
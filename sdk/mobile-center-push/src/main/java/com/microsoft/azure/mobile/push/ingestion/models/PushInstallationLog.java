@@ -1,6 +1,7 @@
 package com.microsoft.azure.mobile.push.ingestion.models;
 
 import com.microsoft.azure.mobile.ingestion.models.AbstractLog;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -50,6 +51,15 @@ public class PushInstallationLog extends AbstractLog {
         setPushToken(object.getString(PUSH_TOKEN));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(PUSH_TOKEN)) {
+            setPushToken(reader.nextString());
+            return true;
+        }
+        return super.readField(name, reader);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
@@ -0,0 +1,147 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.StartServiceLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@SuppressWarnings("unused")
+public class DeviceJsonCacheAndroidTest {
+
+    private static Device generateDevice() {
+        Device device = new Device();
+        device.setSdkName("mobilecenter.android");
+        device.setSdkVersion("1.0");
+        device.setModel("model \"quoted\"");
+        device.setOemName("oem");
+        device.setOsName("Android");
+        device.setOsVersion("7.0");
+        device.setOsApiLevel(24);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(-420);
+        device.setScreenSize("1080x1920");
+        device.setAppVersion("1.2");
+        device.setAppBuild("3");
+        device.setAppNamespace("com.test");
+        device.setWrapperSdkName("wrapper");
+        return device;
+    }
+
+    @After
+    public void tearDown() {
+        DeviceJsonCache.invalidate();
+    }
+
+    @Test
+    public void cache() throws JSONException {
+
+        /* Dummy coverage of utils class. */
+        new DeviceJsonCache();
+
+        /* Same or equal device hits the cache. */
+        Device device = generateDevice();
+        String json = DeviceJsonCache.getJson(device);
+        Device readDevice = new Device();
+        readDevice.read(new JSONObject(json));
+        assertEquals(device, readDevice);
+        assertSame(json, DeviceJsonCache.getJson(device));
+        assertSame(json, DeviceJsonCache.getJson(generateDevice()));
+
+        /* Different device misses. */
+        Device other = generateDevice();
+        other.setAppVersion("1.3");
+        String otherJson = DeviceJsonCache.getJson(other);
+        assertNotSame(json, otherJson);
+        assertSame(otherJson, DeviceJsonCache.getJson(other));
+
+        /* Invalidate. */
+        DeviceJsonCache.invalidate();
+        String newJson = DeviceJsonCache.getJson(other);
+        assertNotSame(otherJson, newJson);
+        assertEquals(otherJson, newJson);
+    }
+
+    @Test
+    public void splicedIntoLogs() throws JSONException {
+        StartServiceLog log = new StartServiceLog();
+        log.setServices(Collections.singletonList("FIRST"));
+        log.setDevice(generateDevice());
+
+        /* Output is the same as the regular JSONStringer path. */
+        JSONStringer stringer = new JSONStringer();
+        stringer.object();
+        log.write(stringer);
+        stringer.endObject();
+        String expected = new JSONObject(stringer.toString()).toString();
+        for (int i = 0; i < 2; i++)
+            assertEquals(expected, new JSONObject(new DefaultLogSerializer().serializeLog(log)).toString());
+    }
+
+    @Test
+    public void sameOutputAsBeforeCache() throws JSONException {
+        StartServiceLog log = new StartServiceLog();
+        log.setServices(Collections.singletonList("FIRST"));
+        log.setToffset(1);
+        Device device = new Device();
+        device.setSdkName("mobilecenter.android");
+        device.setSdkVersion("1.0");
+        device.setModel("model");
+        device.setOemName("oem");
+        device.setOsName("Android");
+        device.setOsVersion("7.0");
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(0);
+        device.setScreenSize("1x1");
+        device.setAppVersion("1.2");
+        device.setAppBuild("3");
+        log.setDevice(device);
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<Log>singletonList(log));
+
+        /* Compact output matches the JSONStringer path used before the cache, including once warm. */
+        DefaultLogSerializer compact = new DefaultLogSerializer(SerializerConfig.COMPACT);
+        String expected = compact.writeContainer(new JSONStringer(), container).toString();
+        for (int i = 0; i < 2; i++)
+            assertEquals(expected, compact.serializeContainer(container));
+
+        /* Pretty output keeps indenting the device block even with the compact JSON cached. */
+        DeviceJsonCache.getJson(device);
+        String pretty = "{\n" +
+                "  \"logs\": [\n" +
+                "    {\n" +
+                "      \"type\": \"start_service\",\n" +
+                "      \"toffset\": 1,\n" +
+                "      \"device\": {\n" +
+                "        \"sdk_name\": \"mobilecenter.android\",\n" +
+                "        \"sdk_version\": \"1.0\",\n" +
+                "        \"model\": \"model\",\n" +
+                "        \"oem_name\": \"oem\",\n" +
+                "        \"os_name\": \"Android\",\n" +
+                "        \"os_version\": \"7.0\",\n" +
+                "        \"locale\": \"en_US\",\n" +
+                "        \"time_zone_offset\": 0,\n" +
+                "        \"screen_size\": \"1x1\",\n" +
+                "        \"app_version\": \"1.2\",\n" +
+                "        \"app_build\": \"3\"\n" +
+                "      },\n" +
+                "      \"services\": [\n" +
+                "        \"FIRST\"\n" +
+                "      ]\n" +
+                "    }\n" +
+                "  ]\n" +
+                "}";
+        assertEquals(pretty, new DefaultLogSerializer(new SerializerConfig(2)).serializeContainer(container));
+    }
+}
@@ -0,0 +1,155 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import com.microsoft.azure.mobile.ingestion.models.CustomPropertiesLog;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.StartServiceLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("unused")
+public class JsonStreamReaderAndroidTest {
+
+    @Test
+    public void readValues() throws JSONException {
+        JsonStreamReader reader = new JsonStreamReader(" {\"s\" : \"a\\\"b\\\\c\\/d\\n\\u0041\", \"l\":12345678901,\"i\":\"42\",\"d\":1.5e1," +
+                "\"b\":true,\"n\":null,\"a\":[1, {\"x\":[]}, \"y\"],\"o\":{\"k\":2.5},\"end\":false} ");
+        reader.beginObject();
+        assertEquals("s", reader.nextName());
+        assertEquals("a\"b\\c/d\nA", reader.nextString());
+        assertEquals("l", reader.nextName());
+        assertEquals(12345678901L, reader.nextLong());
+        assertEquals("i", reader.nextName());
+        assertEquals(42, reader.nextInt());
+        assertEquals("d", reader.nextName());
+        assertEquals(15.0, reader.nextDouble(), 0);
+        assertEquals("b", reader.nextName());
+        assertFalse(reader.nextNull());
+        assertTrue(reader.nextBoolean());
+        assertEquals("n", reader.nextName());
+        assertTrue(reader.nextNull());
+        assertEquals("a", reader.nextName());
+        reader.skipValue();
+        assertEquals("o", reader.nextName());
+        JSONObject object = reader.nextJSONObject();
+        assertEquals(2.5, object.getDouble("k"), 0);
+        assertEquals("end", reader.nextName());
+        assertFalse(reader.nextBoolean());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    public void readTree() throws JSONException {
+        JSONArray array = new JsonStreamReader("[1,12345678901,2.5,\"s\",true,null,{\"a\":[]}]").nextJSONArray();
+        assertEquals(7, array.length());
+        assertEquals(1, array.get(0));
+        assertEquals(12345678901L, array.get(1));
+        assertEquals(2.5, array.get(2));
+        assertEquals("s", array.get(3));
+        assertEquals(true, array.get(4));
+        assertEquals(JSONObject.NULL, array.get(5));
+        assertEquals(0, array.getJSONObject(6).getJSONArray("a").length());
+    }
+
+    @Test
+    public void syntaxErrors() {
+        for (String json : new String[]{"", "{", "{\"a\" 1}", "{\"a\":1 \"b\":2}", "[1 2]", "{\"a\":\"b}", "{\"a\":\"\\u12\"}", "{\"a\":x}"}) {
+            try {
+                JsonStreamReader reader = new JsonStreamReader(json);
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.nextName();
+                    reader.nextLong();
+                }
+                reader.endObject();
+                fail("Should fail: " + json);
+            } catch (JSONException ignored) {
+            }
+        }
+        try {
+            new JsonStreamReader("[null]").nextJSONObject();
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            JsonStreamReader reader = new JsonStreamReader("[null]");
+            reader.beginArray();
+            reader.nextString();
+            fail();
+        } catch (JSONException ignored) {
+        }
+    }
+
+    @Test
+    public void streamingDeserialization() throws JSONException {
+        StartServiceLog startServiceLog = new StartServiceLog();
+        startServiceLog.setServices(Arrays.asList("FIRST", "SECOND"));
+        startServiceLog.setSid(UUID.randomUUID());
+        startServiceLog.setToffset(12);
+        Device device = new Device();
+        device.setSdkName("mobilecenter.android");
+        device.setSdkVersion("1.0");
+        device.setModel("model");
+        device.setOemName("oem");
+        device.setOsName("Android");
+        device.setOsVersion("7.0");
+        device.setOsApiLevel(24);
+        device.setLocale("en_US");
+        device.setTimeZoneOffset(-420);
+        device.setScreenSize("1080x1920");
+        device.setAppVersion("1.2");
+        device.setAppBuild("3");
+        device.setAppNamespace("com.test");
+        device.setWrapperSdkName("wrapper");
+        startServiceLog.setDevice(device);
+        CustomPropertiesLog customPropertiesLog = new CustomPropertiesLog();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("t1", "test");
+        properties.put("t2", 1);
+        properties.put("t3", null);
+        customPropertiesLog.setProperties(properties);
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.<Log>asList(startServiceLog, customPropertiesLog));
+        StreamingLogSerializer serializer = new StreamingLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.addLogFactory(CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
+        assertEquals(container, serializer.deserializeContainer(serializer.serializeContainer(container)));
+
+        /* Unknown properties are skipped and type is not required to be first. */
+        assertEquals(Collections.singletonList("A"), ((StartServiceLog) serializer.deserializeLog("{\"type\":\"start_service\",\"unknown\":{\"x\":[1]},\"services\":[\"A\"],\"toffset\":0}")).getServices());
+        assertEquals(Collections.singletonList("B"), ((StartServiceLog) serializer.deserializeLog("{\"services\":[\"B\"],\"toffset\":0,\"type\":\"start_service\"}")).getServices());
+    }
+
+    @Test(expected = JSONException.class)
+    public void streamingDeserializationUnknownType() throws JSONException {
+        new StreamingLogSerializer().deserializeLog("{\"type\":\"unknown\"}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void streamingDeserializationMissingRequiredField() throws JSONException {
+        StreamingLogSerializer serializer = new StreamingLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"type\":\"start_service\",\"services\":[\"A\"]}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void streamingDeserializationMissingLogs() throws JSONException {
+        new StreamingLogSerializer().deserializeContainer("{}");
+    }
+}
@@ -0,0 +1,133 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.StartServiceLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+@SuppressWarnings("unused")
+public class JsonStreamWriterAndroidTest {
+
+    @Test
+    public void writeValues() throws JSONException {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.object();
+        writer.key("s").value("a\"b\\c/d\n\u0001\u2028\u00e9");
+        writer.key("l").value(42L);
+        writer.key("d").value(1.5);
+        writer.key("w").value(2.0);
+        writer.key("b").value(true);
+        writer.key("n").value(null);
+        writer.key("a").array().value(1).value(false).endArray();
+        writer.key("e").object().endObject();
+        writer.endObject();
+        assertEquals("{\"s\":\"a\\\"b\\\\c\\/d\\n\\u0001\\u2028\u00e9\",\"l\":42,\"d\":1.5,\"w\":2,\"b\":true,\"n\":null,\"a\":[1,false],\"e\":{}}", out.toString());
+        assertEquals("", writer.toString());
+
+        /* Output is valid JSON. */
+        JSONObject object = new JSONObject(out.toString());
+        assertEquals("a\"b\\c/d\n\u0001\u2028\u00e9", object.getString("s"));
+    }
+
+    @Test
+    public void writeUuid() throws JSONException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.array().value(first).value(second).endArray();
+        assertEquals("[\"" + first + "\",\"" + second + "\"]", out.toString());
+    }
+
+    @Test
+    public void indentation() throws JSONException {
+        StringWriter out = new StringWriter();
+        JsonStreamWriter writer = new JsonStreamWriter(out, 2);
+        writer.object();
+        writer.key("a").array().value(1).value(2).endArray();
+        writer.key("e").array().endArray();
+        writer.key("o").object().key("k").value("v").endObject();
+        writer.endObject();
+        assertEquals("{\n  \"a\": [\n    1,\n    2\n  ],\n  \"e\": [],\n  \"o\": {\n    \"k\": \"v\"\n  }\n}", out.toString());
+    }
+
+    @Test
+    public void nestingProblems() {
+        try {
+            new JsonStreamWriter(new StringWriter()).object().value(1);
+            fail("value without key");
+        } catch (JSONException ignored) {
+        }
+        try {
+            new JsonStreamWriter(new StringWriter()).array().key("a");
+            fail("key in array");
+        } catch (JSONException ignored) {
+        }
+        try {
+            new JsonStreamWriter(new StringWriter()).array().endObject();
+            fail("mismatched end");
+        } catch (JSONException ignored) {
+        }
+        try {
+            new JsonStreamWriter(new StringWriter()).object().key(null);
+            fail("null key");
+        } catch (JSONException ignored) {
+        }
+        try {
+            new JsonStreamWriter(new StringWriter()).array().value(Double.NaN);
+            fail("NaN");
+        } catch (JSONException ignored) {
+        }
+    }
+
+    @Test
+    public void ioError() throws IOException {
+        Writer out = mock(Writer.class);
+        IOException exception = new IOException("mock");
+        doThrow(exception).when(out).write(anyInt());
+        try {
+            new JsonStreamWriter(out).array();
+            fail();
+        } catch (JSONException e) {
+            assertEquals(exception.getMessage(), e.getMessage());
+        }
+    }
+
+    @Test
+    public void streamingSerializer() throws JSONException, IOException {
+        StartServiceLog log = new StartServiceLog();
+        log.setServices(Arrays.asList("FIRST", "SECOND"));
+        log.setSid(UUID.randomUUID());
+        log.setToffset(12);
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<Log>singletonList(log));
+        StreamingLogSerializer serializer = new StreamingLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+
+        /* String and stream outputs are the same and can be read back. */
+        String payload = serializer.serializeContainer(container);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeContainer(container, out);
+        assertEquals(payload, out.toString("UTF-8"));
+        assertEquals(container, serializer.deserializeContainer(payload));
+        assertEquals(log, serializer.deserializeLog(serializer.serializeLog(log)));
+    }
+}
@@ -49,6 +49,17 @@ public class LogSerializerAndroidTest {
         Assert.assertEquals(expectedContainer.hashCode(), actualContainer.hashCode());
     }
 
+    @Test
+    public void streamingSameAsDefault() throws JSONException {
+        LogContainer expectedContainer = AndroidTestUtils.generateMockLogContainer();
+        LogSerializer serializer = new StreamingLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        String payload = serializer.serializeContainer(expectedContainer);
+        android.util.Log.v(TAG, payload);
+        Assert.assertEquals(new DefaultLogSerializer().serializeContainer(expectedContainer), payload);
+        Assert.assertEquals(expectedContainer, serializer.deserializeContainer(payload));
+    }
+
     @Test(expected = JSONException.class)
     public void deserializeUnknownType() throws JSONException {
         MockLog log = AndroidTestUtils.generateMockLog();
@@ -0,0 +1,77 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import com.microsoft.azure.mobile.ingestion.models.CustomPropertiesLog;
+import com.microsoft.azure.mobile.ingestion.models.Device;
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.StartServiceLog;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.microsoft.azure.mobile.test.TestUtils.checkLogConformance;
+import static com.microsoft.azure.mobile.test.TestUtils.fill;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that hand-written readers and writers of every model agree with each other,
+ * including properties added later: all setters are filled by reflection.
+ */
+@SuppressWarnings("unused")
+public class ModelConformanceAndroidTest {
+
+    /**
+     * Check that a log is serialized the same way by every writer and read back identically by every reader.
+     */
+    static void checkConformance(Log log, String type, LogFactory logFactory) throws Exception {
+        DefaultLogSerializer defaultSerializer = new DefaultLogSerializer();
+        defaultSerializer.addLogFactory(type, logFactory);
+        StreamingLogSerializer streamingSerializer = new StreamingLogSerializer();
+        streamingSerializer.addLogFactory(type, logFactory);
+
+        /* Compare writers and readers of the log. */
+        checkLogConformance(log, defaultSerializer, streamingSerializer);
+
+        /* Compare containers, string and streamed. */
+        LogContainer container = new LogContainer();
+        container.setLogs(Arrays.asList(log, log));
+        String containerPayload = defaultSerializer.serializeContainer(container);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamingSerializer.serializeContainer(container, out);
+        assertEquals(containerPayload, out.toString("UTF-8"));
+        assertEquals(container, defaultSerializer.deserializeContainer(containerPayload));
+        assertEquals(container, streamingSerializer.deserializeContainer(containerPayload));
+    }
+
+    @After
+    public void tearDown() {
+        DeviceJsonCache.invalidate();
+    }
+
+    @Test
+    public void startServiceLog() throws Exception {
+        StartServiceLog log = fill(new StartServiceLog());
+        log.setDevice(fill(new Device()));
+        checkConformance(log, StartServiceLog.TYPE, new StartServiceLogFactory());
+    }
+
+    @Test
+    public void customPropertiesLog() throws Exception {
+        CustomPropertiesLog log = fill(new CustomPropertiesLog());
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("t1", "test");
+        properties.put("t2", new Date(0));
+        properties.put("t3", 1);
+        properties.put("t4", false);
+        properties.put("t5", null);
+        log.setProperties(properties);
+        log.setDevice(fill(new Device()));
+        checkConformance(log, CustomPropertiesLog.TYPE, new CustomPropertiesLogFactory());
+    }
+}
@@ -6,6 +6,7 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import com.microsoft.azure.mobile.channel.Channel;
+import com.microsoft.azure.mobile.channel.SendPolicy;
 import com.microsoft.azure.mobile.ingestion.models.json.LogFactory;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
 import com.microsoft.azure.mobile.utils.storage.StorageHelper;
@@ -84,7 +85,7 @@ public abstract class AbstractMobileCenterService implements MobileCenterService
 
             /* Register service to channel on enabling. */
             if (enabled)
-                mChannel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), getChannelListener());
+                addGroup(mChannel, groupName);
 
             /* Otherwise, clear all persisted logs and remove a group for the service. */
             else {
@@ -106,7 +107,7 @@ public abstract class AbstractMobileCenterService implements MobileCenterService
 
             /* Add a group to the channel if the service is enabled */
             if (isInstanceEnabled())
-                channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), getChannelListener());
+                addGroup(channel, groupName);
 
             /* Otherwise, clear all persisted logs for the service. */
             else
@@ -115,6 +116,16 @@ public abstract class AbstractMobileCenterService implements MobileCenterService
         mChannel = channel;
     }
 
+    /**
+     * Add the group of the service to the channel with its send policy.
+     *
+     * @param channel   channel.
+     * @param groupName group name.
+     */
+    private void addGroup(Channel channel, String groupName) {
+        channel.addGroup(groupName, getTriggerCount(), getTriggerInterval(), getTriggerMaxParallelRequests(), getSendPolicy(), getChannelListener());
+    }
+
     @Override
     public Map<String, LogFactory> getLogFactories() {
         return null;
@@ -169,6 +180,16 @@ public abstract class AbstractMobileCenterService implements MobileCenterService
         return DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
     }
 
+    /**
+     * Gets the network policy for sending logs of the group.
+     *
+     * @return A send policy, or null to send logs on any network as soon as triggered.
+     */
+    @SuppressWarnings({"WeakerAccess", "SameReturnValue"})
+    protected SendPolicy getSendPolicy() {
+        return null;
+    }
+
     /**
      * Gets a listener which will be called when channel completes synchronization.
      *
@@ -20,6 +20,18 @@ public interface Channel {
      */
     void addGroup(String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, GroupListener groupListener);
 
+    /**
+     * Add a group for logs to be persisted and sent according to a network policy.
+     *
+     * @param groupName          the name of a group.
+     * @param maxLogsPerBatch    maximum log count per batch.
+     * @param batchTimeInterval  time interval for a next batch.
+     * @param maxParallelBatches maximum number of batches in parallel.
+     * @param sendPolicy         send policy, null to send on any network.
+     * @param groupListener      a listener for a service.
+     */
+    void addGroup(String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, SendPolicy sendPolicy, GroupListener groupListener);
+
     /**
      * Remove a group for logs.
      *
@@ -9,12 +9,12 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.CancellationException;
 import com.microsoft.azure.mobile.http.HttpUtils;
-import com.microsoft.azure.mobile.http.ServiceCallback;
 import com.microsoft.azure.mobile.ingestion.Ingestion;
 import com.microsoft.azure.mobile.ingestion.IngestionHttp;
 import com.microsoft.azure.mobile.ingestion.models.Device;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.json.DeviceJsonCache;
 import com.microsoft.azure.mobile.ingestion.models.json.LogSerializer;
 import com.microsoft.azure.mobile.persistence.DatabasePersistence;
 import com.microsoft.azure.mobile.persistence.DatabasePersistenceAsync;
@@ -25,6 +25,7 @@ import com.microsoft.azure.mobile.utils.DeviceInfoHelper;
 import com.microsoft.azure.mobile.utils.HandlerUtils;
 import com.microsoft.azure.mobile.utils.IdHelper;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
+import com.microsoft.azure.mobile.utils.NetworkStateHelper;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -38,7 +39,7 @@ import java.util.UUID;
 
 import static com.microsoft.azure.mobile.MobileCenter.LOG_TAG;
 
-public class DefaultChannel implements Channel {
+public class DefaultChannel implements Channel, NetworkStateHelper.Listener {
 
     /**
      * Persistence batch size for {@link Persistence#getLogs(String, int, List)} when clearing.
@@ -92,6 +93,11 @@ public class DefaultChannel implements Channel {
      */
     private final Ingestion mIngestion;
 
+    /**
+     * Network state helper used to apply group send policies, can be null.
+     */
+    private final NetworkStateHelper mNetworkStateHelper;
+
     /**
      * Is channel enabled?
      */
@@ -122,11 +128,12 @@ public class DefaultChannel implements Channel {
      * @param logSerializer The log serializer.
      */
     public DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull LogSerializer logSerializer) {
-        this(context, appSecret, buildDefaultPersistence(logSerializer), new IngestionHttp(context, logSerializer));
+        this(context, appSecret, buildDefaultPersistence(logSerializer), new IngestionHttp(context, logSerializer), NetworkStateHelper.getSharedInstance(context));
     }
 
     /**
      * Overloaded constructor with limited visibility that allows for dependency injection.
+     * Group send policies are ignored with this constructor.
      *
      * @param context     The context.
      * @param appSecret   The application secret.
@@ -135,6 +142,20 @@ public class DefaultChannel implements Channel {
      */
     @VisibleForTesting
     DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion) {
+        this(context, appSecret, persistence, ingestion, null);
+    }
+
+    /**
+     * Overloaded constructor with limited visibility that allows for dependency injection.
+     *
+     * @param context     The context.
+     * @param appSecret   The application secret.
+     * @param persistence Persistence object for dependency injection.
+     * @param ingestion          Ingestion object for dependency injection.
+     * @param networkStateHelper Network state helper, null to ignore send policies.
+     */
+    @VisibleForTesting
+    DefaultChannel(@NonNull Context context, @NonNull String appSecret, @NonNull Persistence persistence, @NonNull Ingestion ingestion, NetworkStateHelper networkStateHelper) {
         mContext = context;
         mAppSecret = appSecret;
         mInstallId = IdHelper.getInstallId();
@@ -143,6 +164,9 @@ public class DefaultChannel implements Channel {
         mListeners = new HashSet<>();
         mPersistence = new DatabasePersistenceAsync(persistence);
         mIngestion = ingestion;
+        mNetworkStateHelper = networkStateHelper;
+        if (mNetworkStateHelper != null)
+            mNetworkStateHelper.addListener(this);
         mEnabled = true;
     }
 
@@ -170,11 +194,16 @@ public class DefaultChannel implements Channel {
     }
 
     @Override
-    public synchronized void addGroup(final String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, GroupListener groupListener) {
+    public void addGroup(String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, GroupListener groupListener) {
+        addGroup(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, null, groupListener);
+    }
+
+    @Override
+    public synchronized void addGroup(final String groupName, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, SendPolicy sendPolicy, GroupListener groupListener) {
 
         /* Init group. */
         MobileCenterLog.debug(LOG_TAG, "addGroup(" + groupName + ")");
-        final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, groupListener);
+        final GroupState groupState = new GroupState(groupName, maxLogsPerBatch, batchTimeInterval, maxParallelBatches, sendPolicy, groupListener);
         mGroupStates.put(groupName, groupState);
 
         /* Count pending logs. */
@@ -194,6 +223,9 @@ public class DefaultChannel implements Channel {
         if (checkStateDidNotChange(groupState, currentState)) {
             groupState.mPendingLogCount = logCount;
 
+            /* Send a backlog from a previous run without waiting for timers. */
+            checkBacklog(groupState);
+
             /* Schedule sending any pending log. */
             checkPendingLogs(groupState.mName);
         }
@@ -227,10 +259,17 @@ public class DefaultChannel implements Channel {
             mEnabled = true;
             mDiscardLogs = false;
             mCurrentState++;
-            for (String groupName : mGroupStates.keySet())
-                checkPendingLogs(groupName);
-        } else
+            if (mNetworkStateHelper != null)
+                mNetworkStateHelper.addListener(this);
+            for (GroupState groupState : mGroupStates.values()) {
+                checkBacklog(groupState);
+                checkPendingLogs(groupState.mName);
+            }
+        } else {
+            if (mNetworkStateHelper != null)
+                mNetworkStateHelper.removeListener(this);
             suspend(true, new CancellationException());
+        }
     }
 
     @Override
@@ -251,6 +290,7 @@ public class DefaultChannel implements Channel {
     @Override
     public synchronized void invalidateDeviceCache() {
         mDevice = null;
+        DeviceJsonCache.invalidate();
     }
 
     /**
@@ -357,6 +397,10 @@ public class DefaultChannel implements Channel {
             return;
         }
 
+        /* Check the group send policy against the current network. */
+        if (isSendingDeferred(groupState))
+            return;
+
         /* Get a batch from Persistence. */
         final List<Log> batch = new ArrayList<>(groupState.mMaxLogsPerBatch);
         final int stateSnapshot = mCurrentState;
@@ -369,6 +413,51 @@ public class DefaultChannel implements Channel {
         });
     }
 
+    /**
+     * Check whether the group send policy defers sending on the current network.
+     * If the byte cap is reached, sending is scheduled at the end of the current interval.
+     *
+     * @param groupState the group state.
+     * @return true if sending must wait, false to send now.
+     */
+    private boolean isSendingDeferred(GroupState groupState) {
+        SendPolicy sendPolicy = groupState.mSendPolicy;
+        if (sendPolicy == null || mNetworkStateHelper == null || !mNetworkStateHelper.isNetworkMetered())
+            return false;
+
+        /* Large backlogs wait for an unmetered network. */
+        if (groupState.mPendingLogCount > sendPolicy.getMeteredMaxPendingLogs()) {
+            MobileCenterLog.debug(LOG_TAG, "Waiting for an unmetered network to send " + groupState.mPendingLogCount + " logs of " + groupState.mName);
+            return true;
+        }
+
+        /* Check byte cap of the current interval. */
+        long now = System.currentTimeMillis();
+        long intervalEnd = groupState.mMeteredIntervalStart + sendPolicy.getMeteredInterval();
+        if (now >= intervalEnd) {
+            groupState.mMeteredIntervalStart = now;
+            groupState.mMeteredBytesSent = 0;
+        } else if (groupState.mMeteredBytesSent >= sendPolicy.getMeteredMaxBytes()) {
+            MobileCenterLog.debug(LOG_TAG, "Metered network byte cap reached for " + groupState.mName + ", waiting " + (intervalEnd - now) + "ms.");
+            groupState.mScheduled = true;
+            mIngestionHandler.postDelayed(groupState.mRunnable, intervalEnd - now);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count the size of a payload against the byte cap if the network is metered.
+     *
+     * @param groupState the group state.
+     * @param length     size in bytes of the payload serialized by ingestion.
+     */
+    private synchronized void chargeMeteredBytes(GroupState groupState, int length) {
+        if (groupState.mSendPolicy == null || mNetworkStateHelper == null || !mNetworkStateHelper.isNetworkMetered())
+            return;
+        groupState.mMeteredBytesSent += length;
+    }
+
     private synchronized void triggerIngestion(final String batchId, final GroupState groupState, final int stateSnapshot, final List<Log> batch) {
         if (batchId != null && checkStateDidNotChange(groupState, stateSnapshot)) {
 
@@ -424,7 +513,12 @@ public class DefaultChannel implements Channel {
             /* Send logs. */
             LogContainer logContainer = new LogContainer();
             logContainer.setLogs(batch);
-            mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
+            mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new Ingestion.Callback() {
+
+                @Override
+                public void onPayloadSerialized(int length) {
+                    chargeMeteredBytes(groupState, length);
+                }
 
                 @Override
                 public void onCallSucceeded(String payload) {
@@ -573,6 +667,19 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Enter drain mode if more than a batch of logs is pending: batches are then sent back to back,
+     * including the last partial one, until no log is pending.
+     *
+     * @param groupState the group state.
+     */
+    private void checkBacklog(GroupState groupState) {
+        if (groupState.mPendingLogCount >= groupState.mMaxLogsPerBatch) {
+            MobileCenterLog.debug(LOG_TAG, "Draining backlog of " + groupState.mPendingLogCount + " logs for " + groupState.mName);
+            groupState.mDraining = true;
+        }
+    }
+
     /**
      * Check for logs to trigger immediately or schedule with a timer or does nothing if no logs.
      *
@@ -585,7 +692,9 @@ public class DefaultChannel implements Channel {
         if (groupState != null) {
             long pendingLogCount = groupState.mPendingLogCount;
             MobileCenterLog.debug(LOG_TAG, "checkPendingLogs(" + groupName + ") pendingLogCount=" + pendingLogCount);
-            if (pendingLogCount >= groupState.mMaxLogsPerBatch)
+            if (pendingLogCount == 0)
+                groupState.mDraining = false;
+            if (pendingLogCount >= groupState.mMaxLogsPerBatch || (groupState.mDraining && pendingLogCount > 0))
                 triggerIngestion(groupName);
             else if (pendingLogCount > 0 && !groupState.mScheduled) {
                 groupState.mScheduled = true;
@@ -596,6 +705,17 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    @Override
+    public synchronized void onNetworkStateUpdated(boolean connected) {
+
+        /* Network type may have changed, check deferred logs against the new network. */
+        if (connected && mEnabled)
+            for (GroupState groupState : mGroupStates.values()) {
+                checkBacklog(groupState);
+                checkPendingLogs(groupState.mName);
+            }
+    }
+
     @Override
     public synchronized void addListener(Listener listener) {
         mListeners.add(listener);
@@ -608,6 +728,8 @@ public class DefaultChannel implements Channel {
 
     @Override
     public synchronized void shutdown() {
+        if (mNetworkStateHelper != null)
+            mNetworkStateHelper.removeListener(this);
         suspend(false, new CancellationException());
         try {
             MobileCenterLog.debug(LOG_TAG, "Wait for persistence to process queue.");
@@ -662,6 +784,26 @@ public class DefaultChannel implements Channel {
          */
         boolean mScheduled;
 
+        /**
+         * Is a backlog being drained, sending batches without waiting for the timer.
+         */
+        boolean mDraining;
+
+        /**
+         * Send policy, null to send on any network.
+         */
+        final SendPolicy mSendPolicy;
+
+        /**
+         * Start time of the current metered byte cap interval.
+         */
+        long mMeteredIntervalStart;
+
+        /**
+         * Approximate bytes sent on metered networks during the current interval.
+         */
+        long mMeteredBytesSent;
+
         /**
          * Runnable that triggers ingestion of this group data
          * and triggers itself in {@link #mBatchTimeInterval} ms.
@@ -682,13 +824,15 @@ public class DefaultChannel implements Channel {
          * @param maxLogsPerBatch    max batch size.
          * @param batchTimeInterval  batch interval in ms.
          * @param maxParallelBatches max number of parallel batches.
+         * @param sendPolicy         send policy, null to send on any network.
          * @param listener           listener for a service.
          */
-        GroupState(String name, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, GroupListener listener) {
+        GroupState(String name, int maxLogsPerBatch, long batchTimeInterval, int maxParallelBatches, SendPolicy sendPolicy, GroupListener listener) {
             mName = name;
             mMaxLogsPerBatch = maxLogsPerBatch;
             mBatchTimeInterval = batchTimeInterval;
             mMaxParallelBatches = maxParallelBatches;
+            mSendPolicy = sendPolicy;
             mListener = listener;
         }
     }
@@ -0,0 +1,69 @@
+package com.microsoft.azure.mobile.channel;
+
+/**
+ * Network policy for sending the logs of a channel group.
+ * <p>
+ * Groups without a policy are sent as soon as they are triggered, whatever the network type.
+ * With a policy, when the network is metered (like a cellular network):
+ * <ul>
+ * <li>a backlog larger than {@link #getMeteredMaxPendingLogs()} waits for an unmetered network,</li>
+ * <li>at most {@link #getMeteredMaxBytes()} are sent per {@link #getMeteredInterval()}.</li>
+ * </ul>
+ */
+public class SendPolicy {
+
+    /**
+     * Maximum pending logs to send on a metered network.
+     */
+    private final int mMeteredMaxPendingLogs;
+
+    /**
+     * Maximum bytes to send per interval on a metered network.
+     */
+    private final long mMeteredMaxBytes;
+
+    /**
+     * Interval of the byte cap in milliseconds.
+     */
+    private final long mMeteredInterval;
+
+    /**
+     * Init.
+     *
+     * @param meteredMaxPendingLogs pending log count above which logs wait for an unmetered network.
+     * @param meteredMaxBytes       maximum approximate number of bytes to send per interval on a metered network.
+     * @param meteredInterval       interval of the byte cap in milliseconds.
+     */
+    public SendPolicy(int meteredMaxPendingLogs, long meteredMaxBytes, long meteredInterval) {
+        mMeteredMaxPendingLogs = meteredMaxPendingLogs;
+        mMeteredMaxBytes = meteredMaxBytes;
+        mMeteredInterval = meteredInterval;
+    }
+
+    /**
+     * Get the pending log count above which logs wait for an unmetered network.
+     *
+     * @return maximum pending logs to send on a metered network.
+     */
+    public int getMeteredMaxPendingLogs() {
+        return mMeteredMaxPendingLogs;
+    }
+
+    /**
+     * Get the maximum approximate number of bytes to send per interval on a metered network.
+     *
+     * @return maximum bytes per interval.
+     */
+    public long getMeteredMaxBytes() {
+        return mMeteredMaxBytes;
+    }
+
+    /**
+     * Get the interval of the byte cap.
+     *
+     * @return interval in milliseconds.
+     */
+    public long getMeteredInterval() {
+        return mMeteredInterval;
+    }
+}
@@ -0,0 +1,197 @@
+package com.microsoft.azure.mobile.http;
+
+/**
+ * Latency and payload measurements of an HTTP call, published by {@link HttpClientMetricsDecorator}.
+ * <p>
+ * Phase timings, byte counts and status code describe the last attempt of the call,
+ * the duration covers all attempts including retry delays.
+ * All times are in milliseconds measured with {@link android.os.SystemClock#elapsedRealtime()}, -1 when the phase was not reached.
+ */
+public class CallMetrics {
+
+    /**
+     * Call URL.
+     */
+    private final String mUrl;
+
+    /**
+     * HTTP method.
+     */
+    private final String mMethod;
+
+    /**
+     * Number of attempts made by the HTTP client.
+     */
+    private int mAttemptCount;
+
+    /**
+     * Connection time, including host name resolution and TLS handshake for HTTPS. Close to 0 on a kept-alive connection.
+     */
+    private long mConnectTime = -1;
+
+    /**
+     * Time between sending the request and receiving the response status.
+     */
+    private long mTimeToFirstByte = -1;
+
+    /**
+     * Time of the last attempt, from opening the connection to reading the whole response.
+     */
+    private long mTotalTime = -1;
+
+    /**
+     * Time from the call being requested to its final result, including retries.
+     */
+    private long mDuration = -1;
+
+    /**
+     * Request body size in bytes.
+     */
+    private long mRequestBytes;
+
+    /**
+     * Response body size in bytes.
+     */
+    private long mResponseBytes;
+
+    /**
+     * HTTP status code, 0 if no response was received.
+     */
+    private int mStatusCode;
+
+    /**
+     * Final error, null on success.
+     */
+    private Exception mException;
+
+    /**
+     * Init.
+     *
+     * @param url    call URL.
+     * @param method HTTP method.
+     */
+    CallMetrics(String url, String method) {
+        mUrl = url;
+        mMethod = method;
+    }
+
+    /**
+     * Reset phase measurements for a new attempt.
+     */
+    void onAttemptStarted() {
+        mAttemptCount++;
+        mConnectTime = -1;
+        mTimeToFirstByte = -1;
+        mTotalTime = -1;
+        mRequestBytes = 0;
+        mResponseBytes = 0;
+        mStatusCode = 0;
+    }
+
+    void setConnectTime(long connectTime) {
+        mConnectTime = connectTime;
+    }
+
+    void setTimeToFirstByte(long timeToFirstByte) {
+        mTimeToFirstByte = timeToFirstByte;
+    }
+
+    void setTotalTime(long totalTime) {
+        mTotalTime = totalTime;
+    }
+
+    void setDuration(long duration) {
+        mDuration = duration;
+    }
+
+    void setRequestBytes(long requestBytes) {
+        mRequestBytes = requestBytes;
+    }
+
+    void setResponseBytes(long responseBytes) {
+        mResponseBytes = responseBytes;
+    }
+
+    void setStatusCode(int statusCode) {
+        mStatusCode = statusCode;
+    }
+
+    void setException(Exception exception) {
+        mException = exception;
+    }
+
+    /**
+     * Get the call URL, which identifies the endpoint.
+     *
+     * @return call URL.
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * Get the number of retries made after the first attempt.
+     *
+     * @return retry count.
+     */
+    public int getRetryCount() {
+        return Math.max(0, mAttemptCount - 1);
+    }
+
+    /**
+     * Get the time spent opening the connection, host name resolution and TLS handshake included for HTTPS.
+     *
+     * @return connection time in milliseconds, -1 if not connected.
+     */
+    public long getConnectTime() {
+        return mConnectTime;
+    }
+
+    public long getTimeToFirstByte() {
+        return mTimeToFirstByte;
+    }
+
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    public long getDuration() {
+        return mDuration;
+    }
+
+    public long getRequestBytes() {
+        return mRequestBytes;
+    }
+
+    public long getResponseBytes() {
+        return mResponseBytes;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    public Exception getException() {
+        return mException;
+    }
+
+    @Override
+    public String toString() {
+        return "CallMetrics{" +
+                "url='" + mUrl + '\'' +
+                ", method='" + mMethod + '\'' +
+                ", statusCode=" + mStatusCode +
+                ", retryCount=" + getRetryCount() +
+                ", connectTime=" + mConnectTime +
+                ", timeToFirstByte=" + mTimeToFirstByte +
+                ", totalTime=" + mTotalTime +
+                ", duration=" + mDuration +
+                ", requestBytes=" + mRequestBytes +
+                ", responseBytes=" + mResponseBytes +
+                '}';
+    }
+}
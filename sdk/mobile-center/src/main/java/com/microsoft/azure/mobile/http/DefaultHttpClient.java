@@ -1,23 +1,34 @@
 package com.microsoft.azure.mobile.http;
 
 import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.utils.HandlerUtils;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.RejectedExecutionException;
 
 import static com.microsoft.azure.mobile.MobileCenter.LOG_TAG;
 import static java.lang.Math.max;
 
+/**
+ * HTTP client based on {@link HttpURLConnection}.
+ * <p>
+ * Connections of fully read responses are kept alive and reused by the next calls to the same host.
+ * Concurrent calls still use one connection each: {@link HttpURLConnection} cannot multiplex them over HTTP/2.
+ */
 public class DefaultHttpClient implements HttpClient {
 
     /**
@@ -68,10 +79,11 @@ public class DefaultHttpClient implements HttpClient {
      * Dump stream to string.
      *
      * @param urlConnection URL connection.
+     * @param stream        response stream, closed by this method.
      * @return dumped string.
      * @throws IOException if an error occurred.
      */
-    private static String dump(HttpURLConnection urlConnection) throws IOException {
+    private static String dump(HttpURLConnection urlConnection, InputStream stream) throws IOException {
 
         /*
          * Though content length header value is less than actual payload length (gzip), we want to init
@@ -79,11 +91,6 @@ public class DefaultHttpClient implements HttpClient {
          * use case).
          */
         StringBuilder builder = new StringBuilder(max(urlConnection.getContentLength(), DEFAULT_STRING_BUILDER_CAPACITY));
-        InputStream stream;
-        if (urlConnection.getResponseCode() < 400)
-            stream = urlConnection.getInputStream();
-        else
-            stream = urlConnection.getErrorStream();
         try {
             InputStreamReader in = new InputStreamReader(stream, CHARSET_NAME);
             char[] buffer = new char[READ_BUFFER_SIZE];
@@ -96,11 +103,41 @@ public class DefaultHttpClient implements HttpClient {
         }
     }
 
+    /**
+     * Collect the first value of each response header.
+     *
+     * @param urlConnection URL connection.
+     * @return response headers, can be empty.
+     */
+    private static Map<String, String> getResponseHeaders(HttpURLConnection urlConnection) {
+        Map<String, String> headers = new HashMap<>();
+        Map<String, List<String>> headerFields = urlConnection.getHeaderFields();
+        if (headerFields != null) {
+            for (Map.Entry<String, List<String>> header : headerFields.entrySet()) {
+
+                /* The status line is reported with a null key. */
+                List<String> values = header.getValue();
+                if (header.getKey() != null && values != null && !values.isEmpty())
+                    headers.put(header.getKey(), values.get(0));
+            }
+        }
+        return headers;
+    }
+
     private static String doCall(String urlString, String method, Map<String, String> headers, CallTemplate callTemplate) throws Exception {
 
+        /* Report measurements if requested by a decorator. */
+        MeteredCallTemplate meteredCallTemplate = null;
+        if (callTemplate instanceof MeteredCallTemplate) {
+            meteredCallTemplate = (MeteredCallTemplate) callTemplate;
+            meteredCallTemplate.onAttemptStarted();
+        }
+        long startTime = SystemClock.elapsedRealtime();
+
         /* HTTP session. */
         URL url = new URL(urlString);
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        boolean responseRead = false;
         try {
 
             /* Configure connection timeouts. */
@@ -118,32 +155,71 @@ public class DefaultHttpClient implements HttpClient {
                 callTemplate.onBeforeCalling(url, headers);
 
             /* Build payload. */
+            byte[] binaryPayload = null;
             if (method.equals(METHOD_POST) && callTemplate != null) {
                 String payload = callTemplate.buildRequestBody();
                 MobileCenterLog.verbose(LOG_TAG, payload);
 
-                /* Send payload through the wire. */
-                byte[] binaryPayload = payload.getBytes(CHARSET_NAME);
-                urlConnection.setDoOutput(true);
-                urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                /* A metered call template without a wrapped template has no payload. */
+                if (payload != null) {
+                    binaryPayload = payload.getBytes(CHARSET_NAME);
+                    urlConnection.setDoOutput(true);
+                    urlConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                }
+            }
+
+            /* Connect explicitly to measure connection time. */
+            if (meteredCallTemplate != null) {
+                long connectStartTime = SystemClock.elapsedRealtime();
+                urlConnection.connect();
+                meteredCallTemplate.onConnected(SystemClock.elapsedRealtime() - connectStartTime);
+            }
+
+            /* Send payload through the wire. */
+            long requestTime = SystemClock.elapsedRealtime();
+            if (binaryPayload != null) {
                 OutputStream out = urlConnection.getOutputStream();
                 out.write(binaryPayload);
                 out.close();
+                if (meteredCallTemplate != null)
+                    meteredCallTemplate.onRequestSent(binaryPayload.length);
             }
 
             /* Read response. */
             int status = urlConnection.getResponseCode();
-            String response = dump(urlConnection);
+            if (meteredCallTemplate != null)
+                meteredCallTemplate.onResponseStatus(status, SystemClock.elapsedRealtime() - requestTime);
+            InputStream stream;
+            if (status < 400)
+                stream = urlConnection.getInputStream();
+            else
+                stream = urlConnection.getErrorStream();
+            ByteCountingInputStream countingStream = null;
+            if (meteredCallTemplate != null)
+                stream = countingStream = new ByteCountingInputStream(stream);
+            String response = dump(urlConnection, stream);
+            responseRead = true;
             MobileCenterLog.verbose(LOG_TAG, "HTTP response status=" + status + " payload=" + response);
+            if (countingStream != null) {
+
+                /* Prefer content length which is the size on the wire when the response is compressed. */
+                int contentLength = urlConnection.getContentLength();
+                meteredCallTemplate.onResponseRead(contentLength >= 0 ? contentLength : countingStream.mByteCount, SystemClock.elapsedRealtime() - startTime);
+            }
 
             /* Generate exception on failure. */
             if (status != 200)
-                throw new HttpException(status, response);
+                throw new HttpException(status, response, getResponseHeaders(urlConnection));
             return response;
         } finally {
 
-            /* Release connection. */
-            urlConnection.disconnect();
+            /*
+             * Once the response is fully read, the connection goes back to the keep-alive pool
+             * so that the next call to the same host skips the TCP and TLS handshakes.
+             * Otherwise release it as its state is unknown.
+             */
+            if (!responseRead)
+                urlConnection.disconnect();
         }
     }
 
@@ -222,4 +298,42 @@ public class DefaultHttpClient implements HttpClient {
                 mServiceCallback.onCallSucceeded(result.toString());
         }
     }
+
+    /**
+     * Stream counting the bytes read from the stream it wraps.
+     */
+    private static class ByteCountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read so far.
+         */
+        private long mByteCount;
+
+        ByteCountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                mByteCount++;
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0)
+                mByteCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mByteCount += skipped;
+            return skipped;
+        }
+    }
 }
@@ -15,4 +15,46 @@ public interface HttpClient extends Closeable {
 
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
+
+    /**
+     * Call template also receiving the measurements of each attempt made by the client doing the network calls.
+     * All times are in milliseconds.
+     */
+    interface MeteredCallTemplate extends CallTemplate {
+
+        /**
+         * Called before each attempt, including retries.
+         */
+        void onAttemptStarted();
+
+        /**
+         * Called when the connection is open.
+         *
+         * @param connectTime time spent opening the connection.
+         */
+        void onConnected(long connectTime);
+
+        /**
+         * Called when the request body is sent.
+         *
+         * @param requestBytes request body size in bytes.
+         */
+        void onRequestSent(long requestBytes);
+
+        /**
+         * Called when the response status is received.
+         *
+         * @param statusCode      HTTP status code.
+         * @param timeToFirstByte time between sending the request and receiving the status.
+         */
+        void onResponseStatus(int statusCode, long timeToFirstByte);
+
+        /**
+         * Called when the response body is fully read.
+         *
+         * @param responseBytes response body size in bytes.
+         * @param totalTime     time of the attempt, from opening the connection to reading the whole response.
+         */
+        void onResponseRead(long responseBytes, long totalTime);
+    }
 }
@@ -41,7 +41,10 @@ abstract class HttpClientCallDecorator implements Runnable, ServiceCall, Service
 
     @Override
     public synchronized void cancel() {
-        mServiceCall.cancel();
+
+        /* The call may not have been started yet if it was delayed. */
+        if (mServiceCall != null)
+            mServiceCall.cancel();
     }
 
     @Override
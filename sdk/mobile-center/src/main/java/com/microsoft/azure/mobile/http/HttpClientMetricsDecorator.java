@@ -0,0 +1,194 @@
+package com.microsoft.azure.mobile.http;
+
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.azure.mobile.utils.MobileCenterLog;
+
+import org.json.JSONException;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static com.microsoft.azure.mobile.MobileCenter.LOG_TAG;
+
+/**
+ * Decorator measuring latency and payload sizes of calls and publishing them to listeners.
+ * <p>
+ * Phase timings are reported by {@link DefaultHttpClient} on every attempt through {@link MeteredCallTemplate},
+ * so this decorator must be placed above any retrying decorator to report retry counts.
+ */
+public class HttpClientMetricsDecorator extends HttpClientDecorator {
+
+    /**
+     * Listeners receiving metrics of every call.
+     */
+    private static final Collection<Listener> sListeners = new LinkedHashSet<>();
+
+    /**
+     * Init.
+     *
+     * @param decoratedApi API to decorate.
+     */
+    public HttpClientMetricsDecorator(HttpClient decoratedApi) {
+        super(decoratedApi);
+    }
+
+    /**
+     * Add a listener receiving metrics of all the HTTP calls made by the SDK.
+     *
+     * @param listener listener to add.
+     */
+    public static synchronized void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    /**
+     * Remove a metrics listener.
+     *
+     * @param listener listener to remove.
+     */
+    public static synchronized void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Publish metrics to listeners.
+     *
+     * @param metrics call metrics.
+     */
+    private static void publish(CallMetrics metrics) {
+        Collection<Listener> listeners;
+        synchronized (HttpClientMetricsDecorator.class) {
+            listeners = new ArrayList<>(sListeners);
+        }
+        MobileCenterLog.verbose(LOG_TAG, metrics.toString());
+        for (Listener listener : listeners) {
+
+            /* A failing listener must not prevent the service callback from being called. */
+            try {
+                listener.onCallCompleted(metrics);
+            } catch (RuntimeException e) {
+                MobileCenterLog.error(LOG_TAG, "Call metrics listener failed.", e);
+            }
+        }
+    }
+
+    @Override
+    public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+        MeteredCall call = new MeteredCall(mDecoratedApi, url, method, headers, callTemplate, serviceCallback);
+        call.run();
+        return call;
+    }
+
+    /**
+     * Metrics listener specification.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a call completes, successfully or not. Cancelled calls are not reported.
+         *
+         * @param metrics call metrics.
+         */
+        void onCallCompleted(CallMetrics metrics);
+    }
+
+    /**
+     * Call template recording the measurements reported by {@link DefaultHttpClient} into the call metrics.
+     */
+    @VisibleForTesting
+    static class MetricsCallTemplate implements MeteredCallTemplate {
+
+        /**
+         * Metrics to record into.
+         */
+        final CallMetrics mMetrics;
+
+        /**
+         * Original call template, can be null.
+         */
+        final CallTemplate mCallTemplate;
+
+        MetricsCallTemplate(CallMetrics metrics, CallTemplate callTemplate) {
+            mMetrics = metrics;
+            mCallTemplate = callTemplate;
+        }
+
+        @Override
+        public String buildRequestBody() throws JSONException {
+            return mCallTemplate == null ? null : mCallTemplate.buildRequestBody();
+        }
+
+        @Override
+        public void onBeforeCalling(URL url, Map<String, String> headers) {
+            if (mCallTemplate != null)
+                mCallTemplate.onBeforeCalling(url, headers);
+        }
+
+        @Override
+        public void onAttemptStarted() {
+            mMetrics.onAttemptStarted();
+        }
+
+        @Override
+        public void onConnected(long connectTime) {
+            mMetrics.setConnectTime(connectTime);
+        }
+
+        @Override
+        public void onRequestSent(long requestBytes) {
+            mMetrics.setRequestBytes(requestBytes);
+        }
+
+        @Override
+        public void onResponseStatus(int statusCode, long timeToFirstByte) {
+            mMetrics.setStatusCode(statusCode);
+            mMetrics.setTimeToFirstByte(timeToFirstByte);
+        }
+
+        @Override
+        public void onResponseRead(long responseBytes, long totalTime) {
+            mMetrics.setResponseBytes(responseBytes);
+            mMetrics.setTotalTime(totalTime);
+        }
+    }
+
+    /**
+     * Call wrapper logic.
+     */
+    private static class MeteredCall extends HttpClientCallDecorator {
+
+        /**
+         * Call start time.
+         */
+        private final long mStartTime;
+
+        MeteredCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+            super(decoratedApi, url, method, headers, new MetricsCallTemplate(new CallMetrics(url, method), callTemplate), serviceCallback);
+            mStartTime = SystemClock.elapsedRealtime();
+        }
+
+        private CallMetrics complete(Exception e) {
+            CallMetrics metrics = ((MetricsCallTemplate) mCallTemplate).mMetrics;
+            metrics.setDuration(SystemClock.elapsedRealtime() - mStartTime);
+            metrics.setException(e);
+            return metrics;
+        }
+
+        @Override
+        public void onCallSucceeded(String payload) {
+            publish(complete(null));
+            super.onCallSucceeded(payload);
+        }
+
+        @Override
+        public void onCallFailed(Exception e) {
+            publish(complete(e));
+            mServiceCallback.onCallFailed(e);
+        }
+    }
+}
@@ -9,33 +9,21 @@ import com.microsoft.azure.mobile.utils.MobileCenterLog;
 
 import java.net.UnknownHostException;
 import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Decorator managing retries.
  */
 public class HttpClientRetryer extends HttpClientDecorator {
 
-    /**
-     * Retry intervals to use, array index is to use the value for each retry. When we used all the array values, we give up and forward the last error.
-     */
-    @VisibleForTesting
-    static final long[] RETRY_INTERVALS = new long[]{
-            TimeUnit.SECONDS.toMillis(10),
-            TimeUnit.MINUTES.toMillis(5),
-            TimeUnit.MINUTES.toMillis(20)
-    };
-
     /**
      * Android "timer" using the main thread loop.
      */
     private final Handler mHandler;
 
     /**
-     * Random object for interval randomness.
+     * Retry state shared with the other retryers.
      */
-    private final Random mRandom = new Random();
+    private final RetryEngine mRetryEngine;
 
     /**
      * Init with default retry policy.
@@ -43,7 +31,7 @@ public class HttpClientRetryer extends HttpClientDecorator {
      * @param decoratedApi API to decorate.
      */
     public HttpClientRetryer(HttpClient decoratedApi) {
-        this(decoratedApi, new Handler(Looper.getMainLooper()));
+        this(decoratedApi, new Handler(Looper.getMainLooper()), RetryEngine.getSharedInstance());
     }
 
     /**
@@ -51,20 +39,27 @@ public class HttpClientRetryer extends HttpClientDecorator {
      *
      * @param decoratedApi API to decorate.
      * @param handler      handler for timed retries.
+     * @param retryEngine  retry state.
      */
     @VisibleForTesting
-    HttpClientRetryer(HttpClient decoratedApi, Handler handler) {
+    HttpClientRetryer(HttpClient decoratedApi, Handler handler, RetryEngine retryEngine) {
         super(decoratedApi);
         mHandler = handler;
+        mRetryEngine = retryEngine;
     }
 
-
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
 
-        /* Wrap the call with the retry logic and call delegate. */
+        /* Wrap the call with the retry logic and call delegate, unless the host circuit is open. */
         RetryableCall retryableCall = new RetryableCall(mDecoratedApi, url, method, headers, callTemplate, serviceCallback);
-        retryableCall.run();
+        mRetryEngine.onNewCall();
+        long delay = mRetryEngine.getCallDelay(url);
+        if (delay > 0) {
+            MobileCenterLog.debug(MobileCenter.LOG_TAG, "Host is failing, call delayed by " + delay + " ms");
+            mHandler.postDelayed(retryableCall, delay);
+        } else
+            retryableCall.run();
         return retryableCall;
     }
 
@@ -78,6 +73,11 @@ public class HttpClientRetryer extends HttpClientDecorator {
          */
         private int mRetryCount;
 
+        /**
+         * Last retry delay, 0 before the first retry.
+         */
+        private long mDelay;
+
         RetryableCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
             super(decoratedApi, url, method, headers, callTemplate, serviceCallback);
         }
@@ -88,11 +88,18 @@ public class HttpClientRetryer extends HttpClientDecorator {
             super.cancel();
         }
 
+        @Override
+        public void onCallSucceeded(String payload) {
+            mRetryEngine.onCallSucceeded(mUrl);
+            super.onCallSucceeded(payload);
+        }
+
         @Override
         public void onCallFailed(Exception e) {
-            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e)) {
-                long delay = RETRY_INTERVALS[mRetryCount++] / 2;
-                delay += mRandom.nextInt((int) delay);
+            long delay = mRetryEngine.onCallFailed(mUrl, e, mRetryCount, mDelay);
+            if (delay >= 0) {
+                mRetryCount++;
+                mDelay = delay;
                 String message = "Try #" + mRetryCount + " failed and will be retried in " + delay + " ms";
                 if (e instanceof UnknownHostException)
                     message += " (UnknownHostException)";
@@ -4,10 +4,17 @@ import android.support.annotation.VisibleForTesting;
 
 import java.io.EOFException;
 import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
 import java.net.SocketException;
+import java.net.URL;
 import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
@@ -24,6 +31,17 @@ public class HttpUtils {
     @VisibleForTesting
     static final int MAX_CHARACTERS_DISPLAYED_FOR_SECRET = 8;
 
+    /**
+     * Retry-After HTTP header, either a number of seconds or an HTTP date.
+     */
+    @VisibleForTesting
+    static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * HTTP date format (RFC 1123) used by Retry-After.
+     */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
     /**
      * Types of exception that can be retried, no matter what the details are. Sub-classes are included.
      */
@@ -80,6 +98,91 @@ public class HttpUtils {
         return false;
     }
 
+    /**
+     * Get the delay requested by the server through the Retry-After header of a 429 or 503 response.
+     *
+     * @param t   exception or error.
+     * @param now current time in milliseconds, used to convert an HTTP date to a delay.
+     * @return delay in milliseconds, or -1 if no valid Retry-After value is available.
+     */
+    public static long getRetryAfter(Throwable t, long now) {
+        if (!(t instanceof HttpException))
+            return -1;
+        HttpException exception = (HttpException) t;
+        int code = exception.getStatusCode();
+        if (code != 429 && code != 503)
+            return -1;
+        String value = null;
+        for (Map.Entry<String, String> header : exception.getHeaders().entrySet())
+            if (RETRY_AFTER.equalsIgnoreCase(header.getKey())) {
+                value = header.getValue();
+                break;
+            }
+        if (value == null)
+            return -1;
+        value = value.trim();
+
+        /* Try delta seconds first. */
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : seconds * 1000;
+        } catch (NumberFormatException ignored) {
+        }
+
+        /* Then try HTTP date. */
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value);
+            return Math.max(0, date.getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the host of a URL, used to group calls per server.
+     *
+     * @param url URL.
+     * @return host, or the URL itself if it cannot be parsed.
+     */
+    public static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Get the number of bytes of a string encoded in UTF-8, without encoding it.
+     *
+     * @param string string to measure.
+     * @return encoded length in bytes.
+     */
+    public static int getUtf8Length(String string) {
+        int length = 0;
+        for (int i = 0, count = string.length(); i < count; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80)
+                length++;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(string.charAt(i + 1))) {
+
+                /* A surrogate pair is one 4 bytes code point. */
+                length += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+
+                /* Unpaired surrogates are encoded as '?' by String.getBytes. */
+                length++;
+            else
+                length += 3;
+        }
+        return length;
+    }
+
     public static String hideSecret(String secret) {
 
         /* Cannot hide null or empty string. */
@@ -0,0 +1,253 @@
+package com.microsoft.azure.mobile.http;
+
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry state shared by all {@link HttpClientRetryer} instances of the process.
+ * <p>
+ * It combines:
+ * <ul>
+ * <li>exponential backoff with decorrelated jitter,</li>
+ * <li>the Retry-After delay sent by the server on 429 and 503 responses,</li>
+ * <li>a circuit breaker per host that delays new calls after repeated failures,</li>
+ * <li>a global retry budget limiting retries to a ratio of the calls made over a sliding time window.</li>
+ * </ul>
+ */
+class RetryEngine {
+
+    /**
+     * Maximum number of retries for a single call.
+     */
+    @VisibleForTesting
+    static final int MAX_RETRIES = 3;
+
+    /**
+     * Base (and minimum) retry delay.
+     */
+    @VisibleForTesting
+    static final long BACKOFF_BASE = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Maximum retry delay.
+     */
+    @VisibleForTesting
+    static final long BACKOFF_CAP = TimeUnit.MINUTES.toMillis(20);
+
+    /**
+     * Number of consecutive recoverable failures on a host before opening its circuit.
+     */
+    @VisibleForTesting
+    static final int CIRCUIT_BREAKER_THRESHOLD = 5;
+
+    /**
+     * Time during which calls to a host are delayed once its circuit is open.
+     */
+    @VisibleForTesting
+    static final long CIRCUIT_BREAKER_OPEN_DURATION = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Duration of the retry budget window.
+     */
+    @VisibleForTesting
+    static final long RETRY_BUDGET_WINDOW = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Number of buckets the retry budget window is split into.
+     */
+    private static final int RETRY_BUDGET_BUCKETS = 10;
+
+    /**
+     * Retries allowed in the window regardless of the number of calls.
+     */
+    @VisibleForTesting
+    static final int RETRY_BUDGET_MIN_RETRIES = 10;
+
+    /**
+     * Retries allowed in the window for each call made in the window.
+     */
+    @VisibleForTesting
+    static final float RETRY_BUDGET_RATIO = 0.2f;
+
+    /**
+     * Shared instance.
+     */
+    private static RetryEngine sSharedInstance;
+
+    /**
+     * Circuit state per host.
+     */
+    private final Map<String, HostState> mHostStates = new HashMap<>();
+
+    /**
+     * Random object for delay randomness.
+     */
+    private final Random mRandom;
+
+    /**
+     * New calls per bucket of the retry budget window.
+     */
+    private final int[] mCallCounts = new int[RETRY_BUDGET_BUCKETS];
+
+    /**
+     * Retries per bucket of the retry budget window.
+     */
+    private final int[] mRetryCounts = new int[RETRY_BUDGET_BUCKETS];
+
+    /**
+     * Number of the current bucket since boot.
+     */
+    private long mCurrentBucket;
+
+    /**
+     * Init.
+     *
+     * @param random random object for delay randomness.
+     */
+    @VisibleForTesting
+    RetryEngine(Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Get shared instance.
+     *
+     * @return shared instance.
+     */
+    static synchronized RetryEngine getSharedInstance() {
+        if (sSharedInstance == null)
+            sSharedInstance = new RetryEngine(new Random());
+        return sSharedInstance;
+    }
+
+    /**
+     * Get how long a new call to the given URL must wait before being executed.
+     *
+     * @param url call URL.
+     * @return delay in milliseconds, 0 if the call can be executed now.
+     */
+    synchronized long getCallDelay(String url) {
+        HostState hostState = mHostStates.get(HttpUtils.getHost(url));
+        if (hostState == null)
+            return 0;
+        return Math.max(0, hostState.mOpenUntil - System.currentTimeMillis());
+    }
+
+    /**
+     * Record a new call, which raises the number of retries allowed by the budget.
+     */
+    synchronized void onNewCall() {
+        mCallCounts[getCurrentBucketIndex()]++;
+    }
+
+    /**
+     * Record a successful call: close the host circuit.
+     *
+     * @param url call URL.
+     */
+    synchronized void onCallSucceeded(String url) {
+        mHostStates.remove(HttpUtils.getHost(url));
+    }
+
+    /**
+     * Record a failed call and compute the delay before retrying it.
+     *
+     * @param url           call URL.
+     * @param e             call failure.
+     * @param retryCount    number of retries already done for this call.
+     * @param previousDelay delay used for the previous retry, 0 if none.
+     * @return delay in milliseconds before retrying, or -1 if the call must not be retried.
+     */
+    synchronized long onCallFailed(String url, Exception e, int retryCount, long previousDelay) {
+        if (!HttpUtils.isRecoverableError(e))
+            return -1;
+
+        /* Update host circuit, honoring the server requested delay. */
+        long now = System.currentTimeMillis();
+        String host = HttpUtils.getHost(url);
+        HostState hostState = mHostStates.get(host);
+        if (hostState == null) {
+            hostState = new HostState();
+            mHostStates.put(host, hostState);
+        }
+        hostState.mConsecutiveFailures++;
+        if (hostState.mConsecutiveFailures >= CIRCUIT_BREAKER_THRESHOLD)
+            hostState.mOpenUntil = Math.max(hostState.mOpenUntil, now + CIRCUIT_BREAKER_OPEN_DURATION);
+        long retryAfter = HttpUtils.getRetryAfter(e, now);
+        if (retryAfter >= 0)
+            hostState.mOpenUntil = Math.max(hostState.mOpenUntil, now + retryAfter);
+
+        /* Check retry count and global budget. */
+        if (retryCount >= MAX_RETRIES || !isRetryInBudget())
+            return -1;
+
+        /* Decorrelated jitter: random between base and 3 times the previous delay. */
+        long upper = Math.min(BACKOFF_CAP, Math.max(BACKOFF_BASE, previousDelay) * 3);
+        long delay = BACKOFF_BASE + (long) (mRandom.nextDouble() * (upper - BACKOFF_BASE));
+
+        /* Wait for the circuit to close, with jitter so that clients don't retry all at once. */
+        long circuitDelay = hostState.mOpenUntil - now;
+        if (circuitDelay > BACKOFF_CAP)
+            return -1;
+        if (circuitDelay > 0)
+            delay = Math.max(delay, circuitDelay + (long) (mRandom.nextDouble() * BACKOFF_BASE));
+
+        /* Only charge the budget for calls actually retried. */
+        mRetryCounts[getCurrentBucketIndex()]++;
+        return Math.min(BACKOFF_CAP, delay);
+    }
+
+    /**
+     * Check whether the retries made in the window leave room for one more.
+     */
+    private boolean isRetryInBudget() {
+        getCurrentBucketIndex();
+        int calls = 0;
+        int retries = 0;
+        for (int i = 0; i < RETRY_BUDGET_BUCKETS; i++) {
+            calls += mCallCounts[i];
+            retries += mRetryCounts[i];
+        }
+        return retries < RETRY_BUDGET_MIN_RETRIES + RETRY_BUDGET_RATIO * calls;
+    }
+
+    /**
+     * Slide the window to the current time, resetting expired buckets.
+     *
+     * @return index of the current bucket.
+     */
+    private int getCurrentBucketIndex() {
+        long bucket = SystemClock.elapsedRealtime() / (RETRY_BUDGET_WINDOW / RETRY_BUDGET_BUCKETS);
+        if (bucket > mCurrentBucket) {
+            long expired = Math.min(bucket - mCurrentBucket, RETRY_BUDGET_BUCKETS);
+            for (long i = bucket - expired + 1; i <= bucket; i++) {
+                int index = (int) (i % RETRY_BUDGET_BUCKETS);
+                mCallCounts[index] = 0;
+                mRetryCounts[index] = 0;
+            }
+            mCurrentBucket = bucket;
+        }
+        return (int) (mCurrentBucket % RETRY_BUDGET_BUCKETS);
+    }
+
+    /**
+     * Circuit breaker state for a host.
+     */
+    private static class HostState {
+
+        /**
+         * Consecutive recoverable failures.
+         */
+        int mConsecutiveFailures;
+
+        /**
+         * Time until which calls are delayed.
+         */
+        long mOpenUntil;
+    }
+}
@@ -30,4 +30,17 @@ public interface Ingestion extends Closeable {
      * @param logUrl log URL.
      */
     void setLogUrl(String logUrl);
+
+    /**
+     * Service callback that is also notified of the size of the payload sent.
+     */
+    interface Callback extends ServiceCallback {
+
+        /**
+         * Called each time the payload is serialized to be sent, which includes retries.
+         *
+         * @param length size of the serialized payload in bytes, as sent over the network.
+         */
+        void onPayloadSerialized(int length);
+    }
 }
@@ -6,6 +6,7 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.http.DefaultHttpClient;
 import com.microsoft.azure.mobile.http.HttpClient;
+import com.microsoft.azure.mobile.http.HttpClientMetricsDecorator;
 import com.microsoft.azure.mobile.http.HttpClientNetworkStateHandler;
 import com.microsoft.azure.mobile.http.HttpClientRetryer;
 import com.microsoft.azure.mobile.http.HttpUtils;
@@ -75,8 +76,9 @@ public class IngestionHttp implements Ingestion {
     public IngestionHttp(@NonNull Context context, @NonNull LogSerializer logSerializer) {
         mLogSerializer = logSerializer;
         HttpClientRetryer retryer = new HttpClientRetryer(new DefaultHttpClient());
+        HttpClientMetricsDecorator metricsDecorator = new HttpClientMetricsDecorator(retryer);
         NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
-        mHttpClient = new HttpClientNetworkStateHandler(retryer, networkStateHelper);
+        mHttpClient = new HttpClientNetworkStateHandler(metricsDecorator, networkStateHelper);
         mLogUrl = DEFAULT_LOG_URL;
     }
 
@@ -96,7 +98,8 @@ public class IngestionHttp implements Ingestion {
         Map<String, String> headers = new HashMap<>();
         headers.put(INSTALL_ID, installId.toString());
         headers.put(APP_SECRET, appSecret);
-        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
+        Callback payloadCallback = serviceCallback instanceof Callback ? (Callback) serviceCallback : null;
+        HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer, payloadCallback);
         return mHttpClient.callAsync(mLogUrl + API_PATH, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
@@ -114,9 +117,12 @@ public class IngestionHttp implements Ingestion {
 
         private final LogContainer mLogContainer;
 
-        IngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer) {
+        private final Callback mPayloadCallback;
+
+        IngestionCallTemplate(LogSerializer logSerializer, LogContainer logContainer, Callback payloadCallback) {
             mLogSerializer = logSerializer;
             mLogContainer = logContainer;
+            mPayloadCallback = payloadCallback;
         }
 
         @Override
@@ -143,6 +149,8 @@ public class IngestionHttp implements Ingestion {
                 for (int i = 0; i < size; i++)
                     logs.get(i).setToffset(absoluteTimes[i]);
             }
+            if (mPayloadCallback != null)
+                mPayloadCallback.onPayloadSerialized(HttpUtils.getUtf8Length(payload));
             return payload;
         }
 
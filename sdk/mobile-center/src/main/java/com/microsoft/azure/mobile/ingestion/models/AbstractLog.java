@@ -3,7 +3,10 @@ package com.microsoft.azure.mobile.ingestion.models;
 
 import android.support.annotation.VisibleForTesting;
 
+import com.microsoft.azure.mobile.ingestion.models.json.DeviceJsonCache;
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamWriter;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -16,7 +19,7 @@ import static com.microsoft.azure.mobile.ingestion.models.CommonProperties.TYPE;
 /**
  * The AbstractLog model.
  */
-public abstract class AbstractLog implements Log {
+public abstract class AbstractLog implements Log, StreamingModel {
 
     /**
      * Session identifier property.
@@ -48,6 +51,11 @@ public abstract class AbstractLog implements Log {
      */
     private Device device;
 
+    /**
+     * Whether toffset was read by {@link #readField(String, JsonStreamReader)}, as it has no null value.
+     */
+    private boolean toffsetRead;
+
     @Override
     public long getToffset() {
         return this.toffset;
@@ -100,9 +108,15 @@ public abstract class AbstractLog implements Log {
         JSONUtils.write(writer, TOFFSET, getToffset());
         JSONUtils.write(writer, SID, getSid());
         if (getDevice() != null) {
-            writer.key(DEVICE).object();
-            getDevice().write(writer);
-            writer.endObject();
+
+            /* Splice the compact device JSON encoded once for all logs when the writer is compact too. */
+            if (writer instanceof JsonStreamWriter && ((JsonStreamWriter) writer).isCompact())
+                ((JsonStreamWriter) writer).key(DEVICE).rawValue(DeviceJsonCache.getJson(getDevice()));
+            else {
+                writer.key(DEVICE).object();
+                getDevice().write(writer);
+                writer.endObject();
+            }
         }
     }
 
@@ -120,6 +134,31 @@ public abstract class AbstractLog implements Log {
         }
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(TYPE)) {
+            if (!reader.nextString().equals(getType()))
+                throw new JSONException("Invalid type");
+        } else if (name.equals(TOFFSET)) {
+            setToffset(reader.nextLong());
+            toffsetRead = true;
+        } else if (name.equals(SID))
+            setSid(UUID.fromString(reader.nextString()));
+        else if (name.equals(DEVICE)) {
+            Device device = new Device();
+            JSONUtils.read(reader, device);
+            setDevice(device);
+        } else
+            return false;
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() throws JSONException {
+        if (!toffsetRead)
+            throw new JSONException("No value for " + TOFFSET);
+    }
+
     @Override
     @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
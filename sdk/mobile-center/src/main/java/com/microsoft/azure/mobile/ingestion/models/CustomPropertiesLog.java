@@ -1,6 +1,7 @@
 package com.microsoft.azure.mobile.ingestion.models;
 
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -85,7 +86,16 @@ public class CustomPropertiesLog extends AbstractLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setProperties(readProperties(object));
+        setProperties(readProperties(object.getJSONArray(PROPERTIES)));
+    }
+
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(PROPERTIES)) {
+            setProperties(readProperties(reader.nextJSONArray()));
+            return true;
+        }
+        return super.readField(name, reader);
     }
 
     @Override
@@ -112,8 +122,7 @@ public class CustomPropertiesLog extends AbstractLog {
         return result;
     }
 
-    private static Map<String, Object> readProperties(JSONObject object) throws JSONException {
-        JSONArray jArray = object.getJSONArray(PROPERTIES);
+    private static Map<String, Object> readProperties(JSONArray jArray) throws JSONException {
         Map<String, Object> properties = new HashMap<>();
         for (int i = 0; i < jArray.length(); i++) {
             JSONObject jProperty = jArray.getJSONObject(i);
@@ -1,6 +1,7 @@
 package com.microsoft.azure.mobile.ingestion.models;
 
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -54,6 +55,15 @@ public class StartServiceLog extends AbstractLog {
         setServices(JSONUtils.readStringArray(object, SERVICES));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(SERVICES)) {
+            setServices(JSONUtils.readStringArray(reader));
+            return true;
+        }
+        return super.readField(name, reader);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
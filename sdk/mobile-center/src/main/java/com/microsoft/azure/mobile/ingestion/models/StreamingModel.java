@@ -0,0 +1,31 @@
+package com.microsoft.azure.mobile.ingestion.models;
+
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
+
+import org.json.JSONException;
+
+/**
+ * Model that can also be read from a {@link JsonStreamReader}, one property at a time.
+ * <p>
+ * Subclasses adding properties must override {@link #readField(String, JsonStreamReader)}
+ * and delegate unknown names to the parent implementation.
+ */
+public interface StreamingModel extends Model {
+
+    /**
+     * Read the value of a property.
+     *
+     * @param name   property name.
+     * @param reader reader positioned on the property value.
+     * @return true if the value was consumed, false if the property is unknown and the value was not consumed.
+     * @throws JSONException if the value is invalid.
+     */
+    boolean readField(String name, JsonStreamReader reader) throws JSONException;
+
+    /**
+     * Check, once all properties are read, that the ones required by {@link #read(org.json.JSONObject)} were present.
+     *
+     * @throws JSONException if a required property is missing.
+     */
+    void checkRequiredFields() throws JSONException;
+}
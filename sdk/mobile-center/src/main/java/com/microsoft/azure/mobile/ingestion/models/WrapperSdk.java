@@ -1,12 +1,13 @@
 package com.microsoft.azure.mobile.ingestion.models;
 
 import com.microsoft.azure.mobile.ingestion.models.json.JSONUtils;
+import com.microsoft.azure.mobile.ingestion.models.json.JsonStreamReader;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-public class WrapperSdk implements Model {
+public class WrapperSdk implements StreamingModel {
 
     private static final String WRAPPER_SDK_VERSION = "wrapper_sdk_version";
 
@@ -173,6 +174,29 @@ public class WrapperSdk implements Model {
         setLiveUpdatePackageHash(object.optString(LIVE_UPDATE_PACKAGE_HASH, null));
     }
 
+    @Override
+    public boolean readField(String name, JsonStreamReader reader) throws JSONException {
+        if (name.equals(WRAPPER_SDK_VERSION))
+            setWrapperSdkVersion(reader.nextString());
+        else if (name.equals(WRAPPER_SDK_NAME))
+            setWrapperSdkName(reader.nextString());
+        else if (name.equals(WRAPPER_RUNTIME_VERSION))
+            setWrapperRuntimeVersion(reader.nextString());
+        else if (name.equals(LIVE_UPDATE_RELEASE_LABEL))
+            setLiveUpdateReleaseLabel(reader.nextString());
+        else if (name.equals(LIVE_UPDATE_DEPLOYMENT_KEY))
+            setLiveUpdateDeploymentKey(reader.nextString());
+        else if (name.equals(LIVE_UPDATE_PACKAGE_HASH))
+            setLiveUpdatePackageHash(reader.nextString());
+        else
+            return false;
+        return true;
+    }
+
+    @Override
+    public void checkRequiredFields() throws JSONException {
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, WRAPPER_SDK_VERSION, getWrapperSdkVersion());
@@ -2,17 +2,15 @@ package com.microsoft.azure.mobile.ingestion.models.json;
 
 import android.support.annotation.NonNull;
 
-import com.microsoft.azure.mobile.MobileCenter;
 import com.microsoft.azure.mobile.ingestion.models.Log;
 import com.microsoft.azure.mobile.ingestion.models.LogContainer;
-import com.microsoft.azure.mobile.utils.MobileCenterLog;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-import java.lang.reflect.Constructor;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -22,12 +20,51 @@ import static com.microsoft.azure.mobile.ingestion.models.CommonProperties.TYPE;
 
 public class DefaultLogSerializer implements LogSerializer {
 
-    private static final String LOGS = "logs";
+    static final String LOGS = "logs";
 
     private final Map<String, LogFactory> mLogFactories = new HashMap<>();
 
+    /**
+     * Output format of log containers.
+     */
+    private final SerializerConfig mConfig;
+
+    /**
+     * Init with pretty JSON containers if verbose logs are enabled at this time, compact otherwise.
+     */
+    public DefaultLogSerializer() {
+        this(SerializerConfig.fromLogLevel());
+    }
+
+    /**
+     * Init.
+     *
+     * @param config output format of log containers, single logs are always compact.
+     */
+    public DefaultLogSerializer(@NonNull SerializerConfig config) {
+        mConfig = config;
+    }
+
+    /**
+     * Get the output format of log containers.
+     *
+     * @return serializer configuration.
+     */
+    @NonNull
+    public SerializerConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Write a log as a JSON object.
+     *
+     * @param writer writer.
+     * @param log    log to write.
+     * @return the writer.
+     * @throws JSONException if the log cannot be serialized.
+     */
     @NonNull
-    private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
+    protected JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
         writer.object();
         log.write(writer);
         writer.endObject();
@@ -35,12 +72,16 @@ public class DefaultLogSerializer implements LogSerializer {
     }
 
     @NonNull
-    private Log readLog(JSONObject object) throws JSONException {
-        String type = object.getString(TYPE);
+    Log createLog(String type) throws JSONException {
         LogFactory logFactory = mLogFactories.get(type);
         if (logFactory == null)
             throw new JSONException("Unknown log type: " + type);
-        Log log = logFactory.create();
+        return logFactory.create();
+    }
+
+    @NonNull
+    Log readLog(JSONObject object) throws JSONException {
+        Log log = createLog(object.getString(TYPE));
         log.read(object);
         return log;
     }
@@ -48,7 +89,9 @@ public class DefaultLogSerializer implements LogSerializer {
     @NonNull
     @Override
     public String serializeLog(@NonNull Log log) throws JSONException {
-        return writeLog(new JSONStringer(), log).toString();
+        StringWriter out = new StringWriter();
+        writeLog(new JsonStreamWriter(out), log);
+        return out.toString();
     }
 
     @NonNull
@@ -60,29 +103,20 @@ public class DefaultLogSerializer implements LogSerializer {
     @NonNull
     @Override
     public String serializeContainer(@NonNull LogContainer logContainer) throws JSONException {
+        StringWriter out = new StringWriter();
+        writeContainer(new JsonStreamWriter(out, mConfig.getIndentSpaces()), logContainer);
+        return out.toString();
+    }
 
-        /* Init JSON serializer, in verbose: try to make it pretty. */
-        JSONStringer writer = null;
-        if (MobileCenterLog.getLogLevel() <= android.util.Log.VERBOSE) {
-            try {
-                Constructor<JSONStringer> constructor = JSONStringer.class.getDeclaredConstructor(int.class);
-                constructor.setAccessible(true);
-                writer = constructor.newInstance(2);
-            } catch (Exception e) {
-                MobileCenterLog.error(MobileCenter.LOG_TAG, "Failed to setup pretty json, falling back to default one", e);
-            }
-        }
-        if (writer == null)
-            writer = new JSONStringer();
-
-        /* Start writing JSON. */
+    @NonNull
+    JSONStringer writeContainer(JSONStringer writer, LogContainer logContainer) throws JSONException {
         writer.object();
         writer.key(LOGS).array();
         for (Log log : logContainer.getLogs())
             writeLog(writer, log);
         writer.endArray();
         writer.endObject();
-        return writer.toString();
+        return writer;
     }
 
     @NonNull
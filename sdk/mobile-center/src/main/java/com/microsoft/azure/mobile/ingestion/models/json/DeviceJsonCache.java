@@ -0,0 +1,64 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.azure.mobile.ingestion.models.Device;
+
+import org.json.JSONException;
+
+import java.io.StringWriter;
+
+/**
+ * Memoized JSON encoding of the last {@link Device} written.
+ * <p>
+ * All the logs of a process share the same device properties, so the device block is encoded once
+ * and spliced into every log. The cache is matched by equality so that devices read back from
+ * persistence also hit. Devices must not be modified once attached to logs. The JSON is compact,
+ * so it is only spliced into compact output.
+ */
+public final class DeviceJsonCache {
+
+    /**
+     * Last device encoded.
+     */
+    private static Device sDevice;
+
+    /**
+     * JSON of the last device encoded.
+     */
+    private static String sJson;
+
+    @VisibleForTesting
+    DeviceJsonCache() {
+    }
+
+    /**
+     * Get the compact JSON object encoding of a device.
+     *
+     * @param device device.
+     * @return JSON object text.
+     * @throws JSONException if the device cannot be serialized.
+     */
+    @NonNull
+    public static synchronized String getJson(@NonNull Device device) throws JSONException {
+        if (sJson == null || !device.equals(sDevice)) {
+            StringWriter out = new StringWriter();
+            JsonStreamWriter writer = new JsonStreamWriter(out);
+            writer.object();
+            device.write(writer);
+            writer.endObject();
+            sJson = out.toString();
+            sDevice = device;
+        }
+        return sJson;
+    }
+
+    /**
+     * Clear the cache, called when device properties change.
+     */
+    public static synchronized void invalidate() {
+        sDevice = null;
+        sJson = null;
+    }
+}
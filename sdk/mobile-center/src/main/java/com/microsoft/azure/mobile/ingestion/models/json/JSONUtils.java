@@ -3,6 +3,8 @@ package com.microsoft.azure.mobile.ingestion.models.json;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.StreamingModel;
+import com.microsoft.azure.mobile.utils.CompactStringMap;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -10,13 +12,17 @@ import org.json.JSONObject;
 import org.json.JSONStringer;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 public final class JSONUtils {
 
+    /**
+     * Initial capacity of maps read from a stream, log properties are limited to 5 entries.
+     */
+    private static final int DEFAULT_MAP_CAPACITY = 5;
+
     @VisibleForTesting
     JSONUtils() {
     }
@@ -43,7 +49,7 @@ public final class JSONUtils {
         JSONObject jProperties = object.optJSONObject(key);
         if (jProperties == null)
             return null;
-        Map<String, String> properties = new HashMap<>(jProperties.length());
+        Map<String, String> properties = new CompactStringMap(jProperties.length());
         Iterator<String> subKeys = jProperties.keys();
         while (subKeys.hasNext()) {
             String subKey = subKeys.next();
@@ -77,6 +83,63 @@ public final class JSONUtils {
         return array;
     }
 
+    /**
+     * Read a JSON object into a model, skipping unknown properties.
+     *
+     * @param reader reader positioned on the object.
+     * @param model  model to read into.
+     * @throws JSONException if the input is invalid.
+     */
+    public static void read(JsonStreamReader reader, StreamingModel model) throws JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!model.readField(reader.nextName(), reader))
+                reader.skipValue();
+        }
+        reader.endObject();
+        model.checkRequiredFields();
+    }
+
+    /**
+     * Check that a required property was read.
+     *
+     * @param key   property name.
+     * @param value property value.
+     * @throws JSONException if the value is null.
+     */
+    public static void checkRequired(String key, Object value) throws JSONException {
+        if (value == null)
+            throw new JSONException("No value for " + key);
+    }
+
+    public static Map<String, String> readMap(JsonStreamReader reader) throws JSONException {
+        if (reader.nextNull())
+            return null;
+        Map<String, String> properties = new CompactStringMap(DEFAULT_MAP_CAPACITY);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            properties.put(key, reader.nextString());
+        }
+        reader.endObject();
+        return properties;
+    }
+
+    public static <M extends Model> List<M> readArray(JsonStreamReader reader, ModelFactory<M> factory) throws JSONException {
+        return reader.nextArray(factory);
+    }
+
+    public static List<String> readStringArray(JsonStreamReader reader) throws JSONException {
+        if (reader.nextNull())
+            return null;
+        List<String> array = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext())
+            array.add(reader.nextString());
+        reader.endArray();
+        return array;
+    }
+
     public static void write(JSONStringer writer, String key, Object value) throws JSONException {
         if (value != null)
             writer.key(key).value(value);
@@ -85,14 +148,24 @@ public final class JSONUtils {
     public static void writeMap(JSONStringer writer, String key, Map<String, String> value) throws JSONException {
         if (value != null) {
             writer.key(key).object();
-            for (Map.Entry<String, String> property : value.entrySet())
-                writer.key(property.getKey()).value(property.getValue());
+            if (value instanceof CompactStringMap) {
+                CompactStringMap map = (CompactStringMap) value;
+                for (int i = 0; i < map.size(); i++)
+                    writer.key(map.keyAt(i)).value(map.valueAt(i));
+            } else {
+                for (Map.Entry<String, String> property : value.entrySet())
+                    writer.key(property.getKey()).value(property.getValue());
+            }
             writer.endObject();
         }
     }
 
     public static void writeArray(JSONStringer writer, String key, List<? extends Model> value) throws JSONException {
-        if (value != null) {
+        if (value == null)
+            return;
+        if (writer instanceof JsonStreamWriter)
+            ((JsonStreamWriter) writer).writeArray(key, value);
+        else {
             writer.key(key).array();
             for (Model model : value) {
                 writer.object();
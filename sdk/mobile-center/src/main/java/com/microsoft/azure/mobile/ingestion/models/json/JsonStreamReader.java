@@ -0,0 +1,560 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.ingestion.models.StreamingModel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pull parser reading JSON tokens one at a time, without building a {@link JSONObject} tree.
+ * <p>
+ * Values are coerced like {@link JSONObject} getters do: numbers can be read from strings and
+ * long values from decimal numbers. Subtrees can still be read as {@link JSONObject} or
+ * {@link JSONArray} for models without a streaming read path.
+ */
+public class JsonStreamReader {
+
+    /**
+     * Array without any value read yet.
+     */
+    private static final int EMPTY_ARRAY = 0;
+
+    /**
+     * Array with at least one value read.
+     */
+    private static final int NONEMPTY_ARRAY = 1;
+
+    /**
+     * Object without any name read yet.
+     */
+    private static final int EMPTY_OBJECT = 2;
+
+    /**
+     * Object with a name read and its value not read yet.
+     */
+    private static final int DANGLING_NAME = 3;
+
+    /**
+     * Object with at least one name value pair read.
+     */
+    private static final int NONEMPTY_OBJECT = 4;
+
+    /**
+     * Top level, no value read yet.
+     */
+    private static final int EMPTY_DOCUMENT = 5;
+
+    /**
+     * Top level, value read.
+     */
+    private static final int NONEMPTY_DOCUMENT = 6;
+
+    /**
+     * JSON text.
+     */
+    private final String mIn;
+
+    /**
+     * Position of next character to read.
+     */
+    private int mPos;
+
+    /**
+     * Nesting stack.
+     */
+    private int[] mStack = new int[16];
+
+    /**
+     * Stack size.
+     */
+    private int mStackSize;
+
+    /**
+     * True when the separator before the next value has already been consumed.
+     */
+    private boolean mValuePending;
+
+    /**
+     * Init.
+     *
+     * @param json JSON text.
+     */
+    public JsonStreamReader(@NonNull String json) {
+        mIn = json;
+        mStack[mStackSize++] = EMPTY_DOCUMENT;
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + mPos);
+    }
+
+    private void push(int scope) {
+        if (mStackSize == mStack.length)
+            mStack = Arrays.copyOf(mStack, mStackSize * 2);
+        mStack[mStackSize++] = scope;
+    }
+
+    /**
+     * Skip whitespace and return next character without consuming it.
+     */
+    private char peekChar() throws JSONException {
+        int length = mIn.length();
+        while (mPos < length) {
+            char c = mIn.charAt(mPos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+            mPos++;
+        }
+        throw syntaxError("End of input");
+    }
+
+    private void expect(char c) throws JSONException {
+        if (peekChar() != c)
+            throw syntaxError("Expected " + c);
+        mPos++;
+    }
+
+    /**
+     * Consume the separator before a value if not done yet and return the first character of the value.
+     */
+    private char peekValue() throws JSONException {
+        if (!mValuePending) {
+            int scope = mStack[mStackSize - 1];
+            switch (scope) {
+                case EMPTY_ARRAY:
+                    mStack[mStackSize - 1] = NONEMPTY_ARRAY;
+                    break;
+
+                case NONEMPTY_ARRAY:
+                    expect(',');
+                    break;
+
+                case DANGLING_NAME:
+                    mStack[mStackSize - 1] = NONEMPTY_OBJECT;
+                    break;
+
+                case EMPTY_DOCUMENT:
+                    mStack[mStackSize - 1] = NONEMPTY_DOCUMENT;
+                    break;
+
+                default:
+                    throw syntaxError("Expected a name");
+            }
+            mValuePending = true;
+        }
+        return peekChar();
+    }
+
+    /**
+     * Consume the beginning of a JSON object.
+     *
+     * @throws JSONException if next value is not an object.
+     */
+    public void beginObject() throws JSONException {
+        if (peekValue() != '{')
+            throw syntaxError("Expected an object");
+        mPos++;
+        mValuePending = false;
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consume the end of the current JSON object.
+     *
+     * @throws JSONException if the current object has more values.
+     */
+    public void endObject() throws JSONException {
+        int scope = mStack[mStackSize - 1];
+        if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT)
+            throw syntaxError("Nesting problem");
+        expect('}');
+        mStackSize--;
+    }
+
+    /**
+     * Consume the beginning of a JSON array.
+     *
+     * @throws JSONException if next value is not an array.
+     */
+    public void beginArray() throws JSONException {
+        if (peekValue() != '[')
+            throw syntaxError("Expected an array");
+        mPos++;
+        mValuePending = false;
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consume the end of the current JSON array.
+     *
+     * @throws JSONException if the current array has more values.
+     */
+    public void endArray() throws JSONException {
+        int scope = mStack[mStackSize - 1];
+        if (scope != EMPTY_ARRAY && scope != NONEMPTY_ARRAY)
+            throw syntaxError("Nesting problem");
+        expect(']');
+        mStackSize--;
+    }
+
+    /**
+     * Check if the current array or object has another element.
+     *
+     * @return true if there is another element.
+     * @throws JSONException if the input ends.
+     */
+    public boolean hasNext() throws JSONException {
+        char c = peekChar();
+        return c != '}' && c != ']';
+    }
+
+    /**
+     * Consume the next property name of the current object.
+     *
+     * @return property name.
+     * @throws JSONException if not reading an object or if input is invalid.
+     */
+    public String nextName() throws JSONException {
+        int scope = mStack[mStackSize - 1];
+        if (scope == NONEMPTY_OBJECT)
+            expect(',');
+        else if (scope != EMPTY_OBJECT)
+            throw syntaxError("Nesting problem");
+        expect('"');
+        String name = readString();
+        expect(':');
+        mStack[mStackSize - 1] = DANGLING_NAME;
+        return name;
+    }
+
+    /**
+     * Consume the next value as a string. Numbers and booleans are converted.
+     *
+     * @return string value.
+     * @throws JSONException if next value is an object, an array or null.
+     */
+    public String nextString() throws JSONException {
+        char c = peekValue();
+        if (c == '{' || c == '[')
+            throw syntaxError("Expected a string");
+        String value;
+        if (c == '"') {
+            mPos++;
+            value = readString();
+        } else {
+            value = readLiteral();
+            if (value.equals("null"))
+                throw syntaxError("Expected a string");
+        }
+        mValuePending = false;
+        return value;
+    }
+
+    /**
+     * Consume the next value as a long. Decimal values are truncated.
+     *
+     * @return long value.
+     * @throws JSONException if next value is not a number.
+     */
+    public long nextLong() throws JSONException {
+        String literal = nextNumberLiteral();
+        try {
+            return Long.parseLong(literal);
+        } catch (NumberFormatException e) {
+            return (long) parseDouble(literal);
+        }
+    }
+
+    /**
+     * Consume the next value as an int. Decimal values are truncated.
+     *
+     * @return int value.
+     * @throws JSONException if next value is not a number.
+     */
+    public int nextInt() throws JSONException {
+        return (int) nextLong();
+    }
+
+    /**
+     * Consume the next value as a double.
+     *
+     * @return double value.
+     * @throws JSONException if next value is not a number.
+     */
+    public double nextDouble() throws JSONException {
+        return parseDouble(nextNumberLiteral());
+    }
+
+    /**
+     * Consume the next value as a boolean.
+     *
+     * @return boolean value.
+     * @throws JSONException if next value is not a boolean.
+     */
+    public boolean nextBoolean() throws JSONException {
+        char c = peekValue();
+        String literal;
+        if (c == '"') {
+            mPos++;
+            literal = readString();
+        } else
+            literal = readLiteral();
+        mValuePending = false;
+        if ("true".equalsIgnoreCase(literal))
+            return true;
+        if ("false".equalsIgnoreCase(literal))
+            return false;
+        throw syntaxError("Expected a boolean");
+    }
+
+    /**
+     * Consume the next value if it is null.
+     *
+     * @return true if a null was consumed, false if next value is not null and was not consumed.
+     * @throws JSONException if the input is invalid.
+     */
+    public boolean nextNull() throws JSONException {
+        if (peekValue() == 'n' && mIn.startsWith("null", mPos)) {
+            mPos += 4;
+            mValuePending = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skip the next value, including any nested value.
+     *
+     * @throws JSONException if the input is invalid.
+     */
+    public void skipValue() throws JSONException {
+        char c = peekValue();
+        if (c == '{') {
+            beginObject();
+            while (hasNext()) {
+                nextName();
+                skipValue();
+            }
+            endObject();
+        } else if (c == '[') {
+            beginArray();
+            while (hasNext())
+                skipValue();
+            endArray();
+        } else {
+            if (c == '"') {
+                mPos++;
+                readString();
+            } else
+                readLiteral();
+            mValuePending = false;
+        }
+    }
+
+    /**
+     * Consume the next value as a JSON object tree.
+     *
+     * @return JSON object.
+     * @throws JSONException if next value is not an object.
+     */
+    public JSONObject nextJSONObject() throws JSONException {
+        JSONObject object = new JSONObject();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            object.put(name, nextValue());
+        }
+        endObject();
+        return object;
+    }
+
+    /**
+     * Consume the next value as a JSON array tree.
+     *
+     * @return JSON array.
+     * @throws JSONException if next value is not an array.
+     */
+    public JSONArray nextJSONArray() throws JSONException {
+        JSONArray array = new JSONArray();
+        beginArray();
+        while (hasNext())
+            array.put(nextValue());
+        endArray();
+        return array;
+    }
+
+    /**
+     * Consume the next value as an array of models, subclasses may read some models differently.
+     *
+     * @param factory model factory.
+     * @param <M>     model type.
+     * @return models, or null if the value is null.
+     * @throws JSONException if next value is not an array of models.
+     */
+    public <M extends Model> List<M> nextArray(ModelFactory<M> factory) throws JSONException {
+        if (nextNull())
+            return null;
+        List<M> array = factory.createList(0);
+        beginArray();
+        while (hasNext()) {
+            M model = factory.create();
+            if (model instanceof StreamingModel)
+                JSONUtils.read(this, (StreamingModel) model);
+            else
+                model.read(nextJSONObject());
+            array.add(model);
+        }
+        endArray();
+        return array;
+    }
+
+    /**
+     * Consume the next value with the types used by {@link JSONObject}.
+     *
+     * @return {@link JSONObject}, {@link JSONArray}, {@link String}, {@link Boolean},
+     * {@link Integer}, {@link Long}, {@link Double} or {@link JSONObject#NULL}.
+     * @throws JSONException if the input is invalid.
+     */
+    public Object nextValue() throws JSONException {
+        char c = peekValue();
+        if (c == '{')
+            return nextJSONObject();
+        if (c == '[')
+            return nextJSONArray();
+        Object value;
+        if (c == '"') {
+            mPos++;
+            value = readString();
+        } else {
+            String literal = readLiteral();
+            if (literal.equals("null"))
+                value = JSONObject.NULL;
+            else if (literal.equals("true"))
+                value = Boolean.TRUE;
+            else if (literal.equals("false"))
+                value = Boolean.FALSE;
+            else if (literal.indexOf('.') >= 0 || literal.indexOf('e') >= 0 || literal.indexOf('E') >= 0)
+                value = parseDouble(literal);
+            else {
+                try {
+                    long longValue = Long.parseLong(literal);
+                    if (longValue == (int) longValue)
+                        value = (int) longValue;
+                    else
+                        value = longValue;
+                } catch (NumberFormatException e) {
+                    value = parseDouble(literal);
+                }
+            }
+        }
+        mValuePending = false;
+        return value;
+    }
+
+    private String nextNumberLiteral() throws JSONException {
+        char c = peekValue();
+        String literal;
+        if (c == '"') {
+            mPos++;
+            literal = readString();
+        } else
+            literal = readLiteral();
+        mValuePending = false;
+        return literal;
+    }
+
+    private double parseDouble(String literal) throws JSONException {
+        try {
+            double value = Double.parseDouble(literal);
+            if (Double.isNaN(value) || Double.isInfinite(value))
+                throw syntaxError("Forbidden numeric value: " + literal);
+            return value;
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number but was " + literal);
+        }
+    }
+
+    /**
+     * Read an unquoted value up to the next delimiter.
+     */
+    private String readLiteral() throws JSONException {
+        int start = mPos;
+        int length = mIn.length();
+        while (mPos < length) {
+            char c = mIn.charAt(mPos);
+            if (c == ',' || c == ':' || c == ']' || c == '}' || c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '"')
+                break;
+            mPos++;
+        }
+        if (start == mPos)
+            throw syntaxError("Expected a value");
+        return mIn.substring(start, mPos);
+    }
+
+    /**
+     * Read a string after its opening quote, copying runs without escape sequences at once.
+     */
+    private String readString() throws JSONException {
+        StringBuilder builder = null;
+        int start = mPos;
+        int length = mIn.length();
+        while (mPos < length) {
+            char c = mIn.charAt(mPos++);
+            if (c == '"') {
+                if (builder == null)
+                    return mIn.substring(start, mPos - 1);
+                return builder.append(mIn, start, mPos - 1).toString();
+            }
+            if (c == '\\') {
+                if (builder == null)
+                    builder = new StringBuilder();
+                builder.append(mIn, start, mPos - 1).append(readEscape());
+                start = mPos;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscape() throws JSONException {
+        if (mPos == mIn.length())
+            throw syntaxError("Unterminated escape sequence");
+        char c = mIn.charAt(mPos++);
+        switch (c) {
+            case 'u':
+                if (mPos + 4 > mIn.length())
+                    throw syntaxError("Unterminated escape sequence");
+                try {
+                    c = (char) Integer.parseInt(mIn.substring(mPos, mPos + 4), 16);
+                } catch (NumberFormatException e) {
+                    throw syntaxError("Invalid escape sequence");
+                }
+                mPos += 4;
+                return c;
+
+            case 't':
+                return '\t';
+
+            case 'b':
+                return '\b';
+
+            case 'n':
+                return '\n';
+
+            case 'r':
+                return '\r';
+
+            case 'f':
+                return '\f';
+
+            default:
+                return c;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.azure.mobile.ingestion.models.Model;
+import com.microsoft.azure.mobile.utils.UUIDUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link JSONStringer} writing JSON directly to a {@link Writer} instead of building a string.
+ * <p>
+ * Being a {@link JSONStringer}, it can be passed to the existing
+ * {@link com.microsoft.azure.mobile.ingestion.models.Model#write(JSONStringer)} implementations.
+ * The output is compact unless an indentation is given, {@link #toString()} returns an empty string
+ * instead of the JSON text, and {@link #flush()} must be called once done.
+ */
+public class JsonStreamWriter extends JSONStringer {
+
+    /**
+     * Array without any value yet.
+     */
+    private static final int EMPTY_ARRAY = 0;
+
+    /**
+     * Array with at least one value.
+     */
+    private static final int NONEMPTY_ARRAY = 1;
+
+    /**
+     * Object without any key yet.
+     */
+    private static final int EMPTY_OBJECT = 2;
+
+    /**
+     * Object with a key waiting for its value.
+     */
+    private static final int DANGLING_KEY = 3;
+
+    /**
+     * Object with at least one key value pair.
+     */
+    private static final int NONEMPTY_OBJECT = 4;
+
+    /**
+     * Top level, no value written yet.
+     */
+    private static final int EMPTY_DOCUMENT = 5;
+
+    /**
+     * Top level, value written.
+     */
+    private static final int NONEMPTY_DOCUMENT = 6;
+
+    /**
+     * Replacement strings for characters below 0x20 and the characters that must be escaped.
+     */
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++)
+            REPLACEMENT_CHARS[i] = String.format("\\u%04x", i);
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['/'] = "\\/";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+    }
+
+    /**
+     * Output.
+     */
+    private final Writer mOut;
+
+    /**
+     * Indentation per nesting level, empty for compact output.
+     */
+    private final String mIndent;
+
+    /**
+     * Nesting stack.
+     */
+    private int[] mStack = new int[16];
+
+    /**
+     * Stack size.
+     */
+    private int mStackSize;
+
+    /**
+     * Buffer for quoted UUID values.
+     */
+    private char[] mUuidChars;
+
+    /**
+     * Init a compact writer.
+     *
+     * @param out output, it is not closed by this writer.
+     */
+    public JsonStreamWriter(@NonNull Writer out) {
+        this(out, 0);
+    }
+
+    /**
+     * Init.
+     *
+     * @param out          output, it is not closed by this writer.
+     * @param indentSpaces number of spaces per nesting level, 0 for compact output.
+     */
+    public JsonStreamWriter(@NonNull Writer out, int indentSpaces) {
+        mOut = out;
+        char[] indent = new char[indentSpaces];
+        Arrays.fill(indent, ' ');
+        mIndent = new String(indent);
+        mStack[mStackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Check if output is compact.
+     *
+     * @return true if compact, false if indented.
+     */
+    public boolean isCompact() {
+        return mIndent.isEmpty();
+    }
+
+    /**
+     * Convert an I/O error to the exception type of the {@link JSONStringer} API.
+     */
+    private static JSONException toJSONException(IOException e) {
+        JSONException exception = new JSONException(e.getMessage());
+        exception.initCause(e);
+        return exception;
+    }
+
+    private void push(int scope) {
+        if (mStackSize == mStack.length)
+            mStack = Arrays.copyOf(mStack, mStackSize * 2);
+        mStack[mStackSize++] = scope;
+    }
+
+    /**
+     * Start a new line indented for the current nesting level, if not compact.
+     */
+    private void newline() throws IOException {
+        if (mIndent.isEmpty())
+            return;
+        mOut.write('\n');
+        for (int i = 1; i < mStackSize; i++)
+            mOut.write(mIndent);
+    }
+
+    /**
+     * Write separator before a value and update the enclosing scope.
+     */
+    private void beforeValue() throws IOException, JSONException {
+        int scope = mStack[mStackSize - 1];
+        switch (scope) {
+            case EMPTY_ARRAY:
+                mStack[mStackSize - 1] = NONEMPTY_ARRAY;
+                newline();
+                break;
+
+            case NONEMPTY_ARRAY:
+                mOut.write(',');
+                newline();
+                break;
+
+            case DANGLING_KEY:
+                mOut.write(mIndent.isEmpty() ? ":" : ": ");
+                mStack[mStackSize - 1] = NONEMPTY_OBJECT;
+                break;
+
+            case EMPTY_DOCUMENT:
+                mStack[mStackSize - 1] = NONEMPTY_DOCUMENT;
+                break;
+
+            default:
+                throw new JSONException("Nesting problem");
+        }
+    }
+
+    private JsonStreamWriter open(int scope, char bracket) throws JSONException {
+        try {
+            beforeValue();
+            mOut.write(bracket);
+        } catch (IOException e) {
+            throw toJSONException(e);
+        }
+        push(scope);
+        return this;
+    }
+
+    private JsonStreamWriter close(int emptyScope, int nonEmptyScope, char bracket) throws JSONException {
+        int scope = mStack[mStackSize - 1];
+        if (scope != emptyScope && scope != nonEmptyScope)
+            throw new JSONException("Nesting problem");
+        mStackSize--;
+        try {
+            if (scope == nonEmptyScope)
+                newline();
+            mOut.write(bracket);
+        } catch (IOException e) {
+            throw toJSONException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter array() throws JSONException {
+        return open(EMPTY_ARRAY, '[');
+    }
+
+    @Override
+    public JsonStreamWriter endArray() throws JSONException {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    @Override
+    public JsonStreamWriter object() throws JSONException {
+        return open(EMPTY_OBJECT, '{');
+    }
+
+    @Override
+    public JsonStreamWriter endObject() throws JSONException {
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    @Override
+    public JsonStreamWriter key(String name) throws JSONException {
+        if (name == null)
+            throw new JSONException("Names must be non-null");
+        int scope = mStack[mStackSize - 1];
+        try {
+            if (scope == NONEMPTY_OBJECT)
+                mOut.write(',');
+            else if (scope != EMPTY_OBJECT)
+                throw new JSONException("Nesting problem");
+            newline();
+            mStack[mStackSize - 1] = DANGLING_KEY;
+            string(name);
+        } catch (IOException e) {
+            throw toJSONException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(Object value) throws JSONException {
+        if (value instanceof JSONArray || value instanceof JSONObject)
+            return raw(value.toString());
+        try {
+            beforeValue();
+            if (value == null || value instanceof Boolean || value == JSONObject.NULL)
+                mOut.write(String.valueOf(value));
+            else if (value instanceof Number)
+                mOut.write(numberToString((Number) value));
+            else if (value instanceof UUID)
+                uuid((UUID) value);
+            else
+                string(value.toString());
+        } catch (IOException e) {
+            throw toJSONException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value(boolean value) throws JSONException {
+        return raw(value ? "true" : "false");
+    }
+
+    @Override
+    public JsonStreamWriter value(double value) throws JSONException {
+        return value((Object) value);
+    }
+
+    @Override
+    public JsonStreamWriter value(long value) throws JSONException {
+        return raw(Long.toString(value));
+    }
+
+    /**
+     * Same output as org.json, whole doubles are written without fraction.
+     */
+    private static String numberToString(Number number) throws JSONException {
+        double doubleValue = number.doubleValue();
+        if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue))
+            throw new JSONException("Forbidden numeric value: " + number);
+        long longValue = number.longValue();
+        if (doubleValue == (double) longValue)
+            return Long.toString(longValue);
+        return number.toString();
+    }
+
+    /**
+     * Write an array of models as a property of the current object, subclasses may write some models differently.
+     *
+     * @param key    property name.
+     * @param models models.
+     * @throws JSONException if an error occurs.
+     */
+    public void writeArray(String key, @NonNull List<? extends Model> models) throws JSONException {
+        key(key).array();
+        for (Model model : models) {
+            object();
+            model.write(this);
+            endObject();
+        }
+        endArray();
+    }
+
+    /**
+     * Write a value that is already encoded.
+     *
+     * @param json valid JSON value, written as is.
+     * @return this writer.
+     * @throws JSONException if a value is not expected at this point.
+     */
+    public JsonStreamWriter rawValue(@NonNull String json) throws JSONException {
+        return raw(json);
+    }
+
+    private JsonStreamWriter raw(String json) throws JSONException {
+        try {
+            beforeValue();
+            mOut.write(json);
+        } catch (IOException e) {
+            throw toJSONException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Write a quoted UUID without building its string, it never needs escaping.
+     */
+    private void uuid(UUID value) throws IOException {
+        if (mUuidChars == null) {
+            mUuidChars = new char[UUIDUtils.UUID_LENGTH + 2];
+            mUuidChars[0] = '"';
+            mUuidChars[mUuidChars.length - 1] = '"';
+        }
+        UUIDUtils.format(value, mUuidChars, 1);
+        mOut.write(mUuidChars);
+    }
+
+    /**
+     * Write a quoted string, copying runs of characters that need no escaping at once.
+     */
+    private void string(String value) throws IOException {
+        Writer out = mOut;
+        out.write('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c < 128) {
+                replacement = REPLACEMENT_CHARS[c];
+                if (replacement == null)
+                    continue;
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else {
+                continue;
+            }
+            if (last < i)
+                out.write(value, last, i - last);
+            out.write(replacement);
+            last = i + 1;
+        }
+        if (last < length)
+            out.write(value, last, length - last);
+        out.write('"');
+    }
+
+    /**
+     * Flush the underlying writer.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+
+    /**
+     * The JSON text is written to the output, not kept in memory.
+     *
+     * @return empty string.
+     */
+    @Override
+    public String toString() {
+        return "";
+    }
+}
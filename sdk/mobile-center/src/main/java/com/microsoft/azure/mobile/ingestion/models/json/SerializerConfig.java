@@ -0,0 +1,66 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import android.util.Log;
+
+import com.microsoft.azure.mobile.utils.MobileCenterLog;
+
+/**
+ * Output format of a log serializer, fixed when the serializer is created.
+ */
+public class SerializerConfig {
+
+    /**
+     * Compact JSON, without any whitespace.
+     */
+    public static final SerializerConfig COMPACT = new SerializerConfig(0);
+
+    /**
+     * Indentation used for pretty JSON when verbose logs are enabled.
+     */
+    private static final int VERBOSE_INDENT_SPACES = 2;
+
+    /**
+     * Number of spaces per nesting level, 0 for compact JSON.
+     */
+    private final int mIndentSpaces;
+
+    /**
+     * Init.
+     *
+     * @param indentSpaces number of spaces per nesting level, 0 for compact JSON.
+     */
+    public SerializerConfig(int indentSpaces) {
+        if (indentSpaces < 0)
+            throw new IllegalArgumentException("indentSpaces must not be negative");
+        mIndentSpaces = indentSpaces;
+    }
+
+    /**
+     * Get the configuration matching the current log level: pretty JSON if verbose logs are enabled, compact otherwise.
+     *
+     * @return serializer configuration.
+     */
+    public static SerializerConfig fromLogLevel() {
+        if (MobileCenterLog.getLogLevel() <= Log.VERBOSE)
+            return new SerializerConfig(VERBOSE_INDENT_SPACES);
+        return COMPACT;
+    }
+
+    /**
+     * Check if JSON is indented.
+     *
+     * @return true if pretty, false if compact.
+     */
+    public boolean isPretty() {
+        return mIndentSpaces > 0;
+    }
+
+    /**
+     * Get the number of spaces per nesting level.
+     *
+     * @return number of spaces, 0 for compact JSON.
+     */
+    public int getIndentSpaces() {
+        return mIndentSpaces;
+    }
+}
@@ -0,0 +1,141 @@
+package com.microsoft.azure.mobile.ingestion.models.json;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.azure.mobile.ingestion.models.Log;
+import com.microsoft.azure.mobile.ingestion.models.LogContainer;
+import com.microsoft.azure.mobile.ingestion.models.StreamingModel;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.microsoft.azure.mobile.ingestion.models.CommonProperties.TYPE;
+
+/**
+ * Log serializer reading JSON with a {@link JsonStreamReader}.
+ * <p>
+ * The output is the same as {@link DefaultLogSerializer}, but it can also be written directly to an
+ * {@link OutputStream} with {@link #serializeContainer(LogContainer, OutputStream)}.
+ * Logs implementing {@link StreamingModel} are read without building a {@link JSONObject} tree,
+ * other logs are read like {@link DefaultLogSerializer} does. Like {@link Log#read(JSONObject)},
+ * the streaming read path fails on missing required properties, see {@link StreamingModel#checkRequiredFields()}.
+ */
+public class StreamingLogSerializer extends DefaultLogSerializer {
+
+    /**
+     * Character encoding.
+     */
+    private static final String CHARSET_NAME = "UTF-8";
+
+    /**
+     * Init with pretty JSON containers if verbose logs are enabled at this time, compact otherwise.
+     */
+    public StreamingLogSerializer() {
+    }
+
+    /**
+     * Init.
+     *
+     * @param config output format of log containers, single logs are always compact.
+     */
+    public StreamingLogSerializer(@NonNull SerializerConfig config) {
+        super(config);
+    }
+
+    /**
+     * Read a log, streaming only if the type is the first property, as written by the serializers.
+     *
+     * @param reader reader positioned on the log object.
+     * @return log.
+     * @throws JSONException if the log cannot be read.
+     */
+    @NonNull
+    protected Log readLog(JsonStreamReader reader) throws JSONException {
+        String firstName = null;
+        Object firstValue = null;
+        reader.beginObject();
+        if (reader.hasNext()) {
+            firstName = reader.nextName();
+            if (firstName.equals(TYPE)) {
+                String type = reader.nextString();
+                Log log = createLog(type);
+                if (log instanceof StreamingModel) {
+                    StreamingModel model = (StreamingModel) log;
+                    while (reader.hasNext()) {
+                        if (!model.readField(reader.nextName(), reader))
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                    model.checkRequiredFields();
+                    return log;
+                }
+                firstValue = type;
+            } else
+                firstValue = reader.nextValue();
+        }
+
+        /* Fall back to a JSON object. */
+        JSONObject object = new JSONObject();
+        if (firstName != null)
+            object.put(firstName, firstValue);
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            object.put(name, reader.nextValue());
+        }
+        reader.endObject();
+        return readLog(object);
+    }
+
+    @NonNull
+    @Override
+    public Log deserializeLog(@NonNull String json) throws JSONException {
+        return readLog(new JsonStreamReader(json));
+    }
+
+    @NonNull
+    @Override
+    public LogContainer deserializeContainer(@NonNull String json) throws JSONException {
+        JsonStreamReader reader = new JsonStreamReader(json);
+        List<Log> logs = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(LOGS)) {
+                logs = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext())
+                    logs.add(readLog(reader));
+                reader.endArray();
+            } else
+                reader.skipValue();
+        }
+        reader.endObject();
+        if (logs == null)
+            throw new JSONException("No value for " + LOGS);
+        LogContainer container = new LogContainer();
+        container.setLogs(logs);
+        return container;
+    }
+
+    /**
+     * Serialize a log container as UTF-8 JSON to a stream, without building the JSON string in memory.
+     *
+     * @param logContainer log container.
+     * @param outputStream stream to write to, it is flushed but not closed.
+     * @throws JSONException if a log cannot be serialized.
+     * @throws IOException   if writing to the stream fails.
+     */
+    public void serializeContainer(@NonNull LogContainer logContainer, @NonNull OutputStream outputStream) throws JSONException, IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, CHARSET_NAME));
+        JsonStreamWriter writer = new JsonStreamWriter(out, getConfig().getIndentSpaces());
+        writeContainer(writer, logContainer);
+        writer.flush();
+    }
+}
@@ -224,7 +224,7 @@ public class DatabasePersistence extends Persistence {
         }
 
         /* Generate an ID. */
-        String id = UUIDUtils.randomUUID().toString();
+        String id = UUIDUtils.toString(UUIDUtils.fastRandomUUID());
 
         /* Log. */
         MobileCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
@@ -0,0 +1,265 @@
+package com.microsoft.azure.mobile.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * String map backed by 2 arrays, for the few properties of a log.
+ * <p>
+ * Lookups are linear scans, which for a handful of entries is as fast as hashing, and unlike
+ * {@link java.util.HashMap} no node object is allocated per entry.
+ * Entries are kept in insertion order. The arrays grow if more entries than the initial capacity are added.
+ * Use {@link #keyAt(int)} and {@link #valueAt(int)} to iterate without allocating entries.
+ */
+public class CompactStringMap extends AbstractMap<String, String> {
+
+    /**
+     * Keys, the first {@link #mSize} are used.
+     */
+    private String[] mKeys;
+
+    /**
+     * Values, same index as keys.
+     */
+    private String[] mValues;
+
+    /**
+     * Number of entries.
+     */
+    private int mSize;
+
+    /**
+     * Number of structural modifications, to detect concurrent modifications while iterating.
+     */
+    private int mModCount;
+
+    /**
+     * Entry set view, created on first use.
+     */
+    private Set<Entry<String, String>> mEntrySet;
+
+    /**
+     * Init.
+     *
+     * @param capacity expected number of entries.
+     */
+    public CompactStringMap(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        mKeys = new String[capacity];
+        mValues = new String[capacity];
+    }
+
+    /**
+     * Init with a copy of another map.
+     *
+     * @param map map to copy.
+     */
+    public CompactStringMap(@NonNull Map<String, String> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < mSize; i++) {
+            String candidate = mKeys[i];
+            if (candidate == null ? key == null : candidate.equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Get a key by position.
+     *
+     * @param index position, between 0 and {@link #size()} excluded.
+     * @return key.
+     */
+    public String keyAt(int index) {
+        checkIndex(index);
+        return mKeys[index];
+    }
+
+    /**
+     * Get a value by position.
+     *
+     * @param index position, between 0 and {@link #size()} excluded.
+     * @return value.
+     */
+    public String valueAt(int index) {
+        checkIndex(index);
+        return mValues[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+    }
+
+    private void removeAt(int index) {
+        int moved = mSize - index - 1;
+        System.arraycopy(mKeys, index + 1, mKeys, index, moved);
+        System.arraycopy(mValues, index + 1, mValues, index, moved);
+        mSize--;
+        mKeys[mSize] = null;
+        mValues[mSize] = null;
+        mModCount++;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? mValues[index] : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            String previous = mValues[index];
+            mValues[index] = value;
+            return previous;
+        }
+        if (mSize == mKeys.length) {
+            int capacity = Math.max(4, mSize * 2);
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mValues = Arrays.copyOf(mValues, capacity);
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mSize++;
+        mModCount++;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0)
+            return null;
+        String previous = mValues[index];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(mKeys, 0, mSize, null);
+        Arrays.fill(mValues, 0, mSize, null);
+        mSize = 0;
+        mModCount++;
+    }
+
+    @NonNull
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (mEntrySet == null)
+            mEntrySet = new AbstractSet<Entry<String, String>>() {
+
+                @NonNull
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return mSize;
+                }
+
+                @Override
+                public void clear() {
+                    CompactStringMap.this.clear();
+                }
+            };
+        return mEntrySet;
+    }
+
+    /**
+     * Iterator over entries, entries write through to the map.
+     */
+    private class EntryIterator implements Iterator<Entry<String, String>> {
+
+        /**
+         * Next position.
+         */
+        private int mNext;
+
+        /**
+         * Position of the last returned entry, -1 if none or removed.
+         */
+        private int mLast = -1;
+
+        /**
+         * Expected modification count.
+         */
+        private int mExpectedModCount = mModCount;
+
+        @Override
+        public boolean hasNext() {
+            return mNext < mSize;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (mExpectedModCount != mModCount)
+                throw new ConcurrentModificationException();
+            if (mNext >= mSize)
+                throw new NoSuchElementException();
+            mLast = mNext++;
+            return new MapEntry(mLast);
+        }
+
+        @Override
+        public void remove() {
+            if (mLast < 0)
+                throw new IllegalStateException();
+            if (mExpectedModCount != mModCount)
+                throw new ConcurrentModificationException();
+            removeAt(mLast);
+            mNext = mLast;
+            mLast = -1;
+            mExpectedModCount = mModCount;
+        }
+    }
+
+    /**
+     * Entry reading and writing the map arrays at a position.
+     */
+    private class MapEntry extends SimpleEntry<String, String> {
+
+        /**
+         * Position in the map.
+         */
+        private final int mIndex;
+
+        MapEntry(int index) {
+            super(mKeys[index], mValues[index]);
+            mIndex = index;
+        }
+
+        @Override
+        public String setValue(String value) {
+            mValues[mIndex] = value;
+            return super.setValue(value);
+        }
+    }
+}
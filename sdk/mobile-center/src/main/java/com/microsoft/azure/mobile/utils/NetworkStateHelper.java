@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.Build;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.MobileCenter;
@@ -54,6 +55,11 @@ public class NetworkStateHelper implements Closeable {
      */
     private String mNetworkType;
 
+    /**
+     * Whether the current network is metered (mobile data or a metered hotspot).
+     */
+    private boolean mNetworkMetered;
+
     /**
      * Init.
      *
@@ -89,6 +95,15 @@ public class NetworkStateHelper implements Closeable {
         return mNetworkType != null;
     }
 
+    /**
+     * Check whether the current network may charge the user for data, like a cellular network.
+     *
+     * @return true if connected to a metered network, false if unmetered or disconnected.
+     */
+    public boolean isNetworkMetered() {
+        return mNetworkType != null && mNetworkMetered;
+    }
+
     /**
      * Update network info (carrier info are put in these).
      */
@@ -109,9 +124,15 @@ public class NetworkStateHelper implements Closeable {
         MobileCenterLog.debug(MobileCenter.LOG_TAG, "Active network info=" + networkInfo);
 
         /* Update network type. null for not connected. */
-        if (networkInfo != null && networkInfo.getState() == NetworkInfo.State.CONNECTED)
+        if (networkInfo != null && networkInfo.getState() == NetworkInfo.State.CONNECTED) {
             mNetworkType = networkInfo.getTypeName() + networkInfo.getSubtypeName();
-        else
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                mNetworkMetered = mConnectivityManager.isActiveNetworkMetered();
+            else {
+                int type = networkInfo.getType();
+                mNetworkMetered = type != ConnectivityManager.TYPE_WIFI && type != ConnectivityManager.TYPE_ETHERNET;
+            }
+        } else
             mNetworkType = null;
     }
 
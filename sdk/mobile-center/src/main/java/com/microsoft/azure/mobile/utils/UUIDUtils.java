@@ -4,6 +4,7 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.azure.mobile.MobileCenter;
 
+import java.security.SecureRandom;
 import java.util.Random;
 import java.util.UUID;
 
@@ -12,6 +13,16 @@ import java.util.UUID;
  */
 public class UUIDUtils {
 
+    /**
+     * Length of the string representation of a UUID.
+     */
+    public static final int UUID_LENGTH = 36;
+
+    /**
+     * Lower case hexadecimal digits.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     @VisibleForTesting
     static Implementation sImplementation = new Implementation() {
 
@@ -26,6 +37,30 @@ public class UUIDUtils {
      */
     private static Random sRandom;
 
+    /**
+     * Per thread secure random for {@link #fastRandomUUID()}, avoids contention on the generator shared by {@link UUID#randomUUID()}.
+     * Each instance seeds itself once, on first use.
+     */
+    @VisibleForTesting
+    static ThreadLocal<SecureRandom> sThreadRandom = new ThreadLocal<SecureRandom>() {
+
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    /**
+     * Per thread buffer for {@link #toString(UUID)}.
+     */
+    private static final ThreadLocal<char[]> sThreadChars = new ThreadLocal<char[]>() {
+
+        @Override
+        protected char[] initialValue() {
+            return new char[UUID_LENGTH];
+        }
+    };
+
     /**
      * Utils pattern hides constructor.
      */
@@ -51,6 +86,79 @@ public class UUIDUtils {
         }
     }
 
+    /**
+     * Get a version 4 variant 2 random UUID from a per thread {@link SecureRandom}.
+     * <p>
+     * It has the same randomness as {@link #randomUUID()} but does not block on the {@link SecureRandom}
+     * shared by all threads, use it for frequently generated identifiers such as log, batch and session identifiers.
+     *
+     * @return random UUID.
+     */
+    public static UUID fastRandomUUID() {
+        SecureRandom random;
+        try {
+            random = sThreadRandom.get();
+        } catch (SecurityException e) {
+
+            /* Some devices can crash while allocating a SecureRandom, randomUUID has a fallback for them. */
+            return randomUUID();
+        }
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        long highest = 0;
+        long lowest = 0;
+        for (int i = 0; i < 8; i++) {
+            highest = (highest << 8) | (bytes[i] & 0xFF);
+            lowest = (lowest << 8) | (bytes[i + 8] & 0xFF);
+        }
+        highest = (highest & -61441L) | 16384L;
+        lowest = (lowest & 4611686018427387903L) | -9223372036854775808L;
+        return new UUID(highest, lowest);
+    }
+
+    /**
+     * Format a UUID like {@link UUID#toString()} into a buffer.
+     *
+     * @param uuid   UUID.
+     * @param buffer buffer to write to.
+     * @param offset position of the first character to write, {@link #UUID_LENGTH} characters are written.
+     */
+    public static void format(UUID uuid, char[] buffer, int offset) {
+        long highest = uuid.getMostSignificantBits();
+        long lowest = uuid.getLeastSignificantBits();
+        formatHex(highest >>> 32, buffer, offset, 8);
+        buffer[offset + 8] = '-';
+        formatHex(highest >>> 16, buffer, offset + 9, 4);
+        buffer[offset + 13] = '-';
+        formatHex(highest, buffer, offset + 14, 4);
+        buffer[offset + 18] = '-';
+        formatHex(lowest >>> 48, buffer, offset + 19, 4);
+        buffer[offset + 23] = '-';
+        formatHex(lowest, buffer, offset + 24, 12);
+    }
+
+    /**
+     * Write the lowest digits of a value in hexadecimal.
+     */
+    private static void formatHex(long value, char[] buffer, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * Same as {@link UUID#toString()} but only allocates the resulting string.
+     *
+     * @param uuid UUID.
+     * @return string representation.
+     */
+    public static String toString(UUID uuid) {
+        char[] chars = sThreadChars.get();
+        format(uuid, chars, 0);
+        return new String(chars);
+    }
+
     /**
      * Init the fail over random the first time we hit the error.
      */
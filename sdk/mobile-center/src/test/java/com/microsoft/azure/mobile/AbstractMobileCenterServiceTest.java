@@ -139,7 +139,7 @@ public class AbstractMobileCenterServiceTest {
         Channel channel = mock(Channel.class);
         service.onStarted(mock(Context.class), "", channel);
         verify(channel).removeGroup(service.getGroupName());
-        verify(channel).addGroup(service.getGroupName(), service.getTriggerCount(), service.getTriggerInterval(), service.getTriggerMaxParallelRequests(), service.getChannelListener());
+        verify(channel).addGroup(service.getGroupName(), service.getTriggerCount(), service.getTriggerInterval(), service.getTriggerMaxParallelRequests(), service.getSendPolicy(), service.getChannelListener());
         verifyNoMoreInteractions(channel);
         Assert.assertSame(channel, service.mChannel);
 
@@ -160,7 +160,7 @@ public class AbstractMobileCenterServiceTest {
         Assert.assertSame(channel, service.mChannel);
 
         service.setInstanceEnabled(true);
-        verify(channel).addGroup(service.getGroupName(), service.getTriggerCount(), service.getTriggerInterval(), service.getTriggerMaxParallelRequests(), service.getChannelListener());
+        verify(channel).addGroup(service.getGroupName(), service.getTriggerCount(), service.getTriggerInterval(), service.getTriggerMaxParallelRequests(), service.getSendPolicy(), service.getChannelListener());
         verifyNoMoreInteractions(channel);
     }
 
@@ -17,6 +17,7 @@ import com.microsoft.azure.mobile.persistence.DatabasePersistenceAsync;
 import com.microsoft.azure.mobile.persistence.Persistence;
 import com.microsoft.azure.mobile.utils.DeviceInfoHelper;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
+import com.microsoft.azure.mobile.utils.NetworkStateHelper;
 import com.microsoft.azure.mobile.utils.UUIDUtils;
 
 import org.junit.Test;
@@ -35,6 +36,10 @@ import java.util.concurrent.atomic.AtomicReference;
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.AdditionalMatchers.and;
+import static org.mockito.AdditionalMatchers.gt;
+import static org.mockito.AdditionalMatchers.leq;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
@@ -339,14 +344,8 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Enable channel. */
         channel.setEnabled(true);
 
-        /* Upon enabling, 1st batch of 50 is sent immediately, 20 logs are remaining. */
-        assertEquals(20, channel.getCounter(TEST_GROUP));
-
-        /* Wait for timer. */
-        assertNotNull(runnable.get());
-        runnable.get().run();
-
-        /* The counter should be 0 after the second batch. */
+        /* Upon enabling, the backlog is drained: both batches are sent immediately without timer. */
+        assertNull(runnable.get());
         assertEquals(0, channel.getCounter(TEST_GROUP));
 
         /* Verify that we have called sendAsync on the ingestion 3 times total. */
@@ -363,7 +362,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mockListener, times(70)).onSuccess(any(Log.class));
 
         /* Verify timer. */
-        verify(mHandler, times(2)).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+        verify(mHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
         verify(mHandler).removeCallbacks(any(Runnable.class));
     }
 
@@ -747,13 +746,53 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         when(persistence.getLogs(anyString(), anyInt(), anyList())).thenAnswer(getGetLogsAnswer(50)).thenAnswer(getGetLogsAnswer(50)).thenAnswer(getGetLogsAnswer(3));
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), persistence, ingestion);
         channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
-        verify(ingestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
-        assertEquals(3, channel.getCounter(TEST_GROUP));
-        assertNotNull(runnable.get());
-        runnable.get().run();
+
+        /* Backlog is drained: the partial batch is sent without waiting for the timer. */
         verify(ingestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
-        verify(mHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
-        verify(mHandler, never()).removeCallbacks(any(Runnable.class));
+        assertEquals(0, channel.getCounter(TEST_GROUP));
+        assertNull(runnable.get());
+        verify(mHandler, never()).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void drainBacklogAfterReconnect() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        when(mockPersistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(getGetLogsAnswer(50)).then(getGetLogsAnswer(50)).then(getGetLogsAnswer(20));
+        final List<ServiceCallback> callbacks = new ArrayList<>();
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, networkStateHelper);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, 1, null);
+
+        /* Logs accumulate while the only request is waiting for the network. */
+        for (int i = 0; i < 120; i++)
+            channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(70, channel.getCounter(TEST_GROUP));
+        verify(mHandler, times(2)).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+
+        /* Network is back: batches are sent back to back, including the last partial one. */
+        channel.onNetworkStateUpdated(true);
+        callbacks.get(0).onCallSucceeded("");
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        callbacks.get(1).onCallSucceeded("");
+        verify(mockIngestion, times(3)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getCounter(TEST_GROUP));
+
+        /* Drain mode ends with the backlog: new logs wait for the timer again. */
+        callbacks.get(2).onCallSucceeded("");
+        verify(mHandler, times(2)).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+        channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mHandler, times(3)).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
     }
 
     @Test
@@ -994,4 +1033,88 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
             }
         }));
     }
+
+    @Test
+    public void networkListenerRemovedWhenDisabledOrShutdown() {
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mock(Persistence.class), mock(Ingestion.class), networkStateHelper);
+        verify(networkStateHelper).addListener(channel);
+        channel.setEnabled(false);
+        verify(networkStateHelper).removeListener(channel);
+        channel.setEnabled(true);
+        verify(networkStateHelper, times(2)).addListener(channel);
+        channel.shutdown();
+        verify(networkStateHelper, times(2)).removeListener(channel);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void meteredNetworkDefersBacklog() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        when(networkStateHelper.isNetworkMetered()).thenReturn(true);
+        when(mockPersistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(getGetLogsAnswer());
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, networkStateHelper);
+        verify(networkStateHelper).addListener(channel);
+        channel.addGroup(TEST_GROUP, 3, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, new SendPolicy(2, Long.MAX_VALUE, BATCH_TIME_INTERVAL), null);
+
+        /* 3 logs is above the metered backlog limit: nothing sent. */
+        for (int i = 0; i < 3; i++)
+            channel.enqueue(mock(Log.class), TEST_GROUP);
+        assertEquals(3, channel.getCounter(TEST_GROUP));
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Still metered after a network change. */
+        channel.onNetworkStateUpdated(true);
+        verify(mockIngestion, never()).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Switch to unmetered network. */
+        when(networkStateHelper.isNetworkMetered()).thenReturn(false);
+        channel.onNetworkStateUpdated(true);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getCounter(TEST_GROUP));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void meteredNetworkByteCap() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        when(networkStateHelper.isNetworkMetered()).thenReturn(true);
+        when(mockPersistence.getLogs(any(String.class), anyInt(), any(ArrayList.class))).then(getGetLogsAnswer(1));
+
+        /* Ingestion reports the size of each payload it serializes. */
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Ingestion.Callback callback = (Ingestion.Callback) invocation.getArguments()[3];
+                callback.onPayloadSerialized(100);
+                callback.onCallSucceeded("");
+                return null;
+            }
+        });
+
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUIDUtils.randomUUID().toString(), mockPersistence, mockIngestion, networkStateHelper);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, new SendPolicy(100, 150, 60000), null);
+
+        /* First 2 logs are sent, then the 150 bytes cap is reached. */
+        for (int i = 0; i < 3; i++)
+            channel.enqueue(mock(Log.class), TEST_GROUP);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(1, channel.getCounter(TEST_GROUP));
+
+        /* Sending is scheduled at the end of the interval. */
+        verify(mHandler).postDelayed(any(Runnable.class), and(gt(BATCH_TIME_INTERVAL), leq(60000L)));
+
+        /* Crashes like groups without a policy are not limited. */
+        channel.addGroup(TEST_GROUP + "2", 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null);
+        for (int i = 0; i < 3; i++)
+            channel.enqueue(mock(Log.class), TEST_GROUP + "2");
+        verify(mockIngestion, times(5)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
 }
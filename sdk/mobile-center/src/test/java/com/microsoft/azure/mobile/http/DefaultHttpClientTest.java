@@ -7,6 +7,7 @@ import com.microsoft.azure.mobile.utils.UUIDUtils;
 import org.json.JSONException;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -19,7 +20,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Executor;
@@ -31,6 +34,7 @@ import static com.microsoft.azure.mobile.http.DefaultHttpClient.METHOD_GET;
 import static com.microsoft.azure.mobile.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
@@ -118,7 +122,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("App-Secret", appSecret);
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(callTemplate).onBeforeCalling(eq(url), any(Map.class));
         verify(callTemplate).buildRequestBody();
         httpClient.close();
@@ -164,7 +168,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("App-Secret", appSecret);
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         httpClient.close();
 
         /* Verify payload. */
@@ -172,6 +176,43 @@ public class DefaultHttpClientTest {
         assertEquals("", sentPayload);
     }
 
+    @Test
+    public void post200WithMetrics() throws Exception {
+
+        /* Configure mock HTTP. */
+        String urlString = "http://mock/logs?api_version=1.0.0-preview20160914";
+        URL url = mock(URL.class);
+        whenNew(URL.class).withArguments(urlString).thenReturn(url);
+        HttpURLConnection urlConnection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(urlConnection);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getContentLength()).thenReturn(-1);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("\u00e9t\u00e9".getBytes("UTF-8")));
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("mockPayload");
+
+        /* Call with metrics, the original call template is used. */
+        CallMetrics metrics = new CallMetrics(urlString, METHOD_POST);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        new DefaultHttpClient().callAsync(urlString, METHOD_POST, new HashMap<String, String>(), new HttpClientMetricsDecorator.MetricsCallTemplate(metrics, callTemplate), serviceCallback);
+        verify(serviceCallback).onCallSucceeded("\u00e9t\u00e9");
+        verify(callTemplate).onBeforeCalling(eq(url), any(Map.class));
+        verify(urlConnection).connect();
+
+        /* Verify metrics. */
+        assertEquals(200, metrics.getStatusCode());
+        assertEquals(0, metrics.getRetryCount());
+        assertEquals("mockPayload".length(), metrics.getRequestBytes());
+
+        /* Without content length, the bytes read are counted. */
+        assertEquals(5, metrics.getResponseBytes());
+        assertTrue(metrics.getConnectTime() >= 0);
+        assertTrue(metrics.getTimeToFirstByte() >= 0);
+        assertTrue(metrics.getTotalTime() >= metrics.getTimeToFirstByte());
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void get200() throws Exception {
@@ -210,7 +251,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("App-Secret", appSecret);
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         verify(inputStream).close();
         verify(callTemplate).onBeforeCalling(eq(url), any(Map.class));
         verify(callTemplate, never()).buildRequestBody();
@@ -252,7 +293,7 @@ public class DefaultHttpClientTest {
         verify(urlConnection).setRequestProperty("App-Secret", appSecret);
         verify(urlConnection).setRequestProperty("Install-ID", installId.toString());
         verify(urlConnection, never()).setDoOutput(true);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
         httpClient.close();
     }
 
@@ -271,6 +312,11 @@ public class DefaultHttpClientTest {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         when(urlConnection.getOutputStream()).thenReturn(buffer);
         when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Busy".getBytes()));
+        Map<String, List<String>> headerFields = new HashMap<>();
+        headerFields.put(null, Collections.singletonList("HTTP/1.1 503 Service Unavailable"));
+        headerFields.put("Retry-After", Collections.singletonList("30"));
+        headerFields.put("Empty", Collections.<String>emptyList());
+        when(urlConnection.getHeaderFields()).thenReturn(headerFields);
 
         /* Configure API client. */
         HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
@@ -286,9 +332,12 @@ public class DefaultHttpClientTest {
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
         mockCall();
         httpClient.callAsync("", METHOD_POST, headers, callTemplate, serviceCallback);
-        verify(serviceCallback).onCallFailed(new HttpException(503, "Busy"));
+        ArgumentCaptor<HttpException> exception = ArgumentCaptor.forClass(HttpException.class);
+        verify(serviceCallback).onCallFailed(exception.capture());
+        assertEquals(new HttpException(503, "Busy"), exception.getValue());
+        assertEquals(Collections.singletonMap("Retry-After", "30"), exception.getValue().getHeaders());
         verifyNoMoreInteractions(serviceCallback);
-        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).disconnect();
     }
 
     @Test
@@ -349,6 +398,7 @@ public class DefaultHttpClientTest {
         verify(serviceCallback).onCallFailed(exception);
         verifyZeroInteractions(serviceCallback);
         verify(inputStream).close();
+        verify(urlConnection).disconnect();
     }
 
     @Test
@@ -0,0 +1,165 @@
+package com.microsoft.azure.mobile.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.microsoft.azure.mobile.http.DefaultHttpClient.METHOD_POST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unused")
+public class HttpClientMetricsDecoratorTest {
+
+    private static final String URL = "https://mock.com/logs";
+
+    private HttpClientMetricsDecorator.Listener mListener;
+
+    @Before
+    public void setUp() {
+        mListener = mock(HttpClientMetricsDecorator.Listener.class);
+        HttpClientMetricsDecorator.addListener(mListener);
+    }
+
+    @After
+    public void tearDown() {
+        HttpClientMetricsDecorator.removeListener(mListener);
+    }
+
+    /**
+     * Mock a client recording attempts like {@link DefaultHttpClient} then completing the call.
+     */
+    private static HttpClient mockHttpClient(final int attempts, final Exception e) {
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) throws Throwable {
+                HttpClient.MeteredCallTemplate callTemplate = (HttpClient.MeteredCallTemplate) invocation.getArguments()[3];
+                for (int i = 0; i < attempts; i++) {
+                    callTemplate.onAttemptStarted();
+                    callTemplate.onRequestSent(10);
+                    callTemplate.onResponseStatus(e == null ? 200 : 503, 5);
+                }
+                ServiceCallback serviceCallback = (ServiceCallback) invocation.getArguments()[4];
+                if (e == null)
+                    serviceCallback.onCallSucceeded("OK");
+                else
+                    serviceCallback.onCallFailed(e);
+                return mock(ServiceCall.class);
+            }
+        });
+        return httpClient;
+    }
+
+    @Test
+    public void success() throws IOException {
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        HttpClient httpClient = mockHttpClient(1, null);
+        ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient decorator = new HttpClientMetricsDecorator(httpClient);
+        decorator.callAsync(URL, METHOD_POST, new HashMap<String, String>(), callTemplate, callback);
+        verify(callback).onCallSucceeded("OK");
+
+        /* Original call template is passed along. */
+        ArgumentCaptor<HttpClient.CallTemplate> callTemplateCaptor = ArgumentCaptor.forClass(HttpClient.CallTemplate.class);
+        verify(httpClient).callAsync(eq(URL), eq(METHOD_POST), anyMapOf(String.class, String.class), callTemplateCaptor.capture(), any(ServiceCallback.class));
+        assertSame(callTemplate, ((HttpClientMetricsDecorator.MetricsCallTemplate) callTemplateCaptor.getValue()).mCallTemplate);
+
+        /* Verify metrics. */
+        ArgumentCaptor<CallMetrics> metricsCaptor = ArgumentCaptor.forClass(CallMetrics.class);
+        verify(mListener).onCallCompleted(metricsCaptor.capture());
+        CallMetrics metrics = metricsCaptor.getValue();
+        assertEquals(URL, metrics.getUrl());
+        assertEquals(METHOD_POST, metrics.getMethod());
+        assertEquals(200, metrics.getStatusCode());
+        assertEquals(0, metrics.getRetryCount());
+        assertEquals(10, metrics.getRequestBytes());
+        assertEquals(5, metrics.getTimeToFirstByte());
+        assertTrue(metrics.getDuration() >= 0);
+        assertNull(metrics.getException());
+
+        /* Close. */
+        decorator.close();
+        verify(httpClient).close();
+    }
+
+    @Test
+    public void failureAfterRetries() {
+        Exception exception = new HttpException(503);
+        ServiceCallback callback = mock(ServiceCallback.class);
+        new HttpClientMetricsDecorator(mockHttpClient(3, exception)).callAsync(URL, METHOD_POST, new HashMap<String, String>(), null, callback);
+        verify(callback).onCallFailed(exception);
+        ArgumentCaptor<CallMetrics> metricsCaptor = ArgumentCaptor.forClass(CallMetrics.class);
+        verify(mListener).onCallCompleted(metricsCaptor.capture());
+        CallMetrics metrics = metricsCaptor.getValue();
+        assertEquals(2, metrics.getRetryCount());
+        assertEquals(503, metrics.getStatusCode());
+        assertEquals(exception, metrics.getException());
+    }
+
+    @Test
+    public void noNetworkResponse() {
+        Exception exception = new SocketException();
+        new HttpClientMetricsDecorator(mockHttpClient(0, exception)).callAsync(URL, METHOD_POST, new HashMap<String, String>(), null, mock(ServiceCallback.class));
+        ArgumentCaptor<CallMetrics> metricsCaptor = ArgumentCaptor.forClass(CallMetrics.class);
+        verify(mListener).onCallCompleted(metricsCaptor.capture());
+        assertEquals(0, metricsCaptor.getValue().getStatusCode());
+        assertEquals(-1, metricsCaptor.getValue().getTimeToFirstByte());
+    }
+
+    @Test
+    public void cancelNotReported() {
+        HttpClient httpClient = mock(HttpClient.class);
+        ServiceCall serviceCall = mock(ServiceCall.class);
+        when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(serviceCall);
+        new HttpClientMetricsDecorator(httpClient).callAsync(URL, METHOD_POST, new HashMap<String, String>(), null, mock(ServiceCallback.class)).cancel();
+        verify(serviceCall).cancel();
+        verifyZeroInteractions(mListener);
+    }
+
+    @Test
+    public void removeListener() {
+        HttpClientMetricsDecorator.removeListener(mListener);
+        Map<String, String> headers = new HashMap<>();
+        new HttpClientMetricsDecorator(mockHttpClient(1, null)).callAsync(URL, METHOD_POST, headers, null, mock(ServiceCallback.class));
+        verifyZeroInteractions(mListener);
+    }
+
+    @Test
+    public void failingListener() {
+        HttpClientMetricsDecorator.Listener failingListener = mock(HttpClientMetricsDecorator.Listener.class);
+        doThrow(new RuntimeException()).when(failingListener).onCallCompleted(any(CallMetrics.class));
+        HttpClientMetricsDecorator.addListener(failingListener);
+        try {
+
+            /* The service callback and the other listeners are still called. */
+            ServiceCallback callback = mock(ServiceCallback.class);
+            new HttpClientMetricsDecorator(mockHttpClient(1, null)).callAsync(URL, METHOD_POST, new HashMap<String, String>(), null, callback);
+            verify(failingListener).onCallCompleted(any(CallMetrics.class));
+            verify(mListener).onCallCompleted(any(CallMetrics.class));
+            verify(callback).onCallSucceeded("OK");
+        } finally {
+            HttpClientMetricsDecorator.removeListener(failingListener);
+        }
+    }
+}
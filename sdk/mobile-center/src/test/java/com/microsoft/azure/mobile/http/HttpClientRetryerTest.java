@@ -1,26 +1,41 @@
 package com.microsoft.azure.mobile.http;
 
 import android.os.Handler;
+import android.os.SystemClock;
 
+import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.longThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 @SuppressWarnings("unused")
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SystemClock.class)
 public class HttpClientRetryerTest {
 
     private static void simulateRetryAfterDelay(Handler handler) {
@@ -35,18 +50,23 @@ public class HttpClientRetryerTest {
         }).when(handler).postDelayed(any(Runnable.class), anyLong());
     }
 
-    private static void verifyDelay(Handler handler, final int retryIndex) {
+    private static void verifyFirstDelay(Handler handler) {
         verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
 
             @Override
             public boolean matches(Object argument) {
                 long interval = (Long) argument;
-                long retryInterval = HttpClientRetryer.RETRY_INTERVALS[retryIndex];
-                return interval >= retryInterval / 2 && interval <= retryInterval;
+                return interval >= RetryEngine.BACKOFF_BASE && interval <= RetryEngine.BACKOFF_BASE * 3;
             }
         }));
     }
 
+    @Before
+    public void setUp() {
+        mockStatic(SystemClock.class);
+        when(SystemClock.elapsedRealtime()).thenReturn(RetryEngine.RETRY_BUDGET_WINDOW);
+    }
+
     @Test
     public void success() {
         final ServiceCall call = mock(ServiceCall.class);
@@ -87,10 +107,10 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, new RetryEngine(new Random()));
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
+        verifyFirstDelay(handler);
         verifyNoMoreInteractions(handler);
         verify(callback).onCallSucceeded("mockSuccessPayload");
         verifyNoMoreInteractions(callback);
@@ -117,10 +137,10 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, new RetryEngine(new Random()));
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
+        verifyFirstDelay(handler);
         verifyNoMoreInteractions(handler);
         verify(callback).onCallFailed(any(Exception.class));
         verify(callback).onCallFailed(expectedException);
@@ -141,12 +161,17 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, new RetryEngine(new Random()));
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
-        verifyDelay(handler, 1);
-        verifyDelay(handler, 2);
+        verify(handler, times(RetryEngine.MAX_RETRIES)).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                long interval = (Long) argument;
+                return interval >= RetryEngine.BACKOFF_BASE && interval <= RetryEngine.BACKOFF_CAP;
+            }
+        }));
         verifyNoMoreInteractions(handler);
         verify(callback).onCallFailed(new HttpException(429));
         verifyNoMoreInteractions(callback);
@@ -167,10 +192,130 @@ public class HttpClientRetryerTest {
             }
         }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
         Handler handler = mock(Handler.class);
-        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, new RetryEngine(new Random()));
         retryer.callAsync(null, null, null, null, callback).cancel();
         Thread.sleep(500);
         verifyNoMoreInteractions(callback);
         verify(call).cancel();
     }
+
+    @Test
+    public void honorRetryAfter() {
+        final ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) throws Throwable {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(503, "", Collections.singletonMap("retry-after", "120")));
+                return mock(ServiceCall.class);
+            }
+        }).doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) throws Throwable {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallSucceeded("mockSuccessPayload");
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, new RetryEngine(new Random()));
+        simulateRetryAfterDelay(handler);
+        retryer.callAsync("https://mock.com/logs", "", null, null, callback);
+        verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                long interval = (Long) argument;
+                return interval >= 120000 && interval <= 120000 + RetryEngine.BACKOFF_BASE;
+            }
+        }));
+        verify(callback).onCallSucceeded("mockSuccessPayload");
+        verifyNoMoreInteractions(callback);
+    }
+
+    @Test
+    public void circuitBreakerDelaysNewCalls() {
+        HttpClient httpClient = mock(HttpClient.class);
+        Handler handler = mock(Handler.class);
+        RetryEngine retryEngine = new RetryEngine(new Random());
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler, retryEngine);
+
+        /* Fail enough last tries to open the circuit. */
+        for (int i = 0; i < RetryEngine.CIRCUIT_BREAKER_THRESHOLD; i++)
+            assertEquals(-1, retryEngine.onCallFailed("https://mock.com/logs", new HttpException(500), RetryEngine.MAX_RETRIES, 0));
+
+        /* New call on same host is delayed. */
+        ServiceCallback callback = mock(ServiceCallback.class);
+        ServiceCall call = retryer.callAsync("https://mock.com/logs", "", null, null, callback);
+        verify(handler).postDelayed(any(Runnable.class), longThat(new ArgumentMatcher<Long>() {
+
+            @Override
+            public boolean matches(Object argument) {
+                long interval = (Long) argument;
+                return interval > 0 && interval <= RetryEngine.CIRCUIT_BREAKER_OPEN_DURATION;
+            }
+        }));
+        verifyNoMoreInteractions(httpClient);
+
+        /* Cancel before start is safe. */
+        call.cancel();
+        verify(handler).removeCallbacks(any(Runnable.class));
+        verifyNoMoreInteractions(callback);
+
+        /* Other hosts are not affected. */
+        retryer.callAsync("https://other.com/logs", "", null, null, callback);
+        verify(httpClient).callAsync(eq("https://other.com/logs"), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void retryBudgetExhaustedThenRecovered() {
+        RetryEngine retryEngine = new RetryEngine(new Random());
+        Exception exception = new HttpException(500);
+
+        /* During an outage, only a ratio of the calls are retried. */
+        int calls = 50;
+        int retries = 0;
+        for (int i = 0; i < calls; i++) {
+            retryEngine.onNewCall();
+            if (retryEngine.onCallFailed(null, exception, 0, 0) >= 0)
+                retries++;
+        }
+        assertEquals((int) (RetryEngine.RETRY_BUDGET_MIN_RETRIES + RetryEngine.RETRY_BUDGET_RATIO * calls), retries);
+        assertEquals(-1, retryEngine.onCallFailed(null, exception, 0, 0));
+
+        /* New successful calls raise the budget. */
+        for (int i = 0; i < 1 / RetryEngine.RETRY_BUDGET_RATIO; i++) {
+            retryEngine.onNewCall();
+            retryEngine.onCallSucceeded(null);
+        }
+        assertTrue(retryEngine.onCallFailed(null, exception, 0, 0) >= 0);
+        assertEquals(-1, retryEngine.onCallFailed(null, exception, 0, 0));
+
+        /* Once the outage is out of the window, retries are allowed again. */
+        when(SystemClock.elapsedRealtime()).thenReturn(RetryEngine.RETRY_BUDGET_WINDOW * 2);
+        for (int i = 0; i < RetryEngine.RETRY_BUDGET_MIN_RETRIES; i++)
+            assertTrue(retryEngine.onCallFailed(null, exception, 0, 0) >= 0);
+        assertEquals(-1, retryEngine.onCallFailed(null, exception, 0, 0));
+    }
+
+    @Test
+    public void retryBudgetNotChargedForCallsNotRetried() {
+        RetryEngine retryEngine = new RetryEngine(new Random());
+
+        /* Terminal errors and calls out of retries do not use the budget. */
+        for (int i = 0; i < RetryEngine.RETRY_BUDGET_MIN_RETRIES * 2; i++) {
+            assertEquals(-1, retryEngine.onCallFailed(null, new HttpException(403), 0, 0));
+            assertEquals(-1, retryEngine.onCallFailed(null, new HttpException(500), RetryEngine.MAX_RETRIES, 0));
+        }
+        for (int i = 0; i < RetryEngine.RETRY_BUDGET_MIN_RETRIES; i++)
+            assertTrue(retryEngine.onCallFailed(null, new HttpException(500), 0, 0) >= 0);
+    }
+
+    @Test
+    public void noRetryOnNonRecoverableError() {
+        RetryEngine retryEngine = new RetryEngine(new Random());
+        assertEquals(-1, retryEngine.onCallFailed(null, new HttpException(403), 0, 0));
+        assertEquals(0, retryEngine.getCallDelay(null));
+    }
 }
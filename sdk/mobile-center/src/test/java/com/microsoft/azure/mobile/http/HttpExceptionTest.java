@@ -2,10 +2,13 @@ package com.microsoft.azure.mobile.http;
 
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static com.microsoft.azure.mobile.test.TestUtils.checkEquals;
 import static com.microsoft.azure.mobile.test.TestUtils.checkNotEquals;
 import static com.microsoft.azure.mobile.test.TestUtils.compareSelfNullClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unused")
 public class HttpExceptionTest {
@@ -19,5 +22,7 @@ public class HttpExceptionTest {
         assertEquals(403, new HttpException(403).getStatusCode());
         assertEquals("", new HttpException(403).getPayload());
         assertEquals("Busy", new HttpException(503, "Busy").getPayload());
+        assertTrue(new HttpException(503).getHeaders().isEmpty());
+        assertEquals("10", new HttpException(503, "Busy", Collections.singletonMap("Retry-After", "10")).getHeaders().get("Retry-After"));
     }
 }
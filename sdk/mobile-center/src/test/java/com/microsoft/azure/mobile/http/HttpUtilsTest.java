@@ -4,7 +4,11 @@ import junit.framework.Assert;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Collections;
+
 import static com.microsoft.azure.mobile.http.HttpUtils.MAX_CHARACTERS_DISPLAYED_FOR_SECRET;
+import static com.microsoft.azure.mobile.http.HttpUtils.RETRY_AFTER;
 
 @SuppressWarnings("unused")
 public class HttpUtilsTest {
@@ -34,4 +38,35 @@ public class HttpUtilsTest {
         Assert.assertEquals(secret.length(), obfuscatedSecret.length());
         Assert.assertTrue(obfuscatedSecret.endsWith("*" + secret.substring(secret.length() - MAX_CHARACTERS_DISPLAYED_FOR_SECRET)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void retryAfterSeconds() {
+        Assert.assertEquals(30000, HttpUtils.getRetryAfter(new HttpException(503, "", Collections.singletonMap(RETRY_AFTER, "30")), 0));
+        Assert.assertEquals(30000, HttpUtils.getRetryAfter(new HttpException(429, "", Collections.singletonMap("retry-after", " 30 ")), 0));
+    }
+
+    @Test
+    public void retryAfterDate() {
+
+        /* 1994-11-06T08:49:37Z is 784111777 seconds after epoch. */
+        long now = 784111777000L - 5000;
+        Assert.assertEquals(5000, HttpUtils.getRetryAfter(new HttpException(503, "", Collections.singletonMap(RETRY_AFTER, "Sun, 06 Nov 1994 08:49:37 GMT")), now));
+        Assert.assertEquals(0, HttpUtils.getRetryAfter(new HttpException(503, "", Collections.singletonMap(RETRY_AFTER, "Sun, 06 Nov 1994 08:49:37 GMT")), now + 10000));
+    }
+
+    @Test
+    public void retryAfterMissingOrInvalid() {
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new IOException(), 0));
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(503), 0));
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(500, "", Collections.singletonMap(RETRY_AFTER, "30")), 0));
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(503, "", Collections.singletonMap(RETRY_AFTER, "-1")), 0));
+        Assert.assertEquals(-1, HttpUtils.getRetryAfter(new HttpException(503, "", Collections.singletonMap(RETRY_AFTER, "soon")), 0));
+    }
+
+    @Test
+    public void utf8Length() throws Exception {
+        String[] strings = {"", "ascii", "caf\u00e9", "\u20ac10", "\ud83d\ude00", "\ud83d", "a\ude00b"};
+        for (String string : strings)
+            Assert.assertEquals(string, string.getBytes("UTF-8").length, HttpUtils.getUtf8Length(string));
+    }
+}
@@ -2,6 +2,7 @@ package com.microsoft.azure.mobile.ingestion;
 
 import android.content.Context;
 
+import com.microsoft.azure.mobile.http.DefaultHttpClient;
 import com.microsoft.azure.mobile.http.HttpClient;
 import com.microsoft.azure.mobile.http.HttpClientNetworkStateHandler;
 import com.microsoft.azure.mobile.http.HttpUtils;
@@ -41,6 +42,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
@@ -177,6 +179,62 @@ public class IngestionHttpTest {
         verify(httpClient).close();
     }
 
+    @Test
+    public void payloadSizeReported() throws Exception {
+
+        /* Configure mock HTTP. */
+        LogSerializer serializer = mock(LogSerializer.class);
+        when(serializer.serializeContainer(any(LogContainer.class))).thenReturn("mock\u00e9Payload");
+        HttpClientNetworkStateHandler httpClient = mock(HttpClientNetworkStateHandler.class);
+        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenReturn(httpClient);
+        final AtomicReference<HttpClient.CallTemplate> callTemplate = new AtomicReference<>();
+        when(httpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).then(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocation) throws Throwable {
+                callTemplate.set((HttpClient.CallTemplate) invocation.getArguments()[3]);
+                return mock(ServiceCall.class);
+            }
+        });
+
+        /* Each serialization, including retries, is reported in bytes. */
+        LogContainer container = new LogContainer();
+        container.setLogs(new ArrayList<Log>());
+        Ingestion.Callback callback = mock(Ingestion.Callback.class);
+        new IngestionHttp(mock(Context.class), serializer).sendAsync(UUIDUtils.randomUUID().toString(), UUIDUtils.randomUUID(), container, callback);
+        callTemplate.get().buildRequestBody();
+        callTemplate.get().buildRequestBody();
+        verify(callback, times(2)).onPayloadSerialized("mock\u00e9Payload".length() + 1);
+    }
+
+    @Test
+    public void concurrentCallsDoNotBlockEachOther() throws Exception {
+
+        /* Mock an HTTP client that never completes calls. */
+        DefaultHttpClient defaultHttpClient = mock(DefaultHttpClient.class);
+        whenNew(DefaultHttpClient.class).withAnyArguments().thenReturn(defaultHttpClient);
+        when(defaultHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+
+        /* Bypass network state checks to get the chain of decorators below it. */
+        final AtomicReference<HttpClient> decoratedClient = new AtomicReference<>();
+        whenNew(HttpClientNetworkStateHandler.class).withAnyArguments().thenAnswer(new Answer<HttpClientNetworkStateHandler>() {
+
+            @Override
+            public HttpClientNetworkStateHandler answer(InvocationOnMock invocation) throws Throwable {
+                decoratedClient.set((HttpClient) invocation.getArguments()[0]);
+                return mock(HttpClientNetworkStateHandler.class);
+            }
+        });
+        new IngestionHttp(mock(Context.class), mock(LogSerializer.class));
+        assertNotNull(decoratedClient.get());
+
+        /* Send a batch for 2 groups at once, the second one must not wait for the first one. */
+        decoratedClient.get().callAsync("http://mock/analytics", METHOD_POST, new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), mock(ServiceCallback.class));
+        decoratedClient.get().callAsync("http://mock/crashes", METHOD_POST, new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), mock(ServiceCallback.class));
+        verify(defaultHttpClient).callAsync(eq("http://mock/analytics"), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        verify(defaultHttpClient).callAsync(eq("http://mock/crashes"), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+    }
+
     @Test
     public void onBeforeCalling() throws Exception {
 
@@ -2,25 +2,21 @@ package com.microsoft.azure.mobile.ingestion.models.json;
 
 import android.util.Log;
 
-import com.microsoft.azure.mobile.MobileCenter;
 import com.microsoft.azure.mobile.ingestion.models.LogContainer;
 import com.microsoft.azure.mobile.utils.MobileCenterLog;
 
-import org.json.JSONStringer;
 import org.junit.Rule;
 import org.junit.Test;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
-import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
-import static org.mockito.Matchers.eq;
-import static org.mockito.Mockito.mock;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
-import static org.powermock.api.mockito.PowerMockito.verifyStatic;
-import static org.powermock.api.mockito.PowerMockito.whenNew;
 
 /**
  * Supplements tests in LogSerializerTest.
@@ -33,27 +29,34 @@ public class DefaultLogSerializerTest {
     public PowerMockRule mPowerMockRule = new PowerMockRule();
 
     @Test
-    public void failToUsePrettyJson() throws Exception {
+    public void prettyJsonWhenVerbose() throws Exception {
 
-        /* Mock logs to verify interactions. */
+        /* Mock logs to verify configuration. */
         mockStatic(MobileCenterLog.class);
         when(MobileCenterLog.getLogLevel()).thenReturn(Log.VERBOSE);
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<com.microsoft.azure.mobile.ingestion.models.Log>emptyList());
+        DefaultLogSerializer serializer = new DefaultLogSerializer();
+        assertTrue(serializer.getConfig().isPretty());
+        assertEquals("{\n  \"logs\": []\n}", serializer.serializeContainer(container));
+
+        /* The configuration is resolved once. */
+        when(MobileCenterLog.getLogLevel()).thenReturn(Log.WARN);
+        assertEquals("{\n  \"logs\": []\n}", serializer.serializeContainer(container));
+        assertFalse(new DefaultLogSerializer().getConfig().isPretty());
+    }
+
+    @Test
+    public void explicitConfig() throws Exception {
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.<com.microsoft.azure.mobile.ingestion.models.Log>emptyList());
+        assertEquals("{\"logs\":[]}", new DefaultLogSerializer(SerializerConfig.COMPACT).serializeContainer(container));
+        assertEquals("{\n    \"logs\": []\n}", new DefaultLogSerializer(new SerializerConfig(4)).serializeContainer(container));
+        assertEquals("{\n    \"logs\": []\n}", new StreamingLogSerializer(new SerializerConfig(4)).serializeContainer(container));
+    }
 
-        /* Mock stub JSONStringer. */
-        JSONStringer stringer = mock(JSONStringer.class);
-        whenNew(JSONStringer.class).withAnyArguments().thenReturn(stringer);
-        when(stringer.key(anyString())).thenReturn(stringer);
-        when(stringer.toString()).thenReturn("{}");
-
-        /*
-         * We are in test folder so the stub does not contain the private methods,
-         * this test thus simulates what happens if we can't access the private methods
-         * via reflection to use pretty json. We check it serializes gracefully.
-         */
-        assertEquals("{}", new DefaultLogSerializer().serializeContainer(mock(LogContainer.class)));
-
-        /* And that it logs why the pretty json could not be used. */
-        verifyStatic();
-        MobileCenterLog.error(eq(MobileCenter.LOG_TAG), anyString(), any(NoSuchMethodError.class));
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIndentation() {
+        new SerializerConfig(-1);
     }
 }
@@ -0,0 +1,114 @@
+package com.microsoft.azure.mobile.utils;
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("unused")
+public class CompactStringMapTest {
+
+    @Test
+    public void sameAsHashMap() {
+        Map<String, String> expected = new HashMap<>();
+        Map<String, String> map = new CompactStringMap(0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(expected.put("k" + i, "v" + i), map.put("k" + i, "v" + i));
+            assertEquals(expected.put("k" + i / 2, "w" + i), map.put("k" + i / 2, "w" + i));
+        }
+        assertEquals(expected.put(null, "n"), map.put(null, "n"));
+        assertEquals(expected.put("null", null), map.put("null", null));
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        assertEquals(expected.toString().length(), map.toString().length());
+        assertEquals(expected.remove("k3"), map.remove("k3"));
+        assertEquals(expected.remove("missing"), map.remove("missing"));
+        assertEquals(expected.get(null), map.get(null));
+        assertTrue(map.containsKey("null"));
+        assertFalse(map.containsKey("k3"));
+        assertEquals(expected, map);
+        assertEquals(expected, new CompactStringMap(expected));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get("k1"));
+    }
+
+    @Test
+    public void insertionOrder() {
+        CompactStringMap map = new CompactStringMap(2);
+        map.put("b", "1");
+        map.put("a", "2");
+        map.put("c", "3");
+        map.remove("a");
+        map.put("a", "4");
+        assertEquals(3, map.size());
+        assertEquals("b", map.keyAt(0));
+        assertEquals("c", map.keyAt(1));
+        assertEquals("a", map.keyAt(2));
+        assertEquals("4", map.valueAt(2));
+        try {
+            map.keyAt(3);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        try {
+            map.valueAt(-1);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void iterator() {
+        CompactStringMap map = new CompactStringMap(3);
+        map.put("a", "1");
+        map.put("b", "2");
+        map.put("c", "3");
+        Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        try {
+            iterator.remove();
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+        iterator.next().setValue("one");
+        assertEquals("b", iterator.next().getKey());
+        iterator.remove();
+        assertEquals("c", iterator.next().getKey());
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail();
+        } catch (NoSuchElementException ignored) {
+        }
+        assertEquals(2, map.size());
+        assertEquals("one", map.get("a"));
+        assertFalse(map.containsKey("b"));
+
+        /* Modifications outside of the iterator are detected. */
+        iterator = map.entrySet().iterator();
+        iterator.next();
+        map.put("d", "4");
+        try {
+            iterator.next();
+            fail();
+        } catch (ConcurrentModificationException ignored) {
+        }
+        map.entrySet().clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCapacity() {
+        new CompactStringMap(-1);
+    }
+}
@@ -16,6 +16,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Mockito.mock;
@@ -50,6 +51,29 @@ public class NetworkStateHelperTest {
         }
     }
 
+    @Test
+    public void networkMetered() {
+        Context context = mock(Context.class);
+        ConnectivityManager connectivityManager = mock(ConnectivityManager.class);
+        NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(connectivityManager);
+        when(connectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+        when(networkInfo.getState()).thenReturn(NetworkInfo.State.CONNECTED);
+
+        /* Mobile is metered. */
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_MOBILE);
+        assertTrue(new NetworkStateHelper(context).isNetworkMetered());
+
+        /* WIFI is not. */
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_WIFI);
+        assertFalse(new NetworkStateHelper(context).isNetworkMetered());
+
+        /* Disconnected is not metered. */
+        when(networkInfo.getState()).thenReturn(NetworkInfo.State.DISCONNECTED);
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_MOBILE);
+        assertFalse(new NetworkStateHelper(context).isNetworkMetered());
+    }
+
     @Test
     public void permissionDenied() {
         Context context = mock(Context.class);
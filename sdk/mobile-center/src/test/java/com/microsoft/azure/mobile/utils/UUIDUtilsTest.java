@@ -2,9 +2,11 @@ package com.microsoft.azure.mobile.utils;
 
 import org.junit.Test;
 
+import java.security.SecureRandom;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.when;
 
@@ -33,4 +35,43 @@ public class UUIDUtilsTest {
             assertEquals(2, uuid.variant());
         }
     }
+
+    @Test
+    public void fastRandom() {
+        UUID uuid = UUIDUtils.fastRandomUUID();
+        assertEquals(4, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertNotEquals(uuid, UUIDUtils.fastRandomUUID());
+    }
+
+    @Test
+    public void fastRandomSecurityException() {
+        ThreadLocal<SecureRandom> threadRandom = UUIDUtils.sThreadRandom;
+        UUIDUtils.sThreadRandom = new ThreadLocal<SecureRandom>() {
+
+            @Override
+            protected SecureRandom initialValue() {
+                throw new SecurityException("mock");
+            }
+        };
+        try {
+            UUID uuid = UUIDUtils.fastRandomUUID();
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+        } finally {
+            UUIDUtils.sThreadRandom = threadRandom;
+        }
+    }
+
+    @Test
+    public void format() {
+        for (UUID uuid : new UUID[]{UUID.randomUUID(), new UUID(0, 0), new UUID(-1, -1), new UUID(0x0123456789abcdefL, 0xfedcba9876543210L)})
+            assertEquals(uuid.toString(), UUIDUtils.toString(uuid));
+        char[] buffer = new char[UUIDUtils.UUID_LENGTH + 2];
+        UUID uuid = UUID.randomUUID();
+        UUIDUtils.format(uuid, buffer, 1);
+        assertEquals(uuid.toString(), new String(buffer, 1, UUIDUtils.UUID_LENGTH));
+        assertEquals(0, buffer[0]);
+        assertEquals(0, buffer[buffer.length - 1]);
+    }
 }
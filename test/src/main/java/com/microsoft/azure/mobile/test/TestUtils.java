@@ -1,9 +1,21 @@
 package com.microsoft.azure.mobile.test;
 
+import org.json.JSONObject;
+import org.json.JSONStringer;
 import org.junit.After;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -15,6 +27,11 @@ public final class TestUtils {
      */
     public static final String TAG = "TestRunner";
 
+    /**
+     * Nesting level at which {@link #fill(Object)} stops filling list elements, for recursive models.
+     */
+    private static final int FILL_MAX_DEPTH = 2;
+
     private TestUtils() {
     }
 
@@ -57,4 +74,135 @@ public final class TestUtils {
         modifiers.setInt(field, field.getModifiers() & ~Modifier.FINAL);
         field.set(null, value);
     }
+
+    /**
+     * Check that a log is written the same way by its own write method and by a log serializer,
+     * and that every serializer reads it back as an equal log.
+     * This module cannot depend on the SDK, so the log and the serializers are called by reflection.
+     *
+     * @param log         log to check.
+     * @param serializers log serializers with the log factory added, the first one writes the payload.
+     * @return the JSON payload written by the first serializer.
+     * @throws Exception if the log cannot be serialized or deserialized.
+     */
+    public static String checkLogConformance(Object log, Object... serializers) throws Exception {
+
+        /* Compare writers. */
+        JSONStringer stringer = new JSONStringer();
+        stringer.object();
+        invoke(log, "write", stringer);
+        stringer.endObject();
+        String payload = (String) invoke(serializers[0], "serializeLog", log);
+        assertEquals(new JSONObject(stringer.toString()).toString(), new JSONObject(payload).toString());
+
+        /* Compare readers. */
+        for (Object serializer : serializers)
+            assertEquals(log, invoke(serializer, "deserializeLog", payload));
+        return payload;
+    }
+
+    /**
+     * Call a public method taking a single parameter, rethrowing the exception the method throws.
+     */
+    private static Object invoke(Object target, String name, Object argument) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (method.getName().equals(name) && parameterTypes.length == 1 && parameterTypes[0].isInstance(argument)) {
+                try {
+                    return method.invoke(target, argument);
+                } catch (InvocationTargetException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw e;
+                }
+            }
+        }
+        throw new NoSuchMethodException(target.getClass().getName() + "." + name);
+    }
+
+    /**
+     * Call every setter of a model with a distinct value, so that checks cover properties added later.
+     * Simple types, byte arrays, lists and string keyed maps are filled, list elements that are
+     * models are filled recursively. Setters of other types are left to the caller.
+     *
+     * @param model model to fill.
+     * @param <T>   model type.
+     * @return the model.
+     * @throws Exception if a setter fails.
+     */
+    public static <T> T fill(T model) throws Exception {
+        return fill(model, new int[]{1}, 0);
+    }
+
+    private static <T> T fill(T model, int[] counter, int depth) throws Exception {
+        for (Method method : model.getClass().getMethods()) {
+            Type[] types = method.getGenericParameterTypes();
+            if (!method.getName().startsWith("set") || types.length != 1)
+                continue;
+            Object value = fillValue(method.getName().substring(3), types[0], counter, depth);
+            if (value != null)
+                method.invoke(model, value);
+        }
+        return model;
+    }
+
+    private static Object fillValue(String name, Type type, int[] counter, int depth) throws Exception {
+        int value = counter[0]++;
+        if (type == String.class || type == Object.class)
+            return name + " \"" + value + "\"\n\u00e9";
+        if (type == Integer.class || type == int.class)
+            return value;
+        if (type == Long.class || type == long.class)
+            return 10000000000L + value;
+        if (type == Boolean.class || type == boolean.class)
+            return true;
+        if (type == UUID.class)
+            return UUID.randomUUID();
+        if (type == byte[].class) {
+
+            /* Cover every byte value. */
+            byte[] bytes = new byte[256 + value];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = (byte) (i + value);
+            return bytes;
+        }
+        if (type instanceof ParameterizedType) {
+            Type rawType = ((ParameterizedType) type).getRawType();
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (rawType == List.class || rawType == Collection.class) {
+                Object first = fillElement(name, arguments[0], counter, depth);
+                if (first == null)
+                    return null;
+                List<Object> list = new ArrayList<>();
+                list.add(first);
+                list.add(fillElement(name, arguments[0], counter, depth));
+                return list;
+            }
+            if (rawType == Map.class && arguments[0] == String.class) {
+                Object mapValue = fillValue(name, arguments[1], counter, depth);
+                if (mapValue == null)
+                    return null;
+                Map<String, Object> map = new HashMap<>();
+                map.put(name + value, mapValue);
+                return map;
+            }
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Fill a list element, a model is created and filled unless nested too deeply.
+     */
+    private static Object fillElement(String name, Type type, int[] counter, int depth) throws Exception {
+        Object value = fillValue(name, type, counter, depth);
+        if (value != null || !(type instanceof Class) || depth >= FILL_MAX_DEPTH)
+            return value;
+        try {
+            return fill(((Class<?>) type).getConstructor().newInstance(), counter, depth + 1);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
 }